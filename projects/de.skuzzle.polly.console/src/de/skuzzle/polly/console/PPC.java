@@ -2,7 +2,6 @@ package de.skuzzle.polly.console;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
@@ -14,7 +13,6 @@ import java.util.List;
 
 import de.skuzzle.polly.core.parser.Evaluator;
 import de.skuzzle.polly.core.parser.Position;
-import de.skuzzle.polly.core.parser.ast.declarations.DeclarationReader;
 import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
 import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
 import de.skuzzle.polly.core.parser.ast.visitor.ExpASTVisualizer;
@@ -32,17 +30,6 @@ public class PPC {
     private final static String DOT_PATH = 
             "C:\\Program Files (x86)\\Graphviz 2.28\\bin\\dot.exe";
     
-    private final static File DECLARATION_FOLDER = new File("decls");
-    
-    private final static FileFilter DECLARATION_FILTER = new FileFilter() {
-        
-        @Override
-        public boolean accept(File pathname) {
-            return pathname.getName().toLowerCase().endsWith(".decl");
-        }
-    };
-    
-    
     private final static Comparator<Problem> PROBLEM_COMP = new Comparator<ProblemReporter.Problem>() {
 
         @Override
@@ -57,33 +44,13 @@ public class PPC {
     
     
     
-    private static void readDeclarations() throws IOException {
-        for (final File file : DECLARATION_FOLDER.listFiles(DECLARATION_FILTER)) {
-            DeclarationReader dr = null;
-            try {
-                final String nsName = file.getName().substring(
-                        0, file.getName().length() - 5);
-                Namespace ns = Namespace.forName(nsName);
-                dr = new DeclarationReader(file, "ISO-8859-1", ns);
-                dr.readAll();
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                if (dr != null) {
-                    dr.close();
-                }
-            }
-        }
-    }
-    
-
     public static void main(String[] args) throws IOException, ASTTraversalException {
         final File declFolder = new File("decls");
         if (!declFolder.exists()) {
             declFolder.mkdirs();
         }
         Namespace.setDeclarationFolder(declFolder);
-        readDeclarations();
+        Namespace.restoreAll();
         
         final BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
         String nsName = "default";
@@ -102,6 +69,7 @@ public class PPC {
                 continue;
             }
             if (cmd.equals(":q")) {
+                Namespace.flushDeclarations();
                 return;
             } else if (cmd.startsWith(":ns")) {
                 final String[] parts = cmd.split(" ");
@@ -0,0 +1,230 @@
+package de.skuzzle.polly.core.parser;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.skuzzle.polly.core.parser.ast.Root;
+import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
+import de.skuzzle.polly.core.parser.ast.declarations.Namespace.Dependencies;
+import de.skuzzle.polly.core.parser.ast.directives.DelayDirective;
+import de.skuzzle.polly.core.parser.ast.directives.Directive;
+
+
+/**
+ * <p>Bounded cache of parsed and type resolved ASTs which is used by the
+ * {@link Evaluator} to skip scanning, parsing and type resolution for inputs which
+ * have been evaluated before. Entries are keyed by the input string and the namespace
+ * into which the input is evaluated. Each entry remembers the versions of all
+ * namespaces which have been consulted during type resolution and is discarded as soon
+ * as any of them is modified.</p>
+ *
+ * <p>Inputs are not cached if they contain date or timespan literals (as those are
+ * relative to the time of parsing) or if they refer to declarations of the temporary
+ * working namespace (like the current user or channel).</p>
+ *
+ * <p>The least recently used entry is evicted if the cache exceeds its maximum
+ * size. This class is thread safe. An instance should only be used by evaluators which
+ * use the same encoding.</p>
+ *
+ * @author Simon Taddiken
+ */
+public class ASTCache {
+
+    private final static class Key {
+        private final Namespace namespace;
+        private final String input;
+
+
+        public Key(Namespace namespace, String input) {
+            this.namespace = namespace;
+            this.input = input;
+        }
+
+
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.namespace) + this.input.hashCode();
+        }
+
+
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            } else if (obj == null || obj.getClass() != Key.class) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.namespace == other.namespace && this.input.equals(other.input);
+        }
+    }
+
+
+
+    private final static class CacheEntry {
+        private final Root root;
+        private final Dependencies dependencies;
+
+
+        public CacheEntry(Root root, Dependencies dependencies) {
+            this.root = root;
+            this.dependencies = dependencies;
+        }
+    }
+
+
+
+    private final int maxSize;
+    private final Map<Key, CacheEntry> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize Maximum number of cached ASTs.
+     */
+    public ASTCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize < 1: " + maxSize); //$NON-NLS-1$
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Entry<Key, CacheEntry> eldest) {
+                if (this.size() > ASTCache.this.maxSize) {
+                    ++ASTCache.this.evictions;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+
+    /**
+     * Looks up a cached AST for the given input. The returned root is a copy which
+     * shares the resolved expressions with the cached AST but can be executed
+     * independently from it.
+     *
+     * @param namespace The namespace into which the input is evaluated.
+     * @param input The input string.
+     * @return A copy of the cached AST root or <code>null</code> if no valid entry
+     *          exists.
+     */
+    public synchronized Root get(Namespace namespace, String input) {
+        final Key key = new Key(namespace, input);
+        final CacheEntry entry = this.entries.get(key);
+        if (entry == null) {
+            ++this.misses;
+            return null;
+        } else if (!entry.dependencies.isValid()) {
+            this.entries.remove(key);
+            ++this.invalidations;
+            ++this.misses;
+            return null;
+        }
+        ++this.hits;
+        return copyForExecution(entry.root);
+    }
+
+
+
+    /**
+     * Stores a resolved AST.
+     *
+     * @param namespace The namespace into which the input has been evaluated.
+     * @param input The input string.
+     * @param root The resolved AST.
+     * @param dependencies The namespaces consulted while resolving the AST.
+     */
+    public synchronized void put(Namespace namespace, String input, Root root,
+            Dependencies dependencies) {
+        this.entries.put(new Key(namespace, input), new CacheEntry(root, dependencies));
+    }
+
+
+
+    /**
+     * Removes all cached ASTs.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+
+
+    public synchronized int getSize() {
+        return this.entries.size();
+    }
+
+
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+
+
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+
+
+    public synchronized long getInvalidations() {
+        return this.invalidations;
+    }
+
+
+
+    @Override
+    public synchronized String toString() {
+        return String.format(
+            "size: %d/%d, hits: %d, misses: %d, evictions: %d, invalidations: %d", //$NON-NLS-1$
+            this.entries.size(), this.maxSize, this.hits, this.misses, this.evictions,
+            this.invalidations);
+    }
+
+
+
+    private static Root copyForExecution(Root root) {
+        // execution stores its results in the root and the delay directive, so
+        // these must not be shared
+        final Map<TokenType, Directive> directives =
+            new HashMap<TokenType, Directive>(root.getDirectives());
+        final Directive delay = directives.get(TokenType.DELAY);
+        if (delay != null) {
+            final DelayDirective dd = (DelayDirective) delay;
+            directives.put(TokenType.DELAY,
+                new DelayDirective(dd.getPosition(), dd.getTargetTime()));
+        }
+        final Root copy = new Root(root.getPosition(), root.getCommand(), 
+            root.getExpressions(), root.hasProblems(), directives);
+        copy.setCompiled(root.getCompiled());
+        return copy;
+    }
+}
@@ -4,6 +4,7 @@ import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 
 import de.skuzzle.polly.core.parser.ast.Root;
+import de.skuzzle.polly.core.parser.ast.compiler.CompilingExecutionVisitor;
 import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
 import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
 import de.skuzzle.polly.core.parser.ast.visitor.ASTVisitor;
@@ -28,9 +29,11 @@ import de.skuzzle.polly.core.parser.problems.ProblemReporter;
 public class Evaluator {
     
     private final static ExecutionVisitor getExecutor(Namespace rootNs, 
-            Namespace workingNs, ProblemReporter reporter) {
+            Namespace workingNs, ProblemReporter reporter, boolean compile) {
         if (ParserProperties.should(ParserProperties.ENABLE_EXECUTION_DEBUGGING)) {
             return new DebugExecutionVisitor(rootNs, workingNs, reporter);
+        } else if (compile) {
+            return new CompilingExecutionVisitor(rootNs, workingNs, reporter);
         } else {
             return new ExecutionVisitor(rootNs, workingNs, reporter);
         }
@@ -39,6 +42,8 @@ public class Evaluator {
     private final String input;
     private final String encoding;
     private final ProblemReporter reporter;
+    private final ASTCache cache;
+    private boolean compile;
     private Root lastResult;
     private ASTTraversalException lastError;
     
@@ -46,12 +51,43 @@ public class Evaluator {
     
     public Evaluator(String input, String encoding, ProblemReporter reporter) 
             throws UnsupportedEncodingException {
+        this(input, encoding, reporter, null);
+    }
+    
+    
+    
+    /**
+     * Creates a new Evaluator which looks up and stores resolved ASTs in the given 
+     * cache.
+     * 
+     * @param input The input to evaluate.
+     * @param encoding The charset name to use.
+     * @param reporter The ProblemReporter to use.
+     * @param cache Cache for resolved ASTs. May be <code>null</code>.
+     * @throws UnsupportedEncodingException If the charset name was invalid.
+     */
+    public Evaluator(String input, String encoding, ProblemReporter reporter, 
+            ASTCache cache) throws UnsupportedEncodingException {
         if (!Charset.isSupported(encoding)) {
             throw new UnsupportedEncodingException(encoding);
         }
         this.reporter = reporter;
         this.input = input;
         this.encoding = encoding;
+        this.cache = cache;
+    }
+    
+    
+    
+    /**
+     * Sets whether the input should be executed using the 
+     * {@link de.skuzzle.polly.core.parser.ast.compiler.Compiler} instead of being 
+     * interpreted. Defaults to <code>false</code>.
+     * 
+     * @param compile Whether to compile the input.
+     */
+    public void setCompile(boolean compile) {
+        this.compile = compile;
     }
     
     
@@ -78,6 +114,18 @@ public class Evaluator {
      */
     public void evaluate(Namespace rootNs, Namespace workingNs) {
         try {
+            if (this.cache != null) {
+                final Root cached = this.cache.get(rootNs, this.input);
+                if (cached != null) {
+                    this.lastResult = cached;
+                    final ProblemReporter reporter = this.reporter.subReporter(
+                        cached.getPosition());
+                    cached.visit(
+                        getExecutor(rootNs, workingNs, reporter, this.compile));
+                    return;
+                }
+            }
+            
             final InputParser parser = new InputParser(this.input, this.encoding, 
                 this.reporter);
             this.lastResult = parser.parse();
@@ -94,11 +142,32 @@ public class Evaluator {
                 this.lastResult.getPosition());
             
             // resolve types
-            TypeResolver.resolveAST(this.lastResult, workingNs, reporter);
+            final Namespace.Dependencies dependencies;
+            if (this.cache != null) {
+                Namespace.beginRecording();
+                try {
+                    TypeResolver.resolveAST(this.lastResult, workingNs, reporter);
+                } finally {
+                    dependencies = Namespace.endRecording();
+                }
+            } else {
+                TypeResolver.resolveAST(this.lastResult, workingNs, reporter);
+                dependencies = null;
+            }
             
             if (!this.reporter.hasProblems()) {
-                final ASTVisitor executor = getExecutor(rootNs, workingNs, reporter);
+                final boolean cacheable = dependencies != null && 
+                    dependencies.isTrackable() && 
+                    !parser.isTimeDependent() && 
+                    !this.lastResult.hasProblems();
+                
+                final ASTVisitor executor = getExecutor(rootNs, workingNs, reporter, 
+                    this.compile);
                 this.lastResult.visit(executor);
+                
+                if (cacheable) {
+                    this.cache.put(rootNs, this.input, this.lastResult, dependencies);
+                }
             }
             
         } catch (UnsupportedEncodingException e) {
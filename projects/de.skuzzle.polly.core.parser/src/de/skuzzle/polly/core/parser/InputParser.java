@@ -155,6 +155,9 @@ public class InputParser {
     /** Used to report problems during parsing */
     private final ProblemReporter reporter;
     
+    /** Whether a literal has been parsed which depends on the current time */
+    private boolean timeDependent;
+    
     
     
     /**
@@ -239,6 +242,72 @@ public class InputParser {
     
     
     
+    /**
+     * Whether the parsed input contained date or timespan literals. Their values are
+     * computed relative to the time of parsing, so the resulting AST must not be 
+     * reused later.
+     * 
+     * @return Whether the parsed AST depends on the time of parsing.
+     */
+    public boolean isTimeDependent() {
+        return this.timeDependent;
+    }
+
+
+
+    /**
+     * Cheaply checks whether the given input has the shape of a command invocation.
+     * That is, after skipping leading whitespaces, it starts with a colon which is
+     * directly followed by an identifier of at least
+     * {@link ParserProperties#COMMAND_MIN_LENGTH} characters. Input for which this
+     * method returns <code>false</code> would be rejected by {@link #parse()} anyway.
+     * This check neither runs the scanner nor allocates any objects.
+     *
+     * @param input The input to check.
+     * @return The index directly behind the command name or <code>-1</code> if the
+     *          input can not be a command.
+     */
+    public static int findCommandNameEnd(CharSequence input) {
+        final int length = input.length();
+        int i = 0;
+        // skip whitespaces the same way String.trim() does
+        while (i < length && input.charAt(i) <= ' ') {
+            ++i;
+        }
+        if (i + 1 >= length || input.charAt(i) != ':' ||
+                !InputScanner.isIdentifierStart(Character.codePointAt(input, i + 1))) {
+            return -1;
+        }
+        final int start = ++i;
+        i += Character.charCount(Character.codePointAt(input, i));
+        while (i < length) {
+            final int next = Character.codePointAt(input, i);
+            if (!InputScanner.isIdentifierPart(next)) {
+                break;
+            }
+            i += Character.charCount(next);
+        }
+        if (i - start < ParserProperties.getInt(ParserProperties.COMMAND_MIN_LENGTH)) {
+            return -1;
+        }
+        return i;
+    }
+
+
+
+    /**
+     * Cheaply checks whether the given input has the shape of a command invocation.
+     *
+     * @param input The input to check.
+     * @return Whether the input may be a command.
+     * @see #findCommandNameEnd(CharSequence)
+     */
+    public static boolean isCommandShaped(CharSequence input) {
+        return findCommandNameEnd(input) != -1;
+    }
+    
+    
+    
     /**
      * Parses a single polly expression with no assignments and command prefix.
      * 
@@ -1155,10 +1224,12 @@ public class InputParser {
             
         case DATETIME:
             this.scanner.consume();
+            this.timeDependent = true;
             return new DateLiteral(la.getPosition(), la.getDateValue());
             
         case TIMESPAN:
             this.scanner.consume();
+            this.timeDependent = true;
             return new TimespanLiteral(la.getPosition(), (int)la.getLongValue());
             
         case QUESTION:
@@ -36,6 +36,11 @@ public class ParserProperties {
     /** Minimum length of a command name */
     public final static String COMMAND_MIN_LENGTH = "commandMinLength"; //$NON-NLS-1$
     
+    /** 
+     * Maximum number of unification steps for resolving the types of a single input. 
+     */
+    public final static String TYPE_RESOLUTION_BUDGET = "typeResolutionBudget"; //$NON-NLS-1$
+    
     
     /** Stores the parser properties. */
     private final static Map<String, String> properties;
@@ -50,6 +55,7 @@ public class ParserProperties {
         properties.put(ENABLE_SCANNER_DEBUGGING, Boolean.FALSE.toString());
         properties.put(ENABLE_EXECUTION_DEBUGGING, Boolean.FALSE.toString());
         properties.put(COMMAND_MIN_LENGTH, "2"); //$NON-NLS-1$
+        properties.put(TYPE_RESOLUTION_BUDGET, "100000"); //$NON-NLS-1$
     }
     
     
@@ -8,6 +8,7 @@ import java.util.Map;
 
 import de.skuzzle.polly.core.parser.Position;
 import de.skuzzle.polly.core.parser.TokenType;
+import de.skuzzle.polly.core.parser.ast.compiler.Code;
 import de.skuzzle.polly.core.parser.ast.directives.Directive;
 import de.skuzzle.polly.core.parser.ast.expressions.Expression;
 import de.skuzzle.polly.core.parser.ast.expressions.literals.Literal;
@@ -31,6 +32,7 @@ public final class Root extends Node {
     private List<Literal> results;
     private final boolean hasProblems;
     private final Map<TokenType, Directive> directives;
+    private volatile Code[] compiled;
     
     
     
@@ -67,6 +69,7 @@ public final class Root extends Node {
         } else {
             this.expressions = new ArrayList<Expression>(expressions);
         }
+        this.compiled = null;
     }
     
     
@@ -126,6 +129,29 @@ public final class Root extends Node {
     
     
     
+    /**
+     * Gets the compiled form of this root's expressions.
+     * 
+     * @return The compiled expressions or <code>null</code> if they have not been 
+     *          compiled.
+     */
+    public Code[] getCompiled() {
+        return this.compiled;
+    }
+    
+    
+    
+    /**
+     * Stores the compiled form of this root's expressions.
+     * 
+     * @param compiled The compiled expressions.
+     */
+    public void setCompiled(Code[] compiled) {
+        this.compiled = compiled;
+    }
+    
+    
+    
     @Override
     public boolean visit(ASTVisitor visitor) throws ASTTraversalException {
         return visitor.visit(this);
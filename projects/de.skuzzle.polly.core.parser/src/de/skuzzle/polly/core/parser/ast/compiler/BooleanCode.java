@@ -0,0 +1,62 @@
+package de.skuzzle.polly.core.parser.ast.compiler;
+
+import de.skuzzle.polly.core.parser.Position;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.BooleanLiteral;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.Literal;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+
+
+/**
+ * Code which produces a new boolean. Callers which only need the value can use 
+ * {@link #evalBoolean(ExecutionContext, Frame)} to skip the creation of a 
+ * {@link BooleanLiteral}.
+ * 
+ * @author Simon Taddiken
+ */
+public abstract class BooleanCode extends Code {
+
+    /**
+     * Gets the boolean value of the given code. If it is a {@link BooleanCode}, no 
+     * literal is created.
+     * 
+     * @param code The code to evaluate. Its result must be a boolean.
+     * @param context The execution context.
+     * @param frame Current frame.
+     * @return The resulting value.
+     * @throws ASTTraversalException If execution fails.
+     */
+    public static boolean evalBoolean(Code code, ExecutionContext context, Frame frame) 
+            throws ASTTraversalException {
+        if (code instanceof BooleanCode) {
+            return ((BooleanCode) code).evalBoolean(context, frame);
+        }
+        return ((BooleanLiteral) code.execute(context, frame)).getValue();
+    }
+    
+    
+    
+    public BooleanCode(Position position) {
+        super(position);
+    }
+    
+    
+    
+    /**
+     * Executes this code and returns the unboxed result.
+     * 
+     * @param context The execution context.
+     * @param frame Current frame.
+     * @return The resulting value.
+     * @throws ASTTraversalException If execution fails.
+     */
+    public abstract boolean evalBoolean(ExecutionContext context, Frame frame) 
+        throws ASTTraversalException;
+    
+    
+    
+    @Override
+    public Literal execute(ExecutionContext context, Frame frame) 
+            throws ASTTraversalException {
+        return new BooleanLiteral(this.getPosition(), this.evalBoolean(context, frame));
+    }
+}
@@ -0,0 +1,54 @@
+package de.skuzzle.polly.core.parser.ast.compiler;
+
+import de.skuzzle.polly.core.parser.Position;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.Literal;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+
+
+/**
+ * Compiled form of a single expression. Executing a code object yields the same 
+ * literal that the {@link de.skuzzle.polly.core.parser.ast.visitor.ExecutionVisitor}
+ * would have left on its stack for the source expression.
+ * 
+ * @author Simon Taddiken
+ */
+public abstract class Code {
+
+    private final Position position;
+    
+    
+    
+    /**
+     * Creates a new code object.
+     * 
+     * @param position Position of the source expression.
+     */
+    public Code(Position position) {
+        this.position = position;
+    }
+    
+    
+    
+    /**
+     * Gets the position of the expression from which this code has been compiled.
+     * 
+     * @return The position.
+     */
+    public Position getPosition() {
+        return this.position;
+    }
+    
+    
+    
+    /**
+     * Executes this code.
+     * 
+     * @param context The execution context.
+     * @param frame Local variables of the current function call. <code>null</code> 
+     *          on top level.
+     * @return The resulting literal.
+     * @throws ASTTraversalException If execution fails.
+     */
+    public abstract Literal execute(ExecutionContext context, Frame frame) 
+        throws ASTTraversalException;
+}
@@ -0,0 +1,205 @@
+package de.skuzzle.polly.core.parser.ast.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.skuzzle.polly.core.parser.Position;
+import de.skuzzle.polly.core.parser.ast.declarations.Declaration;
+import de.skuzzle.polly.core.parser.ast.expressions.Expression;
+import de.skuzzle.polly.core.parser.ast.expressions.Native;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.BooleanLiteral;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.FunctionLiteral;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.ListLiteral;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.Literal;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.NumberLiteral;
+import de.skuzzle.polly.core.parser.ast.lang.Operator;
+import de.skuzzle.polly.core.parser.ast.lang.Operator.OpType;
+import de.skuzzle.polly.core.parser.ast.lang.functions.FoldLeft;
+import de.skuzzle.polly.core.parser.ast.lang.functions.Map;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+
+
+/**
+ * Compiled form of a {@link FunctionLiteral}. It is created once per function literal
+ * and stored within the literal, so that functions which are declared in a namespace 
+ * are only compiled once.
+ * 
+ * @author Simon Taddiken
+ */
+public final class CompiledFunction {
+    
+    private final List<Declaration> formal;
+    private final Expression source;
+    private final String[] names;
+    private final Code body;
+    private final Native nat;
+    private final int kind;
+    
+    
+    
+    CompiledFunction(FunctionLiteral func) {
+        this.formal = func.getFormal();
+        this.source = func.getBody();
+        this.names = new String[this.formal.size()];
+        int i = 0;
+        for (final Declaration decl : this.formal) {
+            this.names[i++] = decl.getName().getId();
+        }
+        if (this.source instanceof Native) {
+            this.nat = (Native) this.source;
+            this.body = null;
+            this.kind = Operations.classify(this.nat);
+        } else {
+            this.nat = null;
+            this.body = Compiler.compile(this.source);
+            this.kind = Operations.NONE;
+        }
+    }
+    
+    
+    
+    /**
+     * Whether this is still the compiled form of the given function. Function 
+     * literals are mutable, so this must be checked before using a stored instance.
+     * 
+     * @param func The function literal.
+     * @return Whether formal parameters and body are still the same.
+     */
+    boolean isCompiledFrom(FunctionLiteral func) {
+        return this.source == func.getBody() && this.formal == func.getFormal();
+    }
+    
+    
+    
+    /**
+     * Creates a new frame for calling this function.
+     * 
+     * @param parent The frame of the caller.
+     * @return The new frame.
+     */
+    public Frame newFrame(Frame parent) {
+        return new Frame(parent, this.names);
+    }
+    
+    
+    
+    /**
+     * Executes this function with the parameters bound in the given frame.
+     * 
+     * @param context The execution context.
+     * @param callee Frame created by {@link #newFrame(Frame)}.
+     * @return The result of the function.
+     * @throws ASTTraversalException If execution fails.
+     */
+    public Literal invoke(ExecutionContext context, Frame callee) 
+            throws ASTTraversalException {
+        if (this.body != null) {
+            return this.body.execute(context, callee);
+        } else if (this.kind != Operations.NONE) {
+            final Literal result = this.operator(context, callee);
+            if (result != null) {
+                return result;
+            }
+        } else if (this.nat instanceof Map) {
+            return this.map(context, callee);
+        } else if (this.nat instanceof FoldLeft) {
+            return this.foldLeft(context, callee);
+        }
+        return context.interpret(this.nat, callee);
+    }
+    
+    
+    
+    /**
+     * Executes operators which could not be bound at compile time (e.g. within 
+     * functions that have been read from a declaration file) on primitive values.
+     * 
+     * @return The result or <code>null</code> if the operator must be interpreted.
+     */
+    private Literal operator(ExecutionContext context, Frame callee) 
+            throws ASTTraversalException {
+        final OpType op = ((Operator) this.nat).getOp();
+        switch (this.kind) {
+        case Operations.BINARY_NUMBER: {
+            final NumberLiteral left = (NumberLiteral) callee.get(0);
+            final NumberLiteral right = (NumberLiteral) callee.get(1);
+            if (Operations.isDivision(op)) {
+                right.nonZero(context.getReporter());
+            }
+            return new NumberLiteral(
+                Position.correctSpan(left.getPosition(), right.getPosition()),
+                Operations.binary(op, left.getValue(), right.getValue()));
+        }
+        case Operations.UNARY_NUMBER: {
+            final NumberLiteral operand = (NumberLiteral) callee.get(0);
+            return new NumberLiteral(operand.getPosition(), 
+                Operations.unary(op, operand.getValue()));
+        }
+        case Operations.COMPARISON: {
+            final Literal left = callee.get(0);
+            final Literal right = callee.get(1);
+            if (left.getClass() != NumberLiteral.class || 
+                    right.getClass() != NumberLiteral.class) {
+                return null;
+            }
+            return new BooleanLiteral(
+                Position.correctSpan(left.getPosition(), right.getPosition()),
+                Operations.compare(op, ((NumberLiteral) left).getValue(), 
+                    ((NumberLiteral) right).getValue()));
+        }
+        case Operations.BINARY_BOOLEAN: {
+            final BooleanLiteral left = (BooleanLiteral) callee.get(0);
+            final BooleanLiteral right = (BooleanLiteral) callee.get(1);
+            return new BooleanLiteral(
+                Position.correctSpan(left.getPosition(), right.getPosition()),
+                Operations.binary(op, left.getValue(), right.getValue()));
+        }
+        case Operations.NOT: {
+            final BooleanLiteral operand = (BooleanLiteral) callee.get(0);
+            return new BooleanLiteral(operand.getPosition(), !operand.getValue());
+        }
+        case Operations.CONDITIONAL:
+            return ((BooleanLiteral) callee.get(0)).getValue() 
+                ? callee.get(1) 
+                : callee.get(2);
+        default:
+            return null;
+        }
+    }
+    
+    
+    
+    private Literal map(ExecutionContext context, Frame callee) 
+            throws ASTTraversalException {
+        final ListLiteral list = (ListLiteral) callee.get(0);
+        final CompiledFunction func = Compiler.function((FunctionLiteral) callee.get(1));
+        
+        final ArrayList<Expression> result = new ArrayList<Expression>(
+            list.getContent().size());
+        for (final Expression exp : list.getContent()) {
+            final Frame frame = func.newFrame(callee);
+            frame.bind((Literal) exp);
+            result.add(func.invoke(context, frame));
+        }
+        final ListLiteral ll = new ListLiteral(list.getPosition(), result);
+        ll.setUnique(this.nat.getUnique());
+        return ll;
+    }
+    
+    
+    
+    private Literal foldLeft(ExecutionContext context, Frame callee) 
+            throws ASTTraversalException {
+        final ListLiteral list = (ListLiteral) callee.get(0);
+        final CompiledFunction func = Compiler.function((FunctionLiteral) callee.get(1));
+        
+        Literal result = callee.get(2);
+        for (final Expression exp : list.getContent()) {
+            final Frame frame = func.newFrame(callee);
+            frame.bind(result);
+            frame.bind((Literal) exp);
+            result = func.invoke(context, frame);
+        }
+        return result;
+    }
+}
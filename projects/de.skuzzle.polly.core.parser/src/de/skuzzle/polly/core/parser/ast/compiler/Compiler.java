@@ -0,0 +1,467 @@
+package de.skuzzle.polly.core.parser.ast.compiler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import de.skuzzle.polly.core.parser.Position;
+import de.skuzzle.polly.core.parser.ast.ResolvableIdentifier;
+import de.skuzzle.polly.core.parser.ast.declarations.Declaration;
+import de.skuzzle.polly.core.parser.ast.declarations.types.Type;
+import de.skuzzle.polly.core.parser.ast.expressions.Braced;
+import de.skuzzle.polly.core.parser.ast.expressions.Call;
+import de.skuzzle.polly.core.parser.ast.expressions.Empty;
+import de.skuzzle.polly.core.parser.ast.expressions.Expression;
+import de.skuzzle.polly.core.parser.ast.expressions.Native;
+import de.skuzzle.polly.core.parser.ast.expressions.VarAccess;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.FunctionLiteral;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.ListLiteral;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.Literal;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.NumberLiteral;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.ProductLiteral;
+import de.skuzzle.polly.core.parser.ast.lang.Operator;
+import de.skuzzle.polly.core.parser.ast.lang.Operator.OpType;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+import de.skuzzle.polly.core.parser.problems.Problems;
+
+
+/**
+ * <p>Lowers type resolved expressions into trees of {@link Code} objects. Calls of
+ * arithmetic, relational and boolean operators are bound at compile time and evaluated
+ * on primitive values. User defined functions are compiled lazily when they are called
+ * for the first time. <code>map</code> and <code>foldl</code> call their function
+ * argument without creating AST nodes for each element.</p>
+ *
+ * <p>All other nodes (like assignments, namespace accesses or most natives) are
+ * executed by the {@link de.skuzzle.polly.core.parser.ast.visitor.ExecutionVisitor}.
+ * Compiled code yields the same results as the interpreter, including the order in
+ * which expressions are evaluated and the way variables are resolved.</p>
+ *
+ * @author Simon Taddiken
+ */
+public final class Compiler {
+
+    /**
+     * Compiles all given expressions.
+     *
+     * @param expressions The expressions to compile.
+     * @return Compiled code for each expression.
+     */
+    public static Code[] compile(Collection<Expression> expressions) {
+        final Code[] result = new Code[expressions.size()];
+        int i = 0;
+        for (final Expression exp : expressions) {
+            result[i++] = compile(exp);
+        }
+        return result;
+    }
+
+
+
+    /**
+     * Compiles a single expression.
+     *
+     * @param exp The expression to compile.
+     * @return Compiled code.
+     */
+    public static Code compile(Expression exp) {
+        if (exp instanceof Braced) {
+            return compile(((Braced) exp).getExpression());
+        } else if (exp instanceof ProductLiteral) {
+            return new Interpreted(exp);
+        } else if (exp instanceof ListLiteral) {
+            return compileList((ListLiteral) exp);
+        } else if (exp instanceof Literal) {
+            return new Constant((Literal) exp);
+        } else if (exp instanceof Call) {
+            return compileCall((Call) exp);
+        } else if (exp instanceof VarAccess) {
+            return compileAccess((VarAccess) exp);
+        }
+        return new Interpreted(exp);
+    }
+
+
+
+    /**
+     * Gets the compiled form of the given function literal. It is compiled on first
+     * access and stored within the literal.
+     *
+     * @param func The function literal.
+     * @return The compiled function.
+     */
+    public static CompiledFunction function(FunctionLiteral func) {
+        CompiledFunction result = func.getCompiled();
+        if (result == null || !result.isCompiledFrom(func)) {
+            result = new CompiledFunction(func);
+            func.setCompiled(result);
+        }
+        return result;
+    }
+
+
+
+    private static Code compileList(ListLiteral list) {
+        final List<Code> content = new ArrayList<Code>(list.getContent().size());
+        for (final Expression exp : list.getContent()) {
+            content.add(compile(exp));
+        }
+        return new ListCode(list, content.toArray(new Code[content.size()]));
+    }
+
+
+
+    private static Code compileAccess(VarAccess access) {
+        final Declaration decl = access.getIdentifier().getDeclaration();
+        if (decl == null || decl.isLocal() || decl.getExpression() instanceof Empty) {
+            return new DynamicAccess(access);
+        } else if (decl.getExpression() instanceof Literal) {
+            return compile(decl.getExpression());
+        }
+        return new Interpreted(access);
+    }
+
+
+
+    private static Code compileCall(Call call) {
+        final List<Expression> actuals = call.getRhs().getContent();
+        final Code[] args = new Code[actuals.size()];
+        for (int i = 0; i < args.length; ++i) {
+            args[i] = compile(actuals.get(i));
+        }
+
+        final Native nat = boundNative(call.getLhs());
+        if (nat != null) {
+            final Code code = compileOperator(call, nat, actuals, args);
+            if (code != null) {
+                return code;
+            }
+        }
+        return new CallCode(call.getPosition(), compile(call.getLhs()), args);
+    }
+
+
+
+    /**
+     * Gets the native expression which is called if the given expression is the left
+     * hand side of a call and has been bound to a native declaration during type
+     * resolution. In this case, the interpreter will not resolve it again either.
+     *
+     * @param lhs Left hand side of a call.
+     * @return The native or <code>null</code>.
+     */
+    private static Native boundNative(Expression lhs) {
+        if (!(lhs instanceof VarAccess)) {
+            return null;
+        }
+        final Declaration decl = ((VarAccess) lhs).getIdentifier().getDeclaration();
+        if (decl == null || decl.isLocal() ||
+                !(decl.getExpression() instanceof FunctionLiteral)) {
+            return null;
+        }
+        final Expression body = ((FunctionLiteral) decl.getExpression()).getBody();
+        return body instanceof Native ? (Native) body : null;
+    }
+
+
+
+    private static Code compileOperator(Call call, Native nat, List<Expression> actuals,
+            Code[] args) {
+        final Position pos = call.getPosition();
+        final OpType op = nat instanceof Operator ? ((Operator) nat).getOp() : null;
+
+        switch (Operations.classify(nat)) {
+        case Operations.BINARY_NUMBER:
+            return new BinaryNumber(pos, op, args[0], args[1]);
+        case Operations.UNARY_NUMBER:
+            return new UnaryNumber(pos, op, args[0]);
+        case Operations.COMPARISON:
+            if (Type.NUM.equals(actuals.get(0).getUnique()) &&
+                    Type.NUM.equals(actuals.get(1).getUnique())) {
+                return new NumberComparison(pos, op, args[0], args[1]);
+            }
+            return null;
+        case Operations.BINARY_BOOLEAN:
+            return new BinaryBoolean(pos, op, args[0], args[1]);
+        case Operations.NOT:
+            return new Not(pos, args[0]);
+        case Operations.CONDITIONAL:
+            return new ConditionalCode(pos, args[0], args[1], args[2]);
+        default:
+            return null;
+        }
+    }
+
+
+
+    private Compiler() {}
+
+
+
+    /** Executes a node using the interpreter. */
+    private final static class Interpreted extends Code {
+        private final Expression exp;
+
+        public Interpreted(Expression exp) {
+            super(exp.getPosition());
+            this.exp = exp;
+        }
+
+        @Override
+        public Literal execute(ExecutionContext context, Frame frame)
+                throws ASTTraversalException {
+            return context.interpret(this.exp, frame);
+        }
+    }
+
+
+
+    /** Yields a literal. */
+    private final static class Constant extends Code {
+        private final Literal literal;
+
+        public Constant(Literal literal) {
+            super(literal.getPosition());
+            this.literal = literal;
+        }
+
+        @Override
+        public Literal execute(ExecutionContext context, Frame frame) {
+            return this.literal;
+        }
+    }
+
+
+
+    /** Creates a new list from the executed content of a list literal. */
+    private final static class ListCode extends Code {
+        private final ListLiteral list;
+        private final Code[] content;
+
+        public ListCode(ListLiteral list, Code[] content) {
+            super(list.getPosition());
+            this.list = list;
+            this.content = content;
+        }
+
+        @Override
+        public Literal execute(ExecutionContext context, Frame frame)
+                throws ASTTraversalException {
+            final List<Expression> executed = new ArrayList<Expression>(
+                this.content.length);
+            for (final Code code : this.content) {
+                executed.add(code.execute(context, frame));
+            }
+            final ListLiteral result = new ListLiteral(this.getPosition(), executed);
+            result.setUnique(this.list.getUnique());
+            return result;
+        }
+    }
+
+
+
+    /**
+     * Resolves a variable at runtime, first within the current frames, then within
+     * the working namespace.
+     */
+    private final static class DynamicAccess extends Code {
+        private final VarAccess access;
+
+        public DynamicAccess(VarAccess access) {
+            super(access.getPosition());
+            this.access = access;
+        }
+
+        @Override
+        public Literal execute(ExecutionContext context, Frame frame)
+                throws ASTTraversalException {
+            final ResolvableIdentifier id = this.access.getIdentifier();
+            if (frame != null) {
+                final Literal local = frame.lookup(id.getId(), this.access.getUnique());
+                if (local != null) {
+                    return local;
+                }
+            }
+            final Declaration decl = context.getWorkingNamespace().tryResolve(id,
+                this.access.getUnique());
+            if (decl == null) {
+                // only null if unknown variables are to be reported
+                throw new ASTTraversalException(this.access.getPosition(),
+                    String.format(Problems.UNKNOWN_VAR, id.getId()));
+            }
+            final Expression exp = decl.getExpression();
+            if (exp instanceof Literal && !(exp instanceof ListLiteral)) {
+                return (Literal) exp;
+            }
+            return context.interpret(exp, frame);
+        }
+    }
+
+
+
+    /** Calls a function which is determined at runtime. */
+    private final static class CallCode extends Code {
+        private final Code lhs;
+        private final Code[] args;
+
+        public CallCode(Position position, Code lhs, Code[] args) {
+            super(position);
+            this.lhs = lhs;
+            this.args = args;
+        }
+
+        @Override
+        public Literal execute(ExecutionContext context, Frame frame)
+                throws ASTTraversalException {
+            final FunctionLiteral func = (FunctionLiteral) this.lhs.execute(
+                context, frame);
+            final CompiledFunction compiled = Compiler.function(func);
+
+            // like the interpreter, actual parameters are executed within the callee's
+            // scope in which all preceding parameters are already visible
+            final Frame callee = compiled.newFrame(frame);
+            for (final Code arg : this.args) {
+                callee.bind(arg.execute(context, callee));
+            }
+            return compiled.invoke(context, callee);
+        }
+    }
+
+
+
+    private final static class BinaryNumber extends NumberCode {
+        private final OpType op;
+        private final Code left;
+        private final Code right;
+
+        public BinaryNumber(Position position, OpType op, Code left, Code right) {
+            super(position);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double evalNumber(ExecutionContext context, Frame frame)
+                throws ASTTraversalException {
+            final double l = NumberCode.evalNumber(this.left, context, frame);
+            final double r = NumberCode.evalNumber(this.right, context, frame);
+            if (r == 0.0 && Operations.isDivision(this.op)) {
+                // let the literal report the problem as the interpreter would have
+                new NumberLiteral(this.right.getPosition(), r).nonZero(
+                    context.getReporter());
+            }
+            return Operations.binary(this.op, l, r);
+        }
+    }
+
+
+
+    private final static class UnaryNumber extends NumberCode {
+        private final OpType op;
+        private final Code operand;
+
+        public UnaryNumber(Position position, OpType op, Code operand) {
+            super(position);
+            this.op = op;
+            this.operand = operand;
+        }
+
+        @Override
+        public double evalNumber(ExecutionContext context, Frame frame)
+                throws ASTTraversalException {
+            return Operations.unary(this.op,
+                NumberCode.evalNumber(this.operand, context, frame));
+        }
+    }
+
+
+
+    private final static class NumberComparison extends BooleanCode {
+        private final OpType op;
+        private final Code left;
+        private final Code right;
+
+        public NumberComparison(Position position, OpType op, Code left, Code right) {
+            super(position);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evalBoolean(ExecutionContext context, Frame frame)
+                throws ASTTraversalException {
+            final double l = NumberCode.evalNumber(this.left, context, frame);
+            final double r = NumberCode.evalNumber(this.right, context, frame);
+            return Operations.compare(this.op, l, r);
+        }
+    }
+
+
+
+    private final static class BinaryBoolean extends BooleanCode {
+        private final OpType op;
+        private final Code left;
+        private final Code right;
+
+        public BinaryBoolean(Position position, OpType op, Code left, Code right) {
+            super(position);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evalBoolean(ExecutionContext context, Frame frame)
+                throws ASTTraversalException {
+            // both operands are always executed, just like with the interpreter
+            final boolean l = BooleanCode.evalBoolean(this.left, context, frame);
+            final boolean r = BooleanCode.evalBoolean(this.right, context, frame);
+            return Operations.binary(this.op, l, r);
+        }
+    }
+
+
+
+    private final static class Not extends BooleanCode {
+        private final Code operand;
+
+        public Not(Position position, Code operand) {
+            super(position);
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean evalBoolean(ExecutionContext context, Frame frame)
+                throws ASTTraversalException {
+            return !BooleanCode.evalBoolean(this.operand, context, frame);
+        }
+    }
+
+
+
+    private final static class ConditionalCode extends Code {
+        private final Code condition;
+        private final Code second;
+        private final Code third;
+
+        public ConditionalCode(Position position, Code condition, Code second,
+                Code third) {
+            super(position);
+            this.condition = condition;
+            this.second = second;
+            this.third = third;
+        }
+
+        @Override
+        public Literal execute(ExecutionContext context, Frame frame)
+                throws ASTTraversalException {
+            // the interpreter executes all operands before choosing one
+            final boolean c = BooleanCode.evalBoolean(this.condition, context, frame);
+            final Literal s = this.second.execute(context, frame);
+            final Literal t = this.third.execute(context, frame);
+            return c ? s : t;
+        }
+    }
+}
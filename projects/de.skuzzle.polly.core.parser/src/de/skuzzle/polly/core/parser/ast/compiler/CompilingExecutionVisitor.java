@@ -0,0 +1,65 @@
+package de.skuzzle.polly.core.parser.ast.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.skuzzle.polly.core.parser.ast.Root;
+import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
+import de.skuzzle.polly.core.parser.ast.directives.Directive;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.Literal;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+import de.skuzzle.polly.core.parser.ast.visitor.ExecutionVisitor;
+import de.skuzzle.polly.core.parser.problems.ProblemReporter;
+
+
+/**
+ * Execution visitor which executes the expressions of a {@link Root} using the 
+ * {@link Compiler}. The compiled expressions are stored within the root, so they are
+ * reused if the same AST is executed again (for example when it has been taken from
+ * an {@link de.skuzzle.polly.core.parser.ASTCache}). Directives are still executed by 
+ * the interpreter.
+ * 
+ * @author Simon Taddiken
+ */
+public class CompilingExecutionVisitor extends ExecutionVisitor {
+
+    private final ExecutionContext context;
+    
+    
+    
+    public CompilingExecutionVisitor(Namespace rootNs, Namespace workingNs,
+            ProblemReporter reporter) {
+        super(rootNs, workingNs, reporter);
+        this.context = new ExecutionContext(rootNs, workingNs, reporter);
+    }
+    
+    
+    
+    @Override
+    public boolean visit(Root node) throws ASTTraversalException {
+        switch (this.before(node)) {
+        case SKIP: return true;
+        case ABORT: return false;
+        }
+        
+        Code[] compiled = node.getCompiled();
+        if (compiled == null) {
+            compiled = Compiler.compile(node.getExpressions());
+            node.setCompiled(compiled);
+        }
+        
+        final List<Literal> results = new ArrayList<Literal>(compiled.length);
+        for (final Code code : compiled) {
+            results.add(code.execute(this.context, null));
+        }
+        
+        for (final Directive dir : node.getDirectives().values()) {
+            if (!dir.visit(this)) {
+                return false;
+            }
+        }
+        node.setResults(results);
+        
+        return this.after(node) == CONTINUE;
+    }
+}
@@ -0,0 +1,97 @@
+package de.skuzzle.polly.core.parser.ast.compiler;
+
+import de.skuzzle.polly.core.parser.Position;
+import de.skuzzle.polly.core.parser.ast.Identifier;
+import de.skuzzle.polly.core.parser.ast.declarations.Declaration;
+import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
+import de.skuzzle.polly.core.parser.ast.expressions.Expression;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.Literal;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+import de.skuzzle.polly.core.parser.ast.visitor.ExecutionVisitor;
+import de.skuzzle.polly.core.parser.problems.ProblemReporter;
+
+
+/**
+ * State which is shared by all code objects during the execution of a single input. 
+ * It also provides the fallback to the {@link ExecutionVisitor} for nodes which have 
+ * not been compiled.
+ * 
+ * @author Simon Taddiken
+ */
+public final class ExecutionContext {
+
+    private final Namespace rootNs;
+    private final Namespace workingNs;
+    private final ProblemReporter reporter;
+    
+    
+    
+    /**
+     * Creates a new execution context.
+     * 
+     * @param rootNs The namespace to which new declarations will be stored.
+     * @param workingNs The namespace in which the input is executed.
+     * @param reporter Reporter for runtime problems.
+     */
+    public ExecutionContext(Namespace rootNs, Namespace workingNs, 
+            ProblemReporter reporter) {
+        this.rootNs = rootNs;
+        this.workingNs = workingNs;
+        this.reporter = reporter;
+    }
+    
+    
+    
+    public Namespace getWorkingNamespace() {
+        return this.workingNs;
+    }
+    
+    
+    
+    public ProblemReporter getReporter() {
+        return this.reporter;
+    }
+    
+    
+    
+    /**
+     * Executes the given expression using an {@link ExecutionVisitor}. All parameters
+     * bound in the given frame are declared in a namespace, so they are visible to the
+     * expression as usual. This is also used to execute natives which have no compiled
+     * counterpart.
+     * 
+     * @param exp The expression to execute.
+     * @param frame Current frame.
+     * @return The result of the expression.
+     * @throws ASTTraversalException If execution fails.
+     */
+    public Literal interpret(Expression exp, Frame frame) throws ASTTraversalException {
+        final ExecutionVisitor visitor = new ExecutionVisitor(this.rootNs, 
+            this.materialize(frame), this.reporter);
+        exp.visit(visitor);
+        return visitor.getSingleResult();
+    }
+    
+    
+    
+    /**
+     * Creates the namespace that the {@link ExecutionVisitor} would have entered for
+     * the given frame and all its parents.
+     * 
+     * @param frame The frame. May be <code>null</code>.
+     * @return The namespace.
+     * @throws ASTTraversalException If declaring a parameter fails.
+     */
+    private Namespace materialize(Frame frame) throws ASTTraversalException {
+        if (frame == null) {
+            return this.workingNs;
+        }
+        final Namespace ns = this.materialize(frame.getParent()).enter();
+        for (int i = 0; i < frame.size(); ++i) {
+            final Literal value = frame.get(i);
+            ns.declare(new Declaration(value.getPosition(), 
+                new Identifier(Position.NONE, frame.getName(i)), value, true));
+        }
+        return ns;
+    }
+}
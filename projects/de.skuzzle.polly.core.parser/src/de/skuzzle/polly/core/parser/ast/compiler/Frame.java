@@ -0,0 +1,99 @@
+package de.skuzzle.polly.core.parser.ast.compiler;
+
+import de.skuzzle.polly.core.parser.ast.declarations.types.Type;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.Literal;
+
+
+/**
+ * Holds the actual parameters of a single function call. Frames replace the 
+ * namespaces which the {@link de.skuzzle.polly.core.parser.ast.visitor.ExecutionVisitor} 
+ * enters for each call. Like those, they are linked to the frame of the calling 
+ * function, so variables are resolved in the same (dynamic) scope.
+ * 
+ * @author Simon Taddiken
+ */
+public final class Frame {
+
+    private final Frame parent;
+    private final String[] names;
+    private final Literal[] values;
+    private int size;
+    
+    
+    
+    /**
+     * Creates a new frame with no bound parameters.
+     * 
+     * @param parent Frame of the calling function. May be <code>null</code>.
+     * @param names Names of the formal parameters.
+     */
+    public Frame(Frame parent, String[] names) {
+        this.parent = parent;
+        this.names = names;
+        this.values = new Literal[names.length];
+    }
+    
+    
+    
+    /**
+     * Binds the value of the next formal parameter. It will be visible for lookups 
+     * from now on.
+     * 
+     * @param value The value.
+     */
+    public void bind(Literal value) {
+        this.values[this.size++] = value;
+    }
+    
+    
+    
+    public Frame getParent() {
+        return this.parent;
+    }
+    
+    
+    
+    /**
+     * Gets the number of bound parameters.
+     * 
+     * @return The number of bound parameters.
+     */
+    public int size() {
+        return this.size;
+    }
+    
+    
+    
+    public String getName(int i) {
+        return this.names[i];
+    }
+    
+    
+    
+    public Literal get(int i) {
+        return this.values[i];
+    }
+    
+    
+    
+    /**
+     * Searches this and all parent frames for a bound parameter with given name 
+     * and a type that unifies with the given signature. This resolves variables in 
+     * the same way as {@link de.skuzzle.polly.core.parser.ast.declarations.Namespace#tryResolve}.
+     * 
+     * @param name Name of the parameter.
+     * @param signature The expected type.
+     * @return The value or <code>null</code> if no parameter matched.
+     */
+    public Literal lookup(String name, Type signature) {
+        for (Frame frame = this; frame != null; frame = frame.parent) {
+            for (int i = 0; i < frame.size; ++i) {
+                if (frame.names[i].equals(name) && 
+                        Type.tryUnify(signature, frame.values[i].getUnique())) {
+                    return frame.values[i];
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package de.skuzzle.polly.core.parser.ast.compiler;
+
+import de.skuzzle.polly.core.parser.Position;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.Literal;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.NumberLiteral;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+
+
+/**
+ * Code which produces a new number. Callers which only need the value can use 
+ * {@link #evalNumber(ExecutionContext, Frame)} to skip the creation of a 
+ * {@link NumberLiteral}.
+ * 
+ * @author Simon Taddiken
+ */
+public abstract class NumberCode extends Code {
+
+    /**
+     * Gets the numeric value of the given code. If it is a {@link NumberCode}, no 
+     * literal is created.
+     * 
+     * @param code The code to evaluate. Its result must be a number.
+     * @param context The execution context.
+     * @param frame Current frame.
+     * @return The resulting value.
+     * @throws ASTTraversalException If execution fails.
+     */
+    public static double evalNumber(Code code, ExecutionContext context, Frame frame) 
+            throws ASTTraversalException {
+        if (code instanceof NumberCode) {
+            return ((NumberCode) code).evalNumber(context, frame);
+        }
+        return ((NumberLiteral) code.execute(context, frame)).getValue();
+    }
+    
+    
+    
+    public NumberCode(Position position) {
+        super(position);
+    }
+    
+    
+    
+    /**
+     * Executes this code and returns the unboxed result.
+     * 
+     * @param context The execution context.
+     * @param frame Current frame.
+     * @return The resulting value.
+     * @throws ASTTraversalException If execution fails.
+     */
+    public abstract double evalNumber(ExecutionContext context, Frame frame) 
+        throws ASTTraversalException;
+    
+    
+    
+    @Override
+    public Literal execute(ExecutionContext context, Frame frame) 
+            throws ASTTraversalException {
+        return new NumberLiteral(this.getPosition(), this.evalNumber(context, frame));
+    }
+}
@@ -0,0 +1,176 @@
+package de.skuzzle.polly.core.parser.ast.compiler;
+
+import de.skuzzle.polly.core.parser.ast.expressions.Native;
+import de.skuzzle.polly.core.parser.ast.lang.Operator.OpType;
+import de.skuzzle.polly.core.parser.ast.lang.operators.BinaryArithmetic;
+import de.skuzzle.polly.core.parser.ast.lang.operators.BinaryBooleanArithmetic;
+import de.skuzzle.polly.core.parser.ast.lang.operators.Conditional;
+import de.skuzzle.polly.core.parser.ast.lang.operators.Relational;
+import de.skuzzle.polly.core.parser.ast.lang.operators.UnaryArithmetic;
+import de.skuzzle.polly.core.parser.ast.lang.operators.UnaryBooleanArithmetic;
+
+
+/**
+ * Primitive implementations of the operators which are supported by the
+ * {@link Compiler}. They must behave exactly like the <code>exec</code> methods of
+ * the respective operator classes.
+ *
+ * @author Simon Taddiken
+ */
+final class Operations {
+
+    /** Native which has no primitive implementation. */
+    public final static int NONE = 0;
+
+    /** {@link BinaryArithmetic} operator on two numbers. */
+    public final static int BINARY_NUMBER = 1;
+
+    /** {@link UnaryArithmetic} operator on a number. */
+    public final static int UNARY_NUMBER = 2;
+
+    /** {@link Relational} operator. Only primitive if both operands are numbers. */
+    public final static int COMPARISON = 3;
+
+    /** {@link BinaryBooleanArithmetic} operator. */
+    public final static int BINARY_BOOLEAN = 4;
+
+    /** Boolean negation. */
+    public final static int NOT = 5;
+
+    /** The ternary conditional operator. */
+    public final static int CONDITIONAL = 6;
+
+
+
+    /**
+     * Determines which primitive implementation can be used for the given native.
+     *
+     * @param nat The native.
+     * @return One of the constants of this class.
+     */
+    public static int classify(Native nat) {
+        if (nat instanceof BinaryArithmetic) {
+            switch (((BinaryArithmetic) nat).getOp()) {
+            case ADD: case SUB: case MUL: case DIV: case INTDIV: case POWER:
+            case MIN: case MAX: case ATAN2: case HYPOT:
+                return BINARY_NUMBER;
+            default:
+                return NONE;
+            }
+        } else if (nat instanceof UnaryArithmetic) {
+            switch (((UnaryArithmetic) nat).getOp()) {
+            case SUB: case LOG: case LN: case SQRT: case CEIL: case FLOOR: case ROUND:
+            case SIG: case COS: case SIN: case TAN: case ASIN: case ACOS: case ATAN:
+            case ABS: case TO_DEGREES: case TO_RADIANS: case EXP:
+                return UNARY_NUMBER;
+            default:
+                return NONE;
+            }
+        } else if (nat instanceof Relational) {
+            return COMPARISON;
+        } else if (nat instanceof BinaryBooleanArithmetic) {
+            // AND_OR is random
+            return ((BinaryBooleanArithmetic) nat).getOp() == OpType.AND_OR
+                ? NONE : BINARY_BOOLEAN;
+        } else if (nat instanceof UnaryBooleanArithmetic) {
+            return ((UnaryBooleanArithmetic) nat).getOp() == OpType.EXCLAMATION
+                ? NOT : NONE;
+        } else if (nat instanceof Conditional) {
+            return CONDITIONAL;
+        }
+        return NONE;
+    }
+
+
+
+    /**
+     * Whether the given operator requires its right operand to be non zero.
+     *
+     * @param op The operator.
+     * @return Whether op is a division.
+     */
+    public static boolean isDivision(OpType op) {
+        return op == OpType.DIV || op == OpType.INTDIV;
+    }
+
+
+
+    public static double binary(OpType op, double l, double r) {
+        switch (op) {
+        case ADD:    return l + r;
+        case SUB:    return l - r;
+        case MUL:    return l * r;
+        case DIV:    return l / r;
+        case INTDIV: return Math.floor(l / r);
+        case POWER:  return Math.pow(l, r);
+        case MIN:    return Math.min(l, r);
+        case MAX:    return Math.max(l, r);
+        case ATAN2:  return Math.atan2(l, r);
+        case HYPOT:  return Math.hypot(l, r);
+        default:
+            throw new IllegalArgumentException("not compiled: " + op); //$NON-NLS-1$
+        }
+    }
+
+
+
+    public static double unary(OpType op, double v) {
+        switch (op) {
+        case SUB:        return -v;
+        case LOG:        return Math.log10(v);
+        case LN:         return Math.log(v);
+        case SQRT:       return Math.sqrt(v);
+        case CEIL:       return Math.ceil(v);
+        case FLOOR:      return Math.floor(v);
+        case ROUND:      return Math.round(v);
+        case SIG:        return Math.signum(v);
+        case COS:        return Math.cos(v);
+        case SIN:        return Math.sin(v);
+        case TAN:        return Math.tan(v);
+        case ASIN:       return Math.asin(v);
+        case ACOS:       return Math.acos(v);
+        case ATAN:       return Math.atan(v);
+        case ABS:        return Math.abs(v);
+        case TO_DEGREES: return Math.toDegrees(v);
+        case TO_RADIANS: return Math.toRadians(v);
+        case EXP:        return Math.exp(v);
+        default:
+            throw new IllegalArgumentException("not compiled: " + op); //$NON-NLS-1$
+        }
+    }
+
+
+
+    public static boolean compare(OpType op, double l, double r) {
+        // same semantics as NumberLiteral.equals and compareTo
+        final int comp = Double.compare(l, r);
+        switch (op) {
+        case EQ:  return comp == 0;
+        case NEQ: return comp != 0;
+        case LT:  return comp < 0;
+        case ELT: return comp <= 0;
+        case GT:  return comp > 0;
+        case EGT: return comp >= 0;
+        default:
+            throw new IllegalArgumentException("not compiled: " + op); //$NON-NLS-1$
+        }
+    }
+
+
+
+    public static boolean binary(OpType op, boolean l, boolean r) {
+        switch (op) {
+        case BOOLEAN_AND: return l && r;
+        case BOOLEAN_OR:  return l || r;
+        case XOR:         return l ^ r;
+        case IMPLICATION: return !(l && !r);
+        case EQUIVALENCE: return l == r;
+        default:
+            throw new IllegalArgumentException("not compiled: " + op); //$NON-NLS-1$
+        }
+    }
+
+
+
+    private Operations() {}
+}
@@ -0,0 +1,10 @@
+/**
+ * Optional compiler which lowers type resolved ASTs into trees of executable 
+ * {@link de.skuzzle.polly.core.parser.ast.compiler.Code} objects. Number and boolean
+ * operators are evaluated on primitive values and only the final result is boxed into
+ * a literal. Nodes which are not supported are still executed by the 
+ * {@link de.skuzzle.polly.core.parser.ast.visitor.ExecutionVisitor}.
+ * 
+ * @author Simon
+ */
+package de.skuzzle.polly.core.parser.ast.compiler;
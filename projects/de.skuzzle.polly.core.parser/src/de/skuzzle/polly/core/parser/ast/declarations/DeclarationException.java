@@ -29,7 +29,24 @@ public class DeclarationException extends ASTTraversalException {
         }
         b.append(message);
         b.append(" Meintest du vielleicht: ");
-        int max = Math.min(MAX_SUGGESTIONS, similar.size());
+        b.append(formatSuggestions(similar));
+        b.append("? In Eingabe an Position: ");
+        b.append(position);
+        this.message = b.toString();
+    }
+    
+    
+    
+    /**
+     * Formats at most {@link #MAX_SUGGESTIONS} of the given names as a quoted 
+     * enumeration like <code>'a', 'b' oder 'c'</code>.
+     * 
+     * @param similar The names to format.
+     * @return The formatted names.
+     */
+    static String formatSuggestions(List<String> similar) {
+        final StringBuilder b = new StringBuilder();
+        final int max = Math.min(MAX_SUGGESTIONS, similar.size());
         for (int i = 0; i < max; ++i) {
             b.append("'");
             b.append(similar.get(i));
@@ -40,9 +57,7 @@ public class DeclarationException extends ASTTraversalException {
                 b.append(", ");
             }
         }
-        b.append("? In Eingabe an Position: ");
-        b.append(position);
-        this.message = b.toString();
+        return b.toString();
     }
     
     
@@ -0,0 +1,324 @@
+package de.skuzzle.polly.core.parser.ast.declarations;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import de.skuzzle.polly.core.parser.ast.expressions.Braced;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+import de.skuzzle.polly.core.parser.ast.visitor.Unparser;
+
+
+/**
+ * <p>Write-behind persistence for the declarations of a single namespace. Each change
+ * is appended as a single line to a journal file next to the namespace's declaration
+ * file (the <i>snapshot</i>). Changes are buffered in memory and written by a
+ * background thread, so declaring a variable never waits for file IO.</p>
+ *
+ * <p>Journal lines are either assignments in the format of the snapshot or deletions
+ * which start with {@link #DELETE_PREFIX}. Once the journal grows larger than the
+ * namespace itself, it is compacted: the whole namespace is written to a temporary
+ * file which then atomically replaces the snapshot, before the journal is removed.
+ * If polly crashes in between, the journal is replayed on top of the new snapshot,
+ * which results in the same declarations.</p>
+ *
+ * @author Simon Taddiken
+ * @see DeclarationReader
+ */
+final class DeclarationJournal {
+
+    /** Prefix of journal lines which record the deletion of a declaration. */
+    public final static String DELETE_PREFIX = "del "; //$NON-NLS-1$
+
+    /** File extension of journal files (appended to the snapshot's name). */
+    public final static String JOURNAL_EXTENSION = ".journal"; //$NON-NLS-1$
+
+    /** Encoding of snapshot and journal files. */
+    public final static String ENCODING = "ISO-8859-1"; //$NON-NLS-1$
+
+    /** Milliseconds to wait before writing buffered changes. */
+    private final static long FLUSH_DELAY = 1000;
+
+    /** Minimum number of journal entries before the journal is compacted. */
+    private final static int MIN_COMPACTION_SIZE = 64;
+
+    private final static ScheduledExecutorService FLUSHER =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "DECLARATION_FLUSHER"); //$NON-NLS-1$
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+    /** All journals, used to flush them all at once. */
+    private final static List<DeclarationJournal> JOURNALS =
+        new CopyOnWriteArrayList<DeclarationJournal>();
+
+
+
+    /**
+     * Writes the buffered changes of all journals. This blocks until all changes have
+     * been written.
+     */
+    public static void flushAll() {
+        for (final DeclarationJournal journal : JOURNALS) {
+            journal.flush();
+        }
+    }
+
+
+
+    /**
+     * Creates the line which represents the given declaration in snapshot and journal.
+     *
+     * @param decl The declaration.
+     * @return The line (without line separator).
+     * @throws ASTTraversalException If unparsing the declaration fails.
+     */
+    public static String toLine(Declaration decl) throws ASTTraversalException {
+        final StringWriter sw = new StringWriter();
+        final PrintWriter pw = new PrintWriter(sw);
+        new Braced(decl.getExpression().getPosition(), decl.getExpression()).visit(
+            new Unparser(pw));
+        pw.print("->"); //$NON-NLS-1$
+        if (decl.isPublic()) {
+            pw.print("public "); //$NON-NLS-1$
+        }
+        if (decl.getName().wasEscaped()) {
+            pw.print("\\"); //$NON-NLS-1$
+        }
+        pw.print(decl.getName().getId());
+        pw.flush();
+        return sw.toString();
+    }
+
+
+
+    private final Namespace namespace;
+    private final String fileName;
+
+    /** Changes not yet written. Guarded by the namespace */
+    private List<String> pending;
+
+    /** Whether a flush is scheduled. Guarded by the namespace */
+    private boolean scheduled;
+
+    /** Whether changes are currently ignored. Guarded by the namespace */
+    private boolean suspended;
+
+    /** Number of entries in the journal file. Guarded by this */
+    private int entries;
+
+
+
+    /**
+     * Creates a new journal.
+     *
+     * @param namespace The namespace of which changes are recorded. Its monitor is used
+     *          to synchronize access to the buffered changes.
+     * @param fileName Name of the snapshot file.
+     */
+    public DeclarationJournal(Namespace namespace, String fileName) {
+        this.namespace = namespace;
+        this.fileName = fileName;
+        this.pending = new ArrayList<String>();
+        JOURNALS.add(this);
+    }
+
+
+
+    /**
+     * Gets the snapshot file. The declaration folder must have been set.
+     *
+     * @return The snapshot file.
+     */
+    public File getSnapshotFile() {
+        return new File(Namespace.declarationFolder, this.fileName);
+    }
+
+
+
+    /**
+     * Gets the journal file. The declaration folder must have been set.
+     *
+     * @return The journal file.
+     */
+    public File getJournalFile() {
+        return new File(Namespace.declarationFolder, this.fileName + JOURNAL_EXTENSION);
+    }
+
+
+
+    /**
+     * Sets whether changes are ignored. This is used while the namespace is restored
+     * from its files.
+     *
+     * @param suspended Whether changes should be ignored.
+     */
+    public void setSuspended(boolean suspended) {
+        synchronized (this.namespace) {
+            this.suspended = suspended;
+        }
+    }
+
+
+
+    /**
+     * Sets the number of entries which are already contained in the journal file.
+     *
+     * @param entries The number of entries.
+     */
+    public synchronized void setEntries(int entries) {
+        this.entries = entries;
+    }
+
+
+
+    /**
+     * Records the declaration of the given declaration.
+     *
+     * @param decl The declaration.
+     * @throws ASTTraversalException If unparsing the declaration fails.
+     */
+    public void declared(Declaration decl) throws ASTTraversalException {
+        this.record(toLine(decl));
+    }
+
+
+
+    /**
+     * Records the deletion of all declarations with the given name.
+     *
+     * @param name The name of the deleted declarations.
+     */
+    public void deleted(String name) {
+        this.record(DELETE_PREFIX + name);
+    }
+
+
+
+    private void record(String line) {
+        synchronized (this.namespace) {
+            if (this.suspended) {
+                return;
+            }
+            this.pending.add(line);
+            if (!this.scheduled) {
+                this.scheduled = true;
+                FLUSHER.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+
+
+    /**
+     * Writes all buffered changes to the journal file. If the journal becomes too
+     * large, the namespace is compacted into a new snapshot instead.
+     */
+    public synchronized void flush() {
+        final List<String> lines;
+        List<String> snapshot = null;
+        synchronized (this.namespace) {
+            this.scheduled = false;
+            if (this.pending.isEmpty()) {
+                return;
+            }
+            lines = this.pending;
+            this.pending = new ArrayList<String>();
+
+            final List<Declaration> all = new ArrayList<Declaration>();
+            for (final List<Declaration> decls : this.namespace.decls.values()) {
+                for (final Declaration decl : decls) {
+                    if (!decl.isNative()) {
+                        all.add(decl);
+                    }
+                }
+            }
+            if (this.entries + lines.size() > Math.max(MIN_COMPACTION_SIZE, all.size())) {
+                snapshot = new ArrayList<String>(all.size());
+                try {
+                    for (final Declaration decl : all) {
+                        snapshot.add(toLine(decl));
+                    }
+                } catch (ASTTraversalException e) {
+                    // declarations have already been unparsed once, so this is
+                    // unexpected. Just append to the journal then.
+                    snapshot = null;
+                }
+            }
+        }
+
+        try {
+            if (snapshot != null) {
+                try {
+                    this.compact(snapshot);
+                    return;
+                } catch (IOException e) {
+                    // fall through: the changes still need to be persisted
+                    e.printStackTrace();
+                }
+            }
+            this.write(this.getJournalFile(), lines, true);
+            this.entries += lines.size();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+
+    private void compact(List<String> snapshot) throws IOException {
+        final File target = this.getSnapshotFile();
+        final File tmp = new File(target.getPath() + ".tmp"); //$NON-NLS-1$
+        this.write(tmp, snapshot, false);
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+
+        // all journal entries are contained in the snapshot now
+        Files.deleteIfExists(this.getJournalFile().toPath());
+        this.entries = 0;
+    }
+
+
+
+    private void write(File file, List<String> lines, boolean append)
+            throws IOException {
+        if (Namespace.declarationFolder == null) {
+            throw new IOException("declaration folder has not been set"); //$NON-NLS-1$
+        }
+        final FileOutputStream out = new FileOutputStream(file, append);
+        try {
+            final PrintWriter pw = new PrintWriter(new OutputStreamWriter(out, ENCODING));
+            for (final String line : lines) {
+                pw.println(line);
+            }
+            pw.flush();
+            if (pw.checkError()) {
+                throw new IOException("error while writing " + file); //$NON-NLS-1$
+            }
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+}
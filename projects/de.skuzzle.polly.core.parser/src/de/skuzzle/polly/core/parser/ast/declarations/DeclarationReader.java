@@ -10,6 +10,7 @@ import java.io.UnsupportedEncodingException;
 
 import de.skuzzle.polly.core.parser.InputParser;
 import de.skuzzle.polly.core.parser.ParseException;
+import de.skuzzle.polly.core.parser.ast.Identifier;
 import de.skuzzle.polly.core.parser.ast.expressions.Assignment;
 import de.skuzzle.polly.core.parser.ast.expressions.Expression;
 import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
@@ -21,6 +22,8 @@ import de.skuzzle.polly.core.parser.problems.SimpleProblemReporter;
 /**
  * Class to read assignments from a file. The assignments must be valid polly statements
  * and separated by lines. Any empty line or line that starts with a '#' will be skipped.
+ * Lines starting with {@link DeclarationJournal#DELETE_PREFIX} delete all declarations
+ * with the following name.
  * 
  * @author Simon Taddiken
  */
@@ -107,6 +110,11 @@ public class DeclarationReader implements Closeable {
         } else if (line.equals("") || line.startsWith("#")) { //$NON-NLS-1$ //$NON-NLS-2$
             // line to be skipped
             return true;
+        } else if (line.startsWith(DeclarationJournal.DELETE_PREFIX)) {
+            // deletion recorded in a journal
+            final String name = line.substring(DeclarationJournal.DELETE_PREFIX.length());
+            this.nspace.delete(new Identifier(name));
+            return true;
         }
         
         final DeclarationParser p = new DeclarationParser(line, this.charset);
@@ -132,6 +140,17 @@ public class DeclarationReader implements Closeable {
     
     
     
+    /**
+     * Gets the number of lines which have been read so far.
+     * 
+     * @return The number of lines.
+     */
+    public int getLineNumber() {
+        return this.reader.getLineNumber();
+    }
+    
+    
+    
     @Override
     public void close() throws IOException {
         if (this.reader != null) {
@@ -0,0 +1,111 @@
+package de.skuzzle.polly.core.parser.ast.declarations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+
+
+/**
+ * Namespace which supports declarations that are only created when they are looked up
+ * for the first time. This is used for the per-execution context of commands
+ * (<code>me</code>, <code>here</code>, ...) of which most inputs use none or only a
+ * few.
+ *
+ * <p>A lazy declaration is replaced by any declaration with the same name which is
+ * declared regularly before the lazy one has been materialized.</p>
+ *
+ * @author Simon Taddiken
+ */
+public class LazyNamespace extends Namespace {
+
+    /**
+     * Creates the declaration for a lazily declared name.
+     *
+     * @author Simon Taddiken
+     */
+    public static interface DeclarationProvider {
+
+        /**
+         * Creates the declaration. This is called at most once per
+         * {@link LazyNamespace}.
+         *
+         * @return The declaration.
+         */
+        public Declaration provide();
+    }
+
+
+
+    private final Map<String, DeclarationProvider> providers;
+
+
+
+    /**
+     * Creates a new lazy namespace with given parent.
+     *
+     * @param parent Parent namespace.
+     */
+    public LazyNamespace(Namespace parent) {
+        super(parent);
+        this.providers = new HashMap<String, DeclarationProvider>();
+    }
+
+
+
+    /**
+     * Declares a name of which the declaration will be created by the given provider
+     * when it is looked up for the first time.
+     *
+     * @param name The name to declare.
+     * @param provider Provider of the actual declaration.
+     */
+    public void declareLazy(String name, DeclarationProvider provider) {
+        this.providers.put(name, provider);
+    }
+
+
+
+    @Override
+    public void declare(Declaration decl) throws ASTTraversalException {
+        this.providers.remove(decl.getName().getId());
+        super.declare(decl);
+    }
+
+
+
+    @Override
+    protected List<Declaration> lookup(String name) {
+        if (!this.providers.isEmpty()) {
+            final DeclarationProvider provider = this.providers.remove(name);
+            if (provider != null) {
+                this.materialize(name, provider);
+            }
+        }
+        return super.lookup(name);
+    }
+
+
+
+    @Override
+    public Map<String, List<Declaration>> getDeclarations() {
+        if (!this.providers.isEmpty()) {
+            for (final Entry<String, DeclarationProvider> e : this.providers.entrySet()) {
+                this.materialize(e.getKey(), e.getValue());
+            }
+            this.providers.clear();
+        }
+        return super.getDeclarations();
+    }
+
+
+
+    private void materialize(String name, DeclarationProvider provider) {
+        final List<Declaration> d = new ArrayList<Declaration>(1);
+        d.add(provider.provide());
+        this.decls.put(name, d);
+    }
+}
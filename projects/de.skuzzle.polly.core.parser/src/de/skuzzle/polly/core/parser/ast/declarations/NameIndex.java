@@ -0,0 +1,330 @@
+package de.skuzzle.polly.core.parser.ast.declarations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.skuzzle.polly.tools.strings.StringUtils;
+
+
+/**
+ * <p>Index of declaration names which answers queries for the names with the lowest
+ * levenshtein distance to a given string. Names are stored in a BK-tree: each child of
+ * a node is stored at the distance it has to its parent. As the levenshtein distance
+ * is a metric, only children whose distance to the parent differs by at most the
+ * search radius from the query's distance to the parent can contain results. As only
+ * a few names are searched, the radius shrinks quickly and a query only compares the 
+ * given string to a small portion of all names.</p>
+ *
+ * <p>Removed names are only marked as such and are skipped by queries. Once there are
+ * more removed than contained names, the tree is rebuilt.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Simon Taddiken
+ * @see Namespace#findSimilar(String, int)
+ */
+final class NameIndex {
+
+    /**
+     * Collects the names which are most similar to a queried string. If the maximum 
+     * number of names has been found, only names which are more similar than the least
+     * similar name found so far are collected. The same collector can be used to query
+     * multiple indices.
+     *
+     * @author Simon Taddiken
+     */
+    public final static class Matches {
+
+        private final int limit;
+        private final int maxDistance;
+        private final List<String> names;
+        private final List<Integer> distances;
+
+
+
+        /**
+         * Creates a new collector.
+         * 
+         * @param limit Maximum number of names to collect.
+         * @param maxDistance Maximum distance of collected names to the queried string.
+         */
+        public Matches(int limit, int maxDistance) {
+            this.limit = limit;
+            this.maxDistance = maxDistance;
+            this.names = new ArrayList<String>(limit + 1);
+            this.distances = new ArrayList<Integer>(limit + 1);
+        }
+
+
+
+        /**
+         * Gets the maximum distance of names which would still be collected.
+         * 
+         * @return The current search radius.
+         */
+        public int getRadius() {
+            if (this.names.size() < this.limit) {
+                return this.maxDistance;
+            }
+            return this.distances.get(this.distances.size() - 1) - 1;
+        }
+
+
+
+        private void offer(String name, int distance) {
+            if (distance > this.getRadius()) {
+                return;
+            }
+            final int existing = this.names.indexOf(name);
+            if (existing != -1) {
+                if (this.distances.get(existing) <= distance) {
+                    return;
+                }
+                this.names.remove(existing);
+                this.distances.remove(existing);
+            }
+            // keep sorted by distance, earlier found names first
+            int i = this.distances.size();
+            while (i > 0 && this.distances.get(i - 1) > distance) {
+                --i;
+            }
+            this.names.add(i, name);
+            this.distances.add(i, distance);
+            if (this.names.size() > this.limit) {
+                this.names.remove(this.limit);
+                this.distances.remove(this.limit);
+            }
+        }
+
+
+
+        /**
+         * Gets the collected names, sorted by their distance to the queried string.
+         * 
+         * @return The names.
+         */
+        public List<String> getNames() {
+            return this.names;
+        }
+    }
+
+
+
+    private final static class Node {
+        private final String name;
+        private boolean present;
+
+        /** Children by their distance to this node */
+        private Node[] children;
+
+
+
+        public Node(String name) {
+            this.name = name;
+            this.present = true;
+        }
+
+
+
+        public Node getChild(int distance) {
+            if (this.children == null || distance >= this.children.length) {
+                return null;
+            }
+            return this.children[distance];
+        }
+
+
+
+        public void setChild(int distance, Node child) {
+            if (this.children == null) {
+                this.children = new Node[distance + 1];
+            } else if (distance >= this.children.length) {
+                this.children = Arrays.copyOf(this.children, distance + 1);
+            }
+            this.children[distance] = child;
+        }
+    }
+
+
+
+    /**
+     * Whether the given name should be indexed. Only valid identifiers are indexed,
+     * which excludes operator declarations.
+     *
+     * @param name The name to check.
+     * @return Whether the name is indexed.
+     */
+    public static boolean isIndexed(String name) {
+        return !name.isEmpty() && Character.isJavaIdentifierPart(name.charAt(0));
+    }
+
+
+
+    private Node root;
+    private int size;
+    private int removed;
+
+
+
+    /**
+     * Gets the number of names in this index.
+     *
+     * @return The number of names.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+
+
+    /**
+     * Adds a name to this index. Adding a name which is already contained has no
+     * effect.
+     *
+     * @param name The name to add.
+     */
+    public synchronized void add(String name) {
+        if (!isIndexed(name)) {
+            return;
+        }
+        if (this.root == null) {
+            this.root = new Node(name);
+            ++this.size;
+            return;
+        }
+
+        Node current = this.root;
+        while (true) {
+            final int dist = StringUtils.getLevenshteinDistance(current.name, name);
+            if (dist == 0) {
+                if (!current.present) {
+                    current.present = true;
+                    --this.removed;
+                    ++this.size;
+                }
+                return;
+            }
+            final Node child = current.getChild(dist);
+            if (child == null) {
+                current.setChild(dist, new Node(name));
+                ++this.size;
+                return;
+            }
+            current = child;
+        }
+    }
+
+
+
+    /**
+     * Removes a name from this index. Removing a name which is not contained has no
+     * effect.
+     *
+     * @param name The name to remove.
+     */
+    public synchronized void remove(String name) {
+        if (!isIndexed(name)) {
+            return;
+        }
+        Node current = this.root;
+        while (current != null) {
+            final int dist = StringUtils.getLevenshteinDistance(current.name, name);
+            if (dist == 0) {
+                if (current.present) {
+                    current.present = false;
+                    ++this.removed;
+                    --this.size;
+                    if (this.removed > this.size) {
+                        this.rebuild();
+                    }
+                }
+                return;
+            }
+            current = current.getChild(dist);
+        }
+    }
+
+
+
+    private void rebuild() {
+        final List<String> names = new ArrayList<String>(this.size);
+        final List<Node> stack = new ArrayList<Node>();
+        if (this.root != null) {
+            stack.add(this.root);
+        }
+        while (!stack.isEmpty()) {
+            final Node node = stack.remove(stack.size() - 1);
+            if (node.present) {
+                names.add(node.name);
+            }
+            if (node.children != null) {
+                for (final Node child : node.children) {
+                    if (child != null) {
+                        stack.add(child);
+                    }
+                }
+            }
+        }
+
+        this.root = null;
+        this.size = 0;
+        this.removed = 0;
+        for (final String name : names) {
+            this.add(name);
+        }
+    }
+
+
+
+    /**
+     * Searches this index for the names which are most similar to the given string and
+     * adds them to the given collector. The search radius shrinks as soon as the
+     * collector is full, so most of the tree is usually skipped.
+     *
+     * @param given The string to compare the names with.
+     * @param matches Collector for the found names.
+     */
+    public synchronized void query(String given, Matches matches) {
+        if (this.root == null) {
+            return;
+        }
+        // nodes to visit together with a lower bound of their distance to given
+        final List<Node> stack = new ArrayList<Node>();
+        final List<Integer> bounds = new ArrayList<Integer>();
+        stack.add(this.root);
+        bounds.add(0);
+        while (!stack.isEmpty()) {
+            final Node node = stack.remove(stack.size() - 1);
+            final int bound = bounds.remove(bounds.size() - 1);
+            if (bound > matches.getRadius()) {
+                // radius has shrunk since the node was pushed
+                continue;
+            }
+            final int dist = StringUtils.getLevenshteinDistance(node.name, given);
+            if (node.present) {
+                matches.offer(node.name, dist);
+            }
+            if (node.children == null) {
+                continue;
+            }
+            
+            // push children from the farthest to the nearest distance, so that the 
+            // nearest ones, which most likely contain the best matches, come first
+            final int radius = matches.getRadius();
+            for (int offset = radius; offset >= 0; --offset) {
+                final int above = dist + offset;
+                if (above < node.children.length && node.children[above] != null) {
+                    stack.add(node.children[above]);
+                    bounds.add(offset);
+                }
+                final int below = dist - offset;
+                if (offset != 0 && below > 0 && below < node.children.length && 
+                        node.children[below] != null) {
+                    stack.add(node.children[below]);
+                    bounds.add(offset);
+                }
+            }
+        }
+    }
+}
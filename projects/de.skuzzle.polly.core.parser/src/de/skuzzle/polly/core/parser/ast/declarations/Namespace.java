@@ -2,16 +2,18 @@ package de.skuzzle.polly.core.parser.ast.declarations;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 
 import de.skuzzle.polly.core.parser.ParseException;
 import de.skuzzle.polly.core.parser.ParserProperties;
@@ -20,7 +22,6 @@ import de.skuzzle.polly.core.parser.ast.Identifier;
 import de.skuzzle.polly.core.parser.ast.ResolvableIdentifier;
 import de.skuzzle.polly.core.parser.ast.declarations.types.Substitution;
 import de.skuzzle.polly.core.parser.ast.declarations.types.Type;
-import de.skuzzle.polly.core.parser.ast.expressions.Braced;
 import de.skuzzle.polly.core.parser.ast.expressions.VarAccess;
 import de.skuzzle.polly.core.parser.ast.expressions.literals.NumberLiteral;
 import de.skuzzle.polly.core.parser.ast.expressions.literals.StringLiteral;
@@ -55,7 +56,6 @@ import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
 import de.skuzzle.polly.core.parser.ast.visitor.Unparser;
 import de.skuzzle.polly.core.parser.problems.ProblemReporter;
 import de.skuzzle.polly.core.parser.problems.Problems;
-import de.skuzzle.polly.tools.strings.StringUtils;
 
 
 
@@ -80,14 +80,127 @@ public class Namespace {
     
     /** 
      * Percentage of word length that will be used as levenshtein threshold in
-     * {@link #findSimilar(String, Namespace)}.
+     * {@link #findSimilar(String, int)}.
      */
     private final static float LEVENSHTEIN_THRESHOLD_PERCENT = 0.6f;
     
+    /** 
+     * Maximum levenshtein threshold used in {@link #findSimilar(String, int)}. Names with
+     * more differences are hardly meant by the user, and a small threshold allows to
+     * skip most names when searching.
+     */
+    private final static int MAX_LEVENSHTEIN_THRESHOLD = 2;
+    
     
     /** Name of the public namespace */
     public final static String PUBLIC_NAMESPACE_NAME = "~public";
     
+    /** File extension of declaration files */
+    public final static String DECLARATION_EXTENSION = ".decl";
+    
+    
+    
+    /**
+     * Records the namespaces which are consulted while resolving an AST, together
+     * with their versions at that time. As long as none of these namespaces has been
+     * modified, resolving the same input again would yield the same result.
+     * 
+     * <p>Recording is bound to the current thread and is started using 
+     * {@link Namespace#beginRecording()}.</p>
+     * 
+     * @author Simon Taddiken
+     */
+    public final static class Dependencies {
+        
+        private final Map<Namespace, Integer> versions;
+        private Set<Namespace> local;
+        private boolean volatileLookup;
+        
+        
+        
+        private Dependencies() {
+            this.versions = new IdentityHashMap<Namespace, Integer>();
+            this.local = Collections.newSetFromMap(
+                new IdentityHashMap<Namespace, Boolean>());
+        }
+        
+        
+        
+        private void record(Namespace space, boolean found) {
+            if (space.isRoot()) {
+                if (!this.versions.containsKey(space)) {
+                    this.versions.put(space, space.version);
+                }
+            } else if (found && !this.local.contains(space)) {
+                // declaration found in a namespace which has not been created during
+                // resolving and which can not be tracked by its version
+                this.volatileLookup = true;
+            }
+        }
+        
+        
+        
+        /**
+         * Whether the resolved AST only depends on namespaces which can be tracked.
+         * This is not the case if a declaration has been found in a temporary 
+         * namespace that was passed to the resolver, like the per-command context.
+         * 
+         * @return Whether the recorded dependencies can be validated later.
+         */
+        public boolean isTrackable() {
+            return !this.volatileLookup;
+        }
+        
+        
+        
+        /**
+         * Whether none of the recorded namespaces has been modified since it was 
+         * consulted.
+         * 
+         * @return Whether all recorded namespaces are unchanged.
+         */
+        public boolean isValid() {
+            for (final Entry<Namespace, Integer> e : this.versions.entrySet()) {
+                if (e.getKey().version != e.getValue().intValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    
+    
+    /** Dependencies which are currently recorded by the current thread */
+    private final static ThreadLocal<Dependencies> RECORDING = 
+        new ThreadLocal<Dependencies>();
+    
+    
+    
+    /**
+     * Starts recording all namespaces which are consulted by the current thread until
+     * {@link #endRecording()} is called.
+     */
+    public static void beginRecording() {
+        RECORDING.set(new Dependencies());
+    }
+    
+    
+    
+    /**
+     * Stops recording of the current thread.
+     * 
+     * @return The recorded dependencies.
+     */
+    public static Dependencies endRecording() {
+        final Dependencies deps = RECORDING.get();
+        RECORDING.remove();
+        if (deps != null) {
+            deps.local = null;
+        }
+        return deps;
+    }
+    
     
     
     public static File declarationFolder;
@@ -100,20 +213,27 @@ public class Namespace {
     
     
     /**
-     * Private namespace extension that will store the namespace's contents to file 
-     * whenever a new variable is declared or deleted.
+     * Private namespace extension that will record all changes in a 
+     * {@link DeclarationJournal} which persists them in the background.
      * 
      * @author Simon Taddiken
      */
     private final static class StorableNamespace extends Namespace {
 
-        private String fileName;
+        private final DeclarationJournal journal;
         
         
         
         public StorableNamespace(String fileName, Namespace parent) {
             super(parent);
-            this.fileName = fileName;
+            this.journal = new DeclarationJournal(this, fileName);
+        }
+        
+        
+        
+        @Override
+        protected boolean isRoot() {
+            return true;
         }
         
         
@@ -127,8 +247,8 @@ public class Namespace {
             }
             
             try {
-                this.store();
-            } catch (IOException ignore) {
+                this.journal.declared(decl);
+            } catch (ASTTraversalException ignore) {
                 throw new ASTTraversalException(decl.getPosition(), 
                     "Deklaration konnte nicht gespeichert werden");
             }
@@ -137,146 +257,118 @@ public class Namespace {
         
         
         @Override
-        protected void delete(Iterator<Declaration> it) {
-            super.delete(it);
-            try {
-                this.store();
-            } catch (IOException e) {
-                e.printStackTrace();
+        public synchronized int delete(Identifier id) {
+            final int result = super.delete(id);
+            if (result > 0) {
+                this.journal.deleted(id.getId());
             }
+            return result;
         }
         
         
         
         /**
-         * Stores the content of this namespace (no parent namespaces) to a file
-         * in the folder set by {@link Namespace#setDeclarationFolder(File)}.
+         * Reads the declarations of this namespace from its snapshot file and replays
+         * its journal. The read declarations are not recorded again.
          * 
-         * @throws IOException If storing of the namespace fails.
+         * @throws IOException If reading fails.
          */
-        public void store() throws IOException {
-            if (declarationFolder == null) {
-                throw new IOException("declaration folder has not been set");
+        public void restore() throws IOException {
+            this.journal.setSuspended(true);
+            try {
+                this.read(this.journal.getSnapshotFile());
+                this.journal.setEntries(this.read(this.journal.getJournalFile()));
+            } finally {
+                this.journal.setSuspended(false);
             }
-            
-            PrintWriter pw = null;
+        }
+        
+        
+        
+        private int read(File file) throws IOException {
+            if (!file.exists()) {
+                return 0;
+            }
+            final DeclarationReader dr = new DeclarationReader(file, 
+                DeclarationJournal.ENCODING, this);
             try {
-                pw = new PrintWriter(new File(declarationFolder, this.fileName));
-                
-                final Unparser up = new Unparser(pw);
-                for (final List<Declaration> decls : this.decls.values()) {
-                    for (final Declaration decl : decls) {
-                        new Braced(decl.getExpression().getPosition(), 
-                            decl.getExpression()).visit(up);
-                        pw.print("->");
-                        if (decl.isPublic()) {
-                            pw.print("public ");
-                        }
-                        if (decl.getName().wasEscaped()) {
-                            pw.print("\\");
-                        }
-                        pw.println(decl.getName().getId());
-                    }
-                }
-            } catch (ASTTraversalException e) {
-                throw new RuntimeException(e);
+                dr.readAll();
+                return dr.getLineNumber();
             } finally {
-                if (pw != null) {
-                    pw.close();
-                }
+                dr.close();
             }
         }
     }
     
     
     
-    
-    
-    
-    
-
-    
-    
-    
     /**
-     * Helper class that encapsulates the result of a Levenshtein comparison: the distance
-     * and the actual found string.
-     * @author Simon Taddiken
+     * Restores all namespaces of which declarations have been stored in the folder set 
+     * by {@link #setDeclarationFolder(File)}. The PUBLIC namespace is restored first, 
+     * as all other namespaces may refer to its declarations.
+     * 
+     * @throws IOException If the declaration folder can not be read. Errors while 
+     *          reading a single namespace are only printed.
      */
-    private final static class LevenshteinResult implements 
-                Comparable<LevenshteinResult> {
-        
-        private int distance;
-        public String string;
-        
-        public LevenshteinResult(int distance, String string) {
-            super();
-            this.distance = distance;
-            this.string = string;
+    public final static void restoreAll() throws IOException {
+        if (declarationFolder == null) {
+            throw new IOException("declaration folder has not been set");
+        }
+        final File[] files = declarationFolder.listFiles();
+        if (files == null) {
+            throw new IOException("can not read " + declarationFolder);
+        }
+        final Set<String> names = new TreeSet<String>();
+        for (final File file : files) {
+            String name = file.getName();
+            if (name.endsWith(DeclarationJournal.JOURNAL_EXTENSION)) {
+                name = name.substring(0, 
+                    name.length() - DeclarationJournal.JOURNAL_EXTENSION.length());
+            }
+            if (name.endsWith(DECLARATION_EXTENSION)) {
+                names.add(name.substring(0, 
+                    name.length() - DECLARATION_EXTENSION.length()));
+            }
         }
         
-        
-        
-        @Override
-        public int compareTo(LevenshteinResult o) {
-            return Integer.compare(this.distance, o.distance);
+        restore(PUBLIC_NAMESPACE_NAME);
+        names.remove(PUBLIC_NAMESPACE_NAME);
+        for (final String name : names) {
+            restore(name);
+        }
+    }
+    
+    
+    
+    private static void restore(String name) {
+        try {
+            ((StorableNamespace) forName(name)).restore();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
     
     
     
     /**
-     * <p>Tries to find declarations that have a name similar to the given string. All
-     * declarations in all parent namespaces, beginning at the given one are searched.
-     * All declarations that have a levenshtein distance lower than 
-     * {@link #LEVENSHTEIN_THRESHOLD_PERCENT} of the given string's length will be 
-     * returned. If no such declaration was found, the resulting list will be empty.</p>
-     * 
-     * <p>The resulting list will be sorted by the distance. The declaration with the 
-     * lowest distance to the given string will be on first place and so on.</p>
-     * 
-     * @param given The string to compare with all declarations.
-     * @param nspace The root namespace to search. All parent namespaces are searched
-     *          as well.
-     * @return A collection of similar declaration names.
-     * @see StringUtils
+     * Writes all changes of declarations which have not yet been persisted. Changes are
+     * written in the background anyway, so this is only needed before shutting down.
      */
-    private final static List<String> findSimilar(String given, Namespace nspace) {
-        final int threshold = 
-            Math.max(1, (int) Math.round(given.length() * LEVENSHTEIN_THRESHOLD_PERCENT));
-        final List<LevenshteinResult> results = 
-                new ArrayList<Namespace.LevenshteinResult>();
-        
-        for(Namespace space = nspace; space != null; space = space.parent) {
-            final List<Declaration> decls = space.decls.get(given);
-            if (decls == null) {
-                continue;
-            }
-            for (final Declaration decl : decls) {
-                
-                final String name = decl.getName().getId();
-                
-                // only take valid identifiers into account (this will skip operator
-                // declarations.
-                if (!Character.isJavaIdentifierPart(name.charAt(0))) {
-                    continue;
-                }
-                
-                final int dist = StringUtils.getLevenshteinDistance(name, given);
-                if (dist <= threshold) {
-                    results.add(new LevenshteinResult(dist, decl.getName().getId()));
-                }
-            }
-        }
-        Collections.sort(results);
-        final List<String> stringResults = new ArrayList<String>(results.size());
-        for (final LevenshteinResult lr : results) {
-            stringResults.add(lr.string);
-        }
-        return stringResults;
+    public final static void flushDeclarations() {
+        DeclarationJournal.flushAll();
     }
     
     
+    
+    
+    
+    
+    
+    
+
+    
+    
+    
     /**
      * This is the root namespace of all user namespaces. It contains all operator and
      * native function declarations.
@@ -434,7 +526,7 @@ public class Namespace {
     
     /** Namespace for public declarations. */
     private final static Namespace PUBLIC = new StorableNamespace(PUBLIC_NAMESPACE_NAME + 
-        ".decl", NATIVE);
+        DECLARATION_EXTENSION, NATIVE);
     
     static {
         ROOTS.put(PUBLIC_NAMESPACE_NAME, PUBLIC);
@@ -476,9 +568,13 @@ public class Namespace {
     public final static Namespace forName(String name) {
         Namespace check = ROOTS.get(name);
         if (check == null) {
-            check = new StorableNamespace(name + ".decl", PUBLIC);
+            check = new StorableNamespace(name + DECLARATION_EXTENSION, PUBLIC);
             ROOTS.put(name, check);
         }
+        final Dependencies deps = RECORDING.get();
+        if (deps != null) {
+            deps.record(check, false);
+        }
         return check;
     }
     
@@ -527,6 +623,12 @@ public class Namespace {
     /** Parent of this namespace. <code>null</code> for root namespace. */
     protected final Namespace parent;
     
+    /** Modification count of this namespace */
+    private volatile int version;
+    
+    /** Index of declared names, created on first use */
+    private volatile NameIndex index;
+    
     
     
     /**
@@ -554,7 +656,7 @@ public class Namespace {
             return null;
         }
         final Namespace result = new Namespace(this.parent.derive());
-        result.decls.putAll(this.decls);
+        result.decls.putAll(this.getDeclarations());
         return result;
     }
     
@@ -572,7 +674,8 @@ public class Namespace {
             throw new IllegalArgumentException("namespace can not be its own parent");
         }
         final Namespace result = new Namespace(parent);
-        result.decls.putAll(this.decls);
+        result.decls.putAll(this.getDeclarations());
+        result.recordLocal();
         return result;
     }
     
@@ -585,6 +688,7 @@ public class Namespace {
      */
     public Namespace enter() {
         final Namespace ns = new Namespace(this);
+        ns.recordLocal();
         return ns;
     }
     
@@ -610,6 +714,40 @@ public class Namespace {
     public Map<String, List<Declaration>> getDeclarations() {
         return this.decls;
     }
+    
+    
+    
+    /**
+     * Gets the modification count of this namespace, which is incremented whenever a
+     * declaration is added or removed.
+     * 
+     * @return The version of this namespace.
+     */
+    public int getVersion() {
+        return this.version;
+    }
+    
+    
+    
+    /**
+     * Whether this is a long living namespace whose modifications are tracked by its 
+     * version. These are the NATIVE, the PUBLIC and all namespaces obtained by
+     * {@link #forName(String)}.
+     * 
+     * @return Whether this is a root namespace.
+     */
+    protected boolean isRoot() {
+        return this.parent == null;
+    }
+    
+    
+    
+    private void recordLocal() {
+        final Dependencies deps = RECORDING.get();
+        if (deps != null) {
+            deps.local.add(this);
+        }
+    }
 
     
     
@@ -652,12 +790,38 @@ public class Namespace {
         }
                 
         d.add(decl);
+        ++this.version;
+        
+        final NameIndex index = this.index;
+        if (index != null) {
+            index.add(decl.getName().getId());
+        }
     }
     
     
     
     protected void delete(Iterator<Declaration> it) {
         it.remove();
+        ++this.version;
+    }
+    
+    
+    
+    /**
+     * Gets the declarations with the given name on the level of this namespace only.
+     * All lookups of declarations by name go through this method.
+     * 
+     * @param name The name of the declarations.
+     * @return The declarations or <code>null</code> if no declaration with that name 
+     *          exists on this level.
+     */
+    protected List<Declaration> lookup(String name) {
+        final List<Declaration> result = this.decls.get(name);
+        final Dependencies deps = RECORDING.get();
+        if (deps != null) {
+            deps.record(this, result != null && !result.isEmpty());
+        }
+        return result;
     }
     
     
@@ -684,11 +848,68 @@ public class Namespace {
                 ++i;
             }
         }
+        
+        final NameIndex index = this.index;
+        if (decls.isEmpty() && index != null) {
+            index.remove(id.getId());
+        }
         return i;
     }
     
     
     
+    private synchronized NameIndex getIndex() {
+        if (this.index == null) {
+            final NameIndex index = new NameIndex();
+            for (final Entry<String, List<Declaration>> e : this.decls.entrySet()) {
+                if (!e.getValue().isEmpty()) {
+                    index.add(e.getKey());
+                }
+            }
+            this.index = index;
+        }
+        return this.index;
+    }
+    
+    
+    
+    /**
+     * <p>Finds the names of declarations which are most similar to the given string. 
+     * All declarations in this and all parent namespaces are searched. Only names that
+     * have a levenshtein distance of at most {@link #LEVENSHTEIN_THRESHOLD_PERCENT} of
+     * the given string's length, but not more than {@link #MAX_LEVENSHTEIN_THRESHOLD},
+     * are returned. Operator declarations are never returned.</p>
+     * 
+     * <p>Names with more differences are only searched if no name with less differences
+     * has been found. That is, if there is a name with only one difference, names with
+     * two differences are not returned. The resulting list will be sorted by the 
+     * distance.</p>
+     * 
+     * @param given The string to compare with all declarations.
+     * @param max The maximum number of names to return.
+     * @return A list of similar declaration names, which is empty if none was found.
+     * @see NameIndex
+     */
+    public List<String> findSimilar(String given, int max) {
+        final int threshold = Math.min(MAX_LEVENSHTEIN_THRESHOLD, 
+            Math.max(1, (int) Math.round(given.length() * LEVENSHTEIN_THRESHOLD_PERCENT)));
+        
+        // the fewer differences are allowed, the fewer names have to be compared. So
+        // search for names with only few differences first
+        for (int radius = 1; radius <= threshold; ++radius) {
+            final NameIndex.Matches matches = new NameIndex.Matches(max, radius);
+            for(Namespace space = this; space != null; space = space.parent) {
+                space.getIndex().query(given, matches);
+            }
+            if (!matches.getNames().isEmpty()) {
+                return matches.getNames();
+            }
+        }
+        return Collections.emptyList();
+    }
+    
+    
+    
     /**
      * Resolves the first declaration with the given name that is found. This will search
      * all parent name spaces too and return when the first matching declaration was 
@@ -703,7 +924,7 @@ public class Namespace {
             throws ASTTraversalException {
         
         for (Namespace space = this; space != null; space = space.parent) {
-            final List<Declaration> decls = space.decls.get(name.getId());
+            final List<Declaration> decls = space.lookup(name.getId());
         
             if (decls == null || decls.isEmpty()) {
                 continue;
@@ -738,7 +959,7 @@ public class Namespace {
      */
     public Declaration tryResolve(ResolvableIdentifier name, Type signature) {
         for(Namespace space = this; space != null; space = space.parent) {
-            final List<Declaration> decls = space.decls.get(name.getId());
+            final List<Declaration> decls = space.lookup(name.getId());
             if (decls == null) {
                 continue;
             }
@@ -771,7 +992,7 @@ public class Namespace {
         final List<Declaration> result = new ArrayList<Declaration>();
         
         for(Namespace space = this; space != null; space = space.parent) {
-            final List<Declaration> decls = space.decls.get(name.getId());
+            final List<Declaration> decls = space.lookup(name.getId());
             if (decls == null) {
                 continue;
             }
@@ -800,7 +1021,7 @@ public class Namespace {
         final ResolvableIdentifier name = access.getIdentifier();
         final Set<Type> result = new HashSet<Type>();
         for(Namespace space = this; space != null; space = space.parent) {
-            final List<Declaration> decls = space.decls.get(name.getId());
+            final List<Declaration> decls = space.lookup(name.getId());
             if (decls == null) {
                 continue;
             }
@@ -828,8 +1049,16 @@ public class Namespace {
         
         if (result.isEmpty()) {
             if (ParserProperties.should(ParserProperties.REPORT_UNKNOWN_VARIABLES)) {
-                reporter.semanticProblem(Problems.UNKNOWN_VAR, access.getPosition(), 
-                    access.getIdentifier().getId());
+                final List<String> similar = this.findSimilar(name.getId(), 
+                    DeclarationException.MAX_SUGGESTIONS);
+                if (similar.isEmpty()) {
+                    reporter.semanticProblem(Problems.UNKNOWN_VAR, access.getPosition(), 
+                        name.getId());
+                } else {
+                    reporter.semanticProblem(Problems.UNKNOWN_VAR_SIMILAR, 
+                        access.getPosition(), name.getId(), 
+                        DeclarationException.formatSuggestions(similar));
+                }
             } else {
                 return Collections.singleton(Type.STRING);
             }
@@ -848,7 +1077,7 @@ public class Namespace {
             b.append(level++);
             b.append("\n");
             
-            for (final List<Declaration> decls : space.decls.values()) {
+            for (final List<Declaration> decls : space.getDeclarations().values()) {
                 final List<Declaration> copy = new ArrayList<Declaration>(decls);
                 Collections.sort(copy);
                 
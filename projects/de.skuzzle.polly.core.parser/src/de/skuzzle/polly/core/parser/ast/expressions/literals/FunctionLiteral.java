@@ -6,6 +6,7 @@ import java.util.Collection;
 import java.util.List;
 
 import de.skuzzle.polly.core.parser.Position;
+import de.skuzzle.polly.core.parser.ast.compiler.CompiledFunction;
 import de.skuzzle.polly.core.parser.ast.declarations.Declaration;
 import de.skuzzle.polly.core.parser.ast.declarations.types.Type;
 import de.skuzzle.polly.core.parser.ast.expressions.Expression;
@@ -25,6 +26,7 @@ public class FunctionLiteral extends Literal {
     
     private ArrayList<Declaration> formal;
     private Expression body;
+    private volatile CompiledFunction compiled;
     
     
     
@@ -77,6 +79,29 @@ public class FunctionLiteral extends Literal {
     
     
     
+    /**
+     * Gets the compiled form of this function which has been stored by the 
+     * {@link de.skuzzle.polly.core.parser.ast.compiler.Compiler}.
+     * 
+     * @return The compiled function or <code>null</code>.
+     */
+    public CompiledFunction getCompiled() {
+        return this.compiled;
+    }
+    
+    
+    
+    /**
+     * Stores the compiled form of this function.
+     * 
+     * @param compiled The compiled function.
+     */
+    public void setCompiled(CompiledFunction compiled) {
+        this.compiled = compiled;
+    }
+    
+    
+    
     /**
      * Sets the list of declaration which represent the formal parameter of this
      * function.
@@ -3,7 +3,6 @@ package de.skuzzle.polly.core.parser.ast.visitor.resolving;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -35,8 +34,6 @@ import de.skuzzle.polly.core.parser.ast.visitor.DepthFirstVisitor;
 import de.skuzzle.polly.core.parser.ast.visitor.Unparser;
 import de.skuzzle.polly.core.parser.problems.ProblemReporter;
 import de.skuzzle.polly.core.parser.problems.Problems;
-import de.skuzzle.polly.core.parser.util.Combinator;
-import de.skuzzle.polly.core.parser.util.Combinator.CombinationCallBack;
 
 
 /**
@@ -49,9 +46,12 @@ import de.skuzzle.polly.core.parser.util.Combinator.CombinationCallBack;
  */
 class FirstPassTypeResolver extends AbstractTypeResolver {
     
+    private final OverloadResolver overloads;
+    
     
     public FirstPassTypeResolver(Namespace namespace, ProblemReporter reporter) {
         super(namespace, reporter);
+        this.overloads = new OverloadResolver(reporter);
     }
     
     
@@ -138,44 +138,11 @@ class FirstPassTypeResolver extends AbstractTypeResolver {
     
     @Override
     public int after(final ProductLiteral node) throws ASTTraversalException {
-        
+        // combinations of the content's types are created by the enclosing call, as 
+        // they depend on the called expression's signatures
         if (node.getContent().isEmpty()) {
             node.addType(new ProductType(Type.VOID));
-            return CONTINUE;
         }
-        
-        // Use combinator to create all combinations of possible types
-        final CombinationCallBack<Expression, Type> ccb = 
-            new CombinationCallBack<Expression, Type>() {
-
-            @Override
-            public List<Type> getSubList(Expression outer) {
-                return outer.getTypes();
-            }
-
-            
-            @Override
-            public void onNewCombination(List<Type> combination) {
-                final ProductType prod = new ProductType(combination);
-                
-                final Iterator<Expression> contIt = node.getContent().iterator();
-                final Iterator<Type> typeIt = prod.getTypes().iterator();
-                
-                // join constraints of product
-                Substitution s = new Substitution();
-                while (typeIt.hasNext()) {
-                    final Expression nextExp = contIt.next();
-                    final Type nextType = typeIt.next();
-                    final Substitution constraint = nextExp.getConstraint(nextType);
-                    s = s.join(constraint);
-                }
-                
-                node.addType(prod, s);
-            }
-        };
-        
-        Combinator.combine(node.getContent(), ccb);
-        
         return CONTINUE;
     }
     
@@ -241,17 +208,21 @@ class FirstPassTypeResolver extends AbstractTypeResolver {
             return false;
         }
         
+        // resolve called function's types
+        if (!node.getLhs().visit(this)) {
+            return false;
+        }
+        
+        // only combine parameter types which match any of the called signatures
+        if (!node.getRhs().getContent().isEmpty()) {
+            this.overloads.combine(node.getRhs(), node.getLhs().getTypes());
+        }
         final List<Type> possibleTypes = new ArrayList<Type>(
             node.getRhs().getTypes().size());
         for (final Type rhsType : node.getRhs().getTypes()) {
             possibleTypes.add(rhsType.mapTo(Type.newTypeVar()));
         }
         
-        // resolve called function's types
-        if (!node.getLhs().visit(this)) {
-            return false;
-        }
-        
         boolean hasMapType = false;
         for (final Type type : node.getLhs().getTypes()) {
             hasMapType |= type instanceof MapType;
@@ -268,7 +239,8 @@ class FirstPassTypeResolver extends AbstractTypeResolver {
             for (final Type possibleLhs : possibleTypes) {
                 
                 for (final Type lhs : node.getLhs().getTypes()) {
-                    final Substitution subst = Type.unify(possibleLhs, lhs);
+                    final Substitution subst = this.overloads.unify(node, 
+                        possibleLhs, lhs);
                     if (subst != null) {
                         // construct new type with the argument types of lhs, and 
                         // result type of rhs
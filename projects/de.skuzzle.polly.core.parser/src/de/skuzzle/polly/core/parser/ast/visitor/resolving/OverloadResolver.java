@@ -0,0 +1,302 @@
+package de.skuzzle.polly.core.parser.ast.visitor.resolving;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.skuzzle.polly.core.parser.ParserProperties;
+import de.skuzzle.polly.core.parser.ast.Node;
+import de.skuzzle.polly.core.parser.ast.declarations.types.ListType;
+import de.skuzzle.polly.core.parser.ast.declarations.types.MapType;
+import de.skuzzle.polly.core.parser.ast.declarations.types.MissingType;
+import de.skuzzle.polly.core.parser.ast.declarations.types.ProductType;
+import de.skuzzle.polly.core.parser.ast.declarations.types.Substitution;
+import de.skuzzle.polly.core.parser.ast.declarations.types.Type;
+import de.skuzzle.polly.core.parser.ast.declarations.types.TypeVar;
+import de.skuzzle.polly.core.parser.ast.declarations.types.unification.Unifier;
+import de.skuzzle.polly.core.parser.ast.declarations.types.unification.Unifiers;
+import de.skuzzle.polly.core.parser.ast.expressions.Expression;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.ProductLiteral;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+import de.skuzzle.polly.core.parser.problems.ProblemReporter;
+import de.skuzzle.polly.core.parser.problems.Problems;
+
+
+/**
+ * <p>Determines the possible argument types of calls. Instead of creating every
+ * combination of the possible types of all actual parameters, the candidates for each
+ * parameter are filtered against the signatures of the called expression first. While
+ * combining the remaining candidates, only those signatures which still accept all
+ * chosen parameter types are considered further, so the combination is pruned as soon
+ * as no signature is left.</p>
+ *
+ * <p>Results of unifying a signature with an argument type are memoized. As unification
+ * does only depend on the structure of the types, the memo is keyed by a canonical
+ * representation of both types in which type variables are numbered by their first
+ * occurrence. This makes results reusable for the fresh type variables created by each
+ * lookup of the same declaration.</p>
+ *
+ * <p>Each unification attempt and each created combination costs one step. If a
+ * single type resolution exceeds its budget (see
+ * {@link ParserProperties#TYPE_RESOLUTION_BUDGET}), it is aborted with an error instead
+ * of occupying the executing thread for an arbitrary amount of time.</p>
+ *
+ * @author Simon Taddiken
+ */
+final class OverloadResolver {
+
+    /** Maximum number of memoized unification results. */
+    private final static int MEMO_SIZE = 8192;
+
+    /** Unification results by canonical key. Shared among all resolvers. */
+    private final static Map<String, Boolean> MEMO =
+        new ConcurrentHashMap<String, Boolean>();
+
+
+
+    private final ProblemReporter reporter;
+    private final int budget;
+    private int steps;
+
+
+
+    /**
+     * Creates a new OverloadResolver with the budget configured in the
+     * {@link ParserProperties}.
+     *
+     * @param reporter Reporter to report an exceeded budget to.
+     */
+    public OverloadResolver(ProblemReporter reporter) {
+        this(reporter, ParserProperties.getInt(ParserProperties.TYPE_RESOLUTION_BUDGET));
+    }
+
+
+
+    /**
+     * Creates a new OverloadResolver.
+     *
+     * @param reporter Reporter to report an exceeded budget to.
+     * @param budget Maximum number of steps.
+     */
+    public OverloadResolver(ProblemReporter reporter, int budget) {
+        this.reporter = reporter;
+        this.budget = budget;
+    }
+
+
+
+    /**
+     * Gets the number of steps spent so far.
+     *
+     * @return The number of steps.
+     */
+    public int getSteps() {
+        return this.steps;
+    }
+
+
+
+    /**
+     * Adds all combinations of the possible types of the product's content as possible
+     * types to the product, which are accepted by at least one of the given signatures.
+     * Signatures which are no {@link MapType} are ignored. If <code>signatures</code> is
+     * <code>null</code>, all combinations are added.
+     *
+     * @param product The product literal of which the types should be resolved.
+     * @param signatures Possible types of the called expression.
+     * @throws ASTTraversalException If the budget is exceeded.
+     */
+    public void combine(ProductLiteral product, Collection<Type> signatures)
+            throws ASTTraversalException {
+
+        List<ProductType> live = null;
+        if (signatures != null) {
+            live = new ArrayList<ProductType>(signatures.size());
+            for (final Type signature : signatures) {
+                if (!(signature instanceof MapType)) {
+                    continue;
+                }
+                final Type source = ((MapType) signature).getSource();
+                if (!(source instanceof ProductType)) {
+                    // can not be filtered by parameter
+                    live = null;
+                    break;
+                }
+                final ProductType params = (ProductType) source;
+                if (params.getTypes().size() == product.getContent().size()) {
+                    live.add(params);
+                }
+            }
+        }
+
+        final List<Type> chosen = new ArrayList<Type>(product.getContent().size());
+        this.combine(product, 0, chosen, live);
+    }
+
+
+
+    private void combine(ProductLiteral product, int i, List<Type> chosen,
+            List<ProductType> live) throws ASTTraversalException {
+        final List<Expression> content = product.getContent();
+        if (i == content.size()) {
+            this.spend(product);
+            // join constraints of product
+            Substitution s = new Substitution();
+            for (int j = 0; j < chosen.size(); ++j) {
+                s = s.join(content.get(j).getConstraint(chosen.get(j)));
+            }
+            product.addType(new ProductType(new ArrayList<Type>(chosen)), s);
+            return;
+        }
+
+        for (final Type t : content.get(i).getTypes()) {
+            List<ProductType> accepting = null;
+            if (live != null) {
+                accepting = new ArrayList<ProductType>(live.size());
+                for (final ProductType params : live) {
+                    if (this.tryUnify(product, t, params.getTypes().get(i))) {
+                        accepting.add(params);
+                    }
+                }
+                if (accepting.isEmpty()) {
+                    continue;
+                }
+            }
+            chosen.add(t);
+            this.combine(product, i + 1, chosen, accepting);
+            chosen.remove(i);
+        }
+    }
+
+
+
+    /**
+     * Unifies both types like {@link Type#unify(Type, Type)}. Failed unifications are
+     * memoized.
+     *
+     * @param node Node for which the types are unified. Used for error reporting.
+     * @param left The left type expression.
+     * @param right The right type expression.
+     * @return A {@link Substitution} instance if unification was successful,
+     *          <code>null</code> otherwise.
+     * @throws ASTTraversalException If the budget is exceeded.
+     */
+    public Substitution unify(Node node, Type left, Type right)
+            throws ASTTraversalException {
+        this.spend(node);
+        final String key = key(left, right);
+        if (MEMO.get(key) == Boolean.FALSE) {
+            return null;
+        }
+        final Substitution result = Type.unify(left, right);
+        memoize(key, result != null);
+        return result;
+    }
+
+
+
+    /**
+     * Tests whether both types are unifiable like {@link Type#tryUnify(Type, Type)}.
+     * Results are memoized.
+     *
+     * @param node Node for which the types are unified. Used for error reporting.
+     * @param left The left type expression.
+     * @param right The right type expression.
+     * @return Whether both types are unifiable.
+     * @throws ASTTraversalException If the budget is exceeded.
+     */
+    public boolean tryUnify(Node node, Type left, Type right)
+            throws ASTTraversalException {
+        this.spend(node);
+        final String key = key(left, right);
+        Boolean result = MEMO.get(key);
+        if (result == null) {
+            final Unifier unifier = Unifiers.newUnionFindUnifier(
+                ParserProperties.should(ParserProperties.ALLOW_SUBTYPING));
+            result = unifier.tryUnify(left, right);
+            memoize(key, result);
+        }
+        return result;
+    }
+
+
+
+    private void spend(Node node) throws ASTTraversalException {
+        if (++this.steps > this.budget) {
+            final String message = Problems.format(Problems.TYPE_BUDGET_EXCEEDED,
+                this.budget);
+            this.reporter.semanticProblem(message, node.getPosition());
+            // abort even if the reporter collects multiple problems
+            throw new ASTTraversalException(node.getPosition(), message);
+        }
+    }
+
+
+
+    private static void memoize(String key, boolean result) {
+        if (MEMO.size() >= MEMO_SIZE) {
+            MEMO.clear();
+        }
+        MEMO.put(key, result);
+    }
+
+
+
+    /**
+     * Creates the canonical key for unifying the two given types. Type variables are
+     * numbered by their first occurrence in both types.
+     *
+     * @param left The left type expression.
+     * @param right The right type expression.
+     * @return The key.
+     */
+    static String key(Type left, Type right) {
+        final Map<TypeVar, Integer> vars = new IdentityHashMap<TypeVar, Integer>();
+        final StringBuilder b = new StringBuilder();
+        b.append(ParserProperties.should(ParserProperties.ALLOW_SUBTYPING) 
+            ? "s:" : "n:"); //$NON-NLS-1$ //$NON-NLS-2$
+        appendKey(left, vars, b);
+        b.append('|');
+        appendKey(right, vars, b);
+        return b.toString();
+    }
+
+
+
+    private static void appendKey(Type type, Map<TypeVar, Integer> vars,
+            StringBuilder b) {
+        if (type instanceof TypeVar) {
+            Integer i = vars.get(type);
+            if (i == null) {
+                i = vars.size();
+                vars.put((TypeVar) type, i);
+            }
+            b.append('$').append(i);
+        } else if (type instanceof MissingType) {
+            b.append('?');
+        } else if (type instanceof MapType) {
+            final MapType map = (MapType) type;
+            b.append('(');
+            appendKey(map.getSource(), vars, b);
+            b.append("->"); //$NON-NLS-1$
+            appendKey(map.getTarget(), vars, b);
+            b.append(')');
+        } else if (type instanceof ListType) {
+            b.append('[');
+            appendKey(((ListType) type).getSubType(), vars, b);
+            b.append(']');
+        } else if (type instanceof ProductType) {
+            b.append('<');
+            for (final Type t : ((ProductType) type).getTypes()) {
+                appendKey(t, vars, b);
+                b.append(',');
+            }
+            b.append('>');
+        } else {
+            b.append(type.getName().getId());
+        }
+    }
+}
@@ -56,12 +56,14 @@ public final class Problems {
     public final static String ILLEGAL_NS_ACCESS = "Operand muss ein Bezeichner sein";
     public final static String UNKNOWN_NS = "Unbekannter Namespace: %s";
     public final static String UNKNOWN_VAR = "Unbekannte Variable: %s";
+    public final static String UNKNOWN_VAR_SIMILAR = "Unbekannte Variable: %s. Meintest du vielleicht: %s?";
     public final static String TYPE_ERROR = "Typefehler. Erwartet: %s, gefunden: %s";
     public final static String UNKNOWN_TYPE = "Unbekannter Typ: %s";
     public final static String NOT_ORDERED = "Type %s definiert keine Ordnung";
     public static final String AMBIGUOUS_CALL = "Nicht eindeutiger Funktionsaufruf";
     public static final String ILLEGAL_DELAY = "Delay Direktive braucht eine Zeitangabe";
     public static final String DUPLICATED_DIRECTIVE = "Doppelte Direktive: %s";
+    public static final String TYPE_BUDGET_EXCEEDED = "Typen konnten nicht in %d Schritten aufgelöst werden. Bitte vereinfache den Ausdruck";
  
     
     // Runtime errors
@@ -0,0 +1,95 @@
+package org.jibble.pircbot;
+
+/**
+ * The case mappings an IRC server may announce using the CASEMAPPING token
+ * of its RPL_ISUPPORT (005) response. The case mapping defines which nicks
+ * and channel names are considered equal.
+ *  <p>
+ * As specified by RFC 1459, the characters <code>{}|~</code> are the lower
+ * case versions of <code>[]\^</code>, which is the default if the server does
+ * not announce its case mapping.
+ *
+ * @author Simon Taddiken
+ */
+public enum CaseMapping {
+
+    /** Only the letters A to Z are mapped. */
+    ASCII("ascii", 'Z'),
+
+    /** A to Z and <code>[]\^</code> are mapped. */
+    RFC1459("rfc1459", '^'),
+
+    /** A to Z and <code>[]\</code> are mapped, but not <code>^</code>. */
+    STRICT_RFC1459("strict-rfc1459", ']');
+
+
+    /**
+     * Gets the case mapping with the given name as sent by the server. If the
+     * name is unknown, {@link #RFC1459} is returned.
+     *
+     * @param name The value of the CASEMAPPING token.
+     * @return The case mapping.
+     */
+    public static CaseMapping forName(String name) {
+        for (CaseMapping mapping : values()) {
+            if (mapping._name.equalsIgnoreCase(name)) {
+                return mapping;
+            }
+        }
+        return RFC1459;
+    }
+
+
+    private CaseMapping(String name, char upperEnd) {
+        _name = name;
+        _upperEnd = upperEnd;
+    }
+
+
+    /**
+     * Converts the given nick or channel name into its lower case version
+     * according to this case mapping. Two names are equal if their lower case
+     * versions are equal. If the name does not contain any upper case
+     * characters, it is returned as is.
+     *
+     * @param name The name to convert.
+     * @return The lower case name.
+     */
+    public String toLowerCase(String name) {
+        int i = 0;
+        while (i < name.length() && !this.isUpper(name.charAt(i))) {
+            ++i;
+        }
+        if (i == name.length()) {
+            return name;
+        }
+
+        char[] chars = name.toCharArray();
+        for (; i < chars.length; ++i) {
+            if (this.isUpper(chars[i])) {
+                // the letters and []\^ are all 32 below their lower case versions
+                chars[i] += 32;
+            }
+        }
+        return new String(chars);
+    }
+
+
+    private boolean isUpper(char c) {
+        return c >= 'A' && c <= _upperEnd;
+    }
+
+
+    /**
+     * Gets the name of this case mapping as sent by the server.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return _name;
+    }
+
+
+    private final String _name;
+    private final char _upperEnd;
+}
@@ -0,0 +1,337 @@
+package org.jibble.pircbot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which users are in which of the channels we are in.
+ *  <p>
+ * Nicks and channel names are compared according to the server's
+ * {@link CaseMapping}. For every channel, the users are stored in an
+ * immutable map from the lower case nick to the User object, which is
+ * replaced as a whole on each change (copy-on-write). Additionally, for each
+ * nick the channels it is in are stored the same way. That way, reading never
+ * blocks: looking up a user in a channel or the channels of a user are single
+ * map lookups, and enumerating the users of a channel iterates a snapshot
+ * which is not affected by later changes. User objects are never modified
+ * once they have been stored, but replaced by a modified copy.
+ *  <p>
+ * Changes are made by the thread which handles the input from the server,
+ * but are synchronized nevertheless to keep both maps consistent.
+ *
+ * @author Simon Taddiken
+ */
+final class ChannelStore {
+
+    /**
+     * Gets the case mapping which is used to compare nicks and channel names.
+     *
+     * @return The case mapping.
+     */
+    CaseMapping getCaseMapping() {
+        return _caseMapping;
+    }
+
+
+    /**
+     * Sets the case mapping which is used to compare nicks and channel names.
+     * Already stored users and channels are mapped anew.
+     *
+     * @param caseMapping The case mapping.
+     */
+    void setCaseMapping(CaseMapping caseMapping) {
+        synchronized (_writeLock) {
+            if (caseMapping == _caseMapping) {
+                return;
+            }
+            _caseMapping = caseMapping;
+            List<String> channels = new ArrayList<String>(_channels.keySet());
+            Map<String, Collection<User>> users = new HashMap<String, Collection<User>>();
+            for (String channel : channels) {
+                users.put(channel, _channels.get(channel).values());
+            }
+            this.clear();
+            for (String channel : channels) {
+                this.addUsers(channel, users.get(channel));
+            }
+        }
+    }
+
+
+    /**
+     * Adds a user to the specified channel. Overwrites the existing entry if
+     * it exists.
+     */
+    void addUser(String channel, User user) {
+        this.addUsers(channel, Collections.singletonList(user));
+    }
+
+
+    /**
+     * Adds multiple users to the specified channel at once, e.g. when
+     * receiving a NAMES reply.
+     */
+    void addUsers(String channel, Collection<User> users) {
+        channel = this.key(channel);
+        synchronized (_writeLock) {
+            Map<String, User> old = _channels.get(channel);
+            Map<String, User> copy = old == null
+                ? new HashMap<String, User>()
+                : new HashMap<String, User>(old);
+            for (User user : users) {
+                String nick = this.key(user.getNick());
+                copy.put(nick, user);
+                this.join(nick, channel);
+            }
+            _channels.put(channel, Collections.unmodifiableMap(copy));
+        }
+    }
+
+
+    /**
+     * Removes a user from the specified channel.
+     *
+     * @return The removed user or <code>null</code> if the user was not in
+     *         the channel.
+     */
+    User removeUser(String channel, String nick) {
+        channel = this.key(channel);
+        nick = this.key(nick);
+        synchronized (_writeLock) {
+            Map<String, User> old = _channels.get(channel);
+            if (old == null || !old.containsKey(nick)) {
+                return null;
+            }
+            Map<String, User> copy = new HashMap<String, User>(old);
+            User user = copy.remove(nick);
+            _channels.put(channel, Collections.unmodifiableMap(copy));
+            this.part(nick, channel);
+            return user;
+        }
+    }
+
+
+    /**
+     * Removes a user from all channels.
+     */
+    void removeUser(String nick) {
+        synchronized (_writeLock) {
+            for (String channel : this.channelsOf(nick)) {
+                this.removeUser(channel, nick);
+            }
+        }
+    }
+
+
+    /**
+     * Renames a user in all channels they are in, keeping prefix and info.
+     */
+    void renameUser(String oldNick, String newNick) {
+        synchronized (_writeLock) {
+            for (String channel : this.channelsOf(oldNick)) {
+                User user = this.removeUser(channel, oldNick);
+                if (user != null) {
+                    User renamed = new User(user.getPrefix(), newNick);
+                    renamed.setInfo(user.getInfo());
+                    this.addUser(channel, renamed);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Adds or removes a prefix of a user in the specified channel.
+     *
+     * @param giveTake '+' to add the prefix, anything else to remove it.
+     */
+    void updateUser(String channel, char giveTake, String userPrefix, String nick) {
+        synchronized (_writeLock) {
+            User user = this.getUser(nick, channel);
+            if (user == null) {
+                return;
+            }
+            User copy = new User(user.getPrefix(), user.getNick());
+            copy.setInfo(user.getInfo());
+            if (giveTake == '+') {
+                copy.addPrefix(userPrefix);
+            } else {
+                copy.removePrefix(userPrefix);
+            }
+            this.addUser(channel, copy);
+        }
+    }
+
+
+    /**
+     * Stores a custom object with all User objects of the user with the given
+     * nick.
+     */
+    void setUserInfo(String nick, Object info) {
+        synchronized (_writeLock) {
+            for (String channel : this.channelsOf(nick)) {
+                User user = this.getUser(nick, channel);
+                User copy = new User(user.getPrefix(), user.getNick());
+                copy.setInfo(info);
+                this.addUser(channel, copy);
+            }
+        }
+    }
+
+
+    /**
+     * Removes an entire channel.
+     */
+    void removeChannel(String channel) {
+        channel = this.key(channel);
+        synchronized (_writeLock) {
+            Map<String, User> users = _channels.remove(channel);
+            if (users != null) {
+                for (String nick : users.keySet()) {
+                    this.part(nick, channel);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Removes all channels.
+     */
+    void clear() {
+        synchronized (_writeLock) {
+            _channels.clear();
+            _nicks.clear();
+        }
+    }
+
+
+    /**
+     * Gets a snapshot of the users in the specified channel.
+     *
+     * @return The users. The array is empty if we are not in the channel.
+     */
+    User[] getUsers(String channel) {
+        Map<String, User> users = _channels.get(this.key(channel));
+        if (users == null) {
+            return new User[0];
+        }
+        return users.values().toArray(new User[users.size()]);
+    }
+
+
+    /**
+     * Gets the User object for the specified nick in the specified channel.
+     *
+     * @return The user or <code>null</code> if not found.
+     */
+    User getUser(String nick, String channel) {
+        Map<String, User> users = _channels.get(this.key(channel));
+        if (users == null) {
+            return null;
+        }
+        return users.get(this.key(nick));
+    }
+
+
+    /**
+     * Gets the custom object stored with the user with the given nick.
+     *
+     * @return The object or <code>null</code> if none was stored.
+     */
+    Object getUserInfo(String nick) {
+        for (String channel : this.channelsOf(nick)) {
+            User user = this.getUser(nick, channel);
+            if (user != null) {
+                return user.getInfo();
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Gets the (lower case) names of all channels.
+     */
+    String[] getChannels() {
+        return _channels.keySet().toArray(new String[0]);
+    }
+
+
+    /**
+     * Gets the (lower case) names of all channels the given user is in.
+     */
+    String[] getCommonChannels(String nick) {
+        Set<String> channels = this.channelsOf(nick);
+        return channels.toArray(new String[channels.size()]);
+    }
+
+
+    private Set<String> channelsOf(String nick) {
+        Set<String> channels = _nicks.get(this.key(nick));
+        if (channels == null) {
+            return Collections.emptySet();
+        }
+        return channels;
+    }
+
+
+    /**
+     * Records that the user with the given nick key is in the channel.
+     * Requires the write lock.
+     */
+    private void join(String nick, String channel) {
+        Set<String> old = _nicks.get(nick);
+        if (old != null && old.contains(channel)) {
+            return;
+        }
+        Set<String> copy = old == null
+            ? new HashSet<String>()
+            : new HashSet<String>(old);
+        copy.add(channel);
+        _nicks.put(nick, Collections.unmodifiableSet(copy));
+    }
+
+
+    /**
+     * Records that the user with the given nick key left the channel.
+     * Requires the write lock.
+     */
+    private void part(String nick, String channel) {
+        Set<String> old = _nicks.get(nick);
+        if (old == null || !old.contains(channel)) {
+            return;
+        }
+        if (old.size() == 1) {
+            _nicks.remove(nick);
+            return;
+        }
+        Set<String> copy = new HashSet<String>(old);
+        copy.remove(channel);
+        _nicks.put(nick, Collections.unmodifiableSet(copy));
+    }
+
+
+    private String key(String name) {
+        return _caseMapping.toLowerCase(name);
+    }
+
+
+    private final Object _writeLock = new Object();
+    private volatile CaseMapping _caseMapping = CaseMapping.RFC1459;
+
+    // users by lower case nick by lower case channel name
+    private final Map<String, Map<String, User>> _channels =
+        new ConcurrentHashMap<String, Map<String, User>>();
+
+    // lower case channel names by lower case nick
+    private final Map<String, Set<String>> _nicks =
+        new ConcurrentHashMap<String, Set<String>>();
+}
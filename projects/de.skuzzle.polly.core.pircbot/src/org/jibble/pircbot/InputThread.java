@@ -13,7 +13,7 @@ import java.util.*;
  * @author PircBot-PPF project
  * @version 1.0.0
  */
-public class InputThread extends Thread {
+public class InputThread extends Thread implements IrcConnection {
     
     /**
      * The InputThread reads lines from the IRC server and allows the
@@ -39,11 +39,19 @@ public class InputThread extends Thread {
      *
      * @param line The raw line to send to the IRC server.
      */
-    void sendRawLine(String line) {
+    @Override
+    public void sendRawLine(String line) {
         OutputThread.sendRawLine(_bot, _bwriter, line);
     }
     
     
+    /**
+     * Nothing to do here as queued lines are consumed by the OutputThread.
+     */
+    @Override
+    public void lineQueued() {}
+    
+    
     /**
      * Returns true if this InputThread is connected to an IRC server.
      * The result of this method should only act as a rough guide,
@@ -51,7 +59,8 @@ public class InputThread extends Thread {
      * 
      * @return True if still connected.
      */
-    boolean isConnected() {
+    @Override
+    public boolean isConnected() {
         return _isConnected;
     }
     
@@ -133,6 +142,7 @@ public class InputThread extends Thread {
     /**
      * Closes the socket without onDisconnect being called subsequently.
      */
+    @Override
     public void dispose () {
         try {
             _disposed = true;
@@ -143,7 +153,8 @@ public class InputThread extends Thread {
         }
     }
 
-    void quitServer() {
+    @Override
+    public void quitServer() {
         _isConnected = false;
     }
     
@@ -0,0 +1,71 @@
+package org.jibble.pircbot;
+
+/**
+ * The IRC commands which are handled by the PircBot. Commands are looked up
+ * case insensitively directly from the raw line so that dispatching does not
+ * need to create any String.
+ *
+ * @author Simon Taddiken
+ */
+enum IrcCommand {
+    PRIVMSG,
+    NOTICE,
+    JOIN,
+    PART,
+    NICK,
+    QUIT,
+    KICK,
+    MODE,
+    TOPIC,
+    INVITE,
+    PING,
+
+    /** A three digit numeric server response */
+    NUMERIC,
+
+    /** Any command not handled by the PircBot */
+    UNKNOWN;
+
+    private static final IrcCommand[] NAMED = {
+        PRIVMSG, NOTICE, JOIN, PART, NICK, QUIT, KICK, MODE, TOPIC, INVITE, PING
+    };
+
+
+    /**
+     * Looks up the command which is contained in the given region of a line.
+     *
+     * @param s The line.
+     * @param start Start index of the command (inclusive).
+     * @param end End index of the command (exclusive).
+     * @return The command. Never <code>null</code>.
+     */
+    static IrcCommand lookup(CharSequence s, int start, int end) {
+        final int length = end - start;
+        if (length == 3
+                && isDigit(s.charAt(start))
+                && isDigit(s.charAt(start + 1))
+                && isDigit(s.charAt(start + 2))) {
+            return NUMERIC;
+        }
+        for (final IrcCommand cmd : NAMED) {
+            final String name = cmd.name();
+            if (name.length() != length) {
+                continue;
+            }
+            boolean match = true;
+            for (int i = 0; i < length && match; ++i) {
+                match = Character.toUpperCase(s.charAt(start + i)) == name.charAt(i);
+            }
+            if (match) {
+                return cmd;
+            }
+        }
+        return UNKNOWN;
+    }
+
+
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
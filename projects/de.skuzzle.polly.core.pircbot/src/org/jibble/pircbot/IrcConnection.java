@@ -0,0 +1,49 @@
+package org.jibble.pircbot;
+
+/**
+ * Transport of a single connection between a PircBot and an IRC server. There
+ * are two implementations: the classic {@link InputThread} which reads from a
+ * blocking socket in its own thread and the {@link NioConnection} which is
+ * multiplexed with many other connections by an {@link IrcEventLoop}.
+ *
+ * @author Simon Taddiken
+ */
+interface IrcConnection {
+
+    /**
+     * Sends a raw line to the IRC server as soon as possible, bypassing the
+     * outgoing message queue.
+     *
+     * @param line The raw line to send to the IRC server.
+     */
+    void sendRawLine(String line);
+
+
+    /**
+     * Notifies this connection that a new line has been added to the outgoing
+     * message queue of the bot.
+     */
+    void lineQueued();
+
+
+    /**
+     * Returns true if this connection is connected to an IRC server.
+     * The result of this method should only act as a rough guide,
+     * as the result may not be valid by the time you act upon it.
+     *
+     * @return True if still connected.
+     */
+    boolean isConnected();
+
+
+    /**
+     * Marks this connection as being closed because we sent a QUIT to the server.
+     */
+    void quitServer();
+
+
+    /**
+     * Closes the connection without onDisconnect being called subsequently.
+     */
+    void dispose();
+}
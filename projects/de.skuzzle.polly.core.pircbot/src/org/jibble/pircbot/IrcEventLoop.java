@@ -0,0 +1,249 @@
+package org.jibble.pircbot;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A selector based event loop which serves the connections of many PircBots
+ * using a single thread. Assign an event loop to a bot using
+ * {@link PircBot#setEventLoop(IrcEventLoop)} before connecting it. The bot will
+ * then not spawn its own InputThread and OutputThread but instead will be
+ * read from and written to by this event loop.
+ *  <p>
+ * Incoming lines of all connections are handled on the event loop's thread, so
+ * <code>onXxx</code> methods of bots attached to an event loop should return
+ * quickly. Connections can be spread across a few event loops if line handling
+ * is expensive. The only exception is <code>onDisconnect</code> which is called
+ * in its own thread as it is commonly used to reconnect the bot.
+ *  <p>
+ * The event loop's thread is started lazily when the first connection is
+ * registered.
+ *
+ * @author Simon Taddiken
+ */
+public class IrcEventLoop implements Runnable {
+
+    private static IrcEventLoop _default;
+
+
+    /**
+     * Returns a shared default event loop.
+     *
+     * @return The default event loop.
+     */
+    public static synchronized IrcEventLoop getDefault() {
+        if (_default == null) {
+            _default = new IrcEventLoop("IrcEventLoop-Default");
+        }
+        return _default;
+    }
+
+
+    /**
+     * Creates a new event loop.
+     *
+     * @param name The name of the event loop's thread.
+     */
+    public IrcEventLoop(String name) {
+        _name = name;
+    }
+
+
+    /**
+     * Returns the number of connections currently served by this event loop.
+     *
+     * @return The number of connections.
+     */
+    public int getConnectionCount() {
+        return _connectionCount;
+    }
+
+
+    /**
+     * Stops the event loop's thread and closes all connections served by this
+     * event loop.
+     */
+    public synchronized void shutdown() {
+        _running = false;
+        if (_selector != null) {
+            _selector.wakeup();
+        }
+    }
+
+
+    /**
+     * Returns true if the calling thread is the thread of this event loop.
+     *
+     * @return Whether the caller is running on the event loop.
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == _thread;
+    }
+
+
+    /**
+     * Schedules the given connection to be registered with this event loop.
+     *
+     * @param connection The connection.
+     */
+    void register(NioConnection connection) {
+        this.start();
+        _registrations.add(connection);
+        _selector.wakeup();
+    }
+
+
+    /**
+     * Removes a closed connection from this event loop. Called on the event
+     * loop thread.
+     *
+     * @param connection The connection.
+     */
+    void deregister(NioConnection connection) {
+        _connections.remove(connection);
+        _connectionCount = _connections.size();
+    }
+
+
+    /**
+     * Notifies the event loop that the given connection has new output
+     * available or has been closed.
+     *
+     * @param connection The connection.
+     */
+    void wakeup(NioConnection connection) {
+        if (this.inEventLoop()) {
+            if (connection.isClosed()) {
+                connection.close();
+            }
+            else {
+                connection.flush();
+            }
+        }
+        else {
+            _dirty.add(connection);
+            _selector.wakeup();
+        }
+    }
+
+
+
+    private synchronized void start() {
+        if (_thread != null) {
+            return;
+        }
+        try {
+            _selector = Selector.open();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not open selector", e);
+        }
+        _running = true;
+        _thread = new Thread(this);
+        _thread.setName(_name);
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+
+    /**
+     * Runs the event loop until {@link #shutdown()} is called.
+     */
+    @Override
+    public void run() {
+        while (_running) {
+            try {
+                final long now = System.currentTimeMillis();
+                if (_nextTimer == Long.MAX_VALUE) {
+                    _selector.select();
+                }
+                else if (_nextTimer <= now) {
+                    _selector.selectNow();
+                }
+                else {
+                    _selector.select(_nextTimer - now);
+                }
+            }
+            catch (IOException e) {
+                break;
+            }
+
+            this.processRegistrations();
+
+            final Iterator<SelectionKey> it = _selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                final SelectionKey key = it.next();
+                it.remove();
+                final NioConnection connection = (NioConnection) key.attachment();
+                if (key.isValid() && key.isReadable()) {
+                    connection.handleReadable();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+            }
+
+            NioConnection connection;
+            while ((connection = _dirty.poll()) != null) {
+                if (connection.isClosed()) {
+                    connection.close();
+                }
+                else {
+                    connection.flush();
+                }
+            }
+
+            final long now = System.currentTimeMillis();
+            long next = Long.MAX_VALUE;
+            // iterate over a copy as pumping might close a connection
+            for (final NioConnection c : new ArrayList<NioConnection>(_connections)) {
+                next = Math.min(next, c.pump(now));
+            }
+            _nextTimer = next;
+        }
+
+        for (final NioConnection c : new ArrayList<NioConnection>(_connections)) {
+            c.dispose();
+        }
+        try {
+            _selector.close();
+        }
+        catch (IOException e) {
+            // ignore
+        }
+        synchronized (this) {
+            _thread = null;
+        }
+    }
+
+
+
+    private void processRegistrations() {
+        NioConnection connection;
+        while ((connection = _registrations.poll()) != null) {
+            try {
+                _connections.add(connection);
+                _connectionCount = _connections.size();
+                connection.register(_selector);
+            }
+            catch (IOException e) {
+                connection.close();
+            }
+        }
+    }
+
+    private final String _name;
+    private final ConcurrentLinkedQueue<NioConnection> _registrations = new ConcurrentLinkedQueue<NioConnection>();
+    private final ConcurrentLinkedQueue<NioConnection> _dirty = new ConcurrentLinkedQueue<NioConnection>();
+    private final List<NioConnection> _connections = new ArrayList<NioConnection>();
+    private volatile int _connectionCount;
+    private volatile boolean _running;
+    private volatile Selector _selector;
+    private volatile Thread _thread;
+    private long _nextTimer = Long.MAX_VALUE;
+}
@@ -0,0 +1,405 @@
+package org.jibble.pircbot;
+
+/**
+ * A reusable view of a single parsed IRC line of the form
+ * <pre>[@tags] [:prefix] command [params] [:trailing]</pre>
+ * Parsing only records offsets of the different parts within the line, so no
+ * objects are created until a part is actually requested as String. Message
+ * tags (IRCv3) are supported.
+ *  <p>
+ * Instances are not thread safe. A PircBot uses a single instance which is
+ * reset for every line it handles.
+ *
+ * @author Simon Taddiken
+ */
+final class IrcMessage {
+
+    /** Maximum number of parameters as specified by RFC 1459 */
+    static final int MAX_PARAMS = 15;
+
+
+    /**
+     * Parses the given line, replacing the previous content of this message.
+     *
+     * @param line The raw line without trailing CRLF.
+     * @return Whether the line contained a command.
+     */
+    boolean parse(CharSequence line) {
+        _line = line;
+        _tagsStart = _tagsEnd = -1;
+        _prefixStart = _prefixEnd = -1;
+        _exclamation = _at = -1;
+        _paramCount = 0;
+        _paramsStart = -1;
+        _numeric = -1;
+
+        final int length = line.length();
+        int i = 0;
+
+        if (i < length && line.charAt(i) == '@') {
+            _tagsStart = i + 1;
+            i = this.skipToSpace(i);
+            _tagsEnd = i;
+            i = this.skipSpaces(i);
+        }
+
+        if (i < length && line.charAt(i) == ':') {
+            _prefixStart = i + 1;
+            for (++i; i < length && line.charAt(i) != ' '; ++i) {
+                final char c = line.charAt(i);
+                if (c == '!' && _exclamation == -1) {
+                    _exclamation = i;
+                }
+                else if (c == '@' && _at == -1) {
+                    _at = i;
+                }
+            }
+            _prefixEnd = i;
+            i = this.skipSpaces(i);
+        }
+
+        if (i >= length) {
+            _command = IrcCommand.UNKNOWN;
+            return false;
+        }
+
+        final int commandStart = i;
+        i = this.skipToSpace(i);
+        _command = IrcCommand.lookup(line, commandStart, i);
+        if (_command == IrcCommand.NUMERIC) {
+            _numeric = (line.charAt(commandStart) - '0') * 100
+                + (line.charAt(commandStart + 1) - '0') * 10
+                + (line.charAt(commandStart + 2) - '0');
+        }
+
+        if (i < length) {
+            // skip exactly one separating space, so raw parameters are the same
+            // as the old substring based implementation used to report them
+            _paramsStart = i + 1;
+        }
+        i = this.skipSpaces(i);
+
+        while (i < length) {
+            if (line.charAt(i) == ':' || _paramCount == MAX_PARAMS - 1) {
+                if (line.charAt(i) == ':') {
+                    ++i;
+                }
+                _paramStarts[_paramCount] = i;
+                _paramEnds[_paramCount] = length;
+                ++_paramCount;
+                break;
+            }
+            _paramStarts[_paramCount] = i;
+            i = this.skipToSpace(i);
+            _paramEnds[_paramCount] = i;
+            ++_paramCount;
+            i = this.skipSpaces(i);
+        }
+        return true;
+    }
+
+
+    /**
+     * Gets the parsed command.
+     *
+     * @return The command.
+     */
+    IrcCommand getCommand() {
+        return _command;
+    }
+
+
+    /**
+     * Gets the numeric code if the command is {@link IrcCommand#NUMERIC}.
+     *
+     * @return The numeric code or -1.
+     */
+    int getNumeric() {
+        return _numeric;
+    }
+
+
+    /**
+     * Whether this message had a prefix.
+     *
+     * @return Whether there is a prefix.
+     */
+    boolean hasPrefix() {
+        return _prefixStart != -1;
+    }
+
+
+    /**
+     * Whether the prefix is a full user mask of the form nick!login@host.
+     *
+     * @return Whether the prefix denotes a user.
+     */
+    boolean isUserPrefix() {
+        return _exclamation > 0 && _at > 0 && _exclamation < _at;
+    }
+
+
+    /**
+     * Gets the nick name part of the prefix or the whole prefix if it is not a
+     * user mask.
+     *
+     * @return The nick or "" if there is no prefix.
+     */
+    String getNick() {
+        if (!this.hasPrefix()) {
+            return "";
+        }
+        return this.substring(_prefixStart, this.isUserPrefix() ? _exclamation : _prefixEnd);
+    }
+
+
+    /**
+     * Gets the login part of a user prefix.
+     *
+     * @return The login or "" if the prefix is no user mask.
+     */
+    String getLogin() {
+        return this.isUserPrefix() ? this.substring(_exclamation + 1, _at) : "";
+    }
+
+
+    /**
+     * Gets the host name part of a user prefix.
+     *
+     * @return The host name or "" if the prefix is no user mask.
+     */
+    String getHostname() {
+        return this.isUserPrefix() ? this.substring(_at + 1, _prefixEnd) : "";
+    }
+
+
+    /**
+     * Gets the number of parameters including the trailing one.
+     *
+     * @return The number of parameters.
+     */
+    int getParamCount() {
+        return _paramCount;
+    }
+
+
+    /**
+     * Gets the parameter with given index. A leading colon of the trailing
+     * parameter is not included.
+     *
+     * @param i The index.
+     * @return The parameter.
+     */
+    String getParam(int i) {
+        return this.substring(_paramStarts[i], _paramEnds[i]);
+    }
+
+
+    /**
+     * Gets the parameter with given index or a default value if there are
+     * not enough parameters.
+     *
+     * @param i The index.
+     * @param defaultValue The default value.
+     * @return The parameter or the default value.
+     */
+    String getParam(int i, String defaultValue) {
+        return i < _paramCount ? this.getParam(i) : defaultValue;
+    }
+
+
+    /**
+     * Gets the start index of the parameter with given index within the line.
+     *
+     * @param i The index.
+     * @return The start index.
+     */
+    int getParamStart(int i) {
+        return _paramStarts[i];
+    }
+
+
+    /**
+     * Gets the end index (exclusive) of the parameter with given index within
+     * the line.
+     *
+     * @param i The index.
+     * @return The end index.
+     */
+    int getParamEnd(int i) {
+        return _paramEnds[i];
+    }
+
+
+    /**
+     * Gets the first character of the parameter with given index.
+     *
+     * @param i The index.
+     * @return The first character or 0 if the parameter is empty.
+     */
+    char getParamFirstChar(int i) {
+        return _paramStarts[i] < _paramEnds[i] ? _line.charAt(_paramStarts[i]) : 0;
+    }
+
+
+    /**
+     * Gets the last parameter, which usually is the trailing one.
+     *
+     * @return The last parameter or "" if there are no parameters.
+     */
+    String getLastParam() {
+        return _paramCount == 0 ? "" : this.getParam(_paramCount - 1);
+    }
+
+
+    /**
+     * Gets the unparsed remainder of the line starting at the parameter with
+     * given index.
+     *
+     * @param i The index.
+     * @return The remainder of the line or "" if there are not enough
+     *          parameters.
+     */
+    String getParamsFrom(int i) {
+        return i < _paramCount ? this.substring(_paramStarts[i], _line.length()) : "";
+    }
+
+
+    /**
+     * Gets the unparsed parameters, exactly as they appear in the line after
+     * the command.
+     *
+     * @return The raw parameters or "".
+     */
+    String getRawParams() {
+        return _paramsStart == -1 ? "" : this.substring(_paramsStart, _line.length());
+    }
+
+
+    /**
+     * Whether this message carries IRCv3 message tags.
+     *
+     * @return Whether there are tags.
+     */
+    boolean hasTags() {
+        return _tagsStart != -1;
+    }
+
+
+    /**
+     * Looks up the value of the message tag with given key. Escaped characters
+     * within the value are unescaped.
+     *
+     * @param key The key.
+     * @return The value, "" if the tag has no value or <code>null</code> if
+     *          there is no such tag.
+     */
+    String getTag(String key) {
+        int i = _tagsStart;
+        while (i != -1 && i < _tagsEnd) {
+            int end = i;
+            while (end < _tagsEnd && _line.charAt(end) != ';') {
+                ++end;
+            }
+            final int keyEnd = i + key.length();
+            if (keyEnd <= end && this.regionMatches(i, key)
+                    && (keyEnd == end || _line.charAt(keyEnd) == '=')) {
+                return keyEnd == end ? "" : this.unescapeTag(keyEnd + 1, end);
+            }
+            i = end + 1;
+        }
+        return null;
+    }
+
+
+    /**
+     * Whether the region of the line starting at given index matches the given
+     * String.
+     *
+     * @param start Start index within the line.
+     * @param s The String to compare.
+     * @return Whether the region matches.
+     */
+    boolean regionMatches(int start, String s) {
+        if (start + s.length() > _line.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); ++i) {
+            if (_line.charAt(start + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Gets the line which was parsed.
+     *
+     * @return The raw line.
+     */
+    CharSequence getLine() {
+        return _line;
+    }
+
+
+
+    private String substring(int start, int end) {
+        return _line.subSequence(start, end).toString();
+    }
+
+
+
+    private String unescapeTag(int start, int end) {
+        final StringBuilder b = new StringBuilder(end - start);
+        for (int i = start; i < end; ++i) {
+            final char c = _line.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                final char n = _line.charAt(++i);
+                switch (n) {
+                case ':': b.append(';'); break;
+                case 's': b.append(' '); break;
+                case 'r': b.append('\r'); break;
+                case 'n': b.append('\n'); break;
+                default: b.append(n);
+                }
+            }
+            else if (c != '\\') {
+                b.append(c);
+            }
+        }
+        return b.toString();
+    }
+
+
+
+    private int skipToSpace(int i) {
+        while (i < _line.length() && _line.charAt(i) != ' ') {
+            ++i;
+        }
+        return i;
+    }
+
+
+
+    private int skipSpaces(int i) {
+        while (i < _line.length() && _line.charAt(i) == ' ') {
+            ++i;
+        }
+        return i;
+    }
+
+    private CharSequence _line;
+    private int _tagsStart;
+    private int _tagsEnd;
+    private int _prefixStart;
+    private int _prefixEnd;
+    private int _exclamation;
+    private int _at;
+    private IrcCommand _command;
+    private int _numeric;
+    private int _paramsStart;
+    private int _paramCount;
+    private final int[] _paramStarts = new int[MAX_PARAMS];
+    private final int[] _paramEnds = new int[MAX_PARAMS];
+}
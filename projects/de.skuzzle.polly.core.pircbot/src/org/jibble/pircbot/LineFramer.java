@@ -0,0 +1,133 @@
+package org.jibble.pircbot;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.function.Consumer;
+
+/**
+ * Incrementally splits a stream of raw bytes into IRC lines. Bytes can be fed
+ * in chunks of arbitrary size (as they arrive from a non-blocking channel) and
+ * each complete line is decoded and passed to a consumer as soon as its
+ * terminating LF has been seen. A trailing CR is stripped.
+ *  <p>
+ * Like the {@link FallbackInputStreamReader}, lines which can not be decoded
+ * using the primary charset are decoded using the fallback charset, if one is
+ * given.
+ *  <p>
+ * Lines longer than the maximum length are truncated. Instances of this class
+ * are not thread safe.
+ *
+ * @author Simon Taddiken
+ */
+final class LineFramer {
+
+    /**
+     * Creates a new LineFramer.
+     *
+     * @param primary The charset used to decode lines.
+     * @param fallback The charset used if a line can not be decoded using the
+     *          primary charset. May be <code>null</code>.
+     * @param maxLineLength The maximum number of bytes per line.
+     */
+    LineFramer(Charset primary, Charset fallback, int maxLineLength) {
+        _primary = primary.newDecoder();
+        if (fallback == null) {
+            _primary.onMalformedInput(CodingErrorAction.REPLACE);
+            _primary.onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        else {
+            _primary.onMalformedInput(CodingErrorAction.REPORT);
+            _primary.onUnmappableCharacter(CodingErrorAction.REPORT);
+            _fallback = fallback.newDecoder();
+            _fallback.onMalformedInput(CodingErrorAction.REPLACE);
+            _fallback.onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        _line = new byte[maxLineLength];
+        _lineBuffer = ByteBuffer.wrap(_line);
+        float maxChars = _primary.maxCharsPerByte();
+        if (_fallback != null) {
+            maxChars = Math.max(maxChars, _fallback.maxCharsPerByte());
+        }
+        _chars = CharBuffer.allocate((int) Math.ceil(maxLineLength * maxChars) + 1);
+    }
+
+
+    /**
+     * Consumes all remaining bytes of the given buffer. For each complete line
+     * that is encountered, the consumer is called. Incomplete lines are kept
+     * until the next invocation of this method.
+     *
+     * @param in Buffer in read mode. Its position will equal its limit after
+     *          this method returns.
+     * @param out Consumer for complete lines.
+     */
+    void feed(ByteBuffer in, Consumer<String> out) {
+        while (in.hasRemaining()) {
+            final int start = in.position();
+            final int limit = in.limit();
+            int lf = -1;
+            for (int i = start; i < limit; ++i) {
+                if (in.get(i) == '\n') {
+                    lf = i;
+                    break;
+                }
+            }
+
+            final int end = lf == -1 ? limit : lf;
+            final int copy = Math.min(end - start, _line.length - _length);
+            in.get(_line, _length, copy);
+            _length += copy;
+            // skip bytes which exceed the maximum line length
+            in.position(end);
+
+            if (lf != -1) {
+                in.get(); // consume LF
+                int length = _length;
+                if (length > 0 && _line[length - 1] == '\r') {
+                    --length;
+                }
+                _length = 0;
+                out.accept(this.decode(length));
+            }
+        }
+    }
+
+
+
+    private String decode(int length) {
+        if (_fallback == null) {
+            return this.decode(_primary, length);
+        }
+        final String line = this.decode(_primary, length);
+        return line != null ? line : this.decode(_fallback, length);
+    }
+
+
+
+    private String decode(CharsetDecoder decoder, int length) {
+        _lineBuffer.clear();
+        _lineBuffer.limit(length);
+        _chars.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(_lineBuffer, _chars, true);
+        if (!result.isError()) {
+            result = decoder.flush(_chars);
+        }
+        if (result.isError()) {
+            return null;
+        }
+        _chars.flip();
+        return _chars.toString();
+    }
+
+    private final CharsetDecoder _primary;
+    private CharsetDecoder _fallback;
+    private final byte[] _line;
+    private final ByteBuffer _lineBuffer;
+    private final CharBuffer _chars;
+    private int _length;
+}
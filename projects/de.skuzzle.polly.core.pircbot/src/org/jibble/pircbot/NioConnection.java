@@ -0,0 +1,370 @@
+package org.jibble.pircbot;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A connection to an IRC server which is driven by an {@link IrcEventLoop}
+ * instead of dedicated input and output threads. Reading, writing and the
+ * delayed sending of lines from the bot's outgoing message queue all happen on
+ * the event loop's thread, which may serve many connections at once.
+ *  <p>
+ * Before being attached to the event loop, the underlying channel is in
+ * blocking mode, which is used by {@link PircBot} to perform the login
+ * handshake using {@link #readLine()} and {@link #sendRawLine(String)}.
+ *  <p>
+ * Lines are handled without holding the bot's monitor. As all lines of a
+ * connection are handled on the same thread, they are still handled in the
+ * order in which they were received.
+ *
+ * @author Simon Taddiken
+ */
+final class NioConnection implements IrcConnection {
+
+    /**
+     * Maximum number of bytes of an incoming line. This is larger than
+     * {@link InputThread#MAX_LINE_LENGTH} to leave room for IRCv3 message tags.
+     */
+    static final int MAX_INCOMING_LINE_LENGTH = 8192 + InputThread.MAX_LINE_LENGTH;
+
+    /** Idle time after which we send a PING to the server to check the connection */
+    static final long IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    private static final int BUFFER_SIZE = 8192;
+
+
+    /**
+     * Creates a new connection for the given bot.
+     *
+     * @param bot The underlying PircBot.
+     * @param channel A connected channel in blocking mode.
+     * @param charset Charset used for outgoing lines and to decode incoming
+     *          lines.
+     * @param fallback Fallback charset for decoding incoming lines. May be
+     *          <code>null</code>.
+     * @param outQueue The bot's outgoing message queue.
+     */
+    NioConnection(PircBot bot, SocketChannel channel, Charset charset,
+            Charset fallback, Queue<String> outQueue) {
+        _bot = bot;
+        _channel = channel;
+        _charset = charset;
+        _outQueue = outQueue;
+        _framer = new LineFramer(charset, fallback, MAX_INCOMING_LINE_LENGTH);
+        _readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        _writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        _writeBuffer.flip();
+        _handshakeLines = new ArrayDeque<String>();
+    }
+
+
+    /**
+     * Reads the next line from the server while the channel is still in
+     * blocking mode. Used during the login handshake.
+     *
+     * @return The next line or <code>null</code> if the server closed the
+     *          connection.
+     * @throws IOException If reading fails.
+     */
+    String readLine() throws IOException {
+        while (_handshakeLines.isEmpty()) {
+            _readBuffer.clear();
+            if (_channel.read(_readBuffer) == -1) {
+                return null;
+            }
+            _readBuffer.flip();
+            _framer.feed(_readBuffer, _handshakeLines::add);
+        }
+        return _handshakeLines.poll();
+    }
+
+
+    /**
+     * Ends the blocking handshake phase and hands this connection over to the
+     * given event loop.
+     *
+     * @param loop The event loop which will serve this connection.
+     */
+    void attach(IrcEventLoop loop) {
+        _loop = loop;
+        _lastRead = System.currentTimeMillis();
+        _handshake = false;
+        loop.register(this);
+    }
+
+
+    /**
+     * Registers the channel with the given selector. Called on the event loop
+     * thread. Lines which have already been read during the handshake are
+     * handled first.
+     *
+     * @param selector The event loop's selector.
+     * @throws IOException If registering the channel fails.
+     */
+    void register(Selector selector) throws IOException {
+        _channel.configureBlocking(false);
+        _key = _channel.register(selector, SelectionKey.OP_READ, this);
+        while (!_handshakeLines.isEmpty()) {
+            this.handleLine(_handshakeLines.poll());
+        }
+        this.flush();
+    }
+
+
+    /**
+     * Reads all available data from the channel and handles each complete line.
+     * Called on the event loop thread.
+     */
+    void handleReadable() {
+        try {
+            int read;
+            _readBuffer.clear();
+            while ((read = _channel.read(_readBuffer)) > 0) {
+                _lastRead = System.currentTimeMillis();
+                _readBuffer.flip();
+                _framer.feed(_readBuffer, this::handleLine);
+                _readBuffer.clear();
+            }
+            if (read == -1) {
+                // The server must have disconnected us.
+                this.close();
+            }
+        }
+        catch (IOException e) {
+            this.close();
+        }
+    }
+
+
+    /**
+     * Writes as much pending output as the channel accepts without blocking.
+     * If data remains, interest in write readiness is registered. Called on
+     * the event loop thread.
+     */
+    void flush() {
+        if (_key == null || !_key.isValid()) {
+            return;
+        }
+        try {
+            while (true) {
+                if (!_writeBuffer.hasRemaining()) {
+                    if (_pending.isEmpty()) {
+                        break;
+                    }
+                    // gather as many pending lines as fit into one write
+                    _writeBuffer.clear();
+                    ByteBuffer next;
+                    while (_writeBuffer.hasRemaining() && (next = _pending.peek()) != null) {
+                        if (next.remaining() <= _writeBuffer.remaining()) {
+                            _writeBuffer.put(next);
+                            _pending.poll();
+                        }
+                        else {
+                            final int limit = next.limit();
+                            next.limit(next.position() + _writeBuffer.remaining());
+                            _writeBuffer.put(next);
+                            next.limit(limit);
+                        }
+                    }
+                    _writeBuffer.flip();
+                }
+                _channel.write(_writeBuffer);
+                if (_writeBuffer.hasRemaining()) {
+                    break;
+                }
+            }
+            final boolean moreToWrite = _writeBuffer.hasRemaining() || !_pending.isEmpty();
+            _key.interestOps(moreToWrite
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                : SelectionKey.OP_READ);
+        }
+        catch (IOException e) {
+            this.close();
+        }
+    }
+
+
+    /**
+     * Sends lines from the bot's outgoing message queue, keeping the bot's
+     * message delay between consecutive lines, and pings the server if the
+     * connection has been idle for too long. Called on the event loop thread.
+     *
+     * @param now The current time in milliseconds.
+     * @return The time at which this method should be called next or
+     *          {@link Long#MAX_VALUE} if this connection is not connected.
+     */
+    long pump(long now) {
+        if (!this.isConnected()) {
+            return Long.MAX_VALUE;
+        }
+        if (now - _lastRead >= IDLE_TIMEOUT) {
+            // We haven't received anything from the server for a while, so we
+            // shall send it a ping to check that we are still connected.
+            _lastRead = now;
+            this.sendRawLine("PING " + (now / 1000));
+        }
+        String line;
+        while (now >= _nextSend && (line = _outQueue.poll()) != null) {
+            this.sendRawLine(line);
+            _nextSend = now + _bot.getMessageDelay();
+        }
+        long next = _lastRead + IDLE_TIMEOUT;
+        if (_outQueue.hasNext()) {
+            next = Math.min(next, _nextSend);
+        }
+        return next;
+    }
+
+
+    /**
+     * Closes the channel and notifies the bot about the disconnect unless this
+     * connection has been disposed. Called on the event loop thread.
+     */
+    void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        _isConnected = false;
+        try {
+            _channel.close();
+        }
+        catch (IOException e) {
+            // Just assume the channel was already closed.
+        }
+        if (_loop != null) {
+            _loop.deregister(this);
+        }
+
+        if (!_disposed) {
+            _bot.log("*** Disconnected.");
+            // onDisconnect implementations commonly try to reconnect, which
+            // must not block the event loop that serves the other connections.
+            final Thread t = new Thread(_bot::onDisconnect);
+            t.setName(this.getClass().getSimpleName() + "-Disconnect-Thread");
+            t.start();
+        }
+    }
+
+
+    /**
+     * Whether the channel of this connection has been closed.
+     *
+     * @return Whether this connection is closed.
+     */
+    boolean isClosed() {
+        return _closed || !_channel.isOpen();
+    }
+
+
+    @Override
+    public void sendRawLine(String line) {
+        if (line.length() > _bot.getMaxLineLength() - 2) {
+            line = line.substring(0, _bot.getMaxLineLength() - 2);
+        }
+        final ByteBuffer bytes = _charset.encode(line + "\r\n");
+        if (_handshake) {
+            synchronized (_channel) {
+                try {
+                    while (bytes.hasRemaining()) {
+                        _channel.write(bytes);
+                    }
+                    _bot.log(">>>" + line);
+                }
+                catch (IOException e) {
+                    // Silent response - just lose the line.
+                }
+            }
+            return;
+        }
+        _pending.add(bytes);
+        _bot.log(">>>" + line);
+        _loop.wakeup(this);
+    }
+
+
+    @Override
+    public void lineQueued() {
+        if (!_handshake) {
+            _loop.wakeup(this);
+        }
+    }
+
+
+    @Override
+    public boolean isConnected() {
+        return _isConnected;
+    }
+
+
+    @Override
+    public void quitServer() {
+        _isConnected = false;
+    }
+
+
+    @Override
+    public void dispose() {
+        _disposed = true;
+        try {
+            _channel.close();
+        }
+        catch (IOException e) {
+            // Do nothing.
+        }
+        if (_loop != null) {
+            _loop.wakeup(this);
+        }
+    }
+
+
+
+    private void handleLine(String line) {
+        try {
+            _bot.handleLine(line);
+        }
+        catch (Throwable t) {
+            // Stick the whole stack trace into a String so we can output it nicely.
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw);
+            t.printStackTrace(pw);
+            pw.flush();
+            StringTokenizer tokenizer = new StringTokenizer(sw.toString(), "\r\n");
+            _bot.log("### Your implementation of PircBot is faulty and you have");
+            _bot.log("### allowed an uncaught Exception or Error to propagate in your");
+            _bot.log("### code. It may be possible for PircBot to continue operating");
+            _bot.log("### normally. Here is the stack trace that was produced: -");
+            _bot.log("### ");
+            while (tokenizer.hasMoreTokens()) {
+                _bot.log("### " + tokenizer.nextToken());
+            }
+        }
+    }
+
+    private final PircBot _bot;
+    private final SocketChannel _channel;
+    private final Charset _charset;
+    private final Queue<String> _outQueue;
+    private final LineFramer _framer;
+    private final ByteBuffer _readBuffer;
+    private final ByteBuffer _writeBuffer;
+    private final ConcurrentLinkedQueue<ByteBuffer> _pending = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final ArrayDeque<String> _handshakeLines;
+    private IrcEventLoop _loop;
+    private SelectionKey _key;
+    private long _lastRead;
+    private long _nextSend;
+    private volatile boolean _handshake = true;
+    private volatile boolean _isConnected = true;
+    private volatile boolean _disposed = false;
+    private boolean _closed = false;
+}
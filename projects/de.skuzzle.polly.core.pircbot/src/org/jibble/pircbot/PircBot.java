@@ -6,6 +6,8 @@ package org.jibble.pircbot;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
 import java.util.*;
 
 import javax.net.SocketFactory;
@@ -131,7 +133,13 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
         // Don't clear the outqueue - there might be something important in it!
 
         // Clear everything we may have know about channels.
-        this.removeAllChannels();
+        _channelStore.clear();
+        _channelStore.setCaseMapping(CaseMapping.RFC1459);
+
+        if (_eventLoop != null) {
+            this.connectNio(hostname, port, password);
+            return;
+        }
 
         // Connect to the server.
         Socket socket;
@@ -141,6 +149,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
         	socket = _socketFactory.createSocket(hostname, port);
         }
         
+        InputThread inputThread;
         try {
         	this.log("*** Connected to server.");
 
@@ -160,7 +169,8 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
         	OutputThread.sendRawLine(this, bwriter, "NICK " + nick);
         	OutputThread.sendRawLine(this, bwriter, "USER " + this.getLogin() + " 8 * :" + this.getVersion());
 
-        	_inputThread = new InputThread(this, socket, breader, bwriter);
+        	inputThread = new InputThread(this, socket, breader, bwriter);
+        	_connection = inputThread;
 
         	// Read stuff back from the server to see if we connected.
         	String line = null;
@@ -186,7 +196,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
         				}
         				else {
         					socket.close();
-        					_inputThread = null;
+        					_connection = null;
         					throw new NickAlreadyInUseException(line);
         				}
         			}
@@ -196,7 +206,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
         			}
         			else if (code.startsWith("5") || code.startsWith("4")) {
         				socket.close();
-        				_inputThread = null;
+        				_connection = null;
         				throw new IrcException("Could not log into the IRC server: " + line);
         			}
         		}
@@ -211,7 +221,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
         	socket.setSoTimeout(5 * 60 * 1000);
 
         } catch(IOException e) {
-        	_inputThread = null;
+        	_connection = null;
         	try {
         		if(socket != null) {
         			socket.close();
@@ -223,7 +233,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
         }
         
         // Now start the InputThread to read all other lines from the server.
-        _inputThread.start();
+        inputThread.start();
         
         // Now start the outputThread that will be used to send all messages.
         if (_outputThread == null) {
@@ -235,6 +245,105 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
         
     }
     
+    
+    /**
+     * Connects to the specified IRC server using a non-blocking channel which
+     * will be served by this bot's event loop after the login handshake.
+     *
+     * @param hostname The hostname of the server to connect to.
+     * @param port The port number to connect to on the server.
+     * @param password The password to use to join the server.
+     *
+     * @throws IOException if it was not possible to connect to the server.
+     * @throws IrcException if the server would not let us join it.
+     * @throws NickAlreadyInUseException if our nick is already in use on the server.
+     */
+    private void connectNio(String hostname, int port, String password) throws IOException, IrcException, NickAlreadyInUseException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(hostname, port));
+        
+        try {
+            this.log("*** Connected to server.");
+            
+            _inetAddress = channel.socket().getLocalAddress();
+            
+            Charset charset = getEncoding() != null 
+                ? Charset.forName(getEncoding()) 
+                : Charset.defaultCharset();
+            Charset fallback = getFallbackEncoding() != null 
+                ? Charset.forName(getFallbackEncoding()) 
+                : null;
+            NioConnection connection = new NioConnection(this, channel, charset, 
+                fallback, _outQueue);
+            
+            // Attempt to join the server.
+            if (password != null && !password.equals("")) {
+                connection.sendRawLine("PASS " + password);
+            }
+            String nick = this.getName();
+            connection.sendRawLine("NICK " + nick);
+            connection.sendRawLine("USER " + this.getLogin() + " 8 * :" + this.getVersion());
+            
+            _connection = connection;
+            
+            // Read stuff back from the server to see if we connected.
+            String line = null;
+            int tries = 1;
+            while ((line = connection.readLine()) != null) {
+                
+                this.handleLine(line);
+                
+                int firstSpace = line.indexOf(" ");
+                int secondSpace = line.indexOf(" ", firstSpace + 1);
+                if (secondSpace >= 0) {
+                    String code = line.substring(firstSpace + 1, secondSpace);
+                    
+                    if (code.equals("004")) {
+                        // We're connected to the server.
+                        break;
+                    }
+                    else if (code.equals("433")) {
+                        if (_autoNickChange) {
+                            tries++;
+                            nick = getName() + tries;
+                            connection.sendRawLine("NICK " + nick);
+                        }
+                        else {
+                            throw new NickAlreadyInUseException(line);
+                        }
+                    }
+                    else if (code.equals("439")) {
+                        // seems to be sent from some servers to trick fake clients into disconnecting
+                        log("Received response code 439 from server.  Ignoring as this shouldn't mean anything as it is sometimes used to trap bots and spammers.");
+                    }
+                    else if (code.startsWith("5") || code.startsWith("4")) {
+                        throw new IrcException("Could not log into the IRC server: " + line);
+                    }
+                }
+                this.setNick(nick);
+            }
+            
+            if (line == null) {
+                throw new IOException("Server closed the connection during login");
+            }
+            
+            this.log("*** Logged onto server.");
+            
+            // From now on, all lines are read and written by the event loop
+            connection.attach(_eventLoop);
+            
+        } catch (IOException | IrcException e) {
+            _connection = null;
+            try {
+                channel.close();
+            } catch (IOException ee) {
+                // ignore
+            }
+            throw e;
+        }
+        
+        this.onConnect();
+    }
+    
     public Reader createInputStreamReader(InputStream inputStream) throws UnsupportedEncodingException {
         if (getFallbackEncoding() != null) {
             return new FallbackInputStreamReader(this, inputStream, getEncoding(), getFallbackEncoding());
@@ -402,7 +511,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      */
     public final void quitServer(String reason) {
         this.sendRawLine("QUIT :" + reason);
-        _inputThread.quitServer();
+        _connection.quitServer();
     }
     
     
@@ -414,7 +523,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      */
     public final synchronized void sendRawLine(String line) {
         if (isConnected()) {
-            _inputThread.sendRawLine(line);
+            _connection.sendRawLine(line);
         }
     }
     
@@ -428,7 +537,22 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
             throw new NullPointerException("Cannot send null messages to server");
         }
         if (isConnected()) {
-            _outQueue.add(line);
+            this.enqueueLine(line);
+        }
+    }
+    
+    
+    /**
+     * Adds a line to the outgoing message queue and notifies the current
+     * connection about it.
+     * 
+     * @param line The raw line to send to the IRC server.
+     */
+    private void enqueueLine(String line) {
+        _outQueue.add(line);
+        IrcConnection connection = _connection;
+        if (connection != null) {
+            connection.lineQueued();
         }
     }
     
@@ -454,7 +578,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      * @see Colors
      */
     public final void sendMessage(String target, String message) {
-        _outQueue.add("PRIVMSG " + target + " :" + message);
+        this.enqueueLine("PRIVMSG " + target + " :" + message);
     }
     
     
@@ -478,7 +602,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      * @param notice The notice to send.
      */
     public final void sendNotice(String target, String notice) {
-        _outQueue.add("NOTICE " + target + " :" + notice);
+        this.enqueueLine("NOTICE " + target + " :" + notice);
     }
     
     
@@ -494,7 +618,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      * @param command The CTCP command to send.
      */
     public final void sendCTCPCommand(String target, String command) {
-        _outQueue.add("PRIVMSG " + target + " :\u0001" + command + "\u0001");
+        this.enqueueLine("PRIVMSG " + target + " :\u0001" + command + "\u0001");
     }
     
     
@@ -849,7 +973,8 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
     /**
      * This method handles events when any line of text arrives from the server,
      * then calling the appropriate method in the PircBot.  This method is
-     * protected and only called by the InputThread for this instance.
+     * protected and only called by the connection of this instance (the
+     * InputThread or the IrcEventLoop), one line at a time.
      *  <p>
      * This method may not be overridden!
      * 
@@ -870,187 +995,112 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
             return;
         }
 
-        String sourceNick = "";
-        String sourceLogin = "";
-        String sourceHostname = "";
-
-        StringTokenizer tokenizer = new StringTokenizer(line);
-        String senderInfo = tokenizer.nextToken();
-        String command = tokenizer.nextToken();
-        String target = null;
-
-        int exclamation = senderInfo.indexOf("!");
-        int at = senderInfo.indexOf("@");
-        if (senderInfo.startsWith(":")) {
-            if (exclamation > 0 && at > 0 && exclamation < at) {
-                sourceNick = senderInfo.substring(1, exclamation);
-                sourceLogin = senderInfo.substring(exclamation + 1, at);
-                sourceHostname = senderInfo.substring(at + 1);
-            }
-            else {
-                
-                if (tokenizer.hasMoreTokens()) {
-                    String token = command;
-
-                    int code = -1;
-                    try {
-                        code = Integer.parseInt(token);
-                    }
-                    catch (NumberFormatException e) {
-                        // Keep the existing value.
-                    }
-                    
-                    if (code != -1) {
-                        String errorStr = token;
-                        String response = line.substring(line.indexOf(errorStr, senderInfo.length()) + 4, line.length());
-                        this.processServerResponse(code, response);
-                        // Return from the method.
-                        return;
-                    }
-                    else {
-                        // This is not a server response.
-                        // It must be a nick without login and hostname.
-                        // (or maybe a NOTICE or suchlike from the server)
-                        sourceNick = senderInfo;
-                        target = token;
-                    }
-                }
-                else {
-                    // We don't know what this line means.
-                    this.onUnknown(line);
-                    // Return from the method;
-                    return;
-                }
-                
-            }
+        IrcMessage msg = _message;
+        if (!msg.parse(line)) {
+            // We don't know what this line means.
+            this.onUnknown(line);
+            return;
         }
         
-        command = command.toUpperCase();
-        if (sourceNick.startsWith(":")) {
-            sourceNick = sourceNick.substring(1);
-        }
-        if (target == null) {
-            target = tokenizer.nextToken();
+        IrcCommand command = msg.getCommand();
+        if (command == IrcCommand.NUMERIC && msg.hasPrefix() && !msg.isUserPrefix()) {
+            this.processServerResponse(msg.getNumeric(), msg.getRawParams(), msg);
+            return;
         }
-        if (target.startsWith(":")) {
-            target = target.substring(1);
+        if (command == IrcCommand.UNKNOWN || msg.getParamCount() == 0) {
+            // If we reach this point, then we've found something that the PircBot
+            // Doesn't currently deal with.
+            this.onUnknown(line);
+            return;
         }
 
-        // Check for CTCP requests.
-        if (command.equals("PRIVMSG") && line.indexOf(":\u0001") > 0 && line.endsWith("\u0001")) {
-            String request = line.substring(line.indexOf(":\u0001") + 2, line.length() - 1);
-            if (request.equals("VERSION")) {
-                // VERSION request
-                this.onVersion(sourceNick, sourceLogin, sourceHostname, target);
-            }
-            else if (request.startsWith("ACTION ")) {
-                // ACTION request
-                this.onAction(sourceNick, sourceLogin, sourceHostname, target, request.substring(7));
-            }
-            else if (request.startsWith("PING ")) {
-                // PING request
-                this.onPing(sourceNick, sourceLogin, sourceHostname, target, request.substring(5));
-            }
-            else if (request.equals("TIME")) {
-                // TIME request
-                this.onTime(sourceNick, sourceLogin, sourceHostname, target);
-            }
-            else if (request.equals("FINGER")) {
-                // FINGER request
-                this.onFinger(sourceNick, sourceLogin, sourceHostname, target);
+        String sourceNick = msg.getNick();
+        String sourceLogin = msg.getLogin();
+        String sourceHostname = msg.getHostname();
+        String target = msg.getParam(0);
+
+        switch (command) {
+        case PRIVMSG:
+            String message = msg.getLastParam();
+            if (message.length() > 1 && message.charAt(0) == '\u0001' && message.endsWith("\u0001")) {
+                // Check for CTCP requests.
+                this.processCtcp(line, sourceNick, sourceLogin, sourceHostname, target, 
+                    message.substring(1, message.length() - 1));
             }
-            else if ((tokenizer = new StringTokenizer(request)).countTokens() >= 5 && tokenizer.nextToken().equals("DCC")) {
-                // This is a DCC request.
-                boolean success = _dccManager.processRequest(sourceNick, sourceLogin, sourceHostname, request);
-                if (!success) {
-                    // The DccManager didn't know what to do with the line.
-                    this.onUnknown(line);
-                }
+            else if (_channelPrefixes.indexOf(msg.getParamFirstChar(0)) >= 0) {
+                // This is a normal message to a channel.
+                this.onMessage(target, sourceNick, sourceLogin, sourceHostname, message);
             }
-            else {            
-                // An unknown CTCP message - ignore it.
-                this.onUnknown(line);
+            else {
+                // This is a private message to us.
+                this.onPrivateMessage(sourceNick, sourceLogin, sourceHostname, message);
             }
-        }
-        else if (command.equals("PRIVMSG") && _channelPrefixes.indexOf(target.charAt(0)) >= 0) {
-            // This is a normal message to a channel.
-            this.onMessage(target, sourceNick, sourceLogin, sourceHostname, line.substring(line.indexOf(" :") + 2));
-        }
-        else if (command.equals("PRIVMSG")) {
-            // This is a private message to us.
-            this.onPrivateMessage(sourceNick, sourceLogin, sourceHostname, line.substring(line.indexOf(" :") + 2));
-        }
-        else if (command.equals("JOIN")) {
+            break;
+        case JOIN:
             // Someone is joining a channel.
             String channel = target;
-            this.addUser(channel, new User("", sourceNick));
+            _channelStore.addUser(channel, new User("", sourceNick));
             this.onJoin(channel, sourceNick, sourceLogin, sourceHostname);
-        }
-        else if (command.equals("PART")) {
+            break;
+        case PART:
             // Someone is parting from a channel.
-            this.removeUser(target, sourceNick);
+            _channelStore.removeUser(target, sourceNick);
             if (sourceNick.equals(this.getNick())) {
-                this.removeChannel(target);
-            }
-            int start = line.indexOf(" :");
-            if(start > 0) {
-                String reason = line.substring(start + 2);
-                this.onPart(target, sourceNick, sourceLogin, sourceHostname, reason);
-            } else {
-                this.onPart(target, sourceNick, sourceLogin, sourceHostname, "");
+                _channelStore.removeChannel(target);
             }
+            this.onPart(target, sourceNick, sourceLogin, sourceHostname, msg.getParam(1, ""));
             this.onPart(target, sourceNick, sourceLogin, sourceHostname);
-        }
-        else if (command.equals("NICK")) {
+            break;
+        case NICK:
             // Somebody is changing their nick.
             String newNick = target;
-            this.renameUser(sourceNick, newNick);
+            _channelStore.renameUser(sourceNick, newNick);
             if (sourceNick.equals(this.getNick())) {
                 // Update our nick if it was us that changed nick.
                 this.setNick(newNick);
             }
             this.onNickChange(sourceNick, sourceLogin, sourceHostname, newNick);
-        }
-        else if (command.equals("NOTICE")) {
+            break;
+        case NOTICE:
             // Someone is sending a notice.
-            this.onNotice(sourceNick, sourceLogin, sourceHostname, target, line.substring(line.indexOf(" :") + 2));
-        }
-        else if (command.equals("QUIT")) {
+            this.onNotice(sourceNick, sourceLogin, sourceHostname, target, msg.getLastParam());
+            break;
+        case QUIT:
             // Someone has quit from the IRC server.
             if (sourceNick.equals(this.getNick())) {
-                this.removeAllChannels();
+                _channelStore.clear();
             }
             else {
-                this.removeUser(sourceNick);
+                _channelStore.removeUser(sourceNick);
             }
-            this.onQuit(sourceNick, sourceLogin, sourceHostname, line.substring(line.indexOf(" :") + 2));
-        }
-        else if (command.equals("KICK")) {
+            this.onQuit(sourceNick, sourceLogin, sourceHostname, msg.getLastParam());
+            break;
+        case KICK:
             // Somebody has been kicked from a channel.
-            String recipient = tokenizer.nextToken();
+            String recipient = msg.getParam(1, "");
             if (recipient.equals(this.getNick())) {
-                this.removeChannel(target);
+                _channelStore.removeChannel(target);
             }
-            this.removeUser(target, recipient);
-            this.onKick(target, sourceNick, sourceLogin, sourceHostname, recipient, line.substring(line.indexOf(" :") + 2));
-        }
-        else if (command.equals("MODE")) {
+            _channelStore.removeUser(target, recipient);
+            this.onKick(target, sourceNick, sourceLogin, sourceHostname, recipient, msg.getParam(2, ""));
+            break;
+        case MODE:
             // Somebody is changing the mode on a channel or user.
-            String mode = line.substring(line.indexOf(target, 2) + target.length() + 1);
-            if (mode.startsWith(":")) {
-                mode = mode.substring(1);
-            }
-            this.processMode(target, sourceNick, sourceLogin, sourceHostname, mode);
-        }
-        else if (command.equals("TOPIC")) {
+            this.processMode(target, sourceNick, sourceLogin, sourceHostname, msg.getParamsFrom(1));
+            break;
+        case TOPIC:
             // Someone is changing the topic.
-            this.onTopic(target, line.substring(line.indexOf(" :") + 2), sourceNick, System.currentTimeMillis(), true);
-        }
-        else if (command.equals("INVITE")) {
+            this.onTopic(target, msg.getParam(1, ""), sourceNick, System.currentTimeMillis(), true);
+            break;
+        case INVITE:
             // Somebody is inviting somebody else into a channel.
-            this.onInvite(target, sourceNick, sourceLogin, sourceHostname, line.substring(line.indexOf(" :") + 2));
-        }
-        else {
+            this.onInvite(target, sourceNick, sourceLogin, sourceHostname, msg.getParam(1, ""));
+            break;
+        case PING:
+            // A server ping with tags or a prefix, respond like above.
+            this.onServerPing(msg.getRawParams());
+            break;
+        default:
             // If we reach this point, then we've found something that the PircBot
             // Doesn't currently deal with.
             this.onUnknown(line);
@@ -1059,6 +1109,53 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
     }
     
     
+    /**
+     * Dispatches a CTCP request to the appropriate onXxx method.
+     * 
+     * @param line The raw line of text from the server.
+     * @param sourceNick The nick of the user that sent the request.
+     * @param sourceLogin The login of the user that sent the request.
+     * @param sourceHostname The hostname of the user that sent the request.
+     * @param target The target of the request, be it our nick or a channel name.
+     * @param request The request without the enclosing \u0001 characters.
+     */
+    private void processCtcp(String line, String sourceNick, String sourceLogin, 
+            String sourceHostname, String target, String request) {
+        if (request.equals("VERSION")) {
+            // VERSION request
+            this.onVersion(sourceNick, sourceLogin, sourceHostname, target);
+        }
+        else if (request.startsWith("ACTION ")) {
+            // ACTION request
+            this.onAction(sourceNick, sourceLogin, sourceHostname, target, request.substring(7));
+        }
+        else if (request.startsWith("PING ")) {
+            // PING request
+            this.onPing(sourceNick, sourceLogin, sourceHostname, target, request.substring(5));
+        }
+        else if (request.equals("TIME")) {
+            // TIME request
+            this.onTime(sourceNick, sourceLogin, sourceHostname, target);
+        }
+        else if (request.equals("FINGER")) {
+            // FINGER request
+            this.onFinger(sourceNick, sourceLogin, sourceHostname, target);
+        }
+        else if (request.startsWith("DCC ") && new StringTokenizer(request).countTokens() >= 5) {
+            // This is a DCC request.
+            boolean success = _dccManager.processRequest(sourceNick, sourceLogin, sourceHostname, request);
+            if (!success) {
+                // The DccManager didn't know what to do with the line.
+                this.onUnknown(line);
+            }
+        }
+        else {            
+            // An unknown CTCP message - ignore it.
+            this.onUnknown(line);
+        }
+    }
+    
+    
     /**
      * This method is called once the PircBot has successfully connected to
      * the IRC server.
@@ -1101,44 +1198,36 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      * 
      * @param code The three-digit numerical code for the response.
      * @param response The full response from the IRC server.
+     * @param msg The parsed line which contained the response.
      */
-    private final void processServerResponse(int code, String response) {
+    private final void processServerResponse(int code, String response, IrcMessage msg) {
         
         if (code == RPL_LIST) {
             // This is a bit of information about a channel.
-            int firstSpace = response.indexOf(' ');
-            int secondSpace = response.indexOf(' ', firstSpace + 1);
-            int thirdSpace = response.indexOf(' ', secondSpace + 1);
-            int colon = response.indexOf(':');
-            String channel = response.substring(firstSpace + 1, secondSpace);
+            String channel = msg.getParam(1, "");
             int userCount = 0;
             try {
-                userCount = Integer.parseInt(response.substring(secondSpace + 1, thirdSpace));
+                userCount = Integer.parseInt(msg.getParam(2, ""));
             }
             catch (NumberFormatException e) {
                 // Stick with the value of zero.
             }
-            String topic = response.substring(colon + 1);
+            String topic = msg.getParam(3, "");
             this.onChannelInfo(channel, userCount, topic);
         }
         else if (code == RPL_TOPIC) {
             // This is topic information about a channel we've just joined.
-            int firstSpace = response.indexOf(' ');
-            int secondSpace = response.indexOf(' ', firstSpace + 1);
-            int colon = response.indexOf(':');
-            String channel = response.substring(firstSpace + 1, secondSpace);
-            String topic = response.substring(colon + 1);
+            String channel = msg.getParam(1, "");
+            String topic = msg.getLastParam();
             
             _topics.put(channel, topic);
         }
         else if (code == RPL_TOPICINFO) {
-            StringTokenizer tokenizer = new StringTokenizer(response);
-            tokenizer.nextToken();
-            String channel = tokenizer.nextToken();
-            String setBy = tokenizer.nextToken();
+            String channel = msg.getParam(1, "");
+            String setBy = msg.getParam(2, "");
             long date = 0;
             try {
-                date = Long.parseLong(tokenizer.nextToken()) * 1000;
+                date = Long.parseLong(msg.getParam(3, "")) * 1000;
             }
             catch (NumberFormatException e) {
                 // Stick with the default value of zero.
@@ -1149,65 +1238,87 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
             
             this.onTopic(channel, topic, setBy, date, false);
         }
-        else if (code == RPL_NAMREPLY) {
+        else if (code == RPL_NAMREPLY && msg.getParamCount() >= 2) {
             // This is a list of nicks in a channel that we've just joined.
-            int channelEndIndex = response.indexOf(" :");
-            String channel = response.substring(response.lastIndexOf(' ', channelEndIndex - 1) + 1, channelEndIndex);
+            int last = msg.getParamCount() - 1;
+            String channel = msg.getParam(last - 1);
             
-            StringTokenizer tokenizer = new StringTokenizer(response.substring(response.indexOf(" :") + 2));
-            while (tokenizer.hasMoreTokens()) {
-                String nick = tokenizer.nextToken();
-                String prefix = "";
-                while(nick.length() > 0) {
-                    char first = nick.charAt(0);
-                    if(first >= 0x41 && first <= 0x7D) {
+            CharSequence line = msg.getLine();
+            int i = msg.getParamStart(last);
+            int end = msg.getParamEnd(last);
+            List<User> users = new ArrayList<User>();
+            while (i < end) {
+                while (i < end && line.charAt(i) == ' ') {
+                    ++i;
+                }
+                if (i == end) {
+                    break;
+                }
+                int prefixStart = i;
+                while(i < end) {
+                    char first = line.charAt(i);
+                    if(first >= 0x41 && first <= 0x7D || first == ' ') {
                         break;
-                    } else {
-                        prefix += first;
-                        nick = nick.substring(1);
                     }
+                    ++i;
                 }
-                this.addUser(channel, new User(prefix, nick));
+                int nickStart = i;
+                while (i < end && line.charAt(i) != ' ') {
+                    ++i;
+                }
+                String prefix = line.subSequence(prefixStart, nickStart).toString();
+                String nick = line.subSequence(nickStart, i).toString();
+                users.add(new User(prefix, nick));
             }
+            _channelStore.addUsers(channel, users);
         }
         else if (code == RPL_ENDOFNAMES) {
             // This is the end of a NAMES list, so we know that we've got
             // the full list of users in the channel that we just joined. 
-            String channel = response.substring(response.indexOf(' ') + 1, response.indexOf(" :"));
+            String channel = msg.getParam(1, "");
             User[] users = this.getUsers(channel);
             this.onUserList(channel, users);
         } else if (code == RPL_BOUNCE) {
-            int start = response.indexOf("PREFIX")+7;
-            // if this is not found, then the defaults set in the constructor are used
-            if(start > 7) {
-                // grab from after the equals sign until the next variable
-                int end = response.indexOf(" ", start);
-                if(end < -1) {  // PREFIX could be at the end
-                    end = response.length();
+            // the last parameter is the human readable "are supported by this server"
+            for (int i = 1; i < msg.getParamCount() - 1; ++i) {
+                if (msg.regionMatches(msg.getParamStart(i), "PREFIX=")) {
+                    this.processPrefixToken(msg.getParam(i).substring(7));
+                } else if (msg.regionMatches(msg.getParamStart(i), "CASEMAPPING=")) {
+                    _channelStore.setCaseMapping(
+                        CaseMapping.forName(msg.getParam(i).substring(12)));
                 }
-                String prefixSegment = response.substring(start, end).trim();
-                int firstBracket = prefixSegment.indexOf("(") + 1;
-                // carry on processing if found, otherwise the defaults set in the constructor will be used
-                if(firstBracket >= 0) {
-                    int secondBracket = prefixSegment.lastIndexOf(")");
-                    String modeLetters = prefixSegment.substring(firstBracket, secondBracket);
-                    String modeSymbols = prefixSegment.substring(secondBracket+1);
-                    if(modeLetters.length() == modeSymbols.length()) {  // just to make sure nothing funny is going on
-                        // recreate the _userPrefixes table with the server specific info
-                        _userPrefixes = new HashMap<String, String>();
-                        _userPrefixOrder = "";
-                        for(int x=0; x < modeLetters.length(); x++) {
-                            _userPrefixes.put(modeLetters.charAt(x) +"", modeSymbols.charAt(x) +"");
-                            _userPrefixOrder = _userPrefixOrder + modeSymbols.charAt(x);
-                        }
-                    }
-                }
-                
             }
         }
         
         this.onServerResponse(code, response);
     }
+    
+    
+    /**
+     * Processes the value of the PREFIX token of a RPL_ISUPPORT response, e.g.
+     * <code>(ov)@+</code>. If the value is malformed, the defaults set in the
+     * constructor are kept.
+     * 
+     * @param prefixSegment The value of the PREFIX token.
+     */
+    private final void processPrefixToken(String prefixSegment) {
+        int firstBracket = prefixSegment.indexOf("(") + 1;
+        int secondBracket = prefixSegment.lastIndexOf(")");
+        // carry on processing if found, otherwise the defaults set in the constructor will be used
+        if(firstBracket > 0 && secondBracket >= firstBracket) {
+            String modeLetters = prefixSegment.substring(firstBracket, secondBracket);
+            String modeSymbols = prefixSegment.substring(secondBracket+1);
+            if(modeLetters.length() == modeSymbols.length()) {  // just to make sure nothing funny is going on
+                // recreate the _userPrefixes table with the server specific info
+                _userPrefixes = new HashMap<String, String>();
+                _userPrefixOrder = "";
+                for(int x=0; x < modeLetters.length(); x++) {
+                    _userPrefixes.put(modeLetters.charAt(x) +"", modeSymbols.charAt(x) +"");
+                    _userPrefixOrder = _userPrefixOrder + modeSymbols.charAt(x);
+                }
+            }
+        }
+    }
 
 
     /**
@@ -1506,7 +1617,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
                 if (atPos == '+' || atPos == '-') {
                     pn = atPos;
                 } else if(_userPrefixes.containsKey(atPos +"")) {
-                    this.updateUser(channel, pn, "" +  _userPrefixes.get(atPos +""), params[p]);
+                    _channelStore.updateUser(channel, pn, "" +  _userPrefixes.get(atPos +""), params[p]);
                     // now deal with the known(standard) user modes
                     if (atPos == 'o') {
                         if (pn == '+') {
@@ -2410,7 +2521,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      * @return True if and only if the PircBot is currently connected to a server.
      */
     public final synchronized boolean isConnected() {
-        return _inputThread != null && _inputThread.isConnected();
+        return _connection != null && _connection.isConnected();
     }
     
     
@@ -2578,6 +2689,32 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
     public SocketFactory getSocketFactory() {
         return _socketFactory;
     }
+    
+    /**
+     * Sets the event loop which serves the connection of this PircBot.  If
+     * an event loop is set, no InputThread and OutputThread are created upon
+     * connecting.  Instead, reading, writing and delivering the outgoing
+     * message queue is done by the event loop, which may serve many PircBots
+     * at once.  The SocketFactory is not used in this case.  If a PircBot is
+     * currently connected to a server, then it must reconnect before this
+     * change takes effect.
+     *
+     * @param eventLoop The event loop to use or <code>null</code> to use
+     * dedicated threads for this PircBot.
+     */
+    public void setEventLoop(IrcEventLoop eventLoop) {
+        _eventLoop = eventLoop;
+    }
+    
+    /**
+     * Returns the event loop which serves the connection of this PircBot.
+     *
+     * @return The event loop or <code>null</code> if this PircBot uses
+     * dedicated threads.
+     */
+    public IrcEventLoop getEventLoop() {
+        return _eventLoop;
+    }
    
     /**
      * Sets the encoding charset to be used when sending or receiving lines
@@ -2801,6 +2938,9 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      *  <li>The bot must be in a channel to be able to know which users are
      *      in it.
      *  </li>
+     *  <li>The returned array is a snapshot which is not affected by later
+     *      changes to the channel.
+     *  </li>
      * </ul>
      * 
      * @param channel The name of the channel to list.
@@ -2811,20 +2951,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      * @see #onUserList(String,User[]) onUserList
      */
     public final User[] getUsers(String channel) {
-        channel = channel.toLowerCase();
-        User[] userArray = new User[0];
-        synchronized (_channels) {
-            Map<User, User> users = _channels.get(channel);
-            if (users != null) {
-                userArray = new User[users.size()];
-                Iterator<User> enumeration = users.values().iterator();
-                for (int i = 0; i < userArray.length; i++) {
-                    User user = (User) enumeration.next();
-                    userArray[i] = user;
-                }
-            }
-        }
-        return userArray;
+        return _channelStore.getUsers(channel);
     }
     
     /**
@@ -2850,20 +2977,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      * @return User object for the user if found, <code>null</code> if not found. 
      */
     public final User getUser(String sourceNick, String channel) {
-        channel = channel.toLowerCase();
-        synchronized (_channels) {
-            Map<User, User> users =  _channels.get(channel);
-            if (users != null) {
-                Iterator<User> enumeration = users.values().iterator();
-                while(enumeration.hasNext()) {
-                    User user = enumeration.next();
-                    if(user.getNick().equalsIgnoreCase(sourceNick)) {
-                        return user;
-                    }
-                }
-            }
-        }
-        return null;
+        return _channelStore.getUser(sourceNick, channel);
     }
 
     /**
@@ -2887,23 +3001,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      * @return Object a custom object associated with this user, <code>null</code> if none found. 
      */
     public final Object getUserInfo(String sourceNick) {
-        synchronized (_channels) {
-            Iterator<Map<User, User>> channelEnum = _channels.values().iterator();
-            while(channelEnum.hasNext()) {  
-                Map<User, User> users = channelEnum.next();
-                if (users != null) {
-                    Iterator<User> enumeration = users.values().iterator();
-                    while(enumeration.hasNext()) {
-                        User userObj = enumeration.next();
-                        if(userObj.getNick().equalsIgnoreCase(sourceNick)) {
-                            return userObj.getInfo();
-                        }
-                    }
-                }
-            }
-        }
-        
-        return null;
+        return _channelStore.getUserInfo(sourceNick);
     }
     
     /**
@@ -2917,21 +3015,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      * @param userInfo the custom user info
      */
     public final void setUserInfo(String nick, Object userInfo) {
-        synchronized (_channels) {
-            Iterator<Map<User, User>> channelEnum = _channels.values().iterator();
-            while(channelEnum.hasNext()) {  
-                Map<User, User> users = channelEnum.next();
-                if (users != null) {
-                    Iterator<User> enumeration = users.values().iterator();
-                    while(enumeration.hasNext()) {
-                        User userObj = (User) enumeration.next();
-                        if(userObj.getNick().equalsIgnoreCase(nick)) {
-                            userObj.setInfo(userInfo);
-                        }
-                    }
-                }
-            }
-        }
+        _channelStore.setUserInfo(nick, userInfo);
     }
     
     /**
@@ -2945,15 +3029,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      *         are in.
      */
     public final String[] getChannels() {
-        String[] channels = new String[0];
-        synchronized (_channels) {
-            channels = new String[_channels.size()];
-            Iterator<String> enumeration = _channels.keySet().iterator();
-            for (int i = 0; i < channels.length; i++) {
-                channels[i] = (String) enumeration.next();
-            }
-        }
-        return channels;
+        return _channelStore.getChannels();
     }
     
     /**
@@ -2968,23 +3044,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      * @return true if the bot and user are in any channel together, false if not
      */
     public final boolean isInCommonChannel(String nick) {
-        synchronized (_channels) {
-            Iterator<Map<User, User>> channelEnum = _channels.values().iterator();
-            while(channelEnum.hasNext()) {  
-                Map<User, User> users = channelEnum.next();
-                if (users != null) {
-                    Iterator<User> enumeration = users.values().iterator();
-                    while(enumeration.hasNext()) {
-                        User userObj = (User) enumeration.next();
-                        if(userObj.getNick().equalsIgnoreCase(nick)) {
-                            return true;
-                        }
-                    }
-                }
-            }
-        }
-
-        return false;
+        return _channelStore.getCommonChannels(nick).length > 0;
     }
     
     /**
@@ -2998,25 +3058,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      * @return the number of common channels that we and the user are in.
      */
     public final int numCommonChannels(String nick) {
-        int chanCount = 0;
-        
-        synchronized (_channels) {
-            Iterator<Map<User, User>> channelEnum = _channels.values().iterator();
-            while(channelEnum.hasNext()) {  
-                Map<User, User> users = channelEnum.next();
-                if (users != null) {
-                    Iterator<User> enumeration = users.values().iterator();
-                    while(enumeration.hasNext()) {
-                        User userObj = enumeration.next();
-                        if(userObj.getNick().equalsIgnoreCase(nick)) {
-                            chanCount++;
-                        }
-                    }
-                }
-            }
-        }
-        
-        return chanCount;
+        return _channelStore.getCommonChannels(nick).length;
     }
     
     /**
@@ -3031,33 +3073,7 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      *         and the user are in.
      */
     public final String[] getCommonChannels(String nick) {
-        String[] channels = new String[_channels.size()];
-        int count = 0;
-        synchronized (_channels) {
-            Iterator<String> chans = _channels.keySet().iterator();
-            while(chans.hasNext()) {
-                String chan = chans.next();
-
-                Map<User, User> users = (Map<User, User>) _channels.get(chan);
-                if (users != null) {
-                    Iterator<User> enumeration = users.keySet().iterator();
-                    while(enumeration.hasNext()) {
-                        User user = enumeration.next();
-                        if(user.getNick().equalsIgnoreCase(nick)) {
-                            channels[count] = chan;
-                            count++;
-                            break;
-                        }
-                    }
-                }
-            }
-        }
-
-        String[] retChannels = new String[count];
-        if(count > 0) {
-            System.arraycopy(channels, 0, retChannels, 0, count);
-        }
-        return retChannels;
+        return _channelStore.getCommonChannels(nick);
     }
     
     /**
@@ -3121,130 +3137,31 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
      * unpredictable behaviour.
      */
     public synchronized void dispose() {
-        _outputThread.interrupt();
-        _inputThread.dispose();
-    }
-    
-    
-    /**
-     * Add a user to the specified channel in our memory.
-     * Overwrite the existing entry if it exists.
-     */
-    private final void addUser(String channel, User user) {
-        channel = channel.toLowerCase();
-        synchronized (_channels) {
-            Map<User, User> users = (Map<User, User>) _channels.get(channel);
-            if (users == null) {
-                users = new HashMap<User, User>();
-                _channels.put(channel, users);
-            }
-            users.put(user, user);
+        if (_outputThread != null) {
+            _outputThread.interrupt();
         }
-    }
-    
-    
-    /**
-     * Remove a user from the specified channel in our memory.
-     */
-    private final User removeUser(String channel, String nick) {
-        channel = channel.toLowerCase();
-        User user = new User("", nick);
-        synchronized (_channels) {
-            Map<User, User> users = (Map<User, User>) _channels.get(channel);
-            if (users != null) {
-                return users.remove(user);
-            }
+        if (_connection != null) {
+            _connection.dispose();
         }
-        return null;
     }
     
     
     /**
-     * Remove a user from all channels in our memory.
-     */
-    private final void removeUser(String nick) {
-        synchronized (_channels) {
-            Iterator<String> enumeration = _channels.keySet().iterator();
-            while (enumeration.hasNext()) {
-                String channel = enumeration.next();
-                this.removeUser(channel, nick);
-            }
-        }
-    }
-    
-    
-    /**
-     * Rename a user if they appear in any of the channels we know about.
-     */
-    private final void renameUser(String oldNick, String newNick) {
-        synchronized (_channels) {
-            Iterator<String> enumeration = _channels.keySet().iterator();
-            while (enumeration.hasNext()) {
-                String channel = enumeration.next();
-                User user = getUser(oldNick, channel);
-                if (user == null) {
-                    continue;
-                }
-                // keep the original info object
-                Object obj = user.getInfo();
-                user = this.removeUser(channel, oldNick);
-                if (user != null) {
-                    user = new User(user.getPrefix(), newNick);
-                    // also put the info object back with this user
-                    user.setInfo(obj);
-                    this.addUser(channel, user);
-                }
-            }
-        }
-    }
-    
-    
-    /**
-     * Removes an entire channel from our memory of users.
+     * Returns the case mapping which is used to compare nicks and channel
+     * names. It is sent by the server when connecting and defaults to
+     * {@link CaseMapping#RFC1459}.
+     * 
+     * @return The case mapping of the server.
      */
-    private final void removeChannel(String channel) {
-        channel = channel.toLowerCase();
-        synchronized (_channels) {
-            _channels.remove(channel);
-        }
+    public final CaseMapping getCaseMapping() {
+        return _channelStore.getCaseMapping();
     }
     
     
-    /**
-     * Removes all channels from our memory of users.
-     */
-    private final void removeAllChannels() {
-        synchronized(_channels) {
-            _channels.clear();
-            _channels = new HashMap<String, Map<User, User>>();
-        }
-    }
-
-    private final void updateUser(String channel, char giveTake, String userPrefix, String nick) {
-        channel = channel.toLowerCase();
-        synchronized (_channels) {
-            Map<User, User> users = (Map<User, User>) _channels.get(channel);
-            if (users != null) {
-                Iterator<User> enumeration = users.keySet().iterator();
-                while(enumeration.hasNext()) {
-                    User userObj =enumeration.next();
-                    if (userObj.getNick().equalsIgnoreCase(nick)) {
-                        if(giveTake == '+') {
-                            userObj.addPrefix(userPrefix);
-                        } else {
-                            if(userObj.hasPrefix(userPrefix)) {
-                                userObj.removePrefix(userPrefix);
-                            }
-                        }
-                    }
-                }
-            }
-        }
-    }
-
     // Connection stuff.
-    private InputThread _inputThread = null;
+    private volatile IrcConnection _connection = null;
     private OutputThread _outputThread = null;
+    private IrcEventLoop _eventLoop = null;
     private String _charset = null;
     private String _fallbackCharset = null;
     private InetAddress _inetAddress = null;
@@ -3259,9 +3176,11 @@ public abstract class PircBot implements ReplyConstants, PircBotLogger {
     private Queue<String> _outQueue = new Queue<String>();
     private long _messageDelay = 1000;
     
-    // A Hashtable of channels that points to a selfreferential Hashtable of
-    // User objects (used to remember which users are in which channels).
-    private Map<String, Map<User, User>> _channels = new HashMap<String, Map<User, User>>();
+    // Remembers which users are in which channels.
+    private final ChannelStore _channelStore = new ChannelStore();
+    
+    // Reusable parser state for the line currently being handled.
+    private final IrcMessage _message = new IrcMessage();
     
     // A Hashtable to temporarily store channel topics when we join them
     // until we find out who set that topic.
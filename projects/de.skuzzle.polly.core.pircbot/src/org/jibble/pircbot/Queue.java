@@ -93,6 +93,20 @@ public class Queue<T> {
     }
     
     
+    /**
+     * Returns the Object at the front of the Queue without blocking.  This
+     * Object is then removed from the Queue.
+     *
+     * @return The next item from the front of the queue or <code>null</code>
+     *          if the Queue is empty.
+     */
+    public T poll() {
+        synchronized(_queue) {
+            return _queue.poll();
+        }
+    }
+    
+    
     /**
      * Returns true if the Queue is not empty.  If another
      * Thread empties the Queue before <b>next()</b> is
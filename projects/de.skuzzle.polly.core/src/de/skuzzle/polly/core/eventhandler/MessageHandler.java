@@ -6,6 +6,7 @@ import org.apache.log4j.Logger;
 
 import de.skuzzle.polly.core.internal.users.UserImpl;
 import de.skuzzle.polly.core.internal.users.UserManagerImpl;
+import de.skuzzle.polly.core.parser.InputParser;
 import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
 import de.skuzzle.polly.sdk.CommandManager;
 import de.skuzzle.polly.sdk.eventlistener.IrcUser;
@@ -70,6 +71,12 @@ public class MessageHandler implements MessageListener {
         final de.skuzzle.polly.core.internal.users.UserImpl executor = this.getUser(e.getUser());
         executor.setLastMessageTime(System.currentTimeMillis());
         
+        // most messages are no commands at all, so do not bother the thread pool 
+        // with them
+        if (!InputParser.isCommandShaped(e.getMessage())) {
+            return;
+        }
+        
         Runnable command = new Runnable() {
             @Override
             public void run() {
@@ -17,16 +17,17 @@ import java.util.TimerTask;
 import org.apache.log4j.Logger;
 
 import de.skuzzle.jeve.EventProvider;
+import de.skuzzle.polly.core.parser.ASTCache;
 import de.skuzzle.polly.core.parser.Evaluator;
-import de.skuzzle.polly.core.parser.InputScanner;
+import de.skuzzle.polly.core.parser.InputParser;
 import de.skuzzle.polly.core.parser.ParseException;
 import de.skuzzle.polly.core.parser.ParserProperties;
 import de.skuzzle.polly.core.parser.Position;
-import de.skuzzle.polly.core.parser.Token;
 import de.skuzzle.polly.core.parser.TokenType;
 import de.skuzzle.polly.core.parser.ast.Identifier;
 import de.skuzzle.polly.core.parser.ast.Root;
 import de.skuzzle.polly.core.parser.ast.declarations.Declaration;
+import de.skuzzle.polly.core.parser.ast.declarations.LazyNamespace;
 import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
 import de.skuzzle.polly.core.parser.ast.declarations.types.Type;
 import de.skuzzle.polly.core.parser.ast.directives.DelayDirective;
@@ -149,6 +150,8 @@ public class CommandManagerImpl extends AbstractDisposable
 	private Set<String> ignoredCommands;
 	private String encodingName;
 	private final Timer delayService;
+	private final ASTCache astCache;
+	private final boolean compile;
 	
 	
 	
@@ -166,6 +169,21 @@ public class CommandManagerImpl extends AbstractDisposable
 		
 		this.cmdHistory = new HashMap<String, CommandHistoryEntry>();
 		this.delayService = new Timer(true);
+		
+		final int cacheSize = config.readInt(Configuration.AST_CACHE_SIZE, 256);
+		this.astCache = cacheSize > 0 ? new ASTCache(cacheSize) : null;
+		this.compile = config.readBoolean(Configuration.COMPILE_COMMANDS);
+	}
+	
+	
+	
+	/**
+	 * Gets the cache of resolved command ASTs.
+	 * 
+	 * @return The cache or <code>null</code> if caching is disabled.
+	 */
+	public ASTCache getASTCache() {
+	    return this.astCache;
 	}
 	
 	
@@ -283,15 +301,21 @@ public class CommandManagerImpl extends AbstractDisposable
                 throws UnsupportedEncodingException, 
                        UnknownSignatureException, InsufficientRightsException, 
                        CommandException, UnknownCommandException {
+        final int nameEnd = InputParser.findCommandNameEnd(input);
+        if (nameEnd == -1) {
+            // input would be rejected by the parser anyway
+            return false;
+        }
+        
         Stopwatch watch = new MillisecondStopwatch();
         watch.start();
         
         Root root = null;
         try {
-            Map<String, Types> constants = this.getCommandConstants(input);
+            Map<String, Types> constants = this.getCommandConstants(input, nameEnd);
             
             final Namespace rootNs = Namespace.forName(executor.getName());
-            final Namespace workingNs = rootNs.enter();
+            final LazyNamespace workingNs = new LazyNamespace(rootNs);
             
             this.createContext(channel, executor, ircManager, constants, workingNs);
             root = this.parseMessage(input, rootNs, workingNs);
@@ -383,7 +407,8 @@ public class CommandManagerImpl extends AbstractDisposable
         watch.start();
         
         final Evaluator eval = new Evaluator(message.trim(), this.encodingName, 
-            new SimpleProblemReporter());
+            new SimpleProblemReporter(), this.astCache);
+        eval.setCompile(this.compile);
         eval.evaluate(rootNs, workingNs);
 
         watch.stop();
@@ -400,47 +425,47 @@ public class CommandManagerImpl extends AbstractDisposable
     
     
     
-    private void createContext(String channel, User user, IrcManager ircManager, 
-    		Map<String, Types> constants, Namespace d) throws ASTTraversalException {
-        
-        List<Expression> channels = new ArrayList<Expression>();
-        for (String chan : ircManager.getChannels()) {
-            channels.add(new ChannelLiteral(Position.NONE, chan));
-        }
-        
-        // ISSUE: 0000008
-        List<Expression> users = new ArrayList<Expression>();
-        for (String u : ircManager.getChannelUser(channel)) {
-            users.add(new UserLiteral(Position.NONE, u));
-        }
-        d.declare(new Declaration(Position.NONE, new Identifier("me"), 
-            new UserLiteral(Position.NONE, user.getCurrentNickName())));
-        d.declare(new Declaration(Position.NONE, new Identifier("here"), 
-            new ChannelLiteral(Position.NONE, channel)));
-        //d.declare(new Declaration(Position.NONE, new Identifier("all"), 
-        //    new ListLiteral(Position.NONE, channels, Type.CHANNEL)));
-        d.declare(new Declaration(Position.NONE, new Identifier("each"), 
-            new ListLiteral(Position.NONE, users, Type.USER)));
+    private void createContext(final String channel, final User user, 
+            final IrcManager ircManager, Map<String, Types> constants, LazyNamespace d) 
+                throws ASTTraversalException {
         
-        int m = Calendar.getInstance().get(Calendar.DAY_OF_WEEK);
-        d.declare(new Declaration(Position.NONE, new Identifier("morgen"), 
-            new DateLiteral(Position.NONE, DateUtils.getDayDate(m + 1))));
-        d.declare(new Declaration(Position.NONE, new Identifier("übermorgen"), 
-            new DateLiteral(Position.NONE, DateUtils.getDayDate(m + 2))));
+        // context declarations are only created if the input actually refers to them
+        d.declareLazy("me", new LazyNamespace.DeclarationProvider() { //$NON-NLS-1$
+            @Override
+            public Declaration provide() {
+                return new Declaration(Position.NONE, new Identifier("me"),  //$NON-NLS-1$
+                    new UserLiteral(Position.NONE, user.getCurrentNickName()));
+            }
+        });
+        d.declareLazy("here", new LazyNamespace.DeclarationProvider() { //$NON-NLS-1$
+            @Override
+            public Declaration provide() {
+                return new Declaration(Position.NONE, new Identifier("here"),  //$NON-NLS-1$
+                    new ChannelLiteral(Position.NONE, channel));
+            }
+        });
+        d.declareLazy("each", new LazyNamespace.DeclarationProvider() { //$NON-NLS-1$
+            @Override
+            public Declaration provide() {
+                // ISSUE: 0000008
+                final List<Expression> users = new ArrayList<Expression>();
+                for (String u : ircManager.getChannelUser(channel)) {
+                    users.add(new UserLiteral(Position.NONE, u));
+                }
+                return new Declaration(Position.NONE, new Identifier("each"),  //$NON-NLS-1$
+                    new ListLiteral(Position.NONE, users, Type.USER));
+            }
+        });
         
+        final int m = Calendar.getInstance().get(Calendar.DAY_OF_WEEK);
+        this.declareDayLazy(d, "morgen", m + 1); //$NON-NLS-1$
+        this.declareDayLazy(d, "übermorgen", m + 2); //$NON-NLS-1$
         
         int start = Calendar.MONDAY;
         for (String day : DAYS) {
-            d.declare(new Declaration(Position.NONE, new Identifier(day), 
-                new DateLiteral(Position.NONE, DateUtils.getDayDate(start++))));
+            this.declareDayLazy(d, day, start++);
         }
         
-        /*logger.trace("    me     := " + user.getCurrentNickName());
-        logger.trace("    here   := " + channel);
-        logger.trace("    all    := " + channels.toString());
-        logger.trace("    each   := " + users);
-        logger.trace("    morgen := " + tmp.getTime());*/
-        
         if (constants != null && !constants.isEmpty()) {
             logger.trace("Command-specific constant names:");
             for (Entry<String, Types> e : constants.entrySet()) {
@@ -454,6 +479,18 @@ public class CommandManagerImpl extends AbstractDisposable
     
     
     
+    private void declareDayLazy(LazyNamespace d, final String name, final int day) {
+        d.declareLazy(name, new LazyNamespace.DeclarationProvider() {
+            @Override
+            public Declaration provide() {
+                return new Declaration(Position.NONE, new Identifier(name), 
+                    new DateLiteral(Position.NONE, DateUtils.getDayDate(day)));
+            }
+        });
+    }
+    
+    
+    
     private Signature createSignature(Root root) throws UnknownSignatureException {
         List<Types> parameters = new ArrayList<Types>(root.getResults().size());
         for (Literal lit : root.getResults()) {
@@ -464,18 +501,13 @@ public class CommandManagerImpl extends AbstractDisposable
 
 
     
-    private Map<String, Types> getCommandConstants(String input) {
+    private Map<String, Types> getCommandConstants(String input, int nameEnd) {
         try {
-            InputScanner s = new InputScanner(input);
-            if (!s.match(TokenType.COLON)) {
+            final String name = input.substring(input.indexOf(':') + 1, nameEnd);
+            final Command cmd = this.commands.get(name.toLowerCase());
+            if (cmd == null) {
                 return null;
             }
-            Token id = s.lookAhead();
-            if (!s.match(TokenType.IDENTIFIER)) {
-                return null;
-            }
-            
-            Command cmd = this.getCommand(id.getStringValue());
             
             logger.trace("Renewing command-specific constants");
             final Map<String, Types> constants = new HashMap<>();
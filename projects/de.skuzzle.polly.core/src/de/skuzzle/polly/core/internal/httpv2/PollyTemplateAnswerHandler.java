@@ -41,6 +41,14 @@ public class PollyTemplateAnswerHandler extends TemplateAnswerHandler {
     
     
     
+    @Override
+    protected String getEngineKey(String templatePath) {
+        // all templates are resolved by the same loaders
+        return this.jarResourceLoaderPath;
+    }
+    
+    
+    
     @Override
     protected void prepare(org.apache.velocity.app.VelocityEngine ve, 
             String templatePath) {
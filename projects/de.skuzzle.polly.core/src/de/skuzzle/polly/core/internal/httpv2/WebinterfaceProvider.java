@@ -33,8 +33,7 @@ import de.skuzzle.polly.http.api.HttpServer;
 import de.skuzzle.polly.http.api.HttpServletServer;
 import de.skuzzle.polly.http.api.ServerFactory;
 import de.skuzzle.polly.http.api.answers.HttpAnswer;
-import de.skuzzle.polly.http.api.answers.HttpAnswerHandler;
-import de.skuzzle.polly.http.api.answers.HttpResourceAnswer;
+import de.skuzzle.polly.http.api.answers.HttpAnswers;
 import de.skuzzle.polly.http.api.answers.HttpTemplateAnswer;
 import de.skuzzle.polly.http.api.handler.DirectoryEventHandler;
 import de.skuzzle.polly.http.api.handler.HttpEventHandler;
@@ -249,8 +248,10 @@ public class WebinterfaceProvider extends AbstractProvider {
         final PluginManagerImpl pluginManager = this.requireNow(
                 PluginManagerImpl.class, true);
         
-        final HttpAnswerHandler replace = new PollyTemplateAnswerHandler(
+        final PollyTemplateAnswerHandler replace = new PollyTemplateAnswerHandler(
                 Polly.PLUGIN_FOLDER, pluginManager.loadedPlugins());
+        replace.setReloadTemplates(
+            this.serverCfg.readBoolean(Configuration.HTTP_TEMPLATE_RELOAD));
         this.server.setAnswerHandler(HttpTemplateAnswer.class, replace);
         
         
@@ -262,7 +263,11 @@ public class WebinterfaceProvider extends AbstractProvider {
             @Override
             public HttpAnswer handleHttpEvent(String registered, HttpEvent e,
                     HttpEventHandler next) throws HttpException {
-                return new HttpResourceAnswer(200, cl, e.getPlainUri());
+                try {
+                    return HttpAnswers.newResourceAnswer(e, cl, e.getPlainUri());
+                } catch (IOException e1) {
+                    throw new HttpException(e1);
+                }
             }
         });  
         this.server.start();
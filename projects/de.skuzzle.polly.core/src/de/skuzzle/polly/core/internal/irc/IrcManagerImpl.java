@@ -3,16 +3,16 @@ package de.skuzzle.polly.core.internal.irc;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 import org.apache.log4j.Logger;
+import org.jibble.pircbot.IrcEventLoop;
 import org.jibble.pircbot.IrcException;
 import org.jibble.pircbot.NickAlreadyInUseException;
 import org.jibble.pircbot.PircBot;
@@ -83,10 +83,8 @@ public class IrcManagerImpl extends AbstractDisposable implements IrcManager, Di
             NickChangeEvent e = new NickChangeEvent(
                     IrcManagerImpl.this, oldUser, newUser);
             
-            synchronized (IrcManagerImpl.this.onlineUsers) {
-                IrcManagerImpl.this.onlineUsers.remove(oldIrcName);
-                IrcManagerImpl.this.onlineUsers.add(newIrcName);
-            }
+            IrcManagerImpl.this.onlineUsers.remove(oldIrcName);
+            IrcManagerImpl.this.onlineUsers.add(newIrcName);
             IrcManagerImpl.this.fireNickChange(e);
         }
         
@@ -138,21 +136,13 @@ public class IrcManagerImpl extends AbstractDisposable implements IrcManager, Di
         private void checkUserLost(String channel, IrcUser user) {
             /* ISSUE: 0000002 && 0000026*/
             boolean known = false;
-            for (String c : this.getChannels()) {
+            for (String c : this.getCommonChannels(user.getNickName())) {
                 
                 // HACK: continue on own channel as pircbot may not have removed the user
                 //       from its data structure
-                if (c.equals(channel)) {
-                    continue;
-                }
-                
-                for (User u : this.getUsers(c)) {
-                    String uStripped = IrcManagerImpl.this.stripNickname(u.getNick());
-                    
-                    if (uStripped.equals(user.getNickName())) {
-                        known = true;
-                        break;
-                    }
+                if (!c.equalsIgnoreCase(channel)) {
+                    known = true;
+                    break;
                 }
             }
             if (!known) {
@@ -263,13 +253,11 @@ public class IrcManagerImpl extends AbstractDisposable implements IrcManager, Di
         
         
         private void checkUserSpotted(String channel, String nickName, int type) {
-            synchronized (IrcManagerImpl.this.onlineUsers) {
-                if (IrcManagerImpl.this.onlineUsers.add(nickName)) {
-                    IrcUser user = new IrcUser(nickName, channel, "");
-                    SpotEvent e = new SpotEvent(IrcManagerImpl.this, user, channel, 
-                            type);
-                    IrcManagerImpl.this.fireUserSpotted(e);
-                }
+            if (IrcManagerImpl.this.onlineUsers.add(nickName)) {
+                IrcUser user = new IrcUser(nickName, channel, "");
+                SpotEvent e = new SpotEvent(IrcManagerImpl.this, user, channel, 
+                        type);
+                IrcManagerImpl.this.fireUserSpotted(e);
             }
         }
         
@@ -287,14 +275,14 @@ public class IrcManagerImpl extends AbstractDisposable implements IrcManager, Di
     private Configuration config;
     private boolean disconnect;
     private BotConnectionSettings recent;
-    private MessageScheduler messageScheduler;
+    private TokenBucketScheduler messageScheduler;
     
     
     
     public IrcManagerImpl(String ircName, EventProvider eventProvider, 
             Configuration config, String encodingName) {
         this.config = config;
-        this.onlineUsers = Collections.synchronizedSet(new TreeSet<String>());
+        this.onlineUsers = new ConcurrentSkipListSet<String>();
         this.topics = new HashMap<String, String>();
         this.eventProvider = eventProvider;
         this.bot.changeNick(ircName);
@@ -307,13 +295,21 @@ public class IrcManagerImpl extends AbstractDisposable implements IrcManager, Di
         // Message thread has its own delay
         this.bot.setMessageDelay(0);
         
+        if (config.readBoolean(Configuration.IRC_NIO_TRANSPORT)) {
+            this.bot.setEventLoop(IrcEventLoop.getDefault());
+        }
+        
         /* 
          * IRC Verbose output
          */
         this.bot.setVerbose(false);
         
-        this.messageScheduler = new RoundRobinScheduler(this, 
-            config.readInt(Configuration.MESSAGE_DELAY));
+        this.messageScheduler = new TokenBucketScheduler(this, 
+            config.readInt(Configuration.MESSAGE_DELAY),
+            config.readInt(Configuration.MESSAGE_BURST, 1),
+            config.readInt(Configuration.MESSAGE_PENALTY_BYTES, 0),
+            config.readInt(Configuration.LINE_LENGTH),
+            config.readBoolean(Configuration.MESSAGE_COALESCING));
         this.messageScheduler.start();
     }
     
@@ -388,20 +384,19 @@ public class IrcManagerImpl extends AbstractDisposable implements IrcManager, Di
 
     @Override
 	public boolean isOnline(String nickName) {
-        synchronized (this.onlineUsers) {
-            return this.onlineUsers.contains(nickName);
-        }
+        return this.onlineUsers.contains(nickName);
     }
     
     
     
     @Override
     public boolean isOnlineIgnoreCase(String nickName) {
-        synchronized (this.onlineUsers) {
-            for (String s : this.onlineUsers) {
-                if (s.equalsIgnoreCase(nickName)) {
-                    return true;
-                }
+        if (this.bot.isInCommonChannel(nickName)) {
+            return true;
+        }
+        for (String s : this.onlineUsers) {
+            if (s.equalsIgnoreCase(nickName)) {
+                return true;
             }
         }
         return false;
@@ -456,13 +451,7 @@ public class IrcManagerImpl extends AbstractDisposable implements IrcManager, Di
     
     @Override
 	public boolean isOnChannel(String channel, String nickName) {       
-        User[] users = this.bot.getUsers(channel);
-        for (User user : users) {
-            if (this.stripNickname(user.getNick()).equalsIgnoreCase(nickName)) {
-                return true;
-            }
-        }
-        return false;
+        return this.bot.getUser(nickName, channel) != null;
     }
     
     
@@ -568,6 +557,19 @@ public class IrcManagerImpl extends AbstractDisposable implements IrcManager, Di
     
     @Override
     public void sendRawCommand(String command) {
+        if (this.isConnected()) {
+            this.messageScheduler.addRawCommand(command);
+        }
+    }
+    
+    
+    
+    /**
+     * Sends a raw command without passing it through the message scheduler.
+     * 
+     * @param command The raw irc command.
+     */
+    void sendRawCommandNow(String command) {
         if (this.isConnected()) {
             this.bot.sendRawLineViaQueue(command);
         }
@@ -0,0 +1,387 @@
+package de.skuzzle.polly.core.internal.irc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.skuzzle.polly.sdk.exceptions.DisposingException;
+
+
+/**
+ * Output scheduler which models the flood protection of an ircd as a token bucket.
+ * Each sent line costs <tt>messageDelay</tt> milliseconds plus an additional
+ * <tt>messageDelay</tt> for every <tt>penaltyBytes</tt> characters of the line (like
+ * ircds penalize long lines). A value of 0 for <tt>penaltyBytes</tt> disables the
+ * length penalty. Tokens are refilled at a rate of one millisecond per
+ * millisecond and up to <tt>burst</tt> lines may be sent without any delay.
+ *
+ * <p>Pending messages are scheduled as follows:</p>
+ * <ul>
+ * <li>Raw commands (like NICKSERV commands) and messages to services are sent
+ * before any chat message.</li>
+ * <li>Chat messages are queued per target. The targets are served using start-time
+ * fair queuing, where the virtual time of a target advances by the cost of each
+ * line sent to it. Thus, a target which receives many or long lines can not
+ * starve other targets.</li>
+ * <li>Within a target, all sources which queued messages are served round
+ * robin.</li>
+ * <li>If enabled, consecutive lines of the same source to the same target are
+ * coalesced into a single line as long as it does not exceed the line length.</li>
+ * </ul>
+ *
+ * @author Simon Taddiken
+ */
+public class TokenBucketScheduler extends Thread implements MessageScheduler {
+
+    /** Separator used when coalescing consecutive lines */
+    private final static String COALESCE_SEPARATOR = " | "; //$NON-NLS-1$
+
+    /** Targets for which messages are sent using the priority lane */
+    private final static String[] SERVICES = { "nickserv", "chanserv" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+
+
+    private final static class Target {
+        private final String name;
+        private final Map<Object, ArrayDeque<String>> queues;
+        private final ArrayDeque<Object> sources;
+        private long virtualTime;
+
+
+
+        public Target(String name) {
+            this.name = name;
+            this.queues = new HashMap<Object, ArrayDeque<String>>();
+            this.sources = new ArrayDeque<Object>();
+        }
+
+
+
+        public void add(Object source, String message) {
+            ArrayDeque<String> queue = this.queues.get(source);
+            if (queue == null) {
+                queue = new ArrayDeque<String>();
+                this.queues.put(source, queue);
+                this.sources.addLast(source);
+            }
+            queue.addLast(message);
+        }
+
+
+
+        public boolean isEmpty() {
+            return this.sources.isEmpty();
+        }
+
+
+
+        public ArrayDeque<String> peekQueue() {
+            return this.queues.get(this.sources.peekFirst());
+        }
+
+
+
+        public void rotate() {
+            final Object source = this.sources.pollFirst();
+            if (this.queues.get(source).isEmpty()) {
+                this.queues.remove(source);
+            } else {
+                this.sources.addLast(source);
+            }
+        }
+    }
+
+
+
+    private final static class Line {
+        private final String target;
+        private final String message;
+        private final long cost;
+
+
+        public Line(String target, String message, long cost) {
+            this.target = target;
+            this.message = message;
+            this.cost = cost;
+        }
+    }
+
+
+
+    private final IrcManagerImpl ircManager;
+    private final Lock lock;
+    private final Condition notEmpty;
+    private final ArrayDeque<Line> priority;
+    private final Map<String, Target> targets;
+    private final List<Target> activeTargets;
+    private final int burst;
+    private final int penaltyBytes;
+    private final int lineLength;
+    private final boolean coalesce;
+    private volatile int messageDelay;
+    private volatile boolean shutdown;
+    private long virtualTime;
+    private long tokens;
+    private long lastRefill;
+
+
+
+    public TokenBucketScheduler(IrcManagerImpl ircManager, int messageDelay, int burst,
+            int penaltyBytes, int lineLength, boolean coalesce) {
+        super("IRC_MESSAGE_SCHEDULER"); //$NON-NLS-1$
+        this.ircManager = ircManager;
+        this.lock = new ReentrantLock();
+        this.notEmpty = this.lock.newCondition();
+        this.priority = new ArrayDeque<Line>();
+        this.targets = new HashMap<String, Target>();
+        this.activeTargets = new ArrayList<Target>();
+        this.messageDelay = messageDelay;
+        this.burst = Math.max(1, burst);
+        this.penaltyBytes = penaltyBytes;
+        this.lineLength = lineLength;
+        this.coalesce = coalesce;
+        this.tokens = this.capacity();
+        this.lastRefill = System.nanoTime();
+    }
+
+
+
+    @Override
+    public void addMessage(String channel, String message, Object source) {
+        this.lock.lock();
+        try {
+            if (isService(channel)) {
+                this.priority.addLast(new Line(channel, message, this.cost(message)));
+            } else {
+                Target target = this.targets.get(channel);
+                if (target == null) {
+                    target = new Target(channel);
+                    this.targets.put(channel, target);
+                }
+                if (target.isEmpty()) {
+                    // target becomes active: it must not profit from the time it
+                    // has been idle
+                    target.virtualTime = this.virtualTime;
+                    this.activeTargets.add(target);
+                }
+                target.add(source, message);
+            }
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+
+
+    /**
+     * Queues a raw command which is sent before any pending chat message.
+     *
+     * @param command The raw irc command.
+     */
+    public void addRawCommand(String command) {
+        this.lock.lock();
+        try {
+            this.priority.addLast(new Line(null, command, this.cost(command)));
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+
+
+    @Override
+    public void run() {
+        while (!this.shutdown && !this.isInterrupted()) {
+            final Line next;
+            this.lock.lock();
+            try {
+                while (this.priority.isEmpty() && this.activeTargets.isEmpty()) {
+                    this.notEmpty.await();
+                }
+                next = this.awaitTokensAndPoll();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                this.lock.unlock();
+            }
+
+            if (next.target == null) {
+                this.ircManager.sendRawCommandNow(next.message);
+            } else {
+                this.ircManager.sendMessage(next.target, next.message);
+            }
+        }
+    }
+
+
+
+    private Line awaitTokensAndPoll() throws InterruptedException {
+        while (true) {
+            final Line line = this.peek();
+            this.refill();
+
+            // lines which cost more than the whole bucket are sent when it is full
+            final long required = Math.min(line.cost, this.capacity());
+            if (this.tokens >= required) {
+                this.tokens -= line.cost;
+                this.poll();
+                return line;
+            }
+            // new messages may arrive meanwhile which may take precedence
+            this.notEmpty.await(required - this.tokens, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+
+    /**
+     * Determines the next line to send without removing it.
+     * @return The next line.
+     */
+    private Line peek() {
+        if (!this.priority.isEmpty()) {
+            return this.priority.peekFirst();
+        }
+        final Target target = this.nextTarget();
+        final ArrayDeque<String> queue = target.peekQueue();
+
+        String message = queue.peekFirst();
+        if (this.coalesce && queue.size() > 1) {
+            final StringBuilder b = new StringBuilder(message);
+            final Iterator<String> it = queue.iterator();
+            it.next();
+            while (it.hasNext()) {
+                final String nextMsg = it.next();
+                if (b.length() + COALESCE_SEPARATOR.length() + nextMsg.length() >
+                        this.lineLength) {
+                    break;
+                }
+                b.append(COALESCE_SEPARATOR).append(nextMsg);
+            }
+            message = b.toString();
+        }
+        return new Line(target.name, message, this.cost(message));
+    }
+
+
+
+    /**
+     * Removes the line which has been determined by the last call to
+     * {@link #peek()}.
+     */
+    private void poll() {
+        if (!this.priority.isEmpty()) {
+            this.priority.pollFirst();
+            return;
+        }
+        final Target target = this.nextTarget();
+        final ArrayDeque<String> queue = target.peekQueue();
+
+        String message = queue.pollFirst();
+        int length = message.length();
+        while (this.coalesce && !queue.isEmpty() && length +
+                COALESCE_SEPARATOR.length() + queue.peekFirst().length() <=
+                this.lineLength) {
+            length += COALESCE_SEPARATOR.length() + queue.pollFirst().length();
+        }
+
+        target.virtualTime += this.cost(length);
+        this.virtualTime = target.virtualTime;
+        target.rotate();
+        if (target.isEmpty()) {
+            this.activeTargets.remove(target);
+            this.targets.remove(target.name);
+        }
+    }
+
+
+
+    private Target nextTarget() {
+        Target min = null;
+        for (final Target target : this.activeTargets) {
+            if (min == null || target.virtualTime < min.virtualTime) {
+                min = target;
+            }
+        }
+        return min;
+    }
+
+
+
+    private void refill() {
+        final long now = System.nanoTime();
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(now - this.lastRefill);
+        if (elapsed > 0) {
+            this.tokens = Math.min(this.capacity(), this.tokens + elapsed);
+            this.lastRefill += TimeUnit.MILLISECONDS.toNanos(elapsed);
+        }
+    }
+
+
+
+    private long capacity() {
+        return (long) this.burst * this.messageDelay;
+    }
+
+
+
+    private long cost(String message) {
+        return this.cost(message.length());
+    }
+
+
+
+    private long cost(int length) {
+        // the irc manager wraps long messages into several lines
+        final int lines = this.lineLength > 0
+            ? Math.max(1, (length + this.lineLength - 1) / this.lineLength)
+            : 1;
+        long cost = (long) lines * this.messageDelay;
+        if (this.penaltyBytes > 0) {
+            cost += (long) this.messageDelay * length / this.penaltyBytes;
+        }
+        return cost;
+    }
+
+
+
+    private static boolean isService(String target) {
+        for (final String service : SERVICES) {
+            if (service.equalsIgnoreCase(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+
+    @Override
+    public boolean isDisposed() {
+        return this.shutdown;
+    }
+
+
+
+    @Override
+    public void dispose() throws DisposingException {
+        this.shutdown = true;
+        this.interrupt();
+    }
+
+
+
+    @Override
+    public void setMessageDelay(int delay) {
+        this.messageDelay = delay;
+    }
+}
@@ -130,6 +130,15 @@ public class MyPollyImpl extends AbstractDisposable implements MyPolly {
 		this.webInterfaceManager = webInterfaceManager;
 		this.runOnceManager = runOnceManager;
 		this.statusManager = new StatusManagerImpl(this);
+		
+		if (cmdMngr.getASTCache() != null) {
+		    this.statusManager.registerStatusProvider("Command AST cache",  //$NON-NLS-1$
+		        myPolly -> cmdMngr.getASTCache().toString());
+		}
+		this.statusManager.registerStatusProvider("Persistence write queue",  //$NON-NLS-1$
+		    myPolly -> pMngr.getWriteQueueStatistics().toString());
+		this.statusManager.registerStatusProvider("Entity cache",  //$NON-NLS-1$
+		    myPolly -> pMngr.getEntityCache().toString());
 	}
 	
 	
@@ -0,0 +1,500 @@
+package de.skuzzle.polly.core.internal.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * <p>Caches the results of named queries for configured entity types. Each type has
+ * its own region with a time to live, a maximum size and an eviction policy. A query
+ * is cached in the region of the type which is passed to the Read method, so caching
+ * e.g. <code>UserImpl</code> does not cache queries which are typed
+ * <code>User</code>.</p>
+ *
+ * <p>Regions are invalidated whenever an entity of their type (or of a subtype) is
+ * persisted, updated or removed. This is reported by {@link EntityCacheListener},
+ * which is registered as default entity listener, so changes to managed entities are
+ * noticed even if they are not passed to a Write method. As listeners are notified
+ * while the transaction commits, the changed types are invalidated once more after
+ * the commit finished. Results of queries which started before an invalidation are
+ * not cached.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Simon Taddiken
+ */
+public final class EntityCache {
+
+    private final static Logger logger = Logger.getLogger(EntityCache.class.getName());
+
+    /** Cached value for queries without result */
+    private final static Object NO_RESULT = new Object();
+
+
+
+    /**
+     * How entries are chosen to be evicted when a region is full.
+     */
+    public static enum EvictionPolicy {
+        /** Evict the entry which has not been read for the longest time */
+        LRU,
+        /** Evict the entry which has been read the least number of times */
+        LFU;
+    }
+
+
+
+    private final static class CacheEntry {
+        private final Object value;
+        private final long expires;
+        private int uses;
+
+
+
+        public CacheEntry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+
+
+    /**
+     * Key of a cached query result.
+     */
+    private final static class QueryKey {
+        private final String query;
+        private final List<Object> params;
+        private final int first;
+        private final int limit;
+
+
+
+        public QueryKey(String query, Object[] params, int first, int limit) {
+            this.query = query;
+            this.params = Arrays.asList(params);
+            this.first = first;
+            this.limit = limit;
+        }
+
+
+
+        @Override
+        public int hashCode() {
+            int result = this.query.hashCode();
+            result = 31 * result + this.params.hashCode();
+            result = 31 * result + this.first;
+            return 31 * result + this.limit;
+        }
+
+
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            } else if (!(obj instanceof QueryKey)) {
+                return false;
+            }
+            final QueryKey other = (QueryKey) obj;
+            return this.first == other.first && this.limit == other.limit &&
+                this.query.equals(other.query) && this.params.equals(other.params);
+        }
+    }
+
+
+
+    /**
+     * Cached query results of a single entity type.
+     */
+    final static class Region {
+        private final String typeName;
+        private final long ttl;
+        private final int maxSize;
+        private final EvictionPolicy policy;
+        private final LinkedHashMap<QueryKey, CacheEntry> entries;
+        private long generation;
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long invalidations;
+
+
+
+        private Region(String typeName, int ttlSeconds, int maxSize,
+                EvictionPolicy policy) {
+            this.typeName = typeName;
+            this.ttl = TimeUnit.SECONDS.toNanos(ttlSeconds);
+            this.maxSize = maxSize;
+            this.policy = policy;
+            this.entries = new LinkedHashMap<QueryKey, CacheEntry>(16, 0.75f,
+                policy == EvictionPolicy.LRU);
+        }
+
+
+
+        /**
+         * Gets the current generation, which has to be passed to
+         * {@link #put(QueryKey, Object, long)} after the query has been executed.
+         *
+         * @return The generation.
+         */
+        public synchronized long getGeneration() {
+            return this.generation;
+        }
+
+
+
+        private synchronized Object get(QueryKey key) {
+            final CacheEntry entry = this.entries.get(key);
+            if (entry == null) {
+                ++this.misses;
+                return null;
+            } else if (entry.expires - System.nanoTime() < 0) {
+                this.entries.remove(key);
+                ++this.misses;
+                return null;
+            }
+            ++entry.uses;
+            ++this.hits;
+            return entry.value;
+        }
+
+
+
+        private synchronized void put(QueryKey key, Object value, long generation) {
+            if (generation != this.generation) {
+                // region has been invalidated while the query was running
+                return;
+            }
+            if (this.entries.size() >= this.maxSize && !this.entries.containsKey(key)) {
+                this.evict();
+            }
+            this.entries.put(key, new CacheEntry(value, System.nanoTime() + this.ttl));
+        }
+
+
+
+        private void evict() {
+            final Iterator<Entry<QueryKey, CacheEntry>> it =
+                this.entries.entrySet().iterator();
+            if (!it.hasNext()) {
+                return;
+            }
+            if (this.policy == EvictionPolicy.LRU) {
+                // entries are in access order, the first one is the least recent
+                it.next();
+                it.remove();
+            } else {
+                // entries are in insertion order, so the oldest of the least
+                // frequently used entries is evicted
+                QueryKey victim = null;
+                int minUses = Integer.MAX_VALUE;
+                for (final Entry<QueryKey, CacheEntry> e : this.entries.entrySet()) {
+                    if (e.getValue().uses < minUses) {
+                        minUses = e.getValue().uses;
+                        victim = e.getKey();
+                    }
+                }
+                this.entries.remove(victim);
+            }
+            ++this.evictions;
+        }
+
+
+
+        private synchronized void invalidate() {
+            ++this.generation;
+            if (!this.entries.isEmpty()) {
+                ++this.invalidations;
+                this.entries.clear();
+            }
+        }
+
+
+
+        @Override
+        public synchronized String toString() {
+            final long requests = this.hits + this.misses;
+            return String.format(
+                "%s: size: %d/%d, hit rate: %d%%, hits: %d, misses: %d, " + //$NON-NLS-1$
+                "evictions: %d, invalidations: %d", //$NON-NLS-1$
+                this.typeName, this.entries.size(), this.maxSize,
+                requests == 0 ? 0 : this.hits * 100 / requests, this.hits,
+                this.misses, this.evictions, this.invalidations);
+        }
+    }
+
+
+
+    /**
+     * Parses the region settings from the given configuration values. Each value has
+     * the format <code>typeName:ttlSeconds:maxSize:policy</code>, where the policy is
+     * optional and defaults to {@link EvictionPolicy#LRU}. Invalid values are logged
+     * and skipped.
+     *
+     * @param settings The configuration values.
+     * @return A cache with the configured regions.
+     */
+    public static EntityCache fromSettings(Collection<String> settings) {
+        final EntityCache cache = new EntityCache();
+        for (final String setting : settings) {
+            if (setting.trim().isEmpty()) {
+                continue;
+            }
+            final String[] parts = setting.trim().split(":"); //$NON-NLS-1$
+            try {
+                if (parts.length < 3 || parts.length > 4) {
+                    throw new IllegalArgumentException();
+                }
+                final EvictionPolicy policy = parts.length == 4
+                    ? EvictionPolicy.valueOf(parts[3].trim().toUpperCase())
+                    : EvictionPolicy.LRU;
+                cache.addRegion(parts[0].trim(), Integer.parseInt(parts[1].trim()),
+                    Integer.parseInt(parts[2].trim()), policy);
+            } catch (IllegalArgumentException e) {
+                logger.warn("Invalid entity cache setting: '" + setting + "'");
+            }
+        }
+        return cache;
+    }
+
+
+
+    private final Map<String, Region> regions;
+
+    /** Regions to invalidate by changed entity class */
+    private final Map<Class<?>, Collection<Region>> affected;
+
+    /** Entity classes which have been changed during the current transaction */
+    private final ThreadLocal<Set<Class<?>>> changed;
+
+
+
+    public EntityCache() {
+        this.regions = new ConcurrentHashMap<String, Region>();
+        this.affected = new ConcurrentHashMap<Class<?>, Collection<Region>>();
+        this.changed = new ThreadLocal<Set<Class<?>>>();
+    }
+
+
+
+    /**
+     * Caches the query results of the given type.
+     *
+     * @param typeName Fully qualified name of the type.
+     * @param ttlSeconds Time in seconds after which a cached result expires.
+     * @param maxSize Maximum number of cached results.
+     * @param policy Eviction policy if the maximum size is reached.
+     */
+    public void addRegion(String typeName, int ttlSeconds, int maxSize,
+            EvictionPolicy policy) {
+        if (ttlSeconds <= 0 || maxSize <= 0) {
+            throw new IllegalArgumentException("ttl and size must be positive"); //$NON-NLS-1$
+        }
+        this.regions.put(typeName, new Region(typeName, ttlSeconds, maxSize, policy));
+        this.affected.clear();
+        logger.debug("Caching queries of " + typeName + " for " + ttlSeconds +
+            "s, size: " + maxSize + ", eviction: " + policy);
+    }
+
+
+
+    /**
+     * Gets the region in which queries with the given result type are cached.
+     *
+     * @param type The type passed to the Read method.
+     * @return The region or <code>null</code> if the type is not cached.
+     */
+    Region getRegion(Class<?> type) {
+        if (this.regions.isEmpty()) {
+            return null;
+        }
+        return this.regions.get(type.getName());
+    }
+
+
+
+    /**
+     * Looks up a cached query result.
+     *
+     * @param region The region obtained by {@link #getRegion(Class)}.
+     * @param query Name of the query.
+     * @param params The query parameters.
+     * @param first Index of the first result or -1.
+     * @param limit Maximum number of results or -1.
+     * @param list Whether a list or a single result is requested.
+     * @return The cached result, <code>null</code> if it is not cached or
+     *          {@link #NO_RESULT} if the query has been cached without result.
+     */
+    Object get(Region region, String query, Object[] params, int first, int limit,
+            boolean list) {
+        final Object result = region.get(key(query, params, first, limit, list));
+        if (result instanceof List<?>) {
+            // lists may be modified by the caller
+            return new ArrayList<Object>((List<?>) result);
+        }
+        return result;
+    }
+
+
+
+    /**
+     * Caches a query result if the region has not been invalidated since the given
+     * generation.
+     */
+    void put(Region region, long generation, String query, Object[] params, int first,
+            int limit, boolean list, Object result) {
+        final Object value;
+        if (result == null) {
+            value = NO_RESULT;
+        } else if (result instanceof List<?>) {
+            value = Collections.unmodifiableList(new ArrayList<Object>((List<?>) result));
+        } else {
+            value = result;
+        }
+        region.put(key(query, params, first, limit, list), value, generation);
+    }
+
+
+
+    /**
+     * Whether the given cached value denotes a query without result.
+     */
+    static boolean isNoResult(Object cached) {
+        return cached == NO_RESULT;
+    }
+
+
+
+    private static QueryKey key(String query, Object[] params, int first, int limit,
+            boolean list) {
+        // single and list queries with the same name and parameters are distinct
+        return new QueryKey(list ? query : "#" + query, params, first, limit); //$NON-NLS-1$
+    }
+
+
+
+    /**
+     * Invalidates all regions of the type of the given entity and of its super types.
+     * The type is remembered until {@link #transactionEnded()} is called by the same
+     * thread.
+     *
+     * @param entity The entity which has been persisted, updated or removed.
+     */
+    void entityChanged(Object entity) {
+        if (this.regions.isEmpty()) {
+            return;
+        }
+        final Class<?> cls = entity.getClass();
+        Set<Class<?>> changed = this.changed.get();
+        if (changed == null) {
+            changed = new HashSet<Class<?>>();
+            this.changed.set(changed);
+        }
+        changed.add(cls);
+        this.invalidate(cls);
+    }
+
+
+
+    /**
+     * Invalidates the regions of the given entities, e.g. because they are being
+     * detached and thus must not be returned from the cache anymore.
+     *
+     * @param entities The entities.
+     */
+    void invalidateAll(Collection<?> entities) {
+        if (this.regions.isEmpty()) {
+            return;
+        }
+        final Set<Class<?>> types = new HashSet<Class<?>>();
+        for (final Object entity : entities) {
+            if (types.add(entity.getClass())) {
+                this.invalidate(entity.getClass());
+            }
+        }
+    }
+
+
+
+    /**
+     * Invalidates all types which have been changed by the current thread once more.
+     * Must be called after a transaction has been committed or rolled back.
+     */
+    void transactionEnded() {
+        final Set<Class<?>> changed = this.changed.get();
+        if (changed == null) {
+            return;
+        }
+        this.changed.remove();
+        for (final Class<?> cls : changed) {
+            this.invalidate(cls);
+        }
+    }
+
+
+
+    private void invalidate(Class<?> cls) {
+        Collection<Region> regions = this.affected.get(cls);
+        if (regions == null) {
+            regions = new ArrayList<Region>();
+            final List<Class<?>> types = new ArrayList<Class<?>>();
+            collectTypes(cls, types);
+            for (final Class<?> type : types) {
+                final Region region = this.regions.get(type.getName());
+                if (region != null) {
+                    regions.add(region);
+                }
+            }
+            this.affected.put(cls, regions);
+        }
+        for (final Region region : regions) {
+            region.invalidate();
+        }
+    }
+
+
+
+    private static void collectTypes(Class<?> cls, List<Class<?>> types) {
+        if (cls == null || types.contains(cls)) {
+            return;
+        }
+        types.add(cls);
+        collectTypes(cls.getSuperclass(), types);
+        for (final Class<?> itf : cls.getInterfaces()) {
+            collectTypes(itf, types);
+        }
+    }
+
+
+
+    @Override
+    public String toString() {
+        if (this.regions.isEmpty()) {
+            return "disabled"; //$NON-NLS-1$
+        }
+        final StringBuilder b = new StringBuilder();
+        for (final Region region : new TreeMap<String, Region>(this.regions).values()) {
+            if (b.length() > 0) {
+                b.append("; "); //$NON-NLS-1$
+            }
+            b.append(region);
+        }
+        return b.toString();
+    }
+}
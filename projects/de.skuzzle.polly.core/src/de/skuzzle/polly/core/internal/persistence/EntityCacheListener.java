@@ -0,0 +1,31 @@
+package de.skuzzle.polly.core.internal.persistence;
+
+
+/**
+ * Default entity listener which reports persisted, updated and removed entities to
+ * the {@link EntityCache}. It is registered for all entities by the mapping file
+ * <code>orm.xml</code> in this package, which the generated persistence.xml
+ * references. Instances are created by the persistence provider, so the cache is
+ * provided statically.
+ *
+ * @author Simon Taddiken
+ */
+public class EntityCacheListener {
+
+    private static volatile EntityCache cache;
+
+
+
+    static void setCache(EntityCache cache) {
+        EntityCacheListener.cache = cache;
+    }
+
+
+
+    public void changed(Object entity) {
+        final EntityCache cache = EntityCacheListener.cache;
+        if (cache != null) {
+            cache.entityChanged(entity);
+        }
+    }
+}
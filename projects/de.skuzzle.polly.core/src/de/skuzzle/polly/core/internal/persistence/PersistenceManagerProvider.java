@@ -69,6 +69,13 @@ public class PersistenceManagerProvider extends AbstractProvider {
         }
         
         this.persistenceManager = new PersistenceManagerV2Impl();
+        this.persistenceManager.setIsolatedSessions(
+            this.persistenceCfg.readBoolean(Configuration.DB_ISOLATED_SESSIONS));
+        this.persistenceManager.setGroupCommit(
+            this.persistenceCfg.readInt(Configuration.DB_GROUP_COMMIT_WINDOW, 0),
+            this.persistenceCfg.readInt(Configuration.DB_GROUP_COMMIT_SIZE, 100));
+        this.persistenceManager.setEntityCache(EntityCache.fromSettings(
+            this.persistenceCfg.readStringList(Configuration.DB_ENTITY_CACHE)));
         this.provideComponent(this.persistenceManager);
         
         DatabaseProperties dp = new DatabaseProperties(
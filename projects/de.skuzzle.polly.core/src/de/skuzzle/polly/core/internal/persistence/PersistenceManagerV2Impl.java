@@ -2,9 +2,16 @@ package de.skuzzle.polly.core.internal.persistence;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -85,7 +92,7 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
         @Override
         public Read read() {
             // return new unlocked read instance
-            return new ReadImpl(this.em) {
+            return new ReadImpl(this.em, true) {
                 @Override
                 public void close() {
                     // do nothing
@@ -99,10 +106,24 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
     private abstract class ReadImpl implements Read {
 
         private final EntityManager em;
+        private final boolean inWrite;
         
         
         public ReadImpl(EntityManager em) {
+            this(em, false);
+        }
+        
+        
+        
+        /**
+         * @param em The EntityManager to read from.
+         * @param inWrite Whether this instance reads within a write transaction. Such 
+         *          reads bypass the entity cache and do not detach paged entities, as
+         *          the transaction may still modify them.
+         */
+        public ReadImpl(EntityManager em, boolean inWrite) {
             this.em = em;
+            this.inWrite = inWrite;
         }
         
         
@@ -135,9 +156,24 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
         @Override
         @SuppressWarnings("unchecked")
         public <T> T findSingle(Class<T> type, String query, Param params) {
+            final EntityCache.Region region = this.inWrite || isolated 
+                ? null : entityCache.getRegion(type);
+            long generation = 0;
+            if (region != null) {
+                final Object cached = entityCache.get(region, query, params.getParams(), 
+                    -1, -1, false);
+                if (cached != null) {
+                    logger.trace("Cache hit for named query '" + query + 
+                        "'. Parameters: " + params);
+                    return EntityCache.isNoResult(cached) ? null : (T) cached;
+                }
+                generation = region.getGeneration();
+            }
+            
             logger.trace("Executing named query '" + query + "'. Parameters: " + params);
             final Stopwatch watch = new MillisecondStopwatch();
             watch.start();
+            T result;
             try {
                 Query q = em.createNamedQuery(query);
                 int i = 1;
@@ -145,9 +181,9 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
                     q.setParameter(i++, param);
                 }
     
-                return (T) q.getSingleResult();
+                result = (T) q.getSingleResult();
             } catch (NoResultException e) {
-                return null;
+                result = null;
             } catch (Exception e) {
                 logger.error("", e);
                 throw e;
@@ -155,6 +191,11 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
                 long time = watch.stop();
                 logger.trace("Query time: " + time + "ms");
             }
+            if (region != null) {
+                entityCache.put(region, generation, query, params.getParams(), -1, -1, 
+                    false, result);
+            }
+            return result;
         }
 
 
@@ -167,26 +208,8 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
         
 
         @Override
-        @SuppressWarnings("unchecked")
         public <T> List<T> findList(Class<T> type, String query, Param params) {
-            logger.trace("Executing named query '" + query + "'. Parameters: " + params);
-            final Stopwatch watch = new MillisecondStopwatch();
-            watch.start();
-            try {
-                Query q = em.createNamedQuery(query);
-                int i = 1;
-                for (Object param : params.getParams()) {
-                    q.setParameter(i++, param);
-                }
-    
-                return q.getResultList();
-            } catch (Exception e) {
-                logger.error("", e);
-                throw e;
-            } finally {
-                long time = watch.stop();
-                logger.trace("Query time: " + time + "ms");
-            }
+            return this.list(type, query, -1, -1, params, true);
         }
 
 
@@ -199,30 +222,9 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
         
         
         @Override
-        @SuppressWarnings("unchecked")
         public <T> List<T> findList(Class<T> type, String query, int limit,
                 Param params) {
-            logger.trace("Executing named query '" + query + "'. Parameters: "
-                + params + ", limit: " + limit);
-            final Stopwatch watch = new MillisecondStopwatch();
-            watch.start();
-            
-            try {
-                Query q = em.createNamedQuery(query);
-                q.setMaxResults(limit);
-                int i = 1;
-                for (Object param : params.getParams()) {
-                    q.setParameter(i++, param);
-                }
-    
-                return q.getResultList();
-            } catch (Exception e) {
-                logger.error("", e);
-                throw e;
-            } finally {
-                long time = watch.stop();
-                logger.trace("Query time: " + time + "ms");
-            }
+            return this.list(type, query, -1, limit, params, true);
         }
 
 
@@ -235,22 +237,56 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
         
         
         @Override
-        @SuppressWarnings("unchecked")
         public <T> List<T> findList(Class<T> type, String query, int first, int limit,
                 Param params) {
+            return this.list(type, query, first, limit, params, true);
+        }
+        
+        
+        
+        /**
+         * Executes a named query which returns a list.
+         * 
+         * @param first Index of the first result or -1 to start with the first one.
+         * @param limit Maximum number of results or -1 to retrieve all.
+         * @param cacheable Whether the result may be taken from or put into the entity 
+         *          cache.
+         */
+        @SuppressWarnings("unchecked")
+        private <T> List<T> list(Class<T> type, String query, int first, int limit, 
+                Param params, boolean cacheable) {
+            final EntityCache.Region region = this.inWrite || !cacheable || isolated 
+                ? null : entityCache.getRegion(type);
+            long generation = 0;
+            if (region != null) {
+                final Object cached = entityCache.get(region, query, params.getParams(), 
+                    first, limit, true);
+                if (cached != null) {
+                    logger.trace("Cache hit for named query '" + query + 
+                        "'. Parameters: " + params);
+                    return (List<T>) cached;
+                }
+                generation = region.getGeneration();
+            }
+            
             logger.trace("Executing named query '" + query + "'. Parameters: "
-                + params + ", first: " + first + ", limit:" + limit);
+                + params + ", first: " + first + ", limit: " + limit);
             final Stopwatch watch = new MillisecondStopwatch();
             watch.start();
+            final List<T> result;
             try {
                 final Query q = em.createNamedQuery(query);
-                q.setFirstResult(first);
-                q.setMaxResults(limit);
+                if (first >= 0) {
+                    q.setFirstResult(first);
+                }
+                if (limit >= 0) {
+                    q.setMaxResults(limit);
+                }
                 int i = 1;
                 for (Object param : params.getParams()) {
                     q.setParameter(i++, param);
                 }
-                return q.getResultList();
+                result = q.getResultList();
             } catch (Exception e) {
                 logger.error("", e);
                 throw e;
@@ -258,6 +294,109 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
                 long time = watch.stop();
                 logger.trace("Query time: " + time + "ms");
             }
+            if (region != null) {
+                entityCache.put(region, generation, query, params.getParams(), first, 
+                    limit, true, result);
+            }
+            return result;
+        }
+        
+        
+        
+        @Override
+        public <T> Iterable<T> findPaged(Class<T> type, String query, int pageSize) {
+            return this.findPaged(type, query, pageSize, new Param());
+        }
+        
+        
+        
+        @Override
+        public <T> Iterable<T> findPaged(final Class<T> type, final String query, 
+                final int pageSize, final Param params) {
+            return new Iterable<T>() {
+                @Override
+                public Iterator<T> iterator() {
+                    return new PagedIterator<T>(pageSize) {
+                        @Override
+                        protected List<T> loadPage(int first, int limit) {
+                            // pages are not cached
+                            return list(type, query, first, limit, params, false);
+                        }
+                        
+                        
+                        
+                        @Override
+                        protected void releasePage(List<T> page) {
+                            if (!inWrite) {
+                                entityCache.invalidateAll(page);
+                                for (final T entity : page) {
+                                    em.detach(entity);
+                                }
+                            }
+                        }
+                    };
+                }
+            };
+        }
+    }
+    
+    
+    
+    /**
+     * Iterates over the result of a query by fetching it page by page. The previous 
+     * page is released before the next one is loaded.
+     */
+    private abstract static class PagedIterator<T> implements Iterator<T> {
+        
+        private final int pageSize;
+        private List<T> page;
+        private int index;
+        private int first;
+        private boolean exhausted;
+        
+        
+        
+        public PagedIterator(int pageSize) {
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("pageSize < 1"); //$NON-NLS-1$
+            }
+            this.pageSize = pageSize;
+            this.page = Collections.emptyList();
+        }
+        
+        
+        
+        protected abstract List<T> loadPage(int first, int limit);
+        
+        
+        
+        protected abstract void releasePage(List<T> page);
+        
+        
+        
+        @Override
+        public boolean hasNext() {
+            if (this.index < this.page.size()) {
+                return true;
+            } else if (this.exhausted) {
+                return false;
+            }
+            this.releasePage(this.page);
+            this.page = this.loadPage(this.first, this.pageSize);
+            this.first += this.page.size();
+            this.index = 0;
+            this.exhausted = this.page.size() < this.pageSize;
+            return !this.page.isEmpty();
+        }
+        
+        
+        
+        @Override
+        public T next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.page.get(this.index++);
         }
     }
     
@@ -316,6 +455,39 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
             }
         }
 
+        @Override
+        public <T> Iterable<T> findPaged(Class<T> type, String query, int pageSize) {
+            return this.findPaged(type, query, pageSize, new Param());
+        }
+
+        @Override
+        public <T> Iterable<T> findPaged(final Class<T> type, final String query, 
+                final int pageSize, final Param params) {
+            return new Iterable<T>() {
+                @Override
+                public Iterator<T> iterator() {
+                    // each page is read within its own lock scope
+                    return new PagedIterator<T>(pageSize) {
+                        @Override
+                        protected List<T> loadPage(int first, int limit) {
+                            try (final Read r = read()) {
+                                // pages are not cached
+                                return ((ReadImpl) r).list(type, query, first, limit, 
+                                    params, false);
+                            }
+                        }
+                        
+                        
+                        
+                        @Override
+                        protected void releasePage(List<T> page) {
+                            detachAll(page);
+                        }
+                    };
+                }
+            };
+        }
+
         @Override
         public <T> T findSingle(Class<T> type, String query) {
             try (final Read r = read()) {
@@ -409,22 +581,115 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
     }
     
     
+    /**
+     * Persistence context of a single thread if sessions are isolated. The 
+     * EntityManager is reused by all nested reads and writes of the thread. It is 
+     * closed when the outermost read or write ends, so no entities are cached between
+     * them and no EntityManager outlives the thread which created it.
+     */
+    private final static class Session {
+        private final EntityManager em;
+        private EntityTransaction transaction;
+        private int reads;
+        private int writes;
+        
+        
+        
+        public Session(EntityManager em) {
+            this.em = em;
+        }
+        
+        
+        
+        private boolean isIdle() {
+            return this.reads == 0 && this.writes == 0;
+        }
+    }
+
+
+
+    /**
+     * A parallel write which waits to be committed, together with the callback of
+     * the caller who submitted it.
+     */
+    private final static class PendingWrite {
+        private final Collection<Atomic> actions;
+        private final TransactionCallback callback;
+        private boolean failed;
+
+
+
+        public PendingWrite(Collection<Atomic> actions, TransactionCallback callback) {
+            this.actions = actions;
+            this.callback = callback;
+        }
+
+
+
+        /**
+         * Performs all actions of this write. If one of them fails, the failure is
+         * reported to the callback and the remaining actions are skipped.
+         *
+         * @param write The write to perform the actions with.
+         * @return Whether all actions have been performed.
+         */
+        public boolean perform(Write write) {
+            try {
+                for (final Atomic action : this.actions) {
+                    action.perform(write);
+                }
+                return true;
+            } catch (DatabaseException e) {
+                this.fail(e);
+            } catch (RuntimeException e) {
+                logger.error("Error while performing parallel write", e);
+                this.fail(new DatabaseException("Write failed", e));
+            }
+            return false;
+        }
+
+
+
+        public void fail(DatabaseException e) {
+            if (!this.failed) {
+                this.failed = true;
+                this.callback.fail(e);
+            }
+        }
+    }
+
+
+
     private final static int LOCK_TIMEOUT = 30; // 30 seconds
 
     private EntityManagerFactory emf;
     private EntityManager em;
     private EntityTransaction activeTransaction;
     private final ReadWriteLock locker;
+    private boolean isolated;
+    private final ThreadLocal<Session> sessions;
+    private final Set<EntityManager> sessionManagers;
     private final ExecutorService executor;
+    private final BlockingQueue<PendingWrite> pendingWrites;
+    private final WriteQueueStatistics writeQueueStatistics;
+    private EntityCache entityCache;
+    private int groupCommitWindow;
+    private int groupCommitSize;
     private final EntityList entities;
     private final EntityConverterManagerImpl entityConverter;
     private int enterCounter;
-    
+
 
     public PersistenceManagerV2Impl() {
         this.locker = new ReentrantReadWriteLock();
+        this.sessions = new ThreadLocal<>();
+        this.sessionManagers = Collections.newSetFromMap(
+            new ConcurrentHashMap<EntityManager, Boolean>());
         this.executor = Executors.newSingleThreadExecutor(
                 new ThreadFactoryBuilder("PERSISTENCE")); //$NON-NLS-1$
+        this.pendingWrites = new LinkedBlockingQueue<>();
+        this.writeQueueStatistics = new WriteQueueStatistics(this.pendingWrites);
+        this.entityCache = new EntityCache();
         this.entities = new EntityList();
         this.entityConverter = new EntityConverterManagerImpl(this);
     }
@@ -434,6 +699,87 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
     EntityList getEntities() {
         return this.entities;
     }
+    
+    
+    
+    /**
+     * <p>Sets whether each thread uses its own EntityManager instead of sharing one 
+     * which is guarded by a global lock. Must be called before connecting.</p>
+     * 
+     * <p>If sessions are isolated, reads never wait for writes of other threads and 
+     * writes of different threads run in independent transactions. Conflicting writes 
+     * are only detected for entities with a version attribute (optimistic locking). 
+     * Entities are detached as soon as the outermost read or write of a thread ends.
+     * Thus modifications of entities which have been obtained by an earlier read are 
+     * not written automatically: they must be obtained by {@link Write#read()} or 
+     * passed to {@link Write#single(Object)}, which merges detached entities.</p>
+     * 
+     * <p>The {@link EntityCache} is bypassed if sessions are isolated, as it would 
+     * hand out entities which belong to the EntityManager of another thread.</p>
+     * 
+     * @param isolated Whether sessions are isolated.
+     */
+    public void setIsolatedSessions(boolean isolated) {
+        this.isolated = isolated;
+    }
+
+
+
+    /**
+     * <p>Configures group commit of parallel writes. If enabled, writes which are
+     * submitted using {@link #writeAtomicParallel(Atomic, TransactionCallback)} or
+     * {@link #writeParallel(TransactionCallback)} are queued and all writes which are
+     * submitted within the given window after the first one are committed in a single
+     * transaction, so that EclipseLink can send their statements in one JDBC batch.</p>
+     *
+     * <p>Each caller is still notified about the outcome of its own write: a write
+     * which throws an exception is reported as failed while the other writes of the
+     * batch are committed. If the batch can not be committed as a whole, all of its 
+     * writes are reported as failed with the cause. They are not repeated, as they
+     * may not be idempotent.</p>
+     *
+     * @param window Time in milliseconds to wait for further writes. 0 disables group
+     *          commit.
+     * @param maxSize Maximum number of writes to commit at once.
+     */
+    public void setGroupCommit(int window, int maxSize) {
+        this.groupCommitWindow = window;
+        this.groupCommitSize = Math.max(1, maxSize);
+    }
+
+
+
+    /**
+     * Gets the batch size, queue depth and commit latency counters of parallel writes.
+     *
+     * @return The statistics.
+     */
+    public WriteQueueStatistics getWriteQueueStatistics() {
+        return this.writeQueueStatistics;
+    }
+
+
+
+    /**
+     * Sets the cache for the results of named queries. Must be called before 
+     * connecting.
+     * 
+     * @param entityCache The cache.
+     */
+    public void setEntityCache(EntityCache entityCache) {
+        this.entityCache = entityCache;
+    }
+
+
+
+    /**
+     * Gets the cache for the results of named queries.
+     * 
+     * @return The cache.
+     */
+    public EntityCache getEntityCache() {
+        return this.entityCache;
+    }
 
 
 
@@ -461,14 +807,52 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
     public void connect(String persistenceUnit) {
         logger.info("Connecting to persistence unit '" + persistenceUnit + "'...");
 
+        EntityCacheListener.setCache(this.entityCache);
         this.emf = Persistence.createEntityManagerFactory(persistenceUnit);
         this.em = this.emf.createEntityManager();
 
+        if (this.isolated && this.isHsqldb()) {
+            this.enableMvcc();
+        }
         logger.info("Database connection established.");
     }
     
     
     
+    /**
+     * Whether the persistence unit is connected to a HSQLDB database.
+     */
+    private boolean isHsqldb() {
+        final Object url = this.emf.getProperties().get(
+            "javax.persistence.jdbc.url"); //$NON-NLS-1$
+        return url != null && url.toString().startsWith("jdbc:hsqldb:"); //$NON-NLS-1$
+    }
+    
+    
+    
+    /**
+     * Switches HSQLDB to multi version concurrency control, so that reads of isolated
+     * sessions are not blocked by concurrent write transactions. Must only be called
+     * for HSQLDB, other databases are left as configured.
+     */
+    private void enableMvcc() {
+        final EntityTransaction tx = this.em.getTransaction();
+        try {
+            tx.begin();
+            this.em.createNativeQuery(
+                "SET DATABASE TRANSACTION CONTROL MVCC").executeUpdate(); //$NON-NLS-1$
+            tx.commit();
+            logger.info("Enabled MVCC transaction control");
+        } catch (Exception e) {
+            logger.warn("Could not enable MVCC transaction control", e);
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        }
+    }
+    
+    
+    
     /**
      * Notes that the current thread tried to obtain a write lock. 
      * Returns <code>true</code> if this thread already holds the writelock
@@ -557,7 +941,11 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
             }
             
             if (this.threadMayCommit()) {
-                tx.commit();
+                try {
+                    tx.commit();
+                } finally {
+                    this.entityCache.transactionEnded();
+                }
                 logger.debug("Transaction finished successful");
             } else {
                 logger.trace("Postponing commit until all write attempts"
@@ -592,13 +980,191 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
     
     @Override
     public void refresh(Object obj) {
+        if (this.isolated) {
+            final Session session = this.enterSession();
+            try {
+                // detached entities are reloaded by the next read anyway
+                if (session.em.contains(obj)) {
+                    session.em.refresh(obj);
+                }
+            } finally {
+                this.leaveSession(session);
+            }
+            return;
+        }
         this.em.refresh(obj);
     }
+    
+    
+    
+    private Session enterSession() {
+        Session session = this.sessions.get();
+        if (session == null) {
+            final EntityManager em = this.emf.createEntityManager();
+            this.sessionManagers.add(em);
+            session = new Session(em);
+            this.sessions.set(session);
+        }
+        return session;
+    }
+    
+    
+    
+    private void leaveSession(Session session) {
+        if (!session.isIdle()) {
+            return;
+        }
+        if (this.sessions.get() == session) {
+            this.sessions.remove();
+        }
+        this.sessionManagers.remove(session.em);
+        try {
+            session.em.close();
+        } catch (Exception e) {
+            logger.error("Error while closing session", e);
+        }
+    }
+    
+    
+    
+    private Read isolatedRead() {
+        final Stopwatch watch = new MillisecondStopwatch();
+        watch.start();
+        final Session session = this.enterSession();
+        ++session.reads;
+        
+        return new ReadImpl(session.em) {
+            @Override
+            public void close() {
+                --session.reads;
+                leaveSession(session);
+                long time = watch.stop();
+                logger.trace("Read transaction time: " + time + "ms");
+            }
+        };
+    }
+    
+    
+    
+    private Write isolatedWrite() throws DatabaseException {
+        final Stopwatch watch = new MillisecondStopwatch();
+        watch.start();
+        final Session session = this.enterSession();
+        
+        if (session.writes++ == 0) {
+            try {
+                logger.debug("Starting transaction...");
+                session.transaction = session.em.getTransaction();
+                session.transaction.begin();
+            } catch (Exception e) {
+                --session.writes;
+                this.leaveSession(session);
+                logger.error("Error while starting transaction", e);
+                throw new DatabaseException("Transaction could not be started", e);
+            }
+        } else {
+            logger.trace("Thread is reentering! Reusing current transaction");
+        }
+        
+        final EntityManager em = session.em;
+        return new WriteImpl(em) {
+            @Override
+            public <T> Write single(T obj) {
+                if (em.contains(obj)) {
+                    return this;
+                }
+                final Object id = emf.getPersistenceUnitUtil().getIdentifier(obj);
+                if (id == null || id instanceof Number && ((Number) id).longValue() == 0) {
+                    em.persist(obj);
+                } else {
+                    em.merge(obj);
+                }
+                return this;
+            }
+            
+            
+            
+            @Override
+            public <T> Write remove(T obj) {
+                em.remove(em.contains(obj) ? obj : em.merge(obj));
+                return this;
+            }
+            
+            
+            
+            @Override
+            public <T> Write all(Iterable<T> list) {
+                for (final T element : list) {
+                    this.single(element);
+                }
+                return this;
+            }
+            
+            
+            
+            @Override
+            public <T> Write removeAll(Iterable<T> elements) {
+                for (final T element : elements) {
+                    this.remove(element);
+                }
+                return this;
+            }
+            
+            
+            
+            @Override
+            public void close() throws DatabaseException {
+                try {
+                    commitSession(session);
+                } finally {
+                    long time = watch.stop();
+                    logger.trace("Write transaction time: " + time + "ms");
+                }
+            }
+        };
+    }
+    
+    
+    
+    private void commitSession(Session session) throws DatabaseException {
+        if (--session.writes > 0) {
+            logger.trace("Postponing commit until all write attempts"
+                    + " of this thread finish");
+            return;
+        }
+        final EntityTransaction tx = session.transaction;
+        session.transaction = null;
+        try {
+            logger.debug("Committing transaction...");
+            try {
+                tx.commit();
+            } finally {
+                this.entityCache.transactionEnded();
+            }
+            logger.debug("Transaction finished successful");
+        } catch (Exception e) {
+            // includes optimistic lock failures of concurrent writes
+            logger.error("Committing transaction failed.", e);
+            if (tx.isActive()) {
+                try {
+                    tx.rollback();
+                } catch (Exception e1) {
+                    logger.fatal("Rollback failed!", e1);
+                }
+            }
+            throw new DatabaseException("Transaction failed", e);
+        } finally {
+            this.leaveSession(session);
+        }
+    }
 
 
     
     @Override
     public Read read() {
+        if (this.isolated) {
+            return this.isolatedRead();
+        }
         logger.trace("Acquiring read lock...");
         final Stopwatch watch = new MillisecondStopwatch();
         watch.start();
@@ -621,6 +1187,12 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
     
     @Override
     public void detachAll(Collection<? extends Object> entities) {
+        // cached results must not contain detached entities
+        this.entityCache.invalidateAll(entities);
+        if (this.isolated) {
+            // entities are detached when the outermost read or write of a thread ends
+            return;
+        }
         for (final Object entity : entities) {
             this.em.detach(entity);
         }
@@ -637,6 +1209,9 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
 
     @Override
     public Write write() throws DatabaseException {
+        if (this.isolated) {
+            return this.isolatedWrite();
+        }
         final Stopwatch watch = new MillisecondStopwatch();
         watch.start();
         
@@ -685,18 +1260,112 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
     
     @Override
     public void writeAtomicParallel(final Atomic a, final TransactionCallback cb) {
+        this.submit(new PendingWrite(Collections.singletonList(a), cb));
+    }
+
+
+
+    private void submit(final PendingWrite pending) {
+        if (this.groupCommitWindow <= 0) {
+            this.executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    final Stopwatch watch = new MillisecondStopwatch();
+                    watch.start();
+                    if (commitSeparately(pending)) {
+                        writeQueueStatistics.batchCommitted(1, watch.stop());
+                    }
+                }
+            });
+            return;
+        }
+        this.pendingWrites.add(pending);
         this.executor.submit(new Runnable() {
             @Override
             public void run() {
-                try (final Write w = write()) {
-                    a.perform(w);
-                    cb.success();
-                } catch (DatabaseException e) {
-                    cb.fail(e);
-                }
+                commitPendingWrites();
             }
         });
     }
+
+
+
+    /**
+     * Takes the next batch of writes from the queue and commits them within a single
+     * transaction. There is one call per queued write, so calls which find the queue
+     * empty return immediately as their write has been committed with an earlier batch.
+     */
+    private void commitPendingWrites() {
+        final PendingWrite first = this.pendingWrites.poll();
+        if (first == null) {
+            return;
+        }
+        final List<PendingWrite> batch = new ArrayList<>();
+        batch.add(first);
+
+        boolean interrupted = false;
+        final long deadline = System.nanoTime() +
+            TimeUnit.MILLISECONDS.toNanos(this.groupCommitWindow);
+        try {
+            while (batch.size() < this.groupCommitSize) {
+                final PendingWrite next = this.pendingWrites.poll(
+                    deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+            }
+        } catch (InterruptedException e) {
+            // commit what has been collected so far
+            interrupted = true;
+        }
+
+        logger.trace("Committing " + batch.size() + " parallel writes");
+        final Stopwatch watch = new MillisecondStopwatch();
+        watch.start();
+        final List<PendingWrite> performed = new ArrayList<>(batch.size());
+        try (final Write w = this.write()) {
+            for (final PendingWrite pending : batch) {
+                if (pending.perform(w)) {
+                    performed.add(pending);
+                }
+            }
+        } catch (DatabaseException e) {
+            logger.warn("Group commit of " + batch.size() + " writes failed", e);
+            this.writeQueueStatistics.batchFailed();
+            // The rollback detached all entities of the batch and the writes may have
+            // modified objects in memory, so repeating them is not safe
+            for (final PendingWrite pending : batch) {
+                pending.fail(e);
+            }
+            return;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        this.writeQueueStatistics.batchCommitted(batch.size(), watch.stop());
+        for (final PendingWrite pending : performed) {
+            pending.callback.success();
+        }
+    }
+
+
+
+    private boolean commitSeparately(PendingWrite pending) {
+        final boolean performed;
+        try (final Write w = this.write()) {
+            performed = pending.perform(w);
+        } catch (DatabaseException e) {
+            pending.fail(e);
+            return false;
+        }
+        if (performed) {
+            pending.callback.success();
+        }
+        return performed;
+    }
     
     
     
@@ -741,19 +1410,7 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
         return new ParallelWriteImpl() {
             @Override
             public void close() {
-                executor.submit(new Runnable() {
-                    @Override
-                    public void run() {
-                        try (final Write w = write()) {
-                            for (final Atomic wr : actions) {
-                                wr.perform(w);
-                            }
-                        } catch (DatabaseException e) {
-                            cb.fail(e);
-                        }
-                        cb.success();
-                    }
-                });
+                submit(new PendingWrite(this.actions, cb));
             }
         };
     }
@@ -767,6 +1424,15 @@ public class PersistenceManagerV2Impl extends AbstractDisposable
         try {
             logger.trace("Waiting for all operations to end...");
             this.locker.writeLock().lock();
+            for (final EntityManager session : this.sessionManagers) {
+                try {
+                    session.close();
+                } catch (Exception e) {
+                    logger.error("Error while closing session", e);
+                }
+            }
+            this.sessionManagers.clear();
+            
             if (this.em.isOpen()) {
                 try {
                     logger.trace("Sending SHUTDOWN command.");
@@ -0,0 +1,145 @@
+package de.skuzzle.polly.core.internal.persistence;
+
+import java.util.Collection;
+
+
+/**
+ * Counters of the queue of parallel writes of {@link PersistenceManagerV2Impl}. If
+ * group commit is enabled, each batch is the set of queued writes which have been
+ * committed within a single transaction. Otherwise, each write is a batch of its own.
+ *
+ * @author Simon Taddiken
+ */
+public final class WriteQueueStatistics {
+
+    private final Collection<?> queue;
+    private long batches;
+    private long writes;
+    private int largestBatch;
+    private long totalCommitTime;
+    private long maxCommitTime;
+    private long failedBatches;
+
+
+
+    WriteQueueStatistics(Collection<?> queue) {
+        this.queue = queue;
+    }
+
+
+
+    synchronized void batchCommitted(int size, long commitTime) {
+        ++this.batches;
+        this.writes += size;
+        this.largestBatch = Math.max(this.largestBatch, size);
+        this.totalCommitTime += commitTime;
+        this.maxCommitTime = Math.max(this.maxCommitTime, commitTime);
+    }
+
+
+
+    synchronized void batchFailed() {
+        ++this.failedBatches;
+    }
+
+
+
+    /**
+     * Gets the number of writes which are waiting to be committed.
+     *
+     * @return The current queue depth.
+     */
+    public int getQueueDepth() {
+        return this.queue.size();
+    }
+
+
+
+    /**
+     * Gets the number of committed batches.
+     *
+     * @return The number of batches.
+     */
+    public synchronized long getBatches() {
+        return this.batches;
+    }
+
+
+
+    /**
+     * Gets the number of writes which have been committed as part of a batch.
+     *
+     * @return The number of writes.
+     */
+    public synchronized long getWrites() {
+        return this.writes;
+    }
+
+
+
+    /**
+     * Gets the average number of writes per batch.
+     *
+     * @return The average batch size.
+     */
+    public synchronized double getAverageBatchSize() {
+        return this.batches == 0 ? 0.0 : (double) this.writes / this.batches;
+    }
+
+
+
+    /**
+     * Gets the largest number of writes which have been committed at once.
+     *
+     * @return The largest batch size.
+     */
+    public synchronized int getLargestBatch() {
+        return this.largestBatch;
+    }
+
+
+
+    /**
+     * Gets the average time it took to perform and commit a batch.
+     *
+     * @return The average commit latency in milliseconds.
+     */
+    public synchronized long getAverageCommitTime() {
+        return this.batches == 0 ? 0 : this.totalCommitTime / this.batches;
+    }
+
+
+
+    /**
+     * Gets the longest time it took to perform and commit a batch.
+     *
+     * @return The maximum commit latency in milliseconds.
+     */
+    public synchronized long getMaxCommitTime() {
+        return this.maxCommitTime;
+    }
+
+
+
+    /**
+     * Gets the number of batches which could not be committed, so that all of their
+     * writes have failed.
+     *
+     * @return The number of failed batches.
+     */
+    public synchronized long getFailedBatches() {
+        return this.failedBatches;
+    }
+
+
+
+    @Override
+    public synchronized String toString() {
+        return String.format(
+            "queued: %d, batches: %d, writes: %d, avg batch: %.1f, largest batch: %d, " + //$NON-NLS-1$
+            "avg commit: %dms, max commit: %dms, failed batches: %d", //$NON-NLS-1$
+            this.getQueueDepth(), this.batches, this.writes, this.getAverageBatchSize(),
+            this.largestBatch, this.getAverageCommitTime(), this.maxCommitTime,
+            this.failedBatches);
+    }
+}
@@ -1,7 +1,6 @@
 package de.skuzzle.polly.core.internal.users;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -20,7 +19,6 @@ import de.skuzzle.polly.core.internal.persistence.PersistenceManagerV2Impl;
 import de.skuzzle.polly.core.parser.InputParser;
 import de.skuzzle.polly.core.parser.InputScanner;
 import de.skuzzle.polly.core.parser.ast.declarations.Declaration;
-import de.skuzzle.polly.core.parser.ast.declarations.DeclarationReader;
 import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
 import de.skuzzle.polly.core.parser.ast.expressions.Expression;
 import de.skuzzle.polly.core.parser.ast.expressions.literals.Literal;
@@ -77,15 +75,6 @@ public class UserManagerImpl extends AbstractDisposable implements UserManager {
     };
     
     
-    private final static FileFilter DECLARATION_FILTER = new FileFilter() {
-        
-        @Override
-        public boolean accept(File pathname) {
-            return pathname.getName().toLowerCase().endsWith(".decl");
-        }
-    };
-    
-    
     private PersistenceManagerV2Impl persistence;
 
     /**
@@ -126,7 +115,7 @@ public class UserManagerImpl extends AbstractDisposable implements UserManager {
                 this.declarationCachePath.mkdirs();
             }
             Namespace.setDeclarationFolder(this.declarationCachePath);
-			readDeclarations(this.declarationCachePath);
+            Namespace.restoreAll();
 			logger.trace("done");
 		} catch (IOException e) {
 			logger.warn("No declarations restored", e);
@@ -135,27 +124,6 @@ public class UserManagerImpl extends AbstractDisposable implements UserManager {
     
     
     
-    private static void readDeclarations(File folder) throws IOException {
-        for (final File file : folder.listFiles(DECLARATION_FILTER)) {
-            DeclarationReader dr = null;
-            try {
-                final String nsName = file.getName().substring(
-                        0, file.getName().length() - 5);
-                final Namespace ns = Namespace.forName(nsName);
-                dr = new DeclarationReader(file, "ISO-8859-1", ns);
-                dr.readAll();
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                if (dr != null) {
-                    dr.close();
-                }
-            }
-        }
-    }
-    
-    
-
     @Override
     public synchronized Set<String> getDeclaredIdentifiers(String namespace) {
         final Namespace ns = Namespace.forName(namespace);
@@ -620,6 +588,7 @@ public class UserManagerImpl extends AbstractDisposable implements UserManager {
 
     @Override
     protected void actualDispose() throws DisposingException {
+        Namespace.flushDeclarations();
         this.persistence = null;
         this.onlineCache.clear();
         this.onlineCache = null;
@@ -97,6 +97,16 @@ public interface HttpEvent {
      */
     public String getPlainUri();
     
+    /**
+     * Gets the first value of the request header with the given name. Header names
+     * are case insensitive.
+     * 
+     * @param name Name of the header.
+     * @return The header's value or <code>null</code> if the request has no such 
+     *          header.
+     */
+    public String getRequestHeader(String name);
+    
     /**
      * Gets the ip address of the client that sent this request.
      * 
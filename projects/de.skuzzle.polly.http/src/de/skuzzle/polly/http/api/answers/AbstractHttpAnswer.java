@@ -32,6 +32,7 @@ import de.skuzzle.polly.http.api.HttpCookie;
 public class AbstractHttpAnswer extends HttpAnswer {
 
     private int responseCode;
+    private long contentLength;
     private final Map<String, List<String>> headers;
     private final Set<HttpCookie> cookies;
     
@@ -55,6 +56,26 @@ public class AbstractHttpAnswer extends HttpAnswer {
     public Map<String, List<String>> getResponseHeaders() {
         return this.headers;
     }
+    
+    
+    
+    @Override
+    public long getContentLength() {
+        return this.contentLength;
+    }
+    
+    
+    
+    /**
+     * Sets the number of bytes in the response body.
+     * 
+     * @param contentLength The length of the response body, <code>0</code> if it is
+     *          not known in advance or <code>-1</code> if there is no response body.
+     * @see HttpAnswer#getContentLength()
+     */
+    protected void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
 
     
     
@@ -106,6 +106,16 @@ public abstract class HttpAnswer {
      */
     public abstract Map<String, List<String>> getResponseHeaders();
     
+    /**
+     * Gets the number of bytes in the response body, if it is known before the body is
+     * written. Answers with a known length are sent with a <tt>Content-Length</tt>
+     * header instead of chunked encoding, so exactly that many bytes must be written.
+     * 
+     * @return The length of the response body, <code>0</code> if it is not known in
+     *          advance or <code>-1</code> if there is no response body.
+     */
+    public abstract long getContentLength();
+    
     /**
      * Gets a collection of {@link HttpCookie cookies} which will be set on the client
      * side upon handling this answer.
@@ -28,7 +28,9 @@ import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 
+import de.skuzzle.polly.http.api.HttpEvent;
 import de.skuzzle.polly.http.api.HttpServer;
+import de.skuzzle.polly.http.api.ResolvedFile;
 
 
 
@@ -100,6 +102,43 @@ public final class HttpAnswers {
     
     
     
+    /**
+     * Creates an answer which sends a file to the client. The answer respects the 
+     * conditional, compression and range headers of the request, so it might as well
+     * be an empty answer with status 304 if the client's cached copy is up to date.
+     * 
+     * @param e The request to answer.
+     * @param responseCode HTTP response code of the answer if the whole file is sent.
+     *          Request headers are only respected if this is 200.
+     * @param file The file to send.
+     * @return An answer that sends the file.
+     * @throws IOException If the file can not be accessed.
+     */
+    public final static HttpAnswer newFileAnswer(HttpEvent e, int responseCode, 
+            ResolvedFile file) throws IOException {
+        return StaticContent.fileAnswer(e, responseCode, file);
+    }
+    
+    
+    
+    /**
+     * Creates an answer which sends a class path resource to the client. Like 
+     * {@link #newFileAnswer(HttpEvent, int, ResolvedFile)}, the answer respects the 
+     * conditional and compression headers of the request.
+     * 
+     * @param e The request to answer.
+     * @param cl Class loader to load the resource from.
+     * @param resourcePath Path of the resource.
+     * @return An answer that sends the resource.
+     * @throws IOException If the resource can not be accessed.
+     */
+    public final static HttpAnswer newResourceAnswer(HttpEvent e, ClassLoader cl, 
+            String resourcePath) throws IOException {
+        return StaticContent.resourceAnswer(e, cl, resourcePath);
+    }
+    
+    
+    
     /**
      * Creates a {@link HttpAnswer} which sends the stack trace of the provided exception 
      * as plain text to the client.
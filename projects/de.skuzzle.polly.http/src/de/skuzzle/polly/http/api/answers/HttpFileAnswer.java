@@ -18,10 +18,14 @@
  */
 package de.skuzzle.polly.http.api.answers;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
 
 import de.skuzzle.polly.http.api.HttpServer;
 import de.skuzzle.polly.http.api.ResolvedFile;
@@ -36,16 +40,31 @@ import de.skuzzle.polly.http.api.ResolvedFile;
  * to a certain root directory before being sent. Such a {@link ResolvedFile} can be 
  * obtained by a {@link de.skuzzle.polly.http.api.FileResolver FileResolver} instance.
  * 
+ * <p>The file is sent using {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+ * so that its content does not need to be copied through a buffer on the heap. 
+ * Instances which are created by 
+ * {@link HttpAnswers#newFileAnswer(de.skuzzle.polly.http.api.HttpEvent, int, ResolvedFile)}
+ * additionally support conditional requests, compression and byte ranges.</p>
+ * 
  * @author Simon Taddiken
  */
 public class HttpFileAnswer extends HttpBinaryAnswer {
 
-    /** Buffer size to use when reading the file to send */
-    public final static int BUFFER_SIZE = 1024;
+    /** Buffer size to use when compressing the file to send */
+    public final static int BUFFER_SIZE = 8192;
     
     /** The file that will be sent */
     private final ResolvedFile dest;
     
+    /** Position of the first byte to send */
+    private final long offset;
+    
+    /** Number of bytes to send or -1 to send the whole file */
+    private final long length;
+    
+    /** Whether the file is compressed while being sent */
+    private final boolean compress;
+    
     
     
     public HttpFileAnswer(ResolvedFile file) {
@@ -55,28 +74,69 @@ public class HttpFileAnswer extends HttpBinaryAnswer {
     
     
     public HttpFileAnswer(int responseCode, ResolvedFile file) {
+        this(responseCode, file, 0, -1, false);
+    }
+    
+    
+    
+    /**
+     * Creates an answer which sends a part of a file.
+     * 
+     * @param responseCode HTTP response code of this answer.
+     * @param file The file to send.
+     * @param offset Position of the first byte to send.
+     * @param length Number of bytes to send or -1 to send the whole file.
+     * @param compress Whether to gzip the sent bytes. If <code>false</code> and a
+     *          length is given, the answer is sent with a <tt>Content-Length</tt>
+     *          header.
+     */
+    public HttpFileAnswer(int responseCode, ResolvedFile file, long offset, long length,
+            boolean compress) {
         super(responseCode);
         this.dest = file;
+        this.offset = offset;
+        this.length = length;
+        this.compress = compress;
+        if (!compress && length >= 0) {
+            this.setContentLength(length);
+        }
     }
 
     
     
     @Override
     public void getAnswer(OutputStream out, HttpServer server) throws IOException {
-        InputStream in = null;
-        try {
-            in = new FileInputStream(this.dest.getFile());
-            final byte[] buffer = new byte[BUFFER_SIZE];
-            int read = in.read(buffer, 0, buffer.length);
+        final File file = this.dest.getFile();
+        try (final FileChannel channel = FileChannel.open(file.toPath(), 
+                StandardOpenOption.READ)) {
+            
+            final long count = this.length < 0 
+                ? channel.size() - this.offset 
+                : this.length;
             
-            while (read != -1) {
-                out.write(buffer, 0, read);
-                read = in.read(buffer, 0, buffer.length);
+            if (this.compress) {
+                final GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+                transfer(channel, this.offset, count, Channels.newChannel(gzip));
+                gzip.finish();
+            } else {
+                transfer(channel, this.offset, count, Channels.newChannel(out));
             }
-        } finally {
-            if (in != null) {
-                in.close();
+        }
+    }
+    
+    
+    
+    private static void transfer(FileChannel channel, long position, long count, 
+            WritableByteChannel target) throws IOException {
+        final long end = position + count;
+        long pos = position;
+        while (pos < end) {
+            final long sent = channel.transferTo(pos, end - pos, target);
+            if (sent <= 0) {
+                // file has been truncated meanwhile
+                throw new IOException("unexpected end of file");
             }
+            pos += sent;
         }
     }
 }
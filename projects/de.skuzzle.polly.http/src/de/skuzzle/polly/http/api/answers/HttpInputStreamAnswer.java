@@ -28,7 +28,7 @@ import de.skuzzle.polly.http.api.HttpServer;
 public class HttpInputStreamAnswer extends HttpBinaryAnswer {
     
     /** Buffer size to use when reading the file to send */
-    public final static int BUFFER_SIZE = 1024;
+    public final static int BUFFER_SIZE = 8192;
     
     private final InputStream in;
     
@@ -21,22 +21,45 @@ package de.skuzzle.polly.http.api.answers;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
 
 import de.skuzzle.polly.http.api.HttpServer;
 
 
 public class HttpResourceAnswer extends HttpBinaryAnswer {
 
-    private static final int BUFFER_SIZE = 1024;
+    private static final int BUFFER_SIZE = 8192;
     
     private final String resourcePath;
     private final ClassLoader cl;
+    private final URL resource;
+    private final boolean compress;
     
     
     public HttpResourceAnswer(int responseCode, ClassLoader cl, String resourcePath) {
         super(responseCode);
         this.resourcePath = resourcePath;
         this.cl = cl;
+        this.resource = null;
+        this.compress = false;
+    }
+    
+    
+    
+    /**
+     * Creates an answer which sends an already located resource.
+     * 
+     * @param responseCode HTTP response code of this answer.
+     * @param resource The resource to send.
+     * @param compress Whether to gzip the sent bytes.
+     */
+    public HttpResourceAnswer(int responseCode, URL resource, boolean compress) {
+        super(responseCode);
+        this.resourcePath = resource.getPath();
+        this.cl = null;
+        this.resource = resource;
+        this.compress = compress;
     }
 
     
@@ -45,20 +68,30 @@ public class HttpResourceAnswer extends HttpBinaryAnswer {
     public void getAnswer(OutputStream out, HttpServer server) throws IOException {
         InputStream in = null;
         try {
-            final String path = this.resourcePath.startsWith("/") ?
-                this.resourcePath.substring(1) : this.resourcePath;
-            in = this.cl.getResourceAsStream(path);
+            if (this.resource != null) {
+                in = this.resource.openStream();
+            } else {
+                final String path = this.resourcePath.startsWith("/") ?
+                    this.resourcePath.substring(1) : this.resourcePath;
+                in = this.cl.getResourceAsStream(path);
+            }
             
             if (in == null) {
                 return;
             }
+            final OutputStream target = this.compress 
+                ? new GZIPOutputStream(out, BUFFER_SIZE) 
+                : out;
             final byte[] buffer = new byte[BUFFER_SIZE];
             int read = in.read(buffer, 0, buffer.length);
             
             while (read != -1) {
-                out.write(buffer, 0, read);
+                target.write(buffer, 0, read);
                 read = in.read(buffer, 0, buffer.length);
             }
+            if (this.compress) {
+                ((GZIPOutputStream) target).finish();
+            }
         } finally {
             if (in != null) {
                 in.close();
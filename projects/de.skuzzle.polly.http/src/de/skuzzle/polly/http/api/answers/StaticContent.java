@@ -0,0 +1,455 @@
+/*
+ * Copyright 2013 Simon Taddiken
+ *
+ * This file is part of Polly HTTP API.
+ *
+ * Polly HTTP API is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or (at 
+ * your option) any later version.
+ *
+ * Polly HTTP API is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or 
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for 
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along 
+ * with Polly HTTP API. If not, see http://www.gnu.org/licenses/.
+ */
+package de.skuzzle.polly.http.api.answers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import de.skuzzle.polly.http.api.HttpEvent;
+import de.skuzzle.polly.http.api.HttpServer;
+import de.skuzzle.polly.http.api.ResolvedFile;
+
+
+/**
+ * Creates answers for static content like files and class path resources, taking the
+ * request headers into account:
+ * <ul>
+ * <li>Each answer carries an <tt>ETag</tt> and a <tt>Last-Modified</tt> header. If the
+ * client's <tt>If-None-Match</tt> or <tt>If-Modified-Since</tt> header shows that its
+ * cached copy is still valid, an empty answer with status 304 is created.</li>
+ * <li>Text content is sent gzip compressed if the client accepts it. For files, a 
+ * precompressed variant <tt>&lt;file&gt;.gz</tt> is sent if it exists and is not 
+ * older than the file, otherwise the file is compressed while being sent.</li>
+ * <li>Files support single byte ranges (status 206), which are always served from the
+ * uncompressed file.</li>
+ * </ul>
+ * 
+ * @author Simon Taddiken
+ */
+final class StaticContent {
+    
+    /** Files smaller than this are not worth to be compressed on the fly */
+    private final static int MIN_COMPRESS_SIZE = 256;
+    
+    private final static String GZIP = "gzip";
+    
+    private final static String GZIP_EXTENSION = ".gz";
+    
+    /** Content types of the file extensions which are sent compressed */
+    private final static Map<String, String> COMPRESSIBLE = new HashMap<>();
+    static {
+        COMPRESSIBLE.put("html", "text/html");
+        COMPRESSIBLE.put("htm", "text/html");
+        COMPRESSIBLE.put("css", "text/css");
+        COMPRESSIBLE.put("js", "application/javascript");
+        COMPRESSIBLE.put("json", "application/json");
+        COMPRESSIBLE.put("xml", "application/xml");
+        COMPRESSIBLE.put("svg", "image/svg+xml");
+        COMPRESSIBLE.put("txt", "text/plain");
+        COMPRESSIBLE.put("csv", "text/csv");
+    }
+    
+    
+    
+    private StaticContent() {}
+    
+    
+    
+    /**
+     * Creates the answer for sending the given file.
+     * 
+     * @param e The request.
+     * @param responseCode Response code for a complete answer. Requests are only 
+     *          evaluated if this is 200.
+     * @param file The file to send.
+     * @return The answer.
+     * @throws IOException If the file can not be accessed.
+     */
+    public static HttpAnswer fileAnswer(HttpEvent e, int responseCode, 
+            ResolvedFile file) throws IOException {
+        
+        if (responseCode != 200) {
+            return new HttpFileAnswer(responseCode, file);
+        }
+        
+        final File f = file.getFile();
+        final long lastModified = f.lastModified();
+        final long length = f.length();
+        final String name = f.getName();
+        final boolean compressible = isCompressible(name);
+        final boolean gzip = compressible && acceptsGzip(e);
+        final String etag = etag(length, lastModified, gzip);
+        
+        if (notModified(e, etag, lastModified)) {
+            return notModifiedAnswer(etag, lastModified, compressible);
+        }
+        
+        final String range = e.getRequestHeader("Range");
+        if (range != null && ifRange(e, etag(length, lastModified, false), 
+                lastModified)) {
+            
+            final long[] r = parseRange(range, length);
+            if (r == null) {
+                // malformed or multiple ranges: send the whole file
+            } else if (r.length == 0) {
+                final HttpAnswer answer = new EmptyAnswer(416);
+                answer.addHeader("Content-Range", "bytes */" + length);
+                return answer;
+            } else {
+                final HttpAnswer answer = new HttpFileAnswer(206, file, r[0], 
+                    r[1] - r[0] + 1, false);
+                answer.addHeader("Content-Range", 
+                    "bytes " + r[0] + "-" + r[1] + "/" + length);
+                addHeaders(answer, name, etag(length, lastModified, false), 
+                    lastModified, compressible);
+                return answer;
+            }
+        }
+        
+        final HttpAnswer answer;
+        if (gzip) {
+            final File compressed = new File(f.getPath() + GZIP_EXTENSION);
+            if (compressed.isFile() && compressed.lastModified() >= lastModified) {
+                final ResolvedFile precompressed = new ResolvedFile() {
+                    @Override
+                    public File getFile() {
+                        return compressed;
+                    }
+                };
+                answer = new HttpFileAnswer(200, precompressed, 0, 
+                    compressed.length(), false);
+            } else if (length >= MIN_COMPRESS_SIZE) {
+                answer = new HttpFileAnswer(200, file, 0, -1, true);
+            } else {
+                return identity(file, name, length, lastModified, compressible);
+            }
+            answer.addHeader("Content-Encoding", GZIP);
+        } else {
+            return identity(file, name, length, lastModified, compressible);
+        }
+        addHeaders(answer, name, etag, lastModified, compressible);
+        return answer;
+    }
+    
+    
+    
+    private static HttpAnswer identity(ResolvedFile file, String name, long length, 
+            long lastModified, boolean compressible) {
+        final HttpAnswer answer = new HttpFileAnswer(200, file, 0, length, false);
+        answer.addHeader("Accept-Ranges", "bytes");
+        addHeaders(answer, name, etag(length, lastModified, false), lastModified, 
+            compressible);
+        return answer;
+    }
+    
+    
+    
+    /**
+     * Creates the answer for sending the class path resource with the given path.
+     * 
+     * @param e The request.
+     * @param cl Class loader to load the resource from.
+     * @param resourcePath Path of the resource.
+     * @return The answer.
+     * @throws IOException If the resource can not be accessed.
+     */
+    public static HttpAnswer resourceAnswer(HttpEvent e, ClassLoader cl, 
+            String resourcePath) throws IOException {
+        
+        final String path = resourcePath.startsWith("/") 
+            ? resourcePath.substring(1) 
+            : resourcePath;
+        final URL url = cl.getResource(path);
+        if (url == null) {
+            // sends an empty answer
+            return new HttpResourceAnswer(200, cl, resourcePath);
+        }
+        
+        final URLConnection connection = url.openConnection();
+        final long lastModified = connection.getLastModified();
+        final long length = connection.getContentLengthLong();
+        final String name = path.substring(path.lastIndexOf('/') + 1);
+        final boolean compressible = isCompressible(name);
+        final boolean gzip = compressible && length >= MIN_COMPRESS_SIZE && 
+            acceptsGzip(e);
+        
+        if (lastModified <= 0 || length < 0) {
+            // can not be validated
+            return new HttpResourceAnswer(200, url, gzip);
+        }
+        
+        final String etag = etag(length, lastModified, gzip);
+        if (notModified(e, etag, lastModified)) {
+            return notModifiedAnswer(etag, lastModified, compressible);
+        }
+        
+        final HttpAnswer answer = new HttpResourceAnswer(200, url, gzip);
+        if (gzip) {
+            answer.addHeader("Content-Encoding", GZIP);
+        }
+        addHeaders(answer, name, etag, lastModified, compressible);
+        return answer;
+    }
+    
+    
+    
+    private static HttpAnswer notModifiedAnswer(String etag, long lastModified, 
+            boolean compressible) {
+        final HttpAnswer answer = new EmptyAnswer(304);
+        answer.addHeader("ETag", etag);
+        answer.addHeader("Last-Modified", formatDate(lastModified));
+        if (compressible) {
+            answer.addHeader("Vary", "Accept-Encoding");
+        }
+        return answer;
+    }
+    
+    
+    
+    private static void addHeaders(HttpAnswer answer, String name, String etag, 
+            long lastModified, boolean compressible) {
+        answer.addHeader("ETag", etag);
+        answer.addHeader("Last-Modified", formatDate(lastModified));
+        if (compressible) {
+            answer.addHeader("Content-Type", COMPRESSIBLE.get(extension(name)));
+            answer.addHeader("Vary", "Accept-Encoding");
+        } else {
+            final String type = URLConnection.guessContentTypeFromName(name);
+            if (type != null) {
+                answer.addHeader("Content-Type", type);
+            }
+        }
+    }
+    
+    
+    
+    private static String etag(long length, long lastModified, boolean gzip) {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + 
+            (gzip ? "-" + GZIP : "") + "\"";
+    }
+    
+    
+    
+    private static String extension(String name) {
+        final int i = name.lastIndexOf('.');
+        return i < 0 ? "" : name.substring(i + 1).toLowerCase(Locale.ENGLISH);
+    }
+    
+    
+    
+    private static boolean isCompressible(String name) {
+        return COMPRESSIBLE.containsKey(extension(name));
+    }
+    
+    
+    
+    /**
+     * Whether the <tt>Accept-Encoding</tt> header of the request contains gzip with a
+     * quality greater than 0.
+     * 
+     * @param e The request.
+     * @return Whether the client accepts gzip compressed content.
+     */
+    private static boolean acceptsGzip(HttpEvent e) {
+        final String accept = e.getRequestHeader("Accept-Encoding");
+        if (accept == null) {
+            return false;
+        }
+        for (final String coding : accept.split(",")) {
+            final String[] parts = coding.split(";");
+            if (!parts[0].trim().equalsIgnoreCase(GZIP)) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; ++i) {
+                final String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0.0;
+                    } catch (NumberFormatException ignore) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    
+    
+    /**
+     * Whether the client's cached copy is still valid. <tt>If-None-Match</tt> takes
+     * precedence over <tt>If-Modified-Since</tt>.
+     * 
+     * @param e The request.
+     * @param etag Current entity tag of the content.
+     * @param lastModified Current modification time of the content.
+     * @return Whether a 304 answer can be sent.
+     */
+    private static boolean notModified(HttpEvent e, String etag, long lastModified) {
+        final String ifNoneMatch = e.getRequestHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        final Date since = parseDate(e.getRequestHeader("If-Modified-Since"));
+        return since != null && lastModified / 1000 <= since.getTime() / 1000;
+    }
+    
+    
+    
+    /**
+     * Whether the <tt>Range</tt> header should be applied with respect to the 
+     * <tt>If-Range</tt> header of the request.
+     * 
+     * @param e The request.
+     * @param etag Entity tag of the uncompressed content.
+     * @param lastModified Current modification time of the content.
+     * @return Whether the range should be sent.
+     */
+    private static boolean ifRange(HttpEvent e, String etag, long lastModified) {
+        final String ifRange = e.getRequestHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        } else if (ifRange.trim().startsWith("\"")) {
+            return ifRange.trim().equals(etag);
+        }
+        final Date date = parseDate(ifRange);
+        return date != null && lastModified / 1000 == date.getTime() / 1000;
+    }
+    
+    
+    
+    /**
+     * Parses a <tt>Range</tt> header with a single byte range.
+     * 
+     * @param range The header value.
+     * @param length Length of the content.
+     * @return The first and the last byte position (inclusive), an empty array if the
+     *          range can not be satisfied or <code>null</code> if the header is 
+     *          malformed or specifies multiple ranges.
+     */
+    private static long[] parseRange(String range, long length) {
+        range = range.trim();
+        if (!range.startsWith("bytes=") || range.indexOf(',') != -1) {
+            return null;
+        }
+        final String spec = range.substring("bytes=".length()).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            final String first = spec.substring(0, dash).trim();
+            final String last = spec.substring(dash + 1).trim();
+            final long start;
+            long end;
+            if (first.isEmpty()) {
+                // suffix range: last n bytes
+                final long n = Long.parseLong(last);
+                if (n <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, length - n);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                if (last.isEmpty()) {
+                    end = length - 1;
+                } else {
+                    end = Long.parseLong(last);
+                    if (end < start) {
+                        return null;
+                    }
+                    end = Math.min(end, length - 1);
+                }
+            }
+            if (start >= length || start > end) {
+                return new long[0];
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException ignore) {
+            return null;
+        }
+    }
+    
+    
+    
+    private static SimpleDateFormat httpDateFormat() {
+        final SimpleDateFormat format = new SimpleDateFormat(
+            "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+    
+    
+    
+    private static String formatDate(long time) {
+        return httpDateFormat().format(new Date(time));
+    }
+    
+    
+    
+    private static Date parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return httpDateFormat().parse(date.trim());
+        } catch (ParseException ignore) {
+            return null;
+        }
+    }
+    
+    
+    
+    /**
+     * Answer without response body.
+     */
+    private final static class EmptyAnswer extends HttpBinaryAnswer {
+        
+        public EmptyAnswer(int responseCode) {
+            super(responseCode);
+            this.setContentLength(-1);
+        }
+        
+        
+        
+        @Override
+        public void getAnswer(OutputStream out, HttpServer server) {}
+    }
+}
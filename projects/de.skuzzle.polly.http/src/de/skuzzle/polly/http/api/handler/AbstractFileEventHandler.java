@@ -19,10 +19,13 @@
 package de.skuzzle.polly.http.api.handler;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 
 import de.skuzzle.polly.http.api.HttpEvent;
 import de.skuzzle.polly.http.api.HttpException;
+import de.skuzzle.polly.http.api.ResolvedFile;
 import de.skuzzle.polly.http.api.answers.HttpAnswer;
+import de.skuzzle.polly.http.api.answers.HttpAnswers;
 
 abstract class AbstractFileEventHandler implements HttpEventHandler {
 
@@ -105,6 +108,30 @@ abstract class AbstractFileEventHandler implements HttpEventHandler {
     
     
     
+    /**
+     * Creates the answer to send the given file. The answer respects conditional, 
+     * compression and range headers of the request (see 
+     * {@link HttpAnswers#newFileAnswer(HttpEvent, int, ResolvedFile)}).
+     * 
+     * @param e The request.
+     * @param file The file to send.
+     * @return The answer.
+     * @throws FileNotFoundException If the file does not exist.
+     * @throws HttpException If the file can not be accessed.
+     */
+    protected HttpAnswer fileAnswer(HttpEvent e, ResolvedFile file) 
+            throws FileNotFoundException, HttpException {
+        try {
+            return HttpAnswers.newFileAnswer(e, this.responseCode, file);
+        } catch (FileNotFoundException e1) {
+            throw e1;
+        } catch (IOException e1) {
+            throw new HttpException(e1);
+        }
+    }
+    
+    
+    
     protected abstract HttpAnswer handleHttpEvent(String registered, HttpEvent e) 
             throws FileNotFoundException, HttpException;      
 }
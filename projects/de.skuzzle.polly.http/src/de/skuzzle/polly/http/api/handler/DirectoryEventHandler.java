@@ -28,7 +28,6 @@ import de.skuzzle.polly.http.api.HttpEvent;
 import de.skuzzle.polly.http.api.HttpException;
 import de.skuzzle.polly.http.api.ResolvedFile;
 import de.skuzzle.polly.http.api.answers.HttpAnswer;
-import de.skuzzle.polly.http.api.answers.HttpFileAnswer;
 
 public class DirectoryEventHandler extends AbstractFileEventHandler {
 
@@ -59,7 +58,6 @@ public class DirectoryEventHandler extends AbstractFileEventHandler {
         final FileResolver fr = new DefaultFileResolver();
         final ResolvedFile target = fr.resolve(this.rootDirectory, url);
 
-        final HttpAnswer answer = new HttpFileAnswer(this.responseCode, target);
-        return answer;
+        return this.fileAnswer(e, target);
     }
 }
@@ -24,7 +24,6 @@ import de.skuzzle.polly.http.api.HttpEvent;
 import de.skuzzle.polly.http.api.HttpException;
 import de.skuzzle.polly.http.api.ResolvedFile;
 import de.skuzzle.polly.http.api.answers.HttpAnswer;
-import de.skuzzle.polly.http.api.answers.HttpFileAnswer;
 
 
 public class SingleFileEventHandler extends AbstractFileEventHandler {
@@ -44,6 +43,6 @@ public class SingleFileEventHandler extends AbstractFileEventHandler {
     protected HttpAnswer handleHttpEvent(String registered, HttpEvent e) 
             throws FileNotFoundException, HttpException {
         
-        return new HttpFileAnswer(this.responseCode, this.file);
+        return this.fileAnswer(e, this.file);
     }
 }
@@ -18,18 +18,26 @@
  */
 package de.skuzzle.polly.http.api.handler;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
 import org.apache.velocity.runtime.resource.loader.FileResourceLoader;
 
 import de.skuzzle.polly.http.api.HttpEvent;
@@ -41,10 +49,77 @@ import de.skuzzle.polly.http.api.answers.HttpTemplateAnswer;
  * Default handler for all subclasses of {@link HttpTemplateAnswer}. This handler
  * is automatically registered with the servlet server upon creation.
  * 
+ * <p>Velocity engines are created once for each distinct resource loader
+ * configuration (see {@link #getEngineKey(String)}) and shared among all requests. 
+ * Parsed templates are cached by the engine's resource manager, keyed by their path. 
+ * If template reloading is enabled, cached templates are checked for modifications 
+ * every {@value #MODIFICATION_CHECK_INTERVAL} seconds, otherwise they are parsed 
+ * only once.</p>
+ * 
+ * <p>Templates are rendered into a buffer which is kept for each thread and then 
+ * encoded onto the response stream, so rendering a page does not allocate new 
+ * writers and buffers.</p>
+ * 
  * @author Simon Taddiken
  */
 public class TemplateAnswerHandler extends HttpAnswerHandler {
 
+    /** 
+     * Seconds between two modification checks of a cached template if reloading is 
+     * enabled 
+     */
+    public final static int MODIFICATION_CHECK_INTERVAL = 2;
+    
+    /** Render buffers which grew larger than this are not kept for the next request */
+    private final static int MAX_POOLED_BUFFER = 1 << 20;
+    
+    private final static int BYTE_BUFFER_SIZE = 8192;
+    
+    private final Map<String, VelocityEngine> engines;
+    private final ThreadLocal<RenderBuffer> buffers;
+    private volatile boolean reloadTemplates;
+    
+    
+    
+    public TemplateAnswerHandler() {
+        this.engines = new ConcurrentHashMap<>();
+        this.buffers = new ThreadLocal<RenderBuffer>() {
+            @Override
+            protected RenderBuffer initialValue() {
+                return new RenderBuffer();
+            }
+        };
+    }
+    
+    
+    
+    /**
+     * Sets whether cached templates should be checked for modifications and reloaded
+     * if their source changed. This is useful during development of templates. All 
+     * cached templates are discarded when the setting changes.
+     * 
+     * @param reloadTemplates Whether to reload modified templates.
+     */
+    public void setReloadTemplates(boolean reloadTemplates) {
+        if (this.reloadTemplates != reloadTemplates) {
+            this.reloadTemplates = reloadTemplates;
+            this.engines.clear();
+        }
+    }
+    
+    
+    
+    /**
+     * Whether cached templates are checked for modifications.
+     * 
+     * @return Whether to reload modified templates.
+     */
+    public boolean isReloadTemplates() {
+        return this.reloadTemplates;
+    }
+    
+    
+    
     @Override
     public void handleAnswer(HttpAnswer answer, HttpEvent e, OutputStream out) 
             throws IOException {
@@ -52,21 +127,22 @@ public class TemplateAnswerHandler extends HttpAnswerHandler {
         try {
             final HttpTemplateAnswer template = (HttpTemplateAnswer) answer;
             
-            // try to resolve template file and init velocity
-            final VelocityEngine ve = new VelocityEngine();
-            this.prepare(ve, template.getName());
-            
-            ve.init();
-            final Template temp = ve.getTemplate(template.getName(), e.getSource().getEncoding());
+            final VelocityEngine ve = this.getEngine(template.getName());
+            final Template temp = ve.getTemplate(template.getName(), 
+                e.getSource().getEncoding());
             
             final Map<String, Object> mappings = new HashMap<>();
             template.getAnswer(mappings);
             
             final VelocityContext c = new VelocityContext(mappings);
-            final Writer w = new BufferedWriter(new OutputStreamWriter(out, 
-                    e.getSource().getEncoding()));
-            temp.merge(c, w);
-            w.flush();
+            final RenderBuffer buffer = this.buffers.get();
+            try {
+                temp.merge(c, buffer);
+                buffer.writeTo(out, Charset.forName(e.getSource().getEncoding()));
+            } finally {
+                buffer.reset();
+            }
+            out.flush();
         } catch (Exception e1) {
             e1.printStackTrace();
             throw e1;
@@ -76,7 +152,75 @@ public class TemplateAnswerHandler extends HttpAnswerHandler {
     
     
     /**
-     * Prepares the velocity engine to render the requested template.
+     * Gets the shared engine to render the given template, creating and initializing
+     * it if it does not exist yet.
+     * 
+     * @param templateFile The requested template path.
+     * @return The engine.
+     */
+    private VelocityEngine getEngine(String templateFile) {
+        final String key = this.getEngineKey(templateFile);
+        VelocityEngine ve = this.engines.get(key);
+        if (ve == null) {
+            synchronized (this.engines) {
+                ve = this.engines.get(key);
+                if (ve == null) {
+                    ve = new VelocityEngine();
+                    this.prepare(ve, templateFile);
+                    this.enableCaching(ve);
+                    ve.init();
+                    this.engines.put(key, ve);
+                }
+            }
+        }
+        return ve;
+    }
+    
+    
+    
+    private void enableCaching(VelocityEngine ve) {
+        final Object loaders = ve.getProperty(RuntimeConstants.RESOURCE_LOADER);
+        final Collection<?> names;
+        if (loaders instanceof Collection) {
+            names = (Collection<?>) loaders;
+        } else if (loaders != null) {
+            names = Arrays.asList(loaders.toString().split(","));
+        } else {
+            names = Arrays.asList("file");
+        }
+        
+        final int interval = this.reloadTemplates ? MODIFICATION_CHECK_INTERVAL : 0;
+        for (final Object name : names) {
+            final String prefix = name.toString().trim() + ".resource.loader.";
+            ve.setProperty(prefix + "cache", "true");
+            ve.setProperty(prefix + "modificationCheckInterval",
+                Integer.toString(interval));
+        }
+        // do not evict templates, there is only a limited number of them
+        ve.setProperty(RuntimeConstants.RESOURCE_MANAGER_DEFAULTCACHE_SIZE, "0");
+    }
+    
+    
+    
+    /**
+     * Gets the key of the engine which renders the given template. Templates with the
+     * same key share a single engine, so the key must reflect all settings which
+     * {@link #prepare(VelocityEngine, String)} derives from the template path. 
+     * This implementation returns the template's parent folder.
+     * 
+     * @param templateFile The requested template path.
+     * @return The engine key.
+     */
+    protected String getEngineKey(String templateFile) {
+        return new File(templateFile).getParent().toString();
+    }
+    
+    
+    
+    /**
+     * Prepares the velocity engine to render the requested template. This is called
+     * only once for each engine key (see {@link #getEngineKey(String)}), before the 
+     * engine is initialized.
      * 
      * @param ve The velocity engine.
      * @param templatePath The requested template path
@@ -87,4 +231,95 @@ public class TemplateAnswerHandler extends HttpAnswerHandler {
         ve.setProperty("file.resource.loader.path", 
             new File(templateFile).getParent().toString());
     }
+    
+    
+    
+    /**
+     * Writer which collects the rendered template in a reusable buffer and encodes 
+     * it onto a stream afterwards.
+     */
+    private final static class RenderBuffer extends Writer {
+        
+        private StringBuilder chars;
+        private final ByteBuffer bytes;
+        private CharsetEncoder encoder;
+        
+        
+        
+        public RenderBuffer() {
+            this.chars = new StringBuilder(BYTE_BUFFER_SIZE);
+            this.bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+        }
+        
+        
+        
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            this.chars.append(cbuf, off, len);
+        }
+        
+        
+        
+        @Override
+        public void write(String str, int off, int len) {
+            this.chars.append(str, off, off + len);
+        }
+        
+        
+        
+        @Override
+        public void write(int c) {
+            this.chars.append((char) c);
+        }
+        
+        
+        
+        public void writeTo(OutputStream out, Charset charset) throws IOException {
+            if (this.encoder == null || !this.encoder.charset().equals(charset)) {
+                this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            this.encoder.reset();
+            
+            final CharBuffer in = CharBuffer.wrap(this.chars);
+            CoderResult result;
+            do {
+                result = this.encoder.encode(in, this.bytes, true);
+                this.drain(out);
+            } while (result.isOverflow());
+            do {
+                result = this.encoder.flush(this.bytes);
+                this.drain(out);
+            } while (result.isOverflow());
+        }
+        
+        
+        
+        private void drain(OutputStream out) throws IOException {
+            this.bytes.flip();
+            out.write(this.bytes.array(), 0, this.bytes.limit());
+            this.bytes.clear();
+        }
+        
+        
+        
+        public void reset() {
+            if (this.chars.capacity() > MAX_POOLED_BUFFER) {
+                this.chars = new StringBuilder(BYTE_BUFFER_SIZE);
+            } else {
+                this.chars.setLength(0);
+            }
+        }
+        
+        
+        
+        @Override
+        public void flush() {}
+        
+        
+        
+        @Override
+        public void close() {}
+    }
 }
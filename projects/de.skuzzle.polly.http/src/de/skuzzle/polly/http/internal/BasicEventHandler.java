@@ -46,6 +46,7 @@ import de.skuzzle.polly.http.api.answers.HttpAnswer;
 import de.skuzzle.polly.http.api.answers.HttpAnswerHandler;
 import de.skuzzle.polly.http.api.answers.HttpAnswers;
 import de.skuzzle.polly.http.api.handler.HttpEventHandler;
+import de.skuzzle.polly.http.internal.RouteTable.Route;
 
 
 
@@ -197,7 +198,7 @@ class BasicEventHandler implements HttpHandler {
         
         final HttpEventImpl event = new HttpEventImpl(this.server, mode, 
             t.getRequestURI(), t.getRemoteAddress(), plainUri, session, cookies, 
-            get, post, requestBody) {
+            get, post, requestBody, t.getRequestHeaders()) {
             
             public void discard() {
                 super.discard();
@@ -222,15 +223,16 @@ class BasicEventHandler implements HttpHandler {
         session.setLastAction(new Date());
         
         // handle the event
-        final List<HttpEventHandler> handler;
-        final String registered;
-        synchronized (this.server.getHandlers()) {
-            registered = this.server.getHandlers().findKey(httpEvent.getPlainUri());
-            handler = new ArrayList<>(
-                this.server.getHandlers().get(registered));
+        final Route route = this.server.getRoutes().find(httpEvent.getPlainUri());
+        if (route == null) {
+            this.handleAnswer(DefaultAnswers.FILE_NOT_FOUND, t, httpEvent);
+            return;
         }
+        final String registered = route.getUrl();
+        final List<HttpEventHandler> handler = route.getHandlers(httpEvent.getMode(), 
+            httpEvent.getPlainUri());
         
-        if (handler == null || handler.isEmpty()) {
+        if (handler.isEmpty()) {
             this.handleAnswer(DefaultAnswers.FILE_NOT_FOUND, t, httpEvent);
             return;
         }
@@ -316,7 +318,8 @@ class BasicEventHandler implements HttpHandler {
             t.getResponseHeaders().putAll(answer.getResponseHeaders());
             
             if (!httpEvent.isDiscarded()) {
-                t.sendResponseHeaders(answer.getResponseCode(), 0);
+                t.sendResponseHeaders(answer.getResponseCode(), 
+                    answer.getContentLength());
                 
                 // handle different types of answers
                 final HttpAnswerHandler handler = this.server.getHandler(answer);
@@ -41,6 +41,7 @@ class HttpEventImpl implements HttpEvent {
     private final URI requestUri;
     private final String plainUri;
     private final String requestBody;
+    private final Map<String, List<String>> requestHeaders;
     private final InetSocketAddress clientIp;
     private final HttpSession session;
     private final Map<String, String> cookies;
@@ -58,7 +59,8 @@ class HttpEventImpl implements HttpEvent {
     public HttpEventImpl(HttpServer source, RequestMode mode, URI requestURI, 
         InetSocketAddress remoteAddress,
         String plainUri, HttpSession session, Map<String, String> cookies, 
-        Map<String, String> get, Map<String, String> post, String requestBody) {
+        Map<String, String> get, Map<String, String> post, String requestBody,
+        Map<String, List<String>> requestHeaders) {
         
         this.source = source;
         this.mode = mode;
@@ -67,6 +69,7 @@ class HttpEventImpl implements HttpEvent {
         this.clientIp = remoteAddress;
         this.session = session;
         this.requestBody = requestBody;
+        this.requestHeaders = requestHeaders;
         
         this.cookies = Collections.unmodifiableMap(cookies);
         this.get = Collections.unmodifiableMap(get);
@@ -81,7 +84,8 @@ class HttpEventImpl implements HttpEvent {
     
     public HttpEventImpl copy() {
         return new HttpEventImpl(this.source, this.mode, this.requestUri, this.clientIp,
-            this.plainUri, null, this.cookies, this.get, this.post, this.requestBody);
+            this.plainUri, null, this.cookies, this.get, this.post, this.requestBody,
+            this.requestHeaders);
     }
     
     
@@ -127,6 +131,14 @@ class HttpEventImpl implements HttpEvent {
     
     
     
+    @Override
+    public String getRequestHeader(String name) {
+        final List<String> values = this.requestHeaders.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+    
+    
+    
     @Override
     public InetSocketAddress getClientIP() {
         return this.clientIp;
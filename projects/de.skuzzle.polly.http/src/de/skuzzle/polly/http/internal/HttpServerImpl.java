@@ -28,7 +28,6 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Random;
@@ -56,7 +55,7 @@ class HttpServerImpl implements HttpServer {
     
     private final static Random RANDOM = new Random();
 
-    private final URLMap<List<HttpEventHandler>> handlers;
+    private final RouteTable routes;
     private final Map<InetSocketAddress, HttpSessionImpl> ipToSession;
     private final Map<InetSocketAddress, HttpSessionImpl> pending;
     private final Collection<HttpEventListener> httpListeners;
@@ -80,7 +79,7 @@ class HttpServerImpl implements HttpServer {
     public HttpServerImpl(ServerFactory factory) {
         this.traffic = new TrafficInformationImpl(null);
         this.sessionHistory = new ArrayDeque<>();
-        this.handlers = new URLMap<>();
+        this.routes = new RouteTable();
         this.ipToSession = new HashMap<>();
         this.idToSession = new HashMap<>();
         this.pending = new HashMap<>();
@@ -208,7 +207,7 @@ class HttpServerImpl implements HttpServer {
     
     @Override
     public Collection<String> getURLs() {
-        return this.handlers.keySet();
+        return this.routes.getURLs();
     }
     
     
@@ -216,29 +215,21 @@ class HttpServerImpl implements HttpServer {
     @Override
     public void addHttpEventHandler(String url, HttpEventHandler handler) {
         url = url.startsWith("/") ?  url : "/" + url;
-        List<HttpEventHandler> handlers = this.handlers.get(url);
-        if (handlers == null) {
-            handlers = new ArrayList<>();
-            this.handlers.put(url, handlers);
-        }
-        handlers.add(handler);
+        this.routes.add(url, handler);
     }
 
     
     
     @Override
     public void removeHttpEventHandler(String url, HttpEventHandler handler) {
-        final List<HttpEventHandler> handlers = this.handlers.get(url);
-        if (handlers == null) {
-            return;
-        }
-        handlers.remove(handlers);
+        url = url.startsWith("/") ?  url : "/" + url;
+        this.routes.remove(url, handler);
     }
 
     
     
-    URLMap<List<HttpEventHandler>> getHandlers() {
-        return this.handlers;
+    RouteTable getRoutes() {
+        return this.routes;
     }
 
 
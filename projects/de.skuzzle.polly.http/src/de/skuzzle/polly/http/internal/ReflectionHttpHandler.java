@@ -19,8 +19,11 @@
 package de.skuzzle.polly.http.internal;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 
 import de.skuzzle.polly.http.api.Controller;
 import de.skuzzle.polly.http.api.HttpEvent;
@@ -32,15 +35,28 @@ import de.skuzzle.polly.http.api.ParameterHandler;
 import de.skuzzle.polly.http.api.answers.HttpAnswer;
 
 
+/**
+ * Handles requests by calling an annotated method of a {@link Controller}. The 
+ * parameter annotations and {@link ParameterHandler ParameterHandlers} of the method
+ * are resolved once upon creation and the method is invoked through a 
+ * {@link MethodHandle}.
+ */
 class ReflectionHttpHandler implements HttpEventHandler {
     
     private final String uri;
-    private final Method handler;
     private final RequestMode mode;
     private final Controller carrier;
-    private final HttpServletServerImpl parent;
     private final boolean matchExactly;
     
+    /** Request parameter names, one for each method parameter */
+    private final Param[] keys;
+    
+    /** Parsers for the request parameters, one for each method parameter */
+    private final ParameterHandler[] parsers;
+    
+    /** Invokes the handler method. Type: <code>(Object, Object[])Object</code> */
+    private final MethodHandle invoker;
+    
     
     public ReflectionHttpHandler(RequestMode mode, String uri, Controller carrier, 
             Method handler, HttpServletServerImpl parent, boolean matchExactly) {
@@ -48,8 +64,62 @@ class ReflectionHttpHandler implements HttpEventHandler {
         this.mode = mode;
         this.carrier = carrier;
         this.uri = uri;
-        this.handler = handler;
-        this.parent = parent;
+        
+        final Class<?>[] types = handler.getParameterTypes();
+        final Annotation[][] annotations = handler.getParameterAnnotations();
+        this.keys = new Param[types.length];
+        this.parsers = new ParameterHandler[types.length];
+        for (int i = 0; i < types.length; ++i) {
+            // extract parameter name from annotated method parameter
+            // INVARIANT: every parameter is annotated!
+            for (final Annotation a : annotations[i]) {
+                if (a instanceof Param) {
+                    this.keys[i] = (Param) a;
+                    break;
+                }
+            }
+            this.parsers[i] = parent.findHandler(types[i], this.keys[i].typeHint());
+            // INVARIANT: ph can not be null
+            assert this.parsers[i] != null;
+        }
+        this.invoker = createInvoker(handler);
+    }
+    
+    
+    
+    private static MethodHandle createInvoker(Method handler) {
+        MethodHandle mh;
+        try {
+            mh = MethodHandles.publicLookup().unreflect(handler);
+        } catch (IllegalAccessException e) {
+            // public method of a non public class
+            handler.setAccessible(true);
+            try {
+                mh = MethodHandles.lookup().unreflect(handler);
+            } catch (IllegalAccessException e1) {
+                throw new IllegalArgumentException("handler is not accessible", e1);
+            }
+        }
+        final int params = handler.getParameterTypes().length;
+        if (Modifier.isStatic(handler.getModifiers())) {
+            // ignore the receiver
+            mh = MethodHandles.dropArguments(mh, 0, Object.class);
+        }
+        return mh.asType(MethodType.genericMethodType(params + 1))
+            .asSpreader(Object[].class, params);
+    }
+    
+    
+    
+    /**
+     * Whether this handler may respond to requests with the given mode.
+     * 
+     * @param mode The request mode.
+     * @param exact Whether the requested path equals the URL of this handler.
+     * @return Whether this handler may respond to such requests.
+     */
+    public boolean accepts(RequestMode mode, boolean exact) {
+        return mode == this.mode && (exact || !this.matchExactly);
     }
     
     
@@ -65,19 +135,9 @@ class ReflectionHttpHandler implements HttpEventHandler {
         
         
         // extract actual parameters from the request
-        final Object[] params = new Object[this.handler.getParameterTypes().length];
-        for (int i = 0; i < this.handler.getParameterTypes().length; ++i) {
-            final Annotation[] an = this.handler.getParameterAnnotations()[i];
-            
-            // extract parameter name from annotated method parameter
-            // INVARIANT: every parameter is annotated!
-            Param key = null;
-            for (Annotation a : an) {
-                if (a instanceof Param) {
-                    key = (Param) a;
-                    break;
-                }
-            }
+        final Object[] params = new Object[this.keys.length];
+        for (int i = 0; i < params.length; ++i) {
+            final Param key = this.keys[i];
             
             // value associated with that key in the current request 
             String sValue = e.parameterMap(this.mode).get(key.value());
@@ -90,24 +150,21 @@ class ReflectionHttpHandler implements HttpEventHandler {
                 }
             }
             
-            final Class<?> type = this.handler.getParameterTypes()[i];
-            final ParameterHandler ph = this.parent.findHandler(type, key.typeHint());
-            // INVARIANT: ph can not be null
-            assert ph != null;
-            
-            params[i] = ph.parse(sValue);
+            params[i] = this.parsers[i].parse(sValue);
         }
         
         // execute the function
         try {
-            final Controller copy = this.carrier.bind(registered, e);
-            return (HttpAnswer) this.handler.invoke(copy, params);
-        } catch (InvocationTargetException e1) {
-            if (e1.getTargetException() instanceof HttpException) {
-                throw (HttpException) e1.getTargetException();
-            }
-            throw new HttpException(e1.getTargetException());
-        } catch (Exception e1) {
+            final Controller copy = this.carrier == null 
+                ? null 
+                : this.carrier.bind(registered, e);
+            final Object answer = this.invoker.invokeExact((Object) copy, params);
+            return (HttpAnswer) answer;
+        } catch (HttpException e1) {
+            throw e1;
+        } catch (Error e1) {
+            throw e1;
+        } catch (Throwable e1) {
             throw new HttpException(e1);
         }
     }
@@ -0,0 +1,319 @@
+package de.skuzzle.polly.http.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import de.skuzzle.polly.http.api.HttpEvent.RequestMode;
+import de.skuzzle.polly.http.api.handler.HttpEventHandler;
+
+
+/**
+ * Maps URLs to the handlers which are registered for them. A request is handled by
+ * the handlers of the longest registered URL which is a prefix of the requested path
+ * and ends at a path segment boundary.
+ *
+ * <p>URLs are stored in a radix trie, so finding the handlers for a path compares
+ * each of its characters only once and does not create any substrings. Additionally,
+ * each {@link Route} precomputes which of its handlers may respond to a request,
+ * depending on the request mode and on whether the registered URL matches the whole
+ * path. Registration rebuilds the trie, so lookups do not need any locking.</p>
+ */
+class RouteTable {
+
+    /**
+     * The handlers which are registered for a single URL. Routes are immutable,
+     * adding or removing a handler replaces the route.
+     */
+    final static class Route {
+
+        private final String url;
+        private final List<HttpEventHandler> handlers;
+
+        /** Candidate handlers if the request path equals the url */
+        private final Map<RequestMode, List<HttpEventHandler>> exact;
+
+        /** Candidate handlers if the url is only a prefix of the request path */
+        private final Map<RequestMode, List<HttpEventHandler>> prefix;
+
+
+
+        private Route(String url, List<HttpEventHandler> handlers) {
+            this.url = url;
+            this.handlers = Collections.unmodifiableList(handlers);
+            this.exact = new EnumMap<>(RequestMode.class);
+            this.prefix = new EnumMap<>(RequestMode.class);
+            for (final RequestMode mode : RequestMode.values()) {
+                this.exact.put(mode, filter(handlers, mode, true));
+                this.prefix.put(mode, filter(handlers, mode, false));
+            }
+        }
+
+
+
+        private static List<HttpEventHandler> filter(List<HttpEventHandler> handlers,
+                RequestMode mode, boolean exact) {
+            final List<HttpEventHandler> result = new ArrayList<>(handlers.size());
+            for (final HttpEventHandler handler : handlers) {
+                // other handlers decide for themselves
+                if (!(handler instanceof ReflectionHttpHandler) ||
+                        ((ReflectionHttpHandler) handler).accepts(mode, exact)) {
+                    result.add(handler);
+                }
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+
+
+        /**
+         * Gets the URL for which the handlers are registered.
+         *
+         * @return The URL.
+         */
+        public String getUrl() {
+            return this.url;
+        }
+
+
+
+        /**
+         * Gets all handlers in the order in which they have been registered.
+         *
+         * @return The handlers.
+         */
+        public List<HttpEventHandler> getHandlers() {
+            return this.handlers;
+        }
+
+
+
+        /**
+         * Gets the handlers which may respond to a request with the given path, in the
+         * order in which they have been registered.
+         *
+         * @param mode The request mode.
+         * @param path The requested path.
+         * @return The candidate handlers.
+         */
+        public List<HttpEventHandler> getHandlers(RequestMode mode, String path) {
+            return path.length() == this.url.length()
+                ? this.exact.get(mode)
+                : this.prefix.get(mode);
+        }
+    }
+
+
+
+    /**
+     * Node of the radix trie. Each node is reached by its label and holds the route of
+     * the URL which is spelled by the labels on the path from the root, if there is
+     * one. Nodes are immutable, registration builds a new trie.
+     */
+    private final static class Node {
+        private final String label;
+        private final Route route;
+        
+        /** First characters of the children's labels, sorted */
+        private final char[] first;
+        private final Node[] children;
+
+
+
+        private Node(String label, Route route, char[] first, Node[] children) {
+            this.label = label;
+            this.route = route;
+            this.first = first;
+            this.children = children;
+        }
+
+
+
+        private Node child(char c) {
+            final int i = Arrays.binarySearch(this.first, c);
+            return i < 0 ? null : this.children[i];
+        }
+    }
+
+
+
+    /**
+     * Mutable node which is used to build the trie.
+     */
+    private final static class Builder {
+        private String label;
+        private Route route;
+        private final SortedMap<Character, Builder> children;
+
+
+
+        private Builder(String label) {
+            this.label = label;
+            this.children = new TreeMap<>();
+        }
+
+
+
+        private void insert(String url, int pos, Route route) {
+            if (pos == url.length()) {
+                this.route = route;
+                return;
+            }
+            final char c = url.charAt(pos);
+            final Builder child = this.children.get(c);
+            if (child == null) {
+                final Builder leaf = new Builder(url.substring(pos));
+                leaf.route = route;
+                this.children.put(c, leaf);
+                return;
+            }
+            
+            // length of the common prefix of the child's label and the remaining url
+            int common = 0;
+            final int max = Math.min(child.label.length(), url.length() - pos);
+            while (common < max && 
+                    child.label.charAt(common) == url.charAt(pos + common)) {
+                ++common;
+            }
+            if (common < child.label.length()) {
+                // split the child's label
+                final Builder split = new Builder(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                split.children.put(child.label.charAt(0), child);
+                this.children.put(c, split);
+                split.insert(url, pos + common, route);
+            } else {
+                child.insert(url, pos + common, route);
+            }
+        }
+
+
+
+        private Node build() {
+            final char[] first = new char[this.children.size()];
+            final Node[] nodes = new Node[this.children.size()];
+            int i = 0;
+            for (final Map.Entry<Character, Builder> e : this.children.entrySet()) {
+                first[i] = e.getKey();
+                nodes[i] = e.getValue().build();
+                ++i;
+            }
+            return new Node(this.label, this.route, first, nodes);
+        }
+    }
+
+
+
+    private final Map<String, Route> routes;
+    private volatile Node root;
+
+
+
+    public RouteTable() {
+        this.routes = new HashMap<>();
+        this.root = new Builder("").build();
+    }
+
+
+
+    /**
+     * Gets all URLs for which handlers are registered.
+     *
+     * @return The registered URLs.
+     */
+    public synchronized Collection<String> getURLs() {
+        return new ArrayList<>(this.routes.keySet());
+    }
+
+
+
+    /**
+     * Registers the given handler for the given URL. It is tried after all handlers
+     * which have been registered for the same URL before.
+     *
+     * @param url The URL.
+     * @param handler The handler.
+     */
+    public synchronized void add(String url, HttpEventHandler handler) {
+        final Route route = this.routes.get(url);
+        final List<HttpEventHandler> handlers = route == null
+            ? new ArrayList<HttpEventHandler>()
+            : new ArrayList<>(route.getHandlers());
+        handlers.add(handler);
+        this.routes.put(url, new Route(url, handlers));
+        this.rebuild();
+    }
+
+
+
+    /**
+     * Removes the given handler from the given URL.
+     *
+     * @param url The URL.
+     * @param handler The handler.
+     */
+    public synchronized void remove(String url, HttpEventHandler handler) {
+        final Route route = this.routes.get(url);
+        if (route == null) {
+            return;
+        }
+        final List<HttpEventHandler> handlers = new ArrayList<>(route.getHandlers());
+        if (!handlers.remove(handler)) {
+            return;
+        } else if (handlers.isEmpty()) {
+            this.routes.remove(url);
+        } else {
+            this.routes.put(url, new Route(url, handlers));
+        }
+        this.rebuild();
+    }
+
+
+
+    private void rebuild() {
+        final Builder root = new Builder("");
+        for (final Route route : this.routes.values()) {
+            root.insert(route.getUrl(), 0, route);
+        }
+        this.root = root.build();
+    }
+
+
+
+    /**
+     * Finds the route with the longest URL which matches the given path. A URL 
+     * matches if it is a prefix of the path which is followed by a '/' or by the end
+     * of the path.
+     *
+     * @param path The requested path.
+     * @return The route or <code>null</code> if no URL matches.
+     */
+    public Route find(String path) {
+        final int length = path.length();
+        Node node = this.root;
+        Route result = null;
+        int pos = 0;
+        while (true) {
+            if (node.route != null && (pos == length || path.charAt(pos) == '/')) {
+                result = node.route;
+            }
+            if (pos == length) {
+                return result;
+            }
+            final Node child = node.child(path.charAt(pos));
+            if (child == null || 
+                    !path.regionMatches(pos, child.label, 0, child.label.length())) {
+                return result;
+            }
+            pos += child.label.length();
+            node = child;
+        }
+    }
+}
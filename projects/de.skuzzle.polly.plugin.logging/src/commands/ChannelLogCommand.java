@@ -1,5 +1,6 @@
 package commands;
 
+import java.util.Date;
 import java.util.List;
 
 import polly.logging.MSG;
@@ -64,28 +65,33 @@ public class ChannelLogCommand extends AbstractLogCommand {
         ChainedLogFilter filter = new ChainedLogFilter(new AnyLogFilter());
 
         // All signatures except the first have a message pattern
+        String pattern = null;
         if (signature.getId() > 0 && signature.getId() < 5) {
             int paramIdx = 1;
             if (signature.getId() == 4) {
                 // signature 4 has pattern as first parameter
                 paramIdx = 0;
             }
-            String pattern = signature.getStringValue(paramIdx);
+            pattern = signature.getStringValue(paramIdx);
             filter.addFilter(new MessageRegexLogFilter(pattern));
         }
         
+        Date from = null;
+        Date to = null;
+        if (this.match(signature, 2)) {
+            from = signature.getDateValue(2);
+            filter.addFilter(new DateLogFilter(from));
+        } else if (this.match(signature, 3)) {
+            from = signature.getDateValue(2);
+            to = signature.getDateValue(3);
+            filter.addFilter(new DateLogFilter(from, to));
+        }
+        
         
         List<LogEntry> prefiltered = null;
         
         try {
-            prefiltered = this.logManager.preFilterChannel(chan);
-
-            if (this.match(signature, 2)) {
-                filter.addFilter(new DateLogFilter(signature.getDateValue(2)));
-            } else if (this.match(signature, 3)) {
-                filter.addFilter(new DateLogFilter(signature.getDateValue(2), 
-                    signature.getDateValue(3)));
-            }
+            prefiltered = this.logManager.preFilterChannel(chan, from, to, pattern);
             
             prefiltered = this.logManager.postFilter(prefiltered, filter);
             
@@ -39,16 +39,17 @@ public class ReplayCommand extends AbstractLogCommand {
         try {
             if (this.match(signature, 0)) {
                 List<LogEntry> logs = new ArrayList<LogEntry>();
+                Date since = new Date(executer.getLastIdleTime());
                 
                 for (String chan : this.getMyPolly().irc().getChannels()) {
                     if (this.getMyPolly().irc().isOnChannel(chan, 
                             executer.getCurrentNickName())) {
                         
-                        logs.addAll(this.logManager.preFilterChannel(chan));
+                        logs.addAll(this.logManager.preFilterChannel(
+                            chan, since, null, null));
                     }
                 }
-                LogFilter dateFilter = new DateLogFilter(
-                        new Date(executer.getLastIdleTime()));
+                LogFilter dateFilter = new DateLogFilter(since);
                 
                 logs = this.logManager.postFilter(logs, dateFilter);
                 this.logManager.outputLogResults(this.getMyPolly(), executer, logs, 
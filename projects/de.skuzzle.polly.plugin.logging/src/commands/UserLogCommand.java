@@ -1,5 +1,6 @@
 package commands;
 
+import java.util.Date;
 import java.util.List;
 
 import polly.logging.MSG;
@@ -61,23 +62,28 @@ public class UserLogCommand extends AbstractLogCommand {
         String user = signature.getStringValue(0);
 
         // All signatures except the first have a message pattern
+        String pattern = null;
         if (signature.getId() > 0) {
-            String pattern = signature.getStringValue(1);
+            pattern = signature.getStringValue(1);
             filter.addFilter(new MessageRegexLogFilter(pattern));
         }
         
+        Date from = null;
+        Date to = null;
+        if (this.match(signature, 2)) {
+            from = signature.getDateValue(2);
+            filter.addFilter(new DateLogFilter(from));
+        } else if (this.match(signature, 3)) {
+            from = signature.getDateValue(2);
+            to = signature.getDateValue(3);
+            filter.addFilter(new DateLogFilter(from, to));
+        }
+        
         
         List<LogEntry> prefiltered = null;
         
         try {
-            prefiltered = this.logManager.filterUserRegex(user);
-
-            if (this.match(signature, 2)) {
-                filter.addFilter(new DateLogFilter(signature.getDateValue(2)));
-            } else if (this.match(signature, 3)) {
-                filter.addFilter(new DateLogFilter(signature.getDateValue(2), 
-                    signature.getDateValue(3)));
-            }
+            prefiltered = this.logManager.filterUserRegex(user, from, to, pattern);
             
             prefiltered = this.logManager.postFilter(prefiltered, filter);
             
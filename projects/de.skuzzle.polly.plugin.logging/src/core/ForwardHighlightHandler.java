@@ -74,11 +74,12 @@ public class ForwardHighlightHandler extends MessageAdapter {
             try {
                 String mail = ((StringType) this.user.getAttribute("EMAIL")).getValue(); //$NON-NLS-1$
                 
+                Date since = new Date(this.user.getLastIdleTime());
                 List<LogEntry> prefiltered = logManager.preFilterChannel(
-                    e.getChannel());
+                    e.getChannel(), since, null, null);
                 
                 prefiltered = logManager.postFilter(prefiltered, 
-                        new DateLogFilter(new Date(this.user.getLastIdleTime())));
+                        new DateLogFilter(since));
                 
                 Collections.reverse(prefiltered);
                 
@@ -8,7 +8,6 @@ import de.skuzzle.polly.sdk.eventlistener.NickChangeEvent;
 import de.skuzzle.polly.sdk.eventlistener.NickChangeListener;
 import de.skuzzle.polly.sdk.eventlistener.QuitEvent;
 import de.skuzzle.polly.sdk.eventlistener.QuitListener;
-import de.skuzzle.polly.sdk.exceptions.DatabaseException;
 import de.skuzzle.polly.sdk.time.Time;
 import entities.LogEntry;
 
@@ -26,64 +25,44 @@ public class IrcLogCollector implements
     
     @Override
     public void nickChanged(NickChangeEvent e) {
-        try {
-            this.logManager.logMessage(LogEntry.forNickChange(
-                    e.getOldUser().getNickName(), 
-                    e.toString(), "", Time.currentTime())); //$NON-NLS-1$
-        } catch (DatabaseException e1) {
-            this.onDatabaseException(e1);
-        }
+        this.logManager.logMessage(LogEntry.forNickChange(
+                e.getOldUser().getNickName(), 
+                e.toString(), "", Time.currentTime())); //$NON-NLS-1$
     }
     
     
 
     @Override
     public void quited(QuitEvent e) {
-        try {
-            this.logManager.logMessage(LogEntry.forQuit(
-                        e.getUser().getNickName(), e.toString(), "", Time.currentTime())); //$NON-NLS-1$
-        } catch (DatabaseException e1) {
-            this.onDatabaseException(e1);
-        }
+        this.logManager.logMessage(LogEntry.forQuit(
+                    e.getUser().getNickName(), e.toString(), "", Time.currentTime())); //$NON-NLS-1$
     }
     
     
 
     @Override
     public void channelJoined(ChannelEvent e) {
-        try {
-            this.logManager.logMessage(LogEntry.forJoin(
-                        e.getUser().getNickName(),"*** JOIN " + e.toString(),  //$NON-NLS-1$
-                        e.getChannel(), Time.currentTime()));
-        } catch (DatabaseException e1) {
-            this.onDatabaseException(e1);
-        }
+        this.logManager.logMessage(LogEntry.forJoin(
+                    e.getUser().getNickName(),"*** JOIN " + e.toString(),  //$NON-NLS-1$
+                    e.getChannel(), Time.currentTime()));
     }
 
     
     
     @Override
     public void channelParted(ChannelEvent e) {
-        try {
-            this.logManager.logMessage(LogEntry.forPart(
-                        e.getUser().getNickName(), "*** PART " + e.toString(),  //$NON-NLS-1$
-                        e.getChannel(), Time.currentTime()));
-        } catch (DatabaseException e1) {
-            this.onDatabaseException(e1);
-        }
+        this.logManager.logMessage(LogEntry.forPart(
+                    e.getUser().getNickName(), "*** PART " + e.toString(),  //$NON-NLS-1$
+                    e.getChannel(), Time.currentTime()));
     }
 
     
     
     @Override
     public void publicMessage(MessageEvent e) {
-        try {
-            this.logManager.logMessage(LogEntry.forMessage(
-                        e.getUser().getNickName(), 
-                        e.getMessage(), e.getChannel(), Time.currentTime()));
-        } catch (DatabaseException e1) {
-            this.onDatabaseException(e1);
-        }
+        this.logManager.logMessage(LogEntry.forMessage(
+                    e.getUser().getNickName(), 
+                    e.getMessage(), e.getChannel(), Time.currentTime()));
     }
 
     
@@ -102,12 +81,6 @@ public class IrcLogCollector implements
     
     
     
-    private void onDatabaseException(DatabaseException e) {
-        e.printStackTrace();
-    }
-
-
-
     @Override
     public void noticeMessage(MessageEvent ignore) {}
     
@@ -0,0 +1,115 @@
+package core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import entities.LogEntry;
+
+
+/**
+ * Archives log entries into compressed segment files, one for each channel and month:
+ * <code>&lt;folder&gt;/&lt;channel&gt;/&lt;yyyy-MM&gt;.log.gz</code>. Each line holds
+ * the date in milliseconds, the type, the nickname and the message of an entry,
+ * separated by tabs. Appending to an existing segment adds another gzip member to the
+ * file, which is read transparently by gzip tools and {@link java.util.zip.GZIPInputStream}.
+ */
+public class LogArchive {
+
+    private final static String SEGMENT_EXTENSION = ".log.gz"; //$NON-NLS-1$
+
+    private final File folder;
+
+
+
+    public LogArchive(File folder) {
+        this.folder = folder;
+    }
+
+
+
+    public File getFolder() {
+        return this.folder;
+    }
+
+
+
+    /**
+     * Appends the given entries to their segment files.
+     *
+     * @param entries The entries to archive.
+     * @throws IOException If writing a segment fails.
+     */
+    public synchronized void archive(List<LogEntry> entries) throws IOException {
+        final SimpleDateFormat month = new SimpleDateFormat("yyyy-MM"); //$NON-NLS-1$
+        final Map<File, List<LogEntry>> segments = new LinkedHashMap<>();
+        for (final LogEntry entry : entries) {
+            final File channelFolder = new File(this.folder,
+                escape(entry.getChannel()));
+            final File segment = new File(channelFolder,
+                month.format(entry.getDate()) + SEGMENT_EXTENSION);
+            List<LogEntry> segmentEntries = segments.get(segment);
+            if (segmentEntries == null) {
+                segmentEntries = new ArrayList<>();
+                segments.put(segment, segmentEntries);
+            }
+            segmentEntries.add(entry);
+        }
+
+        for (final Map.Entry<File, List<LogEntry>> e : segments.entrySet()) {
+            final File segment = e.getKey();
+            if (!segment.getParentFile().exists() && !segment.getParentFile().mkdirs()) {
+                throw new IOException("could not create " + segment.getParent()); //$NON-NLS-1$
+            }
+            try (Writer w = new OutputStreamWriter(new GZIPOutputStream(
+                    new FileOutputStream(segment, true)), StandardCharsets.UTF_8)) {
+                for (final LogEntry entry : e.getValue()) {
+                    w.write(Long.toString(entry.getDate().getTime()));
+                    w.write('\t');
+                    w.write(Integer.toString(entry.getType()));
+                    w.write('\t');
+                    w.write(escapeLine(entry.getNickname()));
+                    w.write('\t');
+                    w.write(escapeLine(entry.getMessage()));
+                    w.write('\n');
+                }
+            }
+        }
+    }
+
+
+
+    private static String escape(String channel) {
+        if (channel == null || channel.isEmpty()) {
+            return "_"; //$NON-NLS-1$
+        }
+        final StringBuilder b = new StringBuilder(channel.length());
+        for (int i = 0; i < channel.length(); ++i) {
+            final char c = channel.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '#' || c == '-') {
+                b.append(c);
+            } else {
+                b.append('_');
+            }
+        }
+        return b.toString();
+    }
+
+
+
+    private static String escapeLine(String s) {
+        if (s == null) {
+            return ""; //$NON-NLS-1$
+        }
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,507 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import entities.LogEntry;
+
+
+/**
+ * In-memory inverted index over all stored log entries. The index only holds the ids
+ * of the entries, the actual entries are loaded from the database after searching.
+ *
+ * <p>Entries are stored in chronological order, so each entry is identified by its
+ * position and a date range corresponds to a range of positions, which is found by
+ * binary search. For each channel, each nickname and each word of the messages, the
+ * index holds the ascending positions of the entries which contain it. Words are kept
+ * sorted, so that all words with a given prefix can be looked up. Channels and words
+ * are case insensitive.</p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+public class LogIndex {
+
+    /**
+     * Restricts the entries which are returned by {@link LogIndex#search(Query)}. All
+     * restrictions must be met.
+     */
+    public final static class Query {
+        private String channel;
+        private String nickname;
+        private Pattern nicknamePattern;
+        private final List<Fragment> fragments = new ArrayList<>();
+        private long from = Long.MIN_VALUE;
+        private long to = Long.MAX_VALUE;
+        private int type = -1;
+        private int limit = Integer.MAX_VALUE;
+
+
+
+        /** Only entries from the given channel (ignoring case). */
+        public Query channel(String channel) {
+            this.channel = channel;
+            return this;
+        }
+
+
+
+        /** Only entries from the given nickname (ignoring case). */
+        public Query nickname(String nickname) {
+            this.nickname = nickname;
+            return this;
+        }
+
+
+
+        /**
+         * Only entries from nicknames which contain a match of the given pattern. The
+         * pattern is only matched against the distinct nicknames, not against each
+         * entry.
+         */
+        public Query nicknamePattern(Pattern nicknamePattern) {
+            this.nicknamePattern = nicknamePattern;
+            return this;
+        }
+
+
+
+        /** Only entries whose message contains the given word. */
+        public Query word(String word) {
+            return this.fragment(word, true, true);
+        }
+
+
+
+        /**
+         * Only entries whose message contains a word which contains the given part.
+         *
+         * @param part Part of a word.
+         * @param atStart Whether the word must start with the part.
+         * @param atEnd Whether the word must end with the part.
+         * @return This query.
+         */
+        public Query fragment(String part, boolean atStart, boolean atEnd) {
+            this.fragments.add(
+                new Fragment(part.toLowerCase(Locale.ROOT), atStart, atEnd));
+            return this;
+        }
+
+
+
+        /** Only entries within the given time span. Both dates are inclusive. */
+        public Query between(long from, long to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+
+
+        /** Only entries of the given type. */
+        public Query type(int type) {
+            this.type = type;
+            return this;
+        }
+
+
+
+        /** Returns at most the given number of entries. */
+        public Query limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+    }
+
+
+
+    private final static class Fragment {
+        private final String part;
+        private final boolean atStart;
+        private final boolean atEnd;
+
+
+
+        public Fragment(String part, boolean atStart, boolean atEnd) {
+            this.part = part;
+            this.atStart = atStart;
+            this.atEnd = atEnd;
+        }
+
+
+
+        public boolean matches(String word) {
+            if (this.atStart) {
+                return word.startsWith(this.part);
+            } else if (this.atEnd) {
+                return word.endsWith(this.part);
+            }
+            return word.contains(this.part);
+        }
+    }
+
+
+
+    /**
+     * Growable list of ascending ints.
+     */
+    private final static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+
+
+        public void add(int value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+        }
+
+
+
+        public int last() {
+            return this.size == 0 ? -1 : this.values[this.size - 1];
+        }
+
+
+
+        public boolean contains(int value) {
+            return Arrays.binarySearch(this.values, 0, this.size, value) >= 0;
+        }
+
+
+
+        public static IntList union(Collection<IntList> lists) {
+            int total = 0;
+            for (final IntList list : lists) {
+                total += list.size;
+            }
+            final int[] all = new int[total];
+            int i = 0;
+            for (final IntList list : lists) {
+                System.arraycopy(list.values, 0, all, i, list.size);
+                i += list.size;
+            }
+            Arrays.sort(all);
+            final IntList result = new IntList();
+            for (final int value : all) {
+                if (result.last() != value) {
+                    result.add(value);
+                }
+            }
+            return result;
+        }
+    }
+
+
+
+    /**
+     * Splits a message into the words which are indexed: maximal sequences of letters
+     * and digits, in lower case.
+     *
+     * @param message The message.
+     * @return The words in order of their appearance.
+     */
+    public static List<String> tokenize(String message) {
+        final List<String> result = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= message.length(); ++i) {
+            final boolean wordChar = i < message.length() &&
+                Character.isLetterOrDigit(message.charAt(i));
+            if (wordChar && start == -1) {
+                start = i;
+            } else if (!wordChar && start != -1) {
+                result.add(message.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+
+
+    /**
+     * <p>Adds the words which every message that matches the given case insensitive
+     * pattern (as whole) must contain to the query. This is only possible for patterns
+     * which consist of literal words, optionally starting and ending with
+     * <code>.*</code>. Otherwise, the query is not changed.</p>
+     *
+     * <p>As a leading <code>.*</code> may extend the first word of the pattern to the
+     * left, the first word is only added as the end of a word in that case. Likewise,
+     * the last word is only added as the start of a word if the pattern ends with
+     * <code>.*</code>.</p>
+     *
+     * @param pattern A message pattern as used by
+     *          {@link core.filters.MessageRegexLogFilter}.
+     * @param query The query to add the words to.
+     */
+    public static void addPatternWords(String pattern, Query query) {
+        final boolean leadingWildcard = pattern.startsWith(".*"); //$NON-NLS-1$
+        if (leadingWildcard) {
+            pattern = pattern.substring(2);
+        }
+        final boolean trailingWildcard = pattern.endsWith(".*"); //$NON-NLS-1$
+        if (trailingWildcard) {
+            pattern = pattern.substring(0, pattern.length() - 2);
+        }
+        for (int i = 0; i < pattern.length(); ++i) {
+            if ("\\^$.|?*+()[]{}".indexOf(pattern.charAt(i)) != -1) { //$NON-NLS-1$
+                // not a literal
+                return;
+            }
+        }
+
+        final List<String> words = tokenize(pattern);
+        final boolean openStart = leadingWildcard &&
+            !pattern.isEmpty() && Character.isLetterOrDigit(pattern.charAt(0));
+        final boolean openEnd = trailingWildcard && !pattern.isEmpty() &&
+            Character.isLetterOrDigit(pattern.charAt(pattern.length() - 1));
+        for (int i = 0; i < words.size(); ++i) {
+            final boolean atStart = i > 0 || !openStart;
+            final boolean atEnd = i < words.size() - 1 || !openEnd;
+            query.fragment(words.get(i), atStart, atEnd);
+        }
+    }
+
+
+
+    private int[] ids;
+    private long[] dates;
+    private byte[] types;
+    private int size;
+    private int maxId;
+    private final Map<String, IntList> channels;
+    private final Map<String, IntList> nicknames;
+
+    /** Spellings of the nicknames by lower case nickname */
+    private final Map<String, Set<String>> spellings;
+    private final TreeMap<String, IntList> words;
+
+
+
+    public LogIndex() {
+        this.ids = new int[1024];
+        this.dates = new long[1024];
+        this.types = new byte[1024];
+        this.channels = new HashMap<>();
+        this.nicknames = new HashMap<>();
+        this.spellings = new HashMap<>();
+        this.words = new TreeMap<>();
+    }
+
+
+
+    /**
+     * Gets the number of indexed entries.
+     *
+     * @return The number of entries.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+
+
+    /**
+     * Gets the highest id of all indexed entries.
+     *
+     * @return The highest id.
+     */
+    public synchronized int getMaxId() {
+        return this.maxId;
+    }
+
+
+
+    /**
+     * Adds a stored entry to the index. Entries must be added in chronological order.
+     * An entry which is older than the last added entry is indexed as if it had the
+     * same date as that entry.
+     *
+     * @param entry The entry to add.
+     */
+    public synchronized void add(LogEntry entry) {
+        if (this.size == this.ids.length) {
+            final int capacity = this.size * 2;
+            this.ids = Arrays.copyOf(this.ids, capacity);
+            this.dates = Arrays.copyOf(this.dates, capacity);
+            this.types = Arrays.copyOf(this.types, capacity);
+        }
+        final int pos = this.size++;
+        long date = entry.getDate() == null ? 0 : entry.getDate().getTime();
+        if (pos > 0) {
+            date = Math.max(date, this.dates[pos - 1]);
+        }
+        this.ids[pos] = entry.getId();
+        this.dates[pos] = date;
+        this.types[pos] = (byte) entry.getType();
+        this.maxId = Math.max(this.maxId, entry.getId());
+
+        final String channel = entry.getChannel() == null ? "" : entry.getChannel(); //$NON-NLS-1$
+        posting(this.channels, channel.toLowerCase(Locale.ROOT)).add(pos);
+
+        final String nickname = entry.getNickname() == null
+            ? "" : entry.getNickname(); //$NON-NLS-1$
+        final String lowerNick = nickname.toLowerCase(Locale.ROOT);
+        posting(this.nicknames, lowerNick).add(pos);
+        Set<String> spellings = this.spellings.get(lowerNick);
+        if (spellings == null) {
+            spellings = new HashSet<>();
+            this.spellings.put(lowerNick, spellings);
+        }
+        spellings.add(nickname);
+
+        if (entry.getMessage() != null) {
+            for (final String word : tokenize(entry.getMessage())) {
+                final IntList posting = posting(this.words, word);
+                if (posting.last() != pos) {
+                    posting.add(pos);
+                }
+            }
+        }
+    }
+
+
+
+    private static IntList posting(Map<String, IntList> map, String key) {
+        IntList result = map.get(key);
+        if (result == null) {
+            result = new IntList();
+            map.put(key, result);
+        }
+        return result;
+    }
+
+
+
+    /**
+     * Searches for all entries which match the given query.
+     *
+     * @param query The query.
+     * @return The ids of the matching entries, newest first.
+     */
+    public synchronized int[] search(Query query) {
+        final int lo = this.firstPosition(query.from);
+        final int hi = query.to == Long.MAX_VALUE
+            ? this.size : this.firstPosition(query.to + 1);
+
+        final List<IntList> postings = new ArrayList<>();
+        if (query.channel != null) {
+            postings.add(this.channels.get(query.channel.toLowerCase(Locale.ROOT)));
+        }
+        if (query.nickname != null) {
+            postings.add(this.nicknames.get(query.nickname.toLowerCase(Locale.ROOT)));
+        }
+        if (query.nicknamePattern != null) {
+            final List<IntList> matching = new ArrayList<>();
+            for (final Map.Entry<String, Set<String>> e : this.spellings.entrySet()) {
+                for (final String spelling : e.getValue()) {
+                    if (query.nicknamePattern.matcher(spelling).find()) {
+                        matching.add(this.nicknames.get(e.getKey()));
+                        break;
+                    }
+                }
+            }
+            postings.add(matching.isEmpty() ? null : IntList.union(matching));
+        }
+        for (final Fragment fragment : query.fragments) {
+            postings.add(this.findWords(fragment));
+        }
+        if (postings.contains(null)) {
+            return new int[0];
+        }
+
+        final IntList result = new IntList();
+        if (postings.isEmpty()) {
+            for (int pos = hi - 1; pos >= lo && result.size < query.limit; --pos) {
+                if (query.type == -1 || this.types[pos] == query.type) {
+                    result.add(this.ids[pos]);
+                }
+            }
+            return Arrays.copyOf(result.values, result.size);
+        }
+
+        // iterate the shortest posting list and look up the positions in the others
+        Collections.sort(postings, new Comparator<IntList>() {
+            @Override
+            public int compare(IntList o1, IntList o2) {
+                return Integer.compare(o1.size, o2.size);
+            }
+        });
+        final IntList shortest = postings.get(0);
+        for (int i = shortest.size - 1; i >= 0 && result.size < query.limit; --i) {
+            final int pos = shortest.values[i];
+            if (pos >= hi) {
+                continue;
+            } else if (pos < lo) {
+                break;
+            } else if (query.type != -1 && this.types[pos] != query.type) {
+                continue;
+            }
+            boolean all = true;
+            for (int j = 1; j < postings.size() && all; ++j) {
+                all = postings.get(j).contains(pos);
+            }
+            if (all) {
+                result.add(this.ids[pos]);
+            }
+        }
+        return Arrays.copyOf(result.values, result.size);
+    }
+
+
+
+    /**
+     * Gets the positions of all entries containing a word which matches the given
+     * fragment. Words are found by their prefix if possible, otherwise all words are
+     * compared.
+     */
+    private IntList findWords(Fragment fragment) {
+        if (fragment.atStart && fragment.atEnd) {
+            return this.words.get(fragment.part);
+        }
+        final Collection<IntList> matching;
+        if (fragment.atStart) {
+            matching = this.words.subMap(
+                fragment.part, fragment.part + Character.MAX_VALUE).values();
+        } else {
+            matching = new ArrayList<>();
+            for (final Map.Entry<String, IntList> e : this.words.entrySet()) {
+                if (fragment.matches(e.getKey())) {
+                    matching.add(e.getValue());
+                }
+            }
+        }
+        return matching.isEmpty() ? null : IntList.union(matching);
+    }
+
+
+
+    /**
+     * Gets the first position whose date is not before the given date.
+     */
+    private int firstPosition(long date) {
+        int lo = 0;
+        int hi = this.size;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (this.dates[mid] < date) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
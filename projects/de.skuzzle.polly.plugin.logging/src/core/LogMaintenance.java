@@ -0,0 +1,58 @@
+package core;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import de.skuzzle.polly.sdk.exceptions.DatabaseException;
+import de.skuzzle.polly.sdk.time.Time;
+
+
+/**
+ * Periodic maintenance of the stored logs. The first run creates the activity
+ * rollups for entries which have been stored before rollups existed. Each run then
+ * removes the entries which are older than the retention period and moves them to
+ * the archive, if there is one.
+ */
+public class LogMaintenance implements Runnable {
+
+    private final PollyLoggingManager logManager;
+    private final int retentionDays;
+    private final LogArchive archive;
+    private boolean backfilled;
+
+
+
+    /**
+     * Creates a new maintenance task.
+     *
+     * @param logManager The log manager.
+     * @param retentionDays Number of days to keep entries in the database. 0 to keep
+     *          them forever.
+     * @param archive Archive for removed entries or <code>null</code> to discard them.
+     */
+    public LogMaintenance(PollyLoggingManager logManager, int retentionDays,
+            LogArchive archive) {
+        this.logManager = logManager;
+        this.retentionDays = retentionDays;
+        this.archive = archive;
+    }
+
+
+
+    @Override
+    public void run() {
+        try {
+            if (!this.backfilled) {
+                this.logManager.backfillActivity();
+                this.backfilled = true;
+            }
+            if (this.retentionDays > 0) {
+                final Date cutoff = new Date(Time.currentTimeMillis() -
+                    TimeUnit.DAYS.toMillis(this.retentionDays));
+                this.logManager.removeOlderThan(cutoff, this.archive);
+            }
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import de.skuzzle.polly.sdk.exceptions.DatabaseException;
+import de.skuzzle.polly.tools.collections.ConcurrentRingBuffer;
+import entities.LogEntry;
+
+
+/**
+ * Stores log entries from a dedicated thread. Entries are added to a bounded lock free
+ * ring buffer, so the threads which deliver IRC events never wait for the database.
+ * The writer thread stores the buffered entries in batches, as soon as a batch is full
+ * or when the flush interval elapses.
+ *
+ * <p>If the buffer is full, the {@link OverflowPolicy} decides whether new entries are
+ * dropped or whether the adding thread waits for the writer.</p>
+ */
+public class LogWriter implements Runnable {
+
+    /**
+     * What to do with new entries if the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** New entries are discarded and counted */
+        DROP,
+
+        /** The adding thread waits until there is room in the buffer */
+        BLOCK;
+
+
+
+        /**
+         * Parses the policy name, ignoring case.
+         *
+         * @param name The name.
+         * @param defaultValue Policy to return if the name is unknown.
+         * @return The policy.
+         */
+        public static OverflowPolicy parse(String name, OverflowPolicy defaultValue) {
+            for (final OverflowPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(name)) {
+                    return policy;
+                }
+            }
+            return defaultValue;
+        }
+    }
+
+
+
+    /** Time to wait between two attempts to add an entry to a full buffer */
+    private final static long BLOCK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final PollyLoggingManager logManager;
+    private final ConcurrentRingBuffer<LogEntry> buffer;
+    private final int batchSize;
+    private final long flushInterval;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong dropped;
+    private final AtomicLong failed;
+
+    /** Entries which have been taken from the buffer but are not yet stored */
+    private volatile Collection<LogEntry> inFlight;
+    private volatile boolean running;
+    private volatile Thread thread;
+
+
+
+    /**
+     * Creates a new LogWriter.
+     *
+     * @param logManager The manager which stores the entries.
+     * @param capacity Maximum number of entries to buffer.
+     * @param batchSize Maximum number of entries to store at once.
+     * @param flushInterval Maximum time in milliseconds that entries are buffered.
+     * @param overflowPolicy What to do if the buffer is full.
+     */
+    public LogWriter(PollyLoggingManager logManager, int capacity, int batchSize,
+            long flushInterval, OverflowPolicy overflowPolicy) {
+        this.logManager = logManager;
+        this.buffer = new ConcurrentRingBuffer<>(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.overflowPolicy = overflowPolicy;
+        this.dropped = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.inFlight = Collections.emptyList();
+    }
+
+
+
+    /**
+     * Starts the writer thread.
+     */
+    public synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+        this.running = true;
+        this.thread = new Thread(this, "LOG_WRITER"); //$NON-NLS-1$
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+
+
+    /**
+     * Stops the writer thread after it stored all buffered entries.
+     *
+     * @throws InterruptedException If interrupted while waiting for the writer.
+     */
+    public synchronized void shutdown() throws InterruptedException {
+        final Thread t = this.thread;
+        if (t == null) {
+            return;
+        }
+        this.running = false;
+        LockSupport.unpark(t);
+        t.join();
+        this.thread = null;
+    }
+
+
+
+    /**
+     * Adds an entry to be stored.
+     *
+     * @param entry The entry.
+     * @return Whether the entry has been added. <code>false</code> if it has been
+     *          dropped.
+     */
+    public boolean add(LogEntry entry) {
+        while (!this.buffer.offer(entry)) {
+            final Thread t = this.thread;
+            if (this.overflowPolicy == OverflowPolicy.DROP || t == null) {
+                this.dropped.incrementAndGet();
+                return false;
+            }
+            LockSupport.unpark(t);
+            LockSupport.parkNanos(BLOCK_NANOS);
+        }
+        if (this.buffer.size() >= this.batchSize) {
+            final Thread t = this.thread;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+        return true;
+    }
+
+
+
+    /**
+     * Gets all entries which have been added but not yet stored, oldest first. These
+     * entries do not have a valid id, unless they are just being stored.
+     *
+     * @return The pending entries.
+     */
+    public List<LogEntry> getPending() {
+        // read the buffer first, so that entries which are taken from the buffer
+        // meanwhile are found in the in flight batch
+        final List<LogEntry> buffered = new ArrayList<>();
+        this.buffer.snapshot(buffered);
+        final Collection<LogEntry> inFlight = this.inFlight;
+
+        final Set<LogEntry> seen = Collections.newSetFromMap(
+            new IdentityHashMap<LogEntry, Boolean>());
+        final List<LogEntry> result = new ArrayList<>(inFlight.size() + buffered.size());
+        for (final LogEntry entry : inFlight) {
+            if (seen.add(entry)) {
+                result.add(entry);
+            }
+        }
+        for (final LogEntry entry : buffered) {
+            if (seen.add(entry)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+
+
+    /**
+     * Gets the number of entries which are waiting in the buffer.
+     *
+     * @return The number of buffered entries.
+     */
+    public int getBuffered() {
+        return this.buffer.size();
+    }
+
+
+
+    /**
+     * Gets the number of entries which have been dropped because the buffer was full.
+     *
+     * @return The number of dropped entries.
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+
+
+    /**
+     * Gets the number of entries which could not be stored.
+     *
+     * @return The number of failed entries.
+     */
+    public long getFailed() {
+        return this.failed.get();
+    }
+
+
+
+    @Override
+    public void run() {
+        final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(this.flushInterval);
+        while (this.running) {
+            if (this.buffer.size() < this.batchSize) {
+                LockSupport.parkNanos(this, intervalNanos);
+            }
+            this.storeBuffered();
+        }
+        this.storeBuffered();
+    }
+
+
+
+    private void storeBuffered() {
+        // the batch is published before entries are moved into it, so getPending
+        // always finds them either in the buffer or in the batch
+        Queue<LogEntry> batch = new ConcurrentLinkedQueue<>();
+        this.inFlight = batch;
+        try {
+            while (this.buffer.drainTo(batch, this.batchSize) > 0) {
+                try {
+                    this.logManager.storeEntries(new ArrayList<>(batch));
+                } catch (DatabaseException | RuntimeException e) {
+                    this.failed.addAndGet(batch.size());
+                    e.printStackTrace();
+                }
+                batch = new ConcurrentLinkedQueue<>();
+                this.inFlight = batch;
+            }
+        } finally {
+            this.inFlight = Collections.emptyList();
+        }
+    }
+
+
+
+    @Override
+    public String toString() {
+        return String.format("buffered: %d/%d, dropped: %d, failed: %d", //$NON-NLS-1$
+            this.buffer.size(), this.buffer.capacity(), this.dropped.get(),
+            this.failed.get());
+    }
+}
@@ -1,9 +1,17 @@
 package core;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import core.filters.ChainedLogFilter;
 import core.filters.LimitFilter;
@@ -18,74 +26,134 @@ import de.skuzzle.polly.sdk.MyPolly;
 import de.skuzzle.polly.sdk.PersistenceManagerV2;
 import de.skuzzle.polly.sdk.PersistenceManagerV2.Atomic;
 import de.skuzzle.polly.sdk.PersistenceManagerV2.Param;
+import de.skuzzle.polly.sdk.PersistenceManagerV2.Read;
 import de.skuzzle.polly.sdk.PersistenceManagerV2.Write;
 import de.skuzzle.polly.sdk.User;
 import de.skuzzle.polly.sdk.exceptions.DatabaseException;
 import de.skuzzle.polly.sdk.exceptions.DisposingException;
 import de.skuzzle.polly.sdk.paste.PasteServiceManager;
+import entities.LogActivity;
 import entities.LogEntry;
 
 
 public class PollyLoggingManager extends AbstractDisposable {
     
+    private final static int PAGE_SIZE = 1000;
+    
     private PersistenceManagerV2 persistence;
     private PasteServiceManager pasteServiceManager;
     
-    private List<LogEntry> cache;
-    private int cacheSize;
+    private final LogWriter writer;
     private int pasteTreshold;
     private int maxLogs;
     
-    
-    
+    /** Search index, built from the database when it is first needed */
+    private volatile LogIndex index;
+    private final Object buildLock = new Object();
+    
+    /** 
+     * Entries which have been stored while the index is being built. Guarded by 
+     * {@link #indexLock}
+     */
+    private List<LogEntry> indexBacklog;
+    private final Object indexLock = new Object();
+    
+    /** Serializes updates of the activity rollups */
+    private final Object rollupLock = new Object();
+    
+    
+    
+    /**
+     * Creates a new PollyLoggingManager and starts its writer.
+     * 
+     * @param myPolly The MyPolly instance.
+     * @param cacheSize Maximum number of entries which are stored at once.
+     * @param pasteTreshold Minimum number of results which are uploaded to a paste 
+     *          service instead of being sent to IRC.
+     * @param maxLogs Maximum number of results to output.
+     * @param bufferCapacity Maximum number of entries waiting to be stored.
+     * @param flushInterval Maximum time in milliseconds until an entry is stored.
+     * @param overflowPolicy What to do with new entries if the buffer is full.
+     */
     public PollyLoggingManager(MyPolly myPolly, int cacheSize, int pasteTreshold, 
-            int maxLogs) {
+            int maxLogs, int bufferCapacity, long flushInterval, 
+            LogWriter.OverflowPolicy overflowPolicy) {
         this.persistence = myPolly.persistence();
         this.pasteServiceManager = myPolly.pasting();
         
-        this.cacheSize = cacheSize;
         this.pasteTreshold = pasteTreshold;
         this.maxLogs = maxLogs;
-        this.cache = new ArrayList<LogEntry>(this.cacheSize);
+        this.writer = new LogWriter(this, bufferCapacity, cacheSize, flushInterval, 
+            overflowPolicy);
+        this.writer.start();
     }
     
     
     
-    public void logMessage(LogEntry entry) throws DatabaseException {
-        synchronized (this.cache) {
-            String msg = entry.getMessage();
-            
-            do {
-                LogEntry newEntry = new LogEntry(entry);
-                int newLen = Math.min(LogEntry.MESSAGE_LEN, msg.length());
-                newEntry.setMessage(msg.substring(0, newLen));
-                msg = msg.substring(newLen);
-                this.cache.add(newEntry);
-            } while (msg.length() > 0);
-            
-            if (this.cache.size() == cacheSize) {
-                this.storeCache();
-            }
-        }
+    public LogWriter getWriter() {
+        return this.writer;
     }
     
     
     
-    public List<LogEntry> preFilterUser(String user) throws DatabaseException {
-        return this.preFilterQuery(LogEntry.FIND_BY_USER, user);
+    public void logMessage(LogEntry entry) {
+        String msg = entry.getMessage();
+        
+        do {
+            LogEntry newEntry = new LogEntry(entry);
+            int newLen = Math.min(LogEntry.MESSAGE_LEN, msg.length());
+            newEntry.setMessage(msg.substring(0, newLen));
+            msg = msg.substring(newLen);
+            this.writer.add(newEntry);
+        } while (msg.length() > 0);
     }
     
     
     
     public List<LogEntry> preFilterChannel(String channel) 
             throws DatabaseException {
-        return this.preFilterQuery(LogEntry.FIND_BY_CHANNEL, channel);
+        return this.preFilterChannel(channel, null, null, null);
+    }
+    
+    
+    
+    /**
+     * Gets all entries from the given channel, newest first. The optional 
+     * restrictions are only used to narrow the search. Callers must still apply the
+     * corresponding filters to the result.
+     * 
+     * @param channel The channel.
+     * @param from Oldest date to search for or <code>null</code>.
+     * @param to Newest date to search for or <code>null</code>.
+     * @param messagePattern Pattern as used by 
+     *          {@link core.filters.MessageRegexLogFilter} or <code>null</code>.
+     * @return The entries which might match the restrictions.
+     * @throws DatabaseException If accessing the database fails.
+     */
+    public List<LogEntry> preFilterChannel(final String channel, Date from, Date to, 
+            String messagePattern) throws DatabaseException {
+        return this.search(new LogIndex.Query().channel(channel), new LogFilter() {
+            @Override
+            public boolean accept(LogEntry log) {
+                return channel.equalsIgnoreCase(log.getChannel());
+            }
+        }, from, to, messagePattern);
     }
     
     
     
     public LogEntry seenUser(String user) throws DatabaseException {
-        List<LogEntry> seen = this.preFilterQuery(LogEntry.USER_SEEN, 1, user);
+        final List<LogEntry> pending = this.writer.getPending();
+        for (int i = pending.size() - 1; i >= 0; --i) {
+            final LogEntry entry = pending.get(i);
+            if (entry.getType() == LogEntry.TYPE_MESSAGE && 
+                    user.equalsIgnoreCase(entry.getNickname())) {
+                return entry;
+            }
+        }
+        final int[] ids = this.getIndex().search(new LogIndex.Query()
+            .nickname(user).type(LogEntry.TYPE_MESSAGE).limit(1));
+        final List<LogEntry> seen = this.loadEntries(ids);
         if (seen.isEmpty()) {
             return LogEntry.forUnknown(user);
         } else {
@@ -98,42 +166,194 @@ public class PollyLoggingManager extends AbstractDisposable {
     
     public List<LogEntry> filterUserRegex(String userRegex) 
             throws DatabaseException {
-        List<LogEntry> allEntries = this.preFilterQuery(LogEntry.ALL_LOG_ENTRIES);
-        return this.postFilter(allEntries, new UserRegexFilter(userRegex));
+        return this.filterUserRegex(userRegex, null, null, null);
     }
     
     
     
-    public List<LogEntry> getAllEntries() {
-        try {
-            return this.preFilterQuery(LogEntry.ALL_LOG_ENTRIES);
-        } catch (DatabaseException e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
+    /**
+     * Gets all entries from nicknames which contain a match of the given pattern, 
+     * newest first. The optional restrictions are only used to narrow the search. 
+     * Callers must still apply the corresponding filters to the result.
+     * 
+     * @param userRegex Pattern for the nicknames.
+     * @param from Oldest date to search for or <code>null</code>.
+     * @param to Newest date to search for or <code>null</code>.
+     * @param messagePattern Pattern as used by 
+     *          {@link core.filters.MessageRegexLogFilter} or <code>null</code>.
+     * @return The entries which might match the restrictions.
+     * @throws DatabaseException If accessing the database fails.
+     */
+    public List<LogEntry> filterUserRegex(String userRegex, Date from, Date to, 
+            String messagePattern) throws DatabaseException {
+        return this.search(
+            new LogIndex.Query().nicknamePattern(Pattern.compile(userRegex)), 
+            new UserRegexFilter(userRegex), from, to, messagePattern);
+    }
+    
+    
+    
+    /**
+     * Searches the stored entries using the index and merges the result with the 
+     * matching entries which are not yet stored.
+     */
+    private List<LogEntry> search(LogIndex.Query query, LogFilter pendingFilter, 
+            Date from, Date to, String messagePattern) throws DatabaseException {
+        // take the pending entries first, so that entries which are stored meanwhile
+        // are found by the index
+        final List<LogEntry> pending = new ArrayList<>();
+        for (final LogEntry entry : this.writer.getPending()) {
+            final long date = entry.getDate().getTime();
+            if ((from == null || date >= from.getTime()) && 
+                    (to == null || date <= to.getTime()) && 
+                    pendingFilter.accept(entry)) {
+                pending.add(entry);
+            }
+        }
+        
+        query.between(
+            from == null ? Long.MIN_VALUE : from.getTime(), 
+            to == null ? Long.MAX_VALUE : to.getTime());
+        if (messagePattern != null) {
+            LogIndex.addPatternWords(messagePattern, query);
         }
+        return merge(pending, this.loadEntries(this.getIndex().search(query)));
     }
     
     
-
-    private List<LogEntry> preFilterQuery(String queryName, String...parameter) 
-            throws DatabaseException {
-        this.storeCache();
-        final List<LogEntry> result = this.persistence.atomic().findList(LogEntry.class, 
-                queryName, new Param(parameter));
-        this.persistence.detachAll(result);
+    
+    /**
+     * Merges pending entries (oldest first) with stored entries (newest first). 
+     * Pending entries which have been stored since they were taken are skipped.
+     * 
+     * @return The merged entries, newest first.
+     */
+    private static List<LogEntry> merge(List<LogEntry> pending, List<LogEntry> stored) {
+        if (pending.isEmpty()) {
+            return stored;
+        }
+        final Set<Integer> storedIds = new HashSet<>(stored.size());
+        for (final LogEntry entry : stored) {
+            storedIds.add(entry.getId());
+        }
+        final List<LogEntry> result = new ArrayList<>(pending.size() + stored.size());
+        for (int i = pending.size() - 1; i >= 0; --i) {
+            final LogEntry entry = pending.get(i);
+            if (entry.getId() == 0 || !storedIds.contains(entry.getId())) {
+                result.add(entry);
+            }
+        }
+        result.addAll(stored);
         return result;
     }
     
     
     
-    private List<LogEntry> preFilterQuery(String queryName, int limit, String...parameter) 
-        throws DatabaseException {
-        this.storeCache();
-        final List<LogEntry> result = this.persistence.atomic().findList(LogEntry.class, 
-                queryName, limit, new Param(parameter));
+    /**
+     * Loads the entries with the given ids in the same order.
+     */
+    private List<LogEntry> loadEntries(int[] ids) throws DatabaseException {
+        final Read read = this.persistence.atomic();
+        final Map<Integer, LogEntry> byId = new HashMap<>(ids.length);
+        for (int i = 0; i < ids.length; i += PAGE_SIZE) {
+            final int end = Math.min(ids.length, i + PAGE_SIZE);
+            final List<Integer> chunk = new ArrayList<>(end - i);
+            for (int j = i; j < end; ++j) {
+                chunk.add(ids[j]);
+            }
+            for (final LogEntry entry : read.findList(LogEntry.class, 
+                    LogEntry.FIND_BY_IDS, new Param(chunk))) {
+                byId.put(entry.getId(), entry);
+            }
+        }
+        
+        final List<LogEntry> result = new ArrayList<>(byId.size());
+        for (final int id : ids) {
+            final LogEntry entry = byId.get(id);
+            // entries might have been deleted since they were indexed
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
         this.persistence.detachAll(result);
         return result;
-}
+    }
+    
+    
+    
+    /**
+     * Gets the search index, building it from all stored entries if that did not 
+     * happen yet.
+     */
+    private LogIndex getIndex() throws DatabaseException {
+        LogIndex result = this.index;
+        if (result != null) {
+            return result;
+        }
+        synchronized (this.buildLock) {
+            result = this.index;
+            if (result != null) {
+                return result;
+            }
+            synchronized (this.indexLock) {
+                this.indexBacklog = new ArrayList<>();
+            }
+            result = new LogIndex();
+            try {
+                for (final LogEntry entry : this.persistence.atomic().findPaged(
+                        LogEntry.class, LogEntry.ALL_LOG_ENTRIES_CHRONOLOGICAL, 
+                        PAGE_SIZE)) {
+                    result.add(entry);
+                }
+            } finally {
+                synchronized (this.indexLock) {
+                    // entries which have been committed before the scan reached them
+                    // are already indexed
+                    final int maxId = result.getMaxId();
+                    for (final LogEntry entry : this.indexBacklog) {
+                        if (entry.getId() > maxId) {
+                            result.add(entry);
+                        }
+                    }
+                    this.indexBacklog = null;
+                }
+            }
+            synchronized (this.indexLock) {
+                this.index = result;
+            }
+            return result;
+        }
+    }
+    
+    
+    
+    /**
+     * Adds freshly stored entries to the search index.
+     */
+    private void indexStored(List<LogEntry> stored) {
+        synchronized (this.indexLock) {
+            if (this.indexBacklog != null) {
+                this.indexBacklog.addAll(stored);
+            } else if (this.index != null) {
+                final int maxId = this.index.getMaxId();
+                for (final LogEntry entry : stored) {
+                    if (entry.getId() > maxId) {
+                        this.index.add(entry);
+                    }
+                }
+            }
+        }
+    }
+    
+    
+    
+    public List<LogEntry> getAllEntries() {
+        final List<LogEntry> pending = this.writer.getPending();
+        final List<LogEntry> stored = this.persistence.atomic().findList(
+            LogEntry.class, LogEntry.ALL_LOG_ENTRIES);
+        this.persistence.detachAll(stored);
+        return merge(pending, stored);
+    }
     
     
     
@@ -197,22 +417,177 @@ public class PollyLoggingManager extends AbstractDisposable {
     
     
     
-    public void storeCache() throws DatabaseException {
-        final List<LogEntry> cpy;
-        synchronized (this.cache) {
-            if (this.cache.isEmpty()) {
+    /**
+     * Stores a batch of entries together with their activity rollups and adds them to
+     * the index. Called by the {@link LogWriter}.
+     * 
+     * @param entries The entries to store.
+     * @throws DatabaseException If storing the entries fails.
+     */
+    void storeEntries(final List<LogEntry> entries) throws DatabaseException {
+        synchronized (this.rollupLock) {
+            this.persistence.writeAtomic(new Atomic() {
+                @Override
+                public void perform(Write write) throws DatabaseException {
+                    write.all(entries);
+                    mergeActivity(write, countActivity(entries));
+                }
+            });
+        }
+        this.indexStored(entries);
+    }
+    
+    
+    
+    /**
+     * Gets the activity rollups of all channels since the given date, newest first.
+     * 
+     * @param since Oldest hour to include.
+     * @return The rollups.
+     * @throws DatabaseException If accessing the database fails.
+     */
+    public List<LogActivity> getActivity(Date since) throws DatabaseException {
+        final List<LogActivity> result = this.persistence.atomic().findList(
+            LogActivity.class, LogActivity.ACTIVITY_SINCE, new Param(since));
+        this.persistence.detachAll(result);
+        return result;
+    }
+    
+    
+    
+    /**
+     * Creates the activity rollups for the entries which have been stored before 
+     * rollups existed. Does nothing if there are any rollups already.
+     * 
+     * @throws DatabaseException If accessing the database fails.
+     */
+    public void backfillActivity() throws DatabaseException {
+        final Integer maxId;
+        synchronized (this.rollupLock) {
+            if (!this.persistence.atomic().findList(
+                    LogActivity.class, LogActivity.ALL_ACTIVITY, 1).isEmpty()) {
+                return;
+            }
+            // storeEntries creates rollups for all entries stored from now on
+            maxId = this.persistence.atomic().findSingle(Integer.class, LogEntry.MAX_ID);
+            if (maxId == null) {
                 return;
             }
-            cpy = new ArrayList<>(this.cache);
-            this.cache.clear();
         }
-
-        this.persistence.writeAtomic(new Atomic() {
-            @Override
-            public void perform(Write write) {
-                write.all(cpy);
+        
+        final List<LogEntry> old = new ArrayList<>();
+        final Map<String, LogActivity> activities = new HashMap<>();
+        for (final LogEntry entry : this.persistence.atomic().findPaged(
+                LogEntry.class, LogEntry.ALL_LOG_ENTRIES_CHRONOLOGICAL, PAGE_SIZE)) {
+            if (entry.getId() <= maxId) {
+                old.add(entry);
+            }
+            if (old.size() == PAGE_SIZE) {
+                countActivity(old, activities);
+                old.clear();
+            }
+        }
+        countActivity(old, activities);
+        
+        synchronized (this.rollupLock) {
+            this.persistence.writeAtomic(new Atomic() {
+                @Override
+                public void perform(Write write) throws DatabaseException {
+                    mergeActivity(write, activities.values());
+                }
+            });
+        }
+    }
+    
+    
+    
+    private static Collection<LogActivity> countActivity(List<LogEntry> entries) {
+        final Map<String, LogActivity> activities = new HashMap<>();
+        countActivity(entries, activities);
+        return activities.values();
+    }
+    
+    
+    
+    private static void countActivity(List<LogEntry> entries, 
+            Map<String, LogActivity> activities) {
+        for (final LogEntry entry : entries) {
+            final Date hour = LogActivity.hourOf(entry.getDate());
+            final String key = entry.getChannel() + "\n" + hour.getTime(); //$NON-NLS-1$
+            LogActivity activity = activities.get(key);
+            if (activity == null) {
+                activity = new LogActivity(entry.getChannel(), hour);
+                activities.put(key, activity);
+            }
+            activity.count(entry.getType(), 1);
+        }
+    }
+    
+    
+    
+    /**
+     * Adds the given rollups to the stored ones, creating those which do not exist.
+     */
+    private static void mergeActivity(Write write, Collection<LogActivity> activities) 
+            throws DatabaseException {
+        for (final LogActivity activity : activities) {
+            final LogActivity stored = write.read().findSingle(LogActivity.class, 
+                LogActivity.BY_CHANNEL_AND_HOUR, 
+                new Param(activity.getChannel(), activity.getHour()));
+            if (stored == null) {
+                write.single(activity);
+            } else {
+                stored.add(activity);
             }
-        });
+        }
+    }
+    
+    
+    
+    /**
+     * Removes all entries which are older than the given date. The entries are 
+     * written to the given archive before they are removed. The activity rollups 
+     * are kept.
+     * 
+     * @param cutoff Entries before this date are removed.
+     * @param archive The archive or <code>null</code> to discard the entries.
+     * @return The number of removed entries.
+     * @throws DatabaseException If accessing the database or the archive fails.
+     */
+    public int removeOlderThan(final Date cutoff, final LogArchive archive) 
+            throws DatabaseException {
+        int removed = 0;
+        int pageSize;
+        do {
+            final List<LogEntry> page = new ArrayList<>();
+            this.persistence.writeAtomic(new Atomic() {
+                @Override
+                public void perform(Write write) throws DatabaseException {
+                    page.addAll(write.read().findList(LogEntry.class, 
+                        LogEntry.FIND_OLDER_THAN, PAGE_SIZE, new Param(cutoff)));
+                    if (archive != null && !page.isEmpty()) {
+                        try {
+                            archive.archive(page);
+                        } catch (IOException e) {
+                            throw new DatabaseException("Archiving log entries failed", e); //$NON-NLS-1$
+                        }
+                    }
+                    write.removeAll(page);
+                }
+            });
+            pageSize = page.size();
+            removed += pageSize;
+        } while (pageSize == PAGE_SIZE);
+        
+        if (removed > 0) {
+            // the index is rebuilt without the removed entries when it is needed next
+            synchronized (this.buildLock) {
+                synchronized (this.indexLock) {
+                    this.index = null;
+                }
+            }
+        }
+        return removed;
     }
     
     
@@ -220,8 +595,9 @@ public class PollyLoggingManager extends AbstractDisposable {
     @Override
     protected void actualDispose() throws DisposingException {
         try {
-            this.storeCache();
-        } catch (DatabaseException e) {
+            this.writer.shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new DisposingException(e);
         }
     }
@@ -0,0 +1,171 @@
+package entities;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+
+/**
+ * Number of log entries per type within a single hour on a single channel. These
+ * rollups are updated together with the log entries they count, so channel
+ * statistics do not need to look at the log entries themselves.
+ */
+@Entity
+@NamedQueries({
+    @NamedQuery(
+        name = LogActivity.ALL_ACTIVITY,
+        query = "SELECT a FROM LogActivity a"
+    ),
+    @NamedQuery(
+        name = LogActivity.BY_CHANNEL_AND_HOUR,
+        query = "SELECT a FROM LogActivity a WHERE a.channel = ?1 AND a.hour = ?2"
+    ),
+    @NamedQuery(
+        name = LogActivity.ACTIVITY_SINCE,
+        query = "SELECT a FROM LogActivity a WHERE a.hour >= ?1 ORDER BY a.hour DESC"
+    )
+})
+public class LogActivity {
+
+    public final static String ALL_ACTIVITY = "ALL_ACTIVITY"; //$NON-NLS-1$
+    public final static String BY_CHANNEL_AND_HOUR = "BY_CHANNEL_AND_HOUR"; //$NON-NLS-1$
+    public final static String ACTIVITY_SINCE = "ACTIVITY_SINCE"; //$NON-NLS-1$
+
+
+
+    /**
+     * Gets the start of the hour which contains the given date.
+     *
+     * @param date A date.
+     * @return The date with minutes, seconds and milliseconds cleared.
+     */
+    public static Date hourOf(Date date) {
+        final Calendar c = Calendar.getInstance();
+        c.setTime(date);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        return c.getTime();
+    }
+
+
+
+    @Id@GeneratedValue(strategy = GenerationType.TABLE)
+    private int id;
+
+    private String channel;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date hour;
+
+    private int messages;
+
+    private int joins;
+
+    private int parts;
+
+    private int quits;
+
+    private int nickChanges;
+
+
+
+    public LogActivity() {}
+
+
+
+    public LogActivity(String channel, Date hour) {
+        this.channel = channel;
+        this.hour = hour;
+    }
+
+
+
+    /**
+     * Counts a log entry of the given type.
+     *
+     * @param type The type of the entry.
+     * @param count How often to count the entry.
+     */
+    public void count(int type, int count) {
+        switch (type) {
+        case LogEntry.TYPE_MESSAGE: this.messages += count; break;
+        case LogEntry.TYPE_JOIN: this.joins += count; break;
+        case LogEntry.TYPE_PART: this.parts += count; break;
+        case LogEntry.TYPE_QUIT: this.quits += count; break;
+        case LogEntry.TYPE_NICKCHANGE: this.nickChanges += count; break;
+        default:
+        }
+    }
+
+
+
+    /**
+     * Adds the counts of another rollup to this one.
+     *
+     * @param other The rollup to add.
+     */
+    public void add(LogActivity other) {
+        this.messages += other.messages;
+        this.joins += other.joins;
+        this.parts += other.parts;
+        this.quits += other.quits;
+        this.nickChanges += other.nickChanges;
+    }
+
+
+
+    public int getId() {
+        return this.id;
+    }
+
+
+
+    public String getChannel() {
+        return this.channel;
+    }
+
+
+
+    public Date getHour() {
+        return this.hour;
+    }
+
+
+
+    public int getMessages() {
+        return this.messages;
+    }
+
+
+
+    public int getJoins() {
+        return this.joins;
+    }
+
+
+
+    public int getParts() {
+        return this.parts;
+    }
+
+
+
+    public int getQuits() {
+        return this.quits;
+    }
+
+
+
+    public int getNickChanges() {
+        return this.nickChanges;
+    }
+}
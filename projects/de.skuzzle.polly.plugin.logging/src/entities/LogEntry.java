@@ -18,7 +18,23 @@ import javax.persistence.TemporalType;
 @NamedQueries({
     @NamedQuery(
         name = LogEntry.ALL_LOG_ENTRIES,
-        query = "SELECT e FROM LogEntry e ORDER BY e.date DESC"
+        query = "SELECT e FROM LogEntry e ORDER BY e.date DESC, e.id DESC"
+    ),
+    @NamedQuery(
+        name = LogEntry.ALL_LOG_ENTRIES_CHRONOLOGICAL,
+        query = "SELECT e FROM LogEntry e ORDER BY e.date, e.id"
+    ),
+    @NamedQuery(
+        name = LogEntry.FIND_OLDER_THAN,
+        query = "SELECT e FROM LogEntry e WHERE e.date < ?1 ORDER BY e.date, e.id"
+    ),
+    @NamedQuery(
+        name = LogEntry.MAX_ID,
+        query = "SELECT MAX(e.id) FROM LogEntry e"
+    ),
+    @NamedQuery(
+        name = LogEntry.FIND_BY_IDS,
+        query = "SELECT l FROM LogEntry l WHERE l.id IN ?1"
     ),
     @NamedQuery(
         name = LogEntry.FIND_BY_USER,
@@ -48,6 +64,10 @@ public class LogEntry {
     public final static int TYPE_UNKNOWN = 16;
     
     public final static String ALL_LOG_ENTRIES = "ALL_LOG_ENTRIES"; //$NON-NLS-1$
+    public final static String ALL_LOG_ENTRIES_CHRONOLOGICAL = "ALL_LOG_ENTRIES_CHRONOLOGICAL"; //$NON-NLS-1$
+    public final static String FIND_OLDER_THAN = "FIND_OLDER_THAN"; //$NON-NLS-1$
+    public final static String MAX_ID = "LOG_ENTRY_MAX_ID"; //$NON-NLS-1$
+    public final static String FIND_BY_IDS = "FIND_BY_IDS"; //$NON-NLS-1$
     public final static String FIND_BY_USER = "FIND_BY_USER"; //$NON-NLS-1$
     public final static String FIND_BY_CHANNEL = "FIND_BY_CHANNEL"; //$NON-NLS-1$
     public final static String USER_SEEN = "USER_SEEN"; //$NON-NLS-1$
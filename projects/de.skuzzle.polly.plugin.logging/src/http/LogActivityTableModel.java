@@ -0,0 +1,131 @@
+package http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import polly.logging.MSG;
+import core.PollyLoggingManager;
+import de.skuzzle.polly.http.api.HttpEvent;
+import de.skuzzle.polly.sdk.MyPolly;
+import de.skuzzle.polly.sdk.User;
+import de.skuzzle.polly.sdk.exceptions.DatabaseException;
+import de.skuzzle.polly.sdk.httpv2.WebinterfaceManager;
+import de.skuzzle.polly.sdk.httpv2.html.AbstractHTMLTableModel;
+import de.skuzzle.polly.sdk.roles.RoleManager;
+import de.skuzzle.polly.sdk.time.Time;
+import de.skuzzle.polly.sdk.util.DirectedComparator.SortOrder;
+import entities.LogActivity;
+
+public class LogActivityTableModel extends AbstractHTMLTableModel<LogActivity> {
+
+    private final static String[] COLUMNS = {
+        MSG.activityTableHourCol,
+        MSG.activityTableChannelCol,
+        MSG.activityTableMessagesCol,
+        MSG.activityTableJoinsCol,
+        MSG.activityTablePartsCol,
+        MSG.activityTableQuitsCol,
+        MSG.activityTableNickchangesCol
+    };
+
+    /** Number of days for which activity is shown */
+    private final static int ACTIVITY_DAYS = 30;
+
+    private final PollyLoggingManager lm;
+    private final MyPolly myPolly;
+
+
+
+    public LogActivityTableModel(PollyLoggingManager lm, MyPolly myPolly) {
+        this.lm = lm;
+        this.myPolly = myPolly;
+    }
+
+
+
+    @Override
+    public String getHeader(int column) {
+        return COLUMNS[column];
+    }
+
+
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+
+
+    @Override
+    public Object getCellValue(int column, LogActivity element) {
+        switch (column) {
+        case 0: return element.getHour();
+        case 1: return element.getChannel();
+        case 2: return element.getMessages();
+        case 3: return element.getJoins();
+        case 4: return element.getParts();
+        case 5: return element.getQuits();
+        case 6: return element.getNickChanges();
+        default:
+            return ""; //$NON-NLS-1$
+        }
+    }
+
+
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        switch (column) {
+        case 0: return Date.class;
+        case 1: return String.class;
+        default:
+            return Integer.class;
+        }
+    }
+
+
+
+    @Override
+    public List<LogActivity> getData(HttpEvent e) {
+        final User u = (User) e.getSession().get(WebinterfaceManager.USER);
+
+        if (!this.myPolly.users().isSignedOn(u)) {
+            return Collections.emptyList();
+        }
+
+        final Date since = new Date(
+            Time.currentTimeMillis() - TimeUnit.DAYS.toMillis(ACTIVITY_DAYS));
+        final boolean admin = this.myPolly.roles().hasPermission(
+            u, RoleManager.ADMIN_PERMISSION);
+        final List<LogActivity> result = new ArrayList<>();
+        try {
+            for (final LogActivity activity : this.lm.getActivity(since)) {
+                if (admin || this.myPolly.irc().isOnChannel(activity.getChannel(),
+                        u.getCurrentNickName())) {
+                    result.add(activity);
+                }
+            }
+        } catch (DatabaseException e1) {
+            e1.printStackTrace();
+        }
+        return result;
+    }
+
+
+
+    @Override
+    public int getDefaultSortColumn() {
+        return 0;
+    }
+
+
+
+    @Override
+    public SortOrder getDefaultSortOrder() {
+        return SortOrder.DESCENDING;
+    }
+}
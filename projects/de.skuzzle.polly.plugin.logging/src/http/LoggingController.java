@@ -24,6 +24,9 @@ public class LoggingController extends PollyController {
     public final static String REPLAY_PAGE = "/pages/replay"; //$NON-NLS-1$
     public final static String REPLAY_PAGE_CONTENT = "/http/view/replay.overview.html"; //$NON-NLS-1$
     
+    public final static String CHANNEL_STATS_PAGE = "/pages/channelStats"; //$NON-NLS-1$
+    public final static String CHANNEL_STATS_PAGE_CONTENT = "/http/view/channelstats.overview.html"; //$NON-NLS-1$
+    
     private final static String LOG_CATEGORY_KEY = "httpLoggingCategory"; //$NON-NLS-1$
     private final static String SEARCH_LOGS_NAME_KEY = "httpSearchLogs"; //$NON-NLS-1$
     private final static String SEARCH_LOGS_DESC_KEY = "httpSearchLogsDesc"; //$NON-NLS-1$
@@ -31,6 +34,9 @@ public class LoggingController extends PollyController {
     private final static String REPLAY_NAME_KEY = "httpReplay"; //$NON-NLS-1$
     private final static String REPLAY_DESC_KEY = "httpReplayDesc"; //$NON-NLS-1$
     
+    private final static String CHANNEL_STATS_NAME_KEY = "httpChannelStats"; //$NON-NLS-1$
+    private final static String CHANNEL_STATS_DESC_KEY = "httpChannelStatsDesc"; //$NON-NLS-1$
+    
     
     
     private final PollyLoggingManager lm;
@@ -88,4 +94,19 @@ public class LoggingController extends PollyController {
         this.requirePermissions(MyPlugin.REPLAY_PERMISSION);
         return this.makeAnswer(this.createContext(REPLAY_PAGE_CONTENT));
     }
+
+
+
+    @Get(value = CHANNEL_STATS_PAGE, name = CHANNEL_STATS_NAME_KEY)
+    @OnRegister({ 
+        WebinterfaceManager.ADD_MENU_ENTRY, 
+        MSG.FAMILY,
+        LOG_CATEGORY_KEY,
+        CHANNEL_STATS_DESC_KEY, 
+        MyPlugin.CHANNEL_LOG_PERMISSION 
+    })
+    public HttpAnswer channelStatsPage() throws AlternativeAnswerException {
+        this.requirePermissions(MyPlugin.CHANNEL_LOG_PERMISSION);
+        return this.makeAnswer(this.createContext(CHANNEL_STATS_PAGE_CONTENT));
+    }
 }
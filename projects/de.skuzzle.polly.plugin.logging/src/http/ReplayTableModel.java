@@ -40,7 +40,8 @@ public class ReplayTableModel extends LogEntryTableModel {
             return Collections.emptyList();
         }
 
-        final LogFilter dateFilter = new DateLogFilter(new Date(u.getLastIdleTime()));
+        final Date since = new Date(u.getLastIdleTime());
+        final LogFilter dateFilter = new DateLogFilter(since);
         final List<LogEntry> all = new ArrayList<>();
         
         for (final String channel : this.myPolly.irc().getChannels()) {
@@ -49,7 +50,8 @@ public class ReplayTableModel extends LogEntryTableModel {
                     .hasPermission(u, RoleManager.ADMIN_PERMISSION)) {
 
                 try {
-                    List<LogEntry> logs = this.lm.preFilterChannel(channel);
+                    List<LogEntry> logs = this.lm.preFilterChannel(
+                        channel, since, null, null);
                     logs = this.lm.postFilter(logs, dateFilter);
                     all.addAll(logs);
                 } catch (DatabaseException e1) {
@@ -85,12 +85,23 @@ public final class MSG extends Constants {
     public static String logEntryTypePart;
     public static String logEntryTypeQuit;
     
+    // LogActivityTableModel
+    public static String activityTableHourCol;
+    public static String activityTableChannelCol;
+    public static String activityTableMessagesCol;
+    public static String activityTableJoinsCol;
+    public static String activityTablePartsCol;
+    public static String activityTableQuitsCol;
+    public static String activityTableNickchangesCol;
+    
     // Logging Controller
     public static String httpLoggingCategory;
     public static String httpSearchLog;
     public static String httpSearchLogsDesc;
     public static String httpReplay;
     public static String httpReplayDesc;
+    public static String httpChannelStats;
+    public static String httpChannelStatsDesc;
     
     // Plugin
     public static String forwardHLDesc;
@@ -99,6 +110,7 @@ public final class MSG extends Constants {
     // HTML Pages
     public static String htmlSearchLogsCaption;
     public static String htmlReplayCaption;
+    public static String htmlChannelStatsCaption;
             
     static {
         Resources.init(FAMILY, MSG.class);
@@ -2,11 +2,16 @@ package polly.logging;
 
 
 import http.AllDayFilter;
+import http.LogActivityTableModel;
 import http.LogEntryTableModel;
 import http.LoggingController;
 import http.ReplayTableModel;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import commands.ChannelLogCommand;
 import commands.ReplayCommand;
@@ -15,6 +20,9 @@ import commands.UserLogCommand;
 
 import core.ForwardHighlightHandler;
 import core.IrcLogCollector;
+import core.LogArchive;
+import core.LogMaintenance;
+import core.LogWriter;
 import core.PollyLoggingManager;
 import de.skuzzle.polly.sdk.Configuration;
 import de.skuzzle.polly.sdk.ConfigurationProvider;
@@ -32,6 +40,8 @@ import de.skuzzle.polly.sdk.httpv2.MenuCategory;
 import de.skuzzle.polly.sdk.httpv2.html.HTMLTable;
 import de.skuzzle.polly.sdk.httpv2.html.HTMLTableModel;
 import de.skuzzle.polly.sdk.roles.RoleManager;
+import de.skuzzle.polly.tools.concurrent.ThreadFactoryBuilder;
+import entities.LogActivity;
 import entities.LogEntry;
 
 
@@ -50,10 +60,22 @@ public class MyPlugin extends PollyPlugin {
     public final static String LOG_CACHE_SIZE     = "logCacheSize"; //$NON-NLS-1$
     public final static String LOG_PASTE_TRESHOLD = "logPasteThreshold"; //$NON-NLS-1$
     public final static String LOG_MAX_LOGS       = "logMaxLogs"; //$NON-NLS-1$
+    public final static String LOG_RETENTION_DAYS = "logRetentionDays"; //$NON-NLS-1$
+    public final static String LOG_ARCHIVE        = "logArchive"; //$NON-NLS-1$
+    public final static String LOG_BUFFER_CAPACITY = "logBufferCapacity"; //$NON-NLS-1$
+    public final static String LOG_FLUSH_INTERVAL  = "logFlushInterval"; //$NON-NLS-1$
+    public final static String LOG_OVERFLOW_POLICY = "logOverflowPolicy"; //$NON-NLS-1$
     
     public final static int DEFAULT_LOG_CACHE_SIZE  = 100;
     public final static int DEFAULT_LOG_THRESHOLD   = 10;
     public final static int DEFAULT_MAX_LOGS        = 100;
+    public final static int DEFAULT_RETENTION_DAYS  = 0;
+    public final static int DEFAULT_BUFFER_CAPACITY = 4096;
+    public final static int DEFAULT_FLUSH_INTERVAL  = 1000;
+    public final static LogWriter.OverflowPolicy DEFAULT_OVERFLOW_POLICY = 
+        LogWriter.OverflowPolicy.DROP;
+    
+    private final static String ARCHIVE_FOLDER = "archive"; //$NON-NLS-1$
     
     public final static String FORWARD_HIGHLIGHTS         = "FORWARD_HIGHLIGHTS"; //$NON-NLS-1$
     public final static Types DEFAULT_FORWARD_HIGHLIGHTS  = new Types.BooleanType(false);
@@ -61,6 +83,9 @@ public class MyPlugin extends PollyPlugin {
     private IrcLogCollector logCollector;
     private PollyLoggingManager logManager;
     private MessageListener highlightForwarder;
+    private final int retentionDays;
+    private final boolean archiveLogs;
+    private ScheduledExecutorService maintenance;
     
     
     public MyPlugin(MyPolly myPolly) throws IncompatiblePluginException, 
@@ -69,6 +94,7 @@ public class MyPlugin extends PollyPlugin {
         super(myPolly);
 
         myPolly.persistence().registerEntity(LogEntry.class);
+        myPolly.persistence().registerEntity(LogActivity.class);
         
         ConfigurationProvider cfgProvider = myPolly.configuration();
         
@@ -84,10 +110,19 @@ public class MyPlugin extends PollyPlugin {
         int pasteTreshold = loggingCfg.readInt(
             LOG_PASTE_TRESHOLD, DEFAULT_LOG_THRESHOLD);
         int maxLogs = loggingCfg.readInt(LOG_MAX_LOGS, DEFAULT_MAX_LOGS);
+        this.retentionDays = loggingCfg.readInt(
+            LOG_RETENTION_DAYS, DEFAULT_RETENTION_DAYS);
+        this.archiveLogs = loggingCfg.readBoolean(LOG_ARCHIVE);
+        int bufferCapacity = loggingCfg.readInt(
+            LOG_BUFFER_CAPACITY, DEFAULT_BUFFER_CAPACITY);
+        int flushInterval = loggingCfg.readInt(
+            LOG_FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL);
+        LogWriter.OverflowPolicy overflowPolicy = LogWriter.OverflowPolicy.parse(
+            loggingCfg.readString(LOG_OVERFLOW_POLICY), DEFAULT_OVERFLOW_POLICY);
         
 
-        this.logManager = new PollyLoggingManager(
-            myPolly, cacheSize, pasteTreshold, maxLogs);
+        this.logManager = new PollyLoggingManager(myPolly, cacheSize, pasteTreshold, 
+            maxLogs, bufferCapacity, flushInterval, overflowPolicy);
         
         this.logCollector = new IrcLogCollector(this.logManager);
         
@@ -115,18 +150,30 @@ public class MyPlugin extends PollyPlugin {
         
         final HTMLTable<LogEntry> logTable = new HTMLTable<LogEntry>("allLogs", model, myPolly); //$NON-NLS-1$
         final HTMLTable<LogEntry> replayTable = new HTMLTable<LogEntry>("replay", replayModel, myPolly); //$NON-NLS-1$
+        final HTMLTable<LogActivity> activityTable = new HTMLTable<LogActivity>("channelActivity",  //$NON-NLS-1$
+            new LogActivityTableModel(logManager, myPolly), myPolly);
         
         logTable.setFilter(new AllDayFilter(myPolly));
         replayTable.setFilter(new AllDayFilter(myPolly));
         
         myPolly.webInterface().getServer().addHttpEventHandler("/api/allLogs", logTable); //$NON-NLS-1$
         myPolly.webInterface().getServer().addHttpEventHandler("/api/replay", replayTable); //$NON-NLS-1$
+        myPolly.webInterface().getServer().addHttpEventHandler("/api/channelActivity", activityTable); //$NON-NLS-1$
     }
     
     
     
     @Override
     public void onLoad() {
+        final LogArchive archive = this.archiveLogs 
+            ? new LogArchive(new File(this.getPluginFolder(), ARCHIVE_FOLDER)) 
+            : null;
+        this.maintenance = Executors.newScheduledThreadPool(1, 
+            new ThreadFactoryBuilder("LOG_MAINTENANCE").setDaemon(true)); //$NON-NLS-1$
+        this.maintenance.scheduleWithFixedDelay(
+            new LogMaintenance(this.logManager, this.retentionDays, archive), 
+            0, 1, TimeUnit.DAYS);
+        
         try {
             this.getMyPolly().users().addAttribute(FORWARD_HIGHLIGHTS, 
                 DEFAULT_FORWARD_HIGHLIGHTS, 
@@ -158,6 +205,9 @@ public class MyPlugin extends PollyPlugin {
     protected void actualDispose() throws DisposingException {
         super.actualDispose();
         
+        if (this.maintenance != null) {
+            this.maintenance.shutdownNow();
+        }
         this.getMyPolly().irc().removeJoinPartListener(this.logCollector);
         this.getMyPolly().irc().removeMessageListener(this.logCollector);
         this.getMyPolly().irc().removeQuitListener(this.logCollector);
@@ -1,5 +1,6 @@
 package http;
 
+import java.io.IOException;
 import java.util.Map;
 
 import polly.reminds.MSG;
@@ -11,7 +12,7 @@ import de.skuzzle.polly.http.annotations.Param;
 import de.skuzzle.polly.http.api.AlternativeAnswerException;
 import de.skuzzle.polly.http.api.Controller;
 import de.skuzzle.polly.http.api.answers.HttpAnswer;
-import de.skuzzle.polly.http.api.answers.HttpResourceAnswer;
+import de.skuzzle.polly.http.api.answers.HttpAnswers;
 import de.skuzzle.polly.sdk.MyPolly;
 import de.skuzzle.polly.sdk.Types;
 import de.skuzzle.polly.sdk.Types.DateType;
@@ -71,10 +72,11 @@ public class RemindHttpController extends PollyController {
     
     
     @Get(FILES)
-    public HttpAnswer getFile() throws AlternativeAnswerException {
+    public HttpAnswer getFile() throws AlternativeAnswerException, IOException {
         this.requirePermissions(MyPlugin.REMIND_PERMISSION);
         final ClassLoader cl = this.getClass().getClassLoader();
-        return new HttpResourceAnswer(200, cl, this.getEvent().getPlainUri());
+        return HttpAnswers.newResourceAnswer(this.getEvent(), cl, 
+            this.getEvent().getPlainUri());
     }
 
     
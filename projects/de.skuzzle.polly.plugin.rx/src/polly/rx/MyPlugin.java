@@ -42,6 +42,7 @@ import polly.rx.entities.AZEntry;
 import polly.rx.entities.BattleDrop;
 import polly.rx.entities.BattleReport;
 import polly.rx.entities.BattleReportShip;
+import polly.rx.entities.DBHeatMapCount;
 import polly.rx.entities.DBHeatMapEntry;
 import polly.rx.entities.DBPortal;
 import polly.rx.entities.DBProduction;
@@ -161,6 +162,7 @@ public class MyPlugin extends PollyPlugin {
         myPolly.persistence().registerEntity(ScoreBoardEntry.class);
         myPolly.persistence().registerEntity(AZEntry.class);
         myPolly.persistence().registerEntity(DBHeatMapEntry.class);
+        myPolly.persistence().registerEntity(DBHeatMapCount.class);
 
         // orion
         myPolly.persistence().registerEntity(DBProduction.class);
@@ -2,6 +2,7 @@ package polly.rx.core;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -29,6 +30,8 @@ public class FleetDBManager {
     public final static String DELETE_BATTLE_REPORT_PERMISSION = "polly.permission.DELETE_BATTLE_REPORT"; //$NON-NLS-1$
     public static final String DELETE_FLEET_SCAN_PERMISSION = "plly.permission.DELETE_FLEET_SCAN"; //$NON-NLS-1$
 
+    private final static int PAGE_SIZE = 500;
+
 
     private static final Set<String> forbiddenOwners;
     static {
@@ -66,23 +69,40 @@ public class FleetDBManager {
     }
 
     public synchronized void cleanInvalidFleetScans() throws DatabaseException {
+        // find the affected scans first, as removing entities while paging through
+        // the scans would shift the pages
+        final List<Integer> invalid = new ArrayList<>();
+        try (final Read read = this.persistence.read()) {
+            for (final FleetScan scan : read.findPaged(FleetScan.class,
+                    FleetScan.ALL_SCANS, PAGE_SIZE)) {
+                if (this.isInvalid(scan)) {
+                    invalid.add(scan.getId());
+                }
+            }
+        }
+        if (invalid.isEmpty()) {
+            return;
+        }
+
         this.persistence.writeAtomic(new Atomic() {
 
             @Override
             public void perform(Write write) throws DatabaseException {
                 final Read read = write.read();
 
-                final List<FleetScan> allScans = read.findList(FleetScan.class,
-                        FleetScan.ALL_SCANS);
-
-                for (final FleetScan scan : allScans) {
-                    if (isForbidden(scan.getOwnerName())) {
+                for (final int id : invalid) {
+                    final FleetScan scan = read.find(FleetScan.class, id);
+                    if (scan == null) {
+                        continue;
+                    } else if (isForbidden(scan.getOwnerName())) {
                         write.removeAll(scan.getShips());
                         write.remove(scan);
                     } else {
-                        for (final FleetScanShip ship : scan.getShips()) {
+                        final Iterator<FleetScanShip> it = scan.getShips().iterator();
+                        while (it.hasNext()) {
+                            final FleetScanShip ship = it.next();
                             if (isForbidden(ship.getOwner())) {
-                                scan.getShips().remove(ship);
+                                it.remove();
                                 write.remove(ship);
                             }
                         }
@@ -94,6 +114,20 @@ public class FleetDBManager {
 
 
 
+    private boolean isInvalid(FleetScan scan) {
+        if (this.isForbidden(scan.getOwnerName())) {
+            return true;
+        }
+        for (final FleetScanShip ship : scan.getShips()) {
+            if (this.isForbidden(ship.getOwner())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+
     public synchronized void addBattleReport(final BattleReport report)
             throws DatabaseException {
 
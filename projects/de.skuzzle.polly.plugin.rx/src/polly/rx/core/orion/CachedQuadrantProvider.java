@@ -1,66 +1,85 @@
 package polly.rx.core.orion;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import polly.rx.core.orion.model.Quadrant;
 import polly.rx.core.orion.model.Sector;
-import polly.rx.core.orion.model.SectorType;
 
 
+/**
+ * Serves quadrants from a {@link UniverseSnapshot} of the wrapped provider. The
+ * snapshot is created when it is first needed. Quadrant events replace the affected
+ * quadrants by creating a new snapshot, which is then swapped in, so readers never
+ * block and always see a consistent universe.
+ */
 public class CachedQuadrantProvider extends QuadrantProviderDecorator {
 
-    private final Map<String, Quadrant> quadCache;
-    private final List<Sector> entryPortals;
-    private final List<Quadrant> allQuadrants;
-    
-    
-    
+    private volatile UniverseSnapshot snapshot;
+    private final Map<String, QuadrantIndex> indices;
+
+
+
     public CachedQuadrantProvider(QuadrantProvider wrapped) {
         super(wrapped);
-        this.quadCache = Collections.synchronizedMap(new HashMap<String, Quadrant>());
-        this.allQuadrants = Collections.synchronizedList(new ArrayList<Quadrant>());
-        this.entryPortals = Collections.synchronizedList(new ArrayList<Sector>());
+        this.indices = new HashMap<>();
     }
-    
-    
-    
-    @Override
-    public synchronized List<? extends Sector> getEntryPortals() {
-        if (this.entryPortals.isEmpty()) {
-            this.entryPortals.addAll(super.getEntryPortals());
+
+
+
+    private UniverseSnapshot getSnapshot() {
+        UniverseSnapshot result = this.snapshot;
+        if (result == null) {
+            synchronized (this) {
+                result = this.snapshot;
+                if (result == null) {
+                    result = UniverseSnapshot.build(super.getAllQuadrants());
+                    this.snapshot = result;
+                }
+            }
         }
-        return this.entryPortals;
+        return result;
+    }
+
+
+
+    @Override
+    public List<? extends Sector> getEntryPortals() {
+        return this.getSnapshot().getEntryPortals();
     }
-    
-    
-    
+
+
+
     @Override
-    public synchronized Quadrant getQuadrant(Sector sector) {
+    public Quadrant getQuadrant(Sector sector) {
         return this.getQuadrant(sector.getQuadName());
     }
-    
-    
-    
+
+
+
     @Override
-    public synchronized List<? extends Quadrant> getAllQuadrants() {
-        if (this.allQuadrants.isEmpty()) {
-            this.allQuadrants.addAll(super.getAllQuadrants());
-        }
-        return this.allQuadrants;
+    public List<? extends Quadrant> getAllQuadrants() {
+        return this.getSnapshot().getQuadrants();
     }
 
-    
-    
+
+
     @Override
-    public synchronized Quadrant getQuadrant(String name) {
-        Quadrant cached = this.quadCache.get(name);
+    public List<Sector> getAllSectors() {
+        return this.getSnapshot().getSectors();
+    }
+
+
+
+    @Override
+    public Quadrant getQuadrant(String name) {
+        final Quadrant cached = this.getSnapshot().getQuadrant(name.trim());
         if (cached == null) {
-            cached = super.getQuadrant(name);
-            this.quadCache.put(name, cached);
+            // unknown quadrants are not part of the snapshot
+            return super.getQuadrant(name);
         }
         return cached;
     }
@@ -68,33 +87,77 @@ public class CachedQuadrantProvider extends QuadrantProviderDecorator {
 
 
     @Override
-    public void quadrantDeleted(QuadrantEvent e) {
-        this.quadCache.remove(e.getQuadrant().getName());
-        this.allQuadrants.remove(e.getQuadrant());
-        this.entryPortals.removeAll(e.getModified());
+    public synchronized QuadrantIndex getIndex(String quadName) {
+        QuadrantIndex index = this.indices.get(quadName);
+        if (index == null) {
+            index = QuadrantIndex.build(this.getQuadrant(quadName));
+            this.indices.put(quadName, index);
+        }
+        return index;
+    }
+
+
+
+    private static Set<String> getQuadNames(QuadrantEvent e) {
+        final Set<String> names = new HashSet<>();
+        if (e.getQuadrant() != null) {
+            names.add(e.getQuadrant().getName());
+        }
+        // sector events do not carry a quadrant
+        for (final Sector sector : e.getModified()) {
+            names.add(sector.getQuadName());
+        }
+        return names;
+    }
+
+
+
+    /**
+     * Reloads the quadrants which are affected by the given event from the wrapped
+     * provider and swaps in a new snapshot.
+     */
+    private synchronized void reload(QuadrantEvent e) {
+        final Set<String> names = getQuadNames(e);
+        this.indices.keySet().removeAll(names);
+        if (this.snapshot == null) {
+            // everything will be loaded on first access
+            return;
+        }
+        UniverseSnapshot next = this.snapshot;
+        for (final String name : names) {
+            next = next.with(super.getQuadrant(name));
+        }
+        this.snapshot = next;
+    }
+
+
+
+    @Override
+    public synchronized void quadrantDeleted(QuadrantEvent e) {
+        this.indices.remove(e.getQuadrant().getName());
+        if (this.snapshot != null) {
+            this.snapshot = this.snapshot.without(e.getQuadrant().getName());
+        }
     }
 
 
 
     @Override
     public void quadrantAdded(QuadrantEvent e) {
-        this.quadCache.put(e.getQuadrant().getName(), e.getQuadrant());
-        this.allQuadrants.add(e.getQuadrant());
+        this.reload(e);
     }
 
 
 
     @Override
     public void sectorsAdded(QuadrantEvent e) {
-        for (final Sector sector : e.getModified()) {
-            if (sector.getType() == SectorType.EINTRITTS_PORTAL) {
-                this.entryPortals.add(sector);
-            }
-        }
+        this.reload(e);
     }
 
 
 
     @Override
-    public void sectorsUpdated(QuadrantEvent e) {}
+    public void sectorsUpdated(QuadrantEvent e) {
+        this.reload(e);
+    }
 }
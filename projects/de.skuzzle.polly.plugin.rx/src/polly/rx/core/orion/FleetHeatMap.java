@@ -1,5 +1,6 @@
 package polly.rx.core.orion;
 
+import java.util.Collection;
 import java.util.Map;
 
 import polly.rx.core.orion.model.Fleet;
@@ -12,6 +13,8 @@ public interface FleetHeatMap {
 
     void update(Fleet fleet);
 
+    void update(Collection<? extends Fleet> fleets);
+
     Map<Sector, Integer> getSectorHeatMap(String venadName, Quadrant quadrant);
 
     Map<Quadrant, Map<Sector, Integer>> getUserHeatMaps(String venad);
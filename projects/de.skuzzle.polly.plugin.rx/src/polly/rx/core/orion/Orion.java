@@ -28,6 +28,7 @@ public enum Orion implements UniverseFactory {
     private AlienManager alienManager;
     private PathPlanner planner;
     private FleetHeatMap heatMap;
+    private QuadrantImageCache imageCache;
 
 
 
@@ -73,7 +74,11 @@ public enum Orion implements UniverseFactory {
         INSTANCE.priceProvider = priceProvider;
         INSTANCE.userMapper = userMapper;
         INSTANCE.planner = new PathPlanner(quadProvider, holeProvider);
+        quadUpdater.addQuadrantListener(INSTANCE.planner);
         INSTANCE.heatMap = heatMap;
+        INSTANCE.imageCache = new QuadrantImageCache(heatMap);
+        quadUpdater.addQuadrantListener(INSTANCE.imageCache);
+        fleetTracker.addFleetListener(INSTANCE.imageCache);
     }
 
 
@@ -167,6 +172,10 @@ public enum Orion implements UniverseFactory {
         return this.heatMap;
     }
 
+    public QuadrantImageCache getImageCache() {
+        return this.imageCache;
+    }
+
 
     public List<Sector> getPersonalPortals(User user) {
         if (user == null) {
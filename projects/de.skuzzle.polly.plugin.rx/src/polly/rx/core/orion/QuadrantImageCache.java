@@ -0,0 +1,420 @@
+package polly.rx.core.orion;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.imageio.ImageIO;
+
+import polly.rx.core.orion.model.Fleet;
+import polly.rx.core.orion.model.Quadrant;
+import polly.rx.core.orion.model.Sector;
+import polly.rx.core.orion.pathplanning.PathPlanner.HighlightedQuadrant;
+import de.skuzzle.polly.sdk.time.Time;
+import de.skuzzle.polly.tools.io.FastByteArrayOutputStream;
+
+
+/**
+ * Caches the rendered quadrant images and heat maps as encoded PNG bytes. Entries are
+ * keyed by quadrant, overlay and the version of the data they have been drawn from,
+ * so outdated images are never returned. Listener callbacks only increment the
+ * versions of the changed quadrants and venads, outdated entries are evicted once
+ * the cache exceeds its size.
+ *
+ * <p>All versions are taken from a single counter. Thus, the maximum of the
+ * versions an image depends on changes whenever any of its data changes and can be
+ * used as the image's version. Each {@link Tile} carries an entity tag which is
+ * derived from that version, its overlay and the name of the quadrant it shows.</p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+public class QuadrantImageCache implements QuadrantListener, FleetListener {
+
+    /** Maximum number of bytes of all cached images */
+    private final static int MAX_SIZE = 16 * 1024 * 1024;
+
+    private final static String OVERLAY_NONE = "map"; //$NON-NLS-1$
+    private final static String OVERLAY_ROUTE = "route"; //$NON-NLS-1$
+    private final static String OVERLAY_HEAT_MAP = "heat"; //$NON-NLS-1$
+    private final static String OVERLAY_USER_HEAT_MAP = "userHeat"; //$NON-NLS-1$
+
+    /** Quadrant name of the entry which holds all heat maps of a venad */
+    private final static String ALL_QUADRANTS = ""; //$NON-NLS-1$
+
+
+
+    /**
+     * An encoded PNG image.
+     */
+    public final static class Tile {
+        private final byte[] data;
+        private final int width;
+        private final int height;
+        private final String etag;
+
+
+
+        private Tile(byte[] data, int width, int height, String etag) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.etag = etag;
+        }
+
+
+
+        /**
+         * Gets the PNG encoded image. The array must not be modified.
+         *
+         * @return The image data.
+         */
+        public byte[] getData() {
+            return this.data;
+        }
+
+
+
+        public int getWidth() {
+            return this.width;
+        }
+
+
+
+        public int getHeight() {
+            return this.height;
+        }
+
+
+
+        /**
+         * Gets the quoted entity tag of this image which can be used for HTTP
+         * caching.
+         *
+         * @return The entity tag.
+         */
+        public String getETag() {
+            return this.etag;
+        }
+    }
+
+
+
+    private final static class Key {
+        private final String quadName;
+        private final String overlay;
+        private final long version;
+
+
+
+        private Key(String quadName, String overlay, long version) {
+            this.quadName = quadName;
+            this.overlay = overlay;
+            this.version = version;
+        }
+
+
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.quadName, this.overlay, this.version);
+        }
+
+
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            } else if (obj == null || obj.getClass() != Key.class) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.version == other.version &&
+                this.quadName.equals(other.quadName) &&
+                this.overlay.equals(other.overlay);
+        }
+    }
+
+
+
+    /**
+     * Cached images together with the quadrants they show.
+     */
+    private final static class Entry {
+        private final List<Quadrant> quads;
+        private final Tile[] tiles;
+        private final int size;
+
+
+
+        private Entry(List<Quadrant> quads, Tile[] tiles) {
+            this.quads = quads;
+            this.tiles = tiles;
+            int size = 0;
+            for (final Tile tile : tiles) {
+                size += tile.data.length;
+            }
+            this.size = size;
+        }
+    }
+
+
+
+    private final FleetHeatMap heatMap;
+
+    /** Distinguishes entity tags of different runs */
+    private final String epoch;
+
+    private final Map<Key, Entry> cache;
+    private final Map<String, Long> quadVersions;
+    private final Map<String, Long> venadVersions;
+    private long version;
+    private long quadVersion;
+    private int size;
+
+
+
+    public QuadrantImageCache(FleetHeatMap heatMap) {
+        this.heatMap = heatMap;
+        this.epoch = Long.toHexString(Time.currentTimeMillis());
+        this.cache = new LinkedHashMap<>(64, 0.75f, true);
+        this.quadVersions = new HashMap<>();
+        this.venadVersions = new HashMap<>();
+    }
+
+
+
+    /**
+     * Gets the image of the given quadrant. Images of highlighted quadrants are not
+     * cached, as each instance carries its own highlights. Callers should keep them
+     * for as long as they need them.
+     *
+     * @param quad The quadrant.
+     * @return The image.
+     */
+    public Tile getQuadrantImage(Quadrant quad) {
+        final boolean highlighted = quad instanceof HighlightedQuadrant;
+        final String overlay = highlighted
+                ? OVERLAY_ROUTE + ":" + ((HighlightedQuadrant) quad).getId() //$NON-NLS-1$
+                : OVERLAY_NONE;
+        final Key key;
+        synchronized (this) {
+            key = new Key(quad.getName(), overlay, this.getQuadVersion(quad.getName()));
+        }
+        if (highlighted) {
+            return this.encode(QuadrantUtils.createQuadImage(quad), quad.getName(), key);
+        }
+        final Entry cached = this.get(key);
+        if (cached != null) {
+            return cached.tiles[0];
+        }
+        final Tile tile = this.encode(QuadrantUtils.createQuadImage(quad),
+                quad.getName(), key);
+        this.put(key, new Entry(Collections.singletonList(quad), new Tile[] { tile }));
+        return tile;
+    }
+
+
+
+    /**
+     * Gets the heat map of the given venad for the given quadrant.
+     *
+     * @param quad The quadrant.
+     * @param venad The venad name.
+     * @return The image.
+     */
+    public Tile getHeatMap(Quadrant quad, String venad) {
+        final Key key;
+        synchronized (this) {
+            key = new Key(quad.getName(), OVERLAY_HEAT_MAP + ":" + venad, //$NON-NLS-1$
+                    Math.max(this.getQuadVersion(quad.getName()),
+                            this.getVenadVersion(venad)));
+        }
+        final Entry cached = this.get(key);
+        if (cached != null) {
+            return cached.tiles[0];
+        }
+        final Tile tile = this.encode(
+                QuadrantUtils.drawHeatMap(quad, venad, this.heatMap), quad.getName(), key);
+        this.put(key, new Entry(Collections.singletonList(quad), new Tile[] { tile }));
+        return tile;
+    }
+
+
+
+    /**
+     * Gets the heat maps of the given venad for all quadrants in which its fleets
+     * have been seen. The colors of all heat maps are on the same scale.
+     *
+     * @param venad The venad name.
+     * @return The images ordered by quadrant name.
+     */
+    public Map<Quadrant, Tile> getUserHeatMaps(String venad) {
+        final Key key;
+        synchronized (this) {
+            key = new Key(ALL_QUADRANTS, OVERLAY_USER_HEAT_MAP + ":" + venad, //$NON-NLS-1$
+                    Math.max(this.quadVersion, this.getVenadVersion(venad)));
+        }
+        Entry entry = this.get(key);
+        if (entry == null) {
+            final Map<Quadrant, BufferedImage> images =
+                    QuadrantUtils.drawUserHeatMap(venad, this.heatMap);
+            final List<Quadrant> quads = new ArrayList<>(images.keySet());
+            Collections.sort(quads, new Comparator<Quadrant>() {
+                @Override
+                public int compare(Quadrant o1, Quadrant o2) {
+                    return o1.getName().compareTo(o2.getName());
+                }
+            });
+            final Tile[] tiles = new Tile[quads.size()];
+            for (int i = 0; i < tiles.length; ++i) {
+                final Quadrant quad = quads.get(i);
+                tiles[i] = this.encode(images.get(quad), quad.getName(), key);
+            }
+            entry = new Entry(quads, tiles);
+            this.put(key, entry);
+        }
+        final Map<Quadrant, Tile> result = new LinkedHashMap<>(entry.tiles.length);
+        for (int i = 0; i < entry.tiles.length; ++i) {
+            result.put(entry.quads.get(i), entry.tiles[i]);
+        }
+        return result;
+    }
+
+
+
+    private long getQuadVersion(String quadName) {
+        final Long v = this.quadVersions.get(quadName);
+        return v == null ? 0 : v;
+    }
+
+
+
+    private long getVenadVersion(String venad) {
+        final Long v = this.venadVersions.get(venad);
+        return v == null ? 0 : v;
+    }
+
+
+
+    private synchronized Entry get(Key key) {
+        return this.cache.get(key);
+    }
+
+
+
+    private synchronized void put(Key key, Entry entry) {
+        final Entry prev = this.cache.put(key, entry);
+        if (prev != null) {
+            this.size -= prev.size;
+        }
+        this.size += entry.size;
+
+        // evict least recently used entries, but keep the new one
+        final Iterator<Entry> it = this.cache.values().iterator();
+        while (this.size > MAX_SIZE && this.cache.size() > 1) {
+            this.size -= it.next().size;
+            it.remove();
+        }
+    }
+
+
+
+    private static String escape(String s) {
+        try {
+            // escapes quotes and '/', so it can be used as separator
+            return URLEncoder.encode(s, "UTF-8"); //$NON-NLS-1$
+        } catch (UnsupportedEncodingException e) {
+            // should not be reachable
+            throw new RuntimeException(e);
+        }
+    }
+
+
+
+    private Tile encode(BufferedImage img, String quadName, Key key) {
+        final FastByteArrayOutputStream out = new FastByteArrayOutputStream();
+        try {
+            ImageIO.write(img, "png", out); //$NON-NLS-1$
+        } catch (IOException e) {
+            // should not be reachable
+            e.printStackTrace();
+        }
+        final byte[] data = Arrays.copyOf(out.getBuffer(), out.getBufferSize());
+        // images of different quadrants and overlays may have the same version
+        final String etag = "\"" + this.epoch + "/" + Long.toHexString(key.version) + //$NON-NLS-1$ //$NON-NLS-2$
+                "/" + escape(key.overlay) + "/" + escape(quadName) + "\""; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        return new Tile(data, img.getWidth(), img.getHeight(), etag);
+    }
+
+
+
+    private synchronized void quadrantsChanged(QuadrantEvent e) {
+        ++this.version;
+        this.quadVersion = this.version;
+        if (e.getQuadrant() != null) {
+            this.quadVersions.put(e.getQuadrant().getName(), this.version);
+        }
+        // sector events do not carry a quadrant
+        for (final Sector sector : e.getModified()) {
+            this.quadVersions.put(sector.getQuadName(), this.version);
+        }
+    }
+
+
+
+    @Override
+    public void quadrantDeleted(QuadrantEvent e) {
+        this.quadrantsChanged(e);
+    }
+
+
+
+    @Override
+    public void quadrantAdded(QuadrantEvent e) {
+        this.quadrantsChanged(e);
+    }
+
+
+
+    @Override
+    public void sectorsAdded(QuadrantEvent e) {
+        this.quadrantsChanged(e);
+    }
+
+
+
+    @Override
+    public void sectorsUpdated(QuadrantEvent e) {
+        this.quadrantsChanged(e);
+    }
+
+
+
+    @Override
+    public synchronized void ownFleetsUpdated(FleetEvent e) {
+        // the heat map has been updated before the event is fired
+        ++this.version;
+        for (final Fleet fleet : e.getFleets()) {
+            this.venadVersions.put(fleet.getOwnerName(), this.version);
+        }
+    }
+
+
+
+    @Override
+    public void fleetsUpdated(FleetEvent e) {
+        // only fleets of orion users are recorded in the heat map
+    }
+}
@@ -0,0 +1,304 @@
+package polly.rx.core.orion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import polly.rx.core.orion.QuadrantUtils.SectorFilter;
+import polly.rx.core.orion.model.AlienSpawn;
+import polly.rx.core.orion.model.Quadrant;
+import polly.rx.core.orion.model.Sector;
+import polly.rx.core.orion.model.SectorType;
+
+
+/**
+ * Immutable index over the sectors of a single quadrant which answers neighbourhood
+ * and reachability queries without searching the quadrant's sector graph.
+ *
+ * <p>Sectors are stored in a grid which is addressed by their coordinates. Each
+ * passable sector is labeled with the connected component it belongs to, so two
+ * sectors are reachable from each other if and only if they have the same label.
+ * Sectors near a source are found by a search which only visits the sectors within
+ * the requested distance, so its costs do not depend on the size of the
+ * quadrant.</p>
+ *
+ * <p>Instances are obtained from {@link QuadrantProvider#getIndex(String)}.</p>
+ */
+public final class QuadrantIndex {
+
+    /** Costs of moving in the local search, see {@link QuadrantUtils#getDistance} */
+    private final static int COSTS_DIAGONAL = 1;
+    private final static int COSTS_NORMAL = 2;
+
+
+
+    /**
+     * Creates the index for the given quadrant.
+     *
+     * @param quad The quadrant.
+     * @return The index.
+     */
+    public static QuadrantIndex build(Quadrant quad) {
+        return new QuadrantIndex(quad);
+    }
+
+
+
+    private final String quadName;
+    private final int width;
+    private final int height;
+
+    /** Passable sectors by cell, <code>null</code> for cells of type NONE */
+    private final Sector[] sectors;
+
+    /** Connected component of each passable cell, -1 for the others */
+    private final int[] component;
+
+
+
+    private QuadrantIndex(Quadrant quad) {
+        this.quadName = quad.getName();
+        this.width = quad.getMaxX() + 1;
+        this.height = quad.getMaxY() + 1;
+        this.sectors = new Sector[this.width * this.height];
+        for (final Sector sector : quad.getSectors()) {
+            final int cell = this.getCell(sector.getX(), sector.getY());
+            if (cell != -1 && sector.getType() != SectorType.NONE) {
+                this.sectors[cell] = sector;
+            }
+        }
+
+        this.component = new int[this.sectors.length];
+        Arrays.fill(this.component, -1);
+        final int[] queue = new int[this.sectors.length];
+        int label = 0;
+        for (int start = 0; start < this.sectors.length; ++start) {
+            if (this.sectors[start] == null || this.component[start] != -1) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            this.component[start] = label;
+            while (head < tail) {
+                final int cell = queue[head++];
+                final int x = cell % this.width;
+                final int y = cell / this.width;
+                for (int i = -1; i < 2; ++i) {
+                    for (int j = -1; j < 2; ++j) {
+                        final int next = this.getCell(x + i, y + j);
+                        if (next != -1 && this.sectors[next] != null &&
+                                this.component[next] == -1) {
+                            this.component[next] = label;
+                            queue[tail++] = next;
+                        }
+                    }
+                }
+            }
+            ++label;
+        }
+    }
+
+
+
+    private int getCell(int x, int y) {
+        if (x < 0 || x >= this.width || y < 0 || y >= this.height) {
+            return -1;
+        }
+        return y * this.width + x;
+    }
+
+
+
+    private int getCell(Sector sector) {
+        if (!sector.getQuadName().equals(this.quadName)) {
+            return -1;
+        }
+        return this.getCell(sector.getX(), sector.getY());
+    }
+
+
+
+    /**
+     * Gets the name of the indexed quadrant.
+     *
+     * @return The quadrant name.
+     */
+    public String getQuadName() {
+        return this.quadName;
+    }
+
+
+
+    /**
+     * Determines whether the target can be reached from the source without leaving
+     * the indexed quadrant.
+     *
+     * @param source The source sector.
+     * @param target The target sector.
+     * @return Whether both sectors are passable, belong to this quadrant and are
+     *          connected.
+     */
+    public boolean isReachable(Sector source, Sector target) {
+        final int s = this.getCell(source);
+        final int t = this.getCell(target);
+        return s != -1 && t != -1 && this.component[s] != -1 &&
+            this.component[s] == this.component[t];
+    }
+
+
+
+    /**
+     * Selects the alien spawns which can be reached from the given sector.
+     *
+     * @param source The source sector.
+     * @param spawns The spawns to select from.
+     * @param aggressiveOnly Whether to select only spawns of aggressive races.
+     * @return The reachable spawns.
+     */
+    public List<AlienSpawn> getReachableAliens(Sector source,
+            Collection<? extends AlienSpawn> spawns, boolean aggressiveOnly) {
+        final List<AlienSpawn> result = new ArrayList<>();
+        for (final AlienSpawn spawn : spawns) {
+            if (aggressiveOnly && !spawn.getRace().isAggressive()) {
+                continue;
+            }
+            if (this.isReachable(source, spawn.getSector())) {
+                result.add(spawn);
+            }
+        }
+        return result;
+    }
+
+
+
+    /**
+     * Finds the passable sectors which are accepted by the given filter and have a
+     * distance of at most <code>maxDistance</code> to the source. The distance is
+     * the number of jumps on the cheapest path within the quadrant, as computed by
+     * {@link QuadrantUtils#getDistance(Sector, Sector, Quadrant)}. The sectors are
+     * returned column by column, starting at the upper left.
+     *
+     * @param source The source sector.
+     * @param maxDistance The maximum distance.
+     * @param filter Filter for the sectors.
+     * @return The near sectors.
+     */
+    public List<Sector> getNearSectors(Sector source, int maxDistance,
+            SectorFilter filter) {
+        return this.getNearSectors(source, maxDistance, filter, null, Integer.MAX_VALUE);
+    }
+
+
+
+    /**
+     * Finds the best <code>limit</code> sectors of
+     * {@link #getNearSectors(Sector, int, SectorFilter)} according to the given
+     * order. Sectors which are equal according to the order are returned in the same
+     * order as by that method.
+     *
+     * @param source The source sector.
+     * @param maxDistance The maximum distance.
+     * @param filter Filter for the sectors.
+     * @param order Order of the result or <code>null</code> to keep the order.
+     * @param limit The maximum number of sectors to return.
+     * @return The near sectors.
+     */
+    public List<Sector> getNearSectors(Sector source, int maxDistance,
+            SectorFilter filter, Comparator<? super Sector> order, int limit) {
+        final List<Sector> result = new ArrayList<>();
+        final int src = this.getCell(source);
+        if (src == -1 || maxDistance < 0 || limit <= 0) {
+            return result;
+        }
+
+        // A path with at most maxDistance jumps costs at most 2 * maxDistance. Paths
+        // which are cheaper than that stay within the box of cells which can be
+        // reached with 2 * maxDistance jumps, so the search is restricted to it.
+        final int sx = source.getX();
+        final int sy = source.getY();
+        final int radius = 2 * maxDistance;
+        final int maxCosts = COSTS_NORMAL * maxDistance;
+        final int side = 2 * radius + 1;
+        final int[] costs = new int[side * side];
+        final int[] hops = new int[side * side];
+        final boolean[] done = new boolean[side * side];
+        Arrays.fill(costs, Integer.MAX_VALUE);
+
+        // Dijkstra, ties are broken by the number of jumps. Queue entries encode
+        // costs, jumps and box cell, so they are ordered by costs first.
+        final PriorityQueue<Long> queue = new PriorityQueue<>();
+        final int start = radius * side + radius;
+        costs[start] = 0;
+        queue.add((long) start);
+        while (!queue.isEmpty()) {
+            final int current = (int) (queue.poll() & 0xFFFFF);
+            if (done[current]) {
+                continue;
+            }
+            done[current] = true;
+            final int bx = current % side;
+            final int by = current / side;
+            for (int i = -1; i < 2; ++i) {
+                for (int j = -1; j < 2; ++j) {
+                    final int nx = bx + i;
+                    final int ny = by + j;
+                    if ((i == 0 && j == 0) || nx < 0 || nx >= side || ny < 0 ||
+                            ny >= side) {
+                        continue;
+                    }
+                    final int cell = this.getCell(sx + nx - radius, sy + ny - radius);
+                    final int next = ny * side + nx;
+                    if (cell == -1 || this.sectors[cell] == null || done[next]) {
+                        continue;
+                    }
+                    final int c = costs[current] +
+                        (i != 0 && j != 0 ? COSTS_DIAGONAL : COSTS_NORMAL);
+                    final int h = hops[current] + 1;
+                    if (c <= maxCosts &&
+                            (c < costs[next] || c == costs[next] && h < hops[next])) {
+                        costs[next] = c;
+                        hops[next] = h;
+                        queue.add((long) c << 40 | (long) h << 20 | next);
+                    }
+                }
+            }
+        }
+
+        // collect in the order of QuadrantUtils.getNearSectors
+        for (int i = -maxDistance; i < maxDistance; ++i) {
+            for (int j = -maxDistance; j < maxDistance; ++j) {
+                final int b = (j + radius) * side + i + radius;
+                final int cell = this.getCell(sx + i, sy + j);
+                if (!done[b] || hops[b] > maxDistance || cell == -1) {
+                    continue;
+                }
+                final Sector sector = this.sectors[cell];
+                if (sector == null || !filter.accept(sector)) {
+                    continue;
+                }
+                if (order == null) {
+                    if (result.size() < limit) {
+                        result.add(sector);
+                    }
+                    continue;
+                }
+                // insert after all sectors which are not worse
+                int pos = result.size();
+                while (pos > 0 && order.compare(sector, result.get(pos - 1)) < 0) {
+                    --pos;
+                }
+                if (pos < limit) {
+                    result.add(pos, sector);
+                    if (result.size() > limit) {
+                        result.remove(limit);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
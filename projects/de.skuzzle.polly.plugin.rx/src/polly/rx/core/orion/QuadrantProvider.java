@@ -19,4 +19,12 @@ public interface QuadrantProvider extends QuadrantListener {
     public List<? extends Quadrant> getAllQuadrants();
 
     List<Sector> getAllSectors();
+
+    /**
+     * Gets the spatial index of the quadrant with the given name.
+     *
+     * @param quadName Name of the quadrant.
+     * @return The index.
+     */
+    public QuadrantIndex getIndex(String quadName);
 }
\ No newline at end of file
@@ -39,6 +39,11 @@ public class QuadrantProviderDecorator implements QuadrantProvider {
         return this.wrapped.getAllSectors();
     }
 
+    @Override
+    public QuadrantIndex getIndex(String quadName) {
+        return this.wrapped.getIndex(quadName);
+    }
+
     @Override
     public List<? extends Sector> getEntryPortals() {
         return this.wrapped.getEntryPortals();
@@ -61,6 +66,6 @@ public class QuadrantProviderDecorator implements QuadrantProvider {
 
     @Override
     public void sectorsUpdated(QuadrantEvent e) {
-        sectorsUpdated(e);
+        this.wrapped.sectorsUpdated(e);
     }
 }
@@ -8,7 +8,6 @@ import java.awt.image.ImageObserver;
 import java.awt.image.RescaleOp;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -178,10 +177,8 @@ public final class QuadrantUtils {
         if (!source.getQuadName().equals(target.getQuadName())) {
             return false;
         }
-        final Quadrant quad = Orion.INSTANCE.getQuadrantProvider().getQuadrant(source);
-        final LocalBuilder builder = new LocalBuilder(quad);
-        final Graph<Sector, Costs> g = new Graph<>();
-        return g.isReachable(source, target, builder);
+        return Orion.INSTANCE.getQuadrantProvider().getIndex(source.getQuadName())
+                .isReachable(source, target);
     }
 
 
@@ -216,16 +213,8 @@ public final class QuadrantUtils {
     public static List<AlienSpawn> reachableAliens(Sector source, boolean aggressiveOnly) {
         final List<? extends AlienSpawn> spawns = Orion.INSTANCE.getAlienManager()
                 .getSpawnsByQuadrant(source.getQuadName());
-        final List<AlienSpawn> result = new ArrayList<>(spawns.size());
-        for (final AlienSpawn spawn : spawns) {
-            if (aggressiveOnly && !spawn.getRace().isAggressive()) {
-                continue;
-            }
-            if (reachable(source, spawn.getSector())) {
-                result.add(spawn);
-            }
-        }
-        return result;
+        return Orion.INSTANCE.getQuadrantProvider().getIndex(source.getQuadName())
+                .getReachableAliens(source, spawns, aggressiveOnly);
     }
 
 
@@ -249,28 +238,8 @@ public final class QuadrantUtils {
 
     public static List<Sector> getNearSectors(Sector source, Quadrant quadrant,
             int maxDistance, SectorFilter filter) {
-        final List<Sector> result = new ArrayList<>();
-        final Graph<Sector, Costs> g = new Graph<>();
-
-        for (int i = -maxDistance; i < maxDistance; ++i) {
-            for (int j = -maxDistance; j < maxDistance; ++j) {
-                final int x = source.getX() + i;
-                final int y = source.getY() + j;
-                if (x >= 0 && y >= 0 && x <= quadrant.getMaxX()
-                        && y <= quadrant.getMaxY()) {
-                    final Sector sector = quadrant.getSector(x, y);
-
-                    if (sector.getType() != SectorType.NONE && filter.accept(sector)) {
-                        final int dist = getDistance(source, sector, quadrant, g);
-                        if (dist <= maxDistance) {
-                            result.add(sector);
-                        }
-                    }
-
-                }
-            }
-        }
-        return result;
+        return Orion.INSTANCE.getQuadrantProvider().getIndex(quadrant.getName())
+                .getNearSectors(source, maxDistance, filter);
     }
 
 
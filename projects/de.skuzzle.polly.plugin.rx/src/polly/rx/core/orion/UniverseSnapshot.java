@@ -0,0 +1,514 @@
+package polly.rx.core.orion;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import polly.rx.core.orion.model.DefaultProduction;
+import polly.rx.core.orion.model.DefaultSector;
+import polly.rx.core.orion.model.OrionObjectUtil;
+import polly.rx.core.orion.model.Production;
+import polly.rx.core.orion.model.Quadrant;
+import polly.rx.core.orion.model.Sector;
+import polly.rx.core.orion.model.SectorType;
+import polly.rx.entities.RxRessource;
+import de.skuzzle.polly.tools.EqualsHelper;
+import de.skuzzle.polly.tools.Equatable;
+
+
+/**
+ * Immutable copy of all known quadrants. The attributes of the sectors of each
+ * quadrant are stored column by column in primitive arrays, so the whole universe is
+ * held by a few arrays per quadrant instead of several objects per sector.
+ * Quadrants and sectors which are obtained from a snapshot are flyweights which read
+ * the columns they belong to.
+ *
+ * <p>Snapshots are never modified. {@link #with(Quadrant)} and
+ * {@link #without(String)} create a new snapshot which shares the columns of all
+ * other quadrants with this one.</p>
+ */
+final class UniverseSnapshot {
+
+    private final static SectorType[] TYPES = SectorType.values();
+    private final static RxRessource[] RESSOURCES = RxRessource.values();
+
+    /** Value of the date column for sectors without date */
+    private final static long NO_DATE = Long.MIN_VALUE;
+
+
+
+    /**
+     * Creates a snapshot of the given quadrants.
+     *
+     * @param quads The quadrants.
+     * @return The snapshot.
+     */
+    public static UniverseSnapshot build(Collection<? extends Quadrant> quads) {
+        final Columns[] columns = new Columns[quads.size()];
+        int i = 0;
+        for (final Quadrant quad : quads) {
+            columns[i++] = new Columns(quad);
+        }
+        return new UniverseSnapshot(columns);
+    }
+
+
+
+    /**
+     * Sector attributes of a single quadrant. This is also the flyweight which
+     * represents the quadrant.
+     */
+    private final static class Columns implements Quadrant {
+        private final String name;
+        private final int maxX;
+        private final int maxY;
+
+        /** Row of the sector at each position, -1 if there is none */
+        private final int[] cells;
+
+        private final int[] x;
+        private final int[] y;
+        private final byte[] type;
+        private final int[] attacker;
+        private final int[] defender;
+        private final int[] guard;
+        private final long[] date;
+
+        /** Productions of sector r are stored at prodStart[r] to prodStart[r + 1] */
+        private final int[] prodStart;
+        private final byte[] prodRess;
+        private final double[] prodRate;
+
+
+
+        private Columns(Quadrant quad) {
+            this.name = quad.getName();
+            this.maxX = quad.getMaxX();
+            this.maxY = quad.getMaxY();
+            this.cells = new int[(this.maxX + 1) * (this.maxY + 1)];
+            Arrays.fill(this.cells, -1);
+
+            final Collection<? extends Sector> sectors = quad.getSectors();
+            final int n = sectors.size();
+            this.x = new int[n];
+            this.y = new int[n];
+            this.type = new byte[n];
+            this.attacker = new int[n];
+            this.defender = new int[n];
+            this.guard = new int[n];
+            this.date = new long[n];
+            this.prodStart = new int[n + 1];
+
+            int prods = 0;
+            for (final Sector sector : sectors) {
+                prods += sector.getRessources().size();
+            }
+            this.prodRess = new byte[prods];
+            this.prodRate = new double[prods];
+
+            int r = 0;
+            int p = 0;
+            for (final Sector sector : sectors) {
+                this.x[r] = sector.getX();
+                this.y[r] = sector.getY();
+                this.type[r] = (byte) sector.getType().ordinal();
+                this.attacker[r] = sector.getAttackerBonus();
+                this.defender[r] = sector.getDefenderBonus();
+                this.guard[r] = sector.getSectorGuardBonus();
+                this.date[r] = sector.getDate() == null ? NO_DATE : sector.getDate().getTime();
+                this.prodStart[r] = p;
+                for (final Production prod : sector.getRessources()) {
+                    this.prodRess[p] = (byte) prod.getRess().ordinal();
+                    this.prodRate[p] = prod.getRate();
+                    ++p;
+                }
+                final int cell = this.getCell(sector.getX(), sector.getY());
+                if (cell != -1) {
+                    this.cells[cell] = r;
+                }
+                ++r;
+            }
+            this.prodStart[n] = p;
+        }
+
+
+
+        private int getCell(int x, int y) {
+            if (x < 0 || x > this.maxX || y < 0 || y > this.maxY) {
+                return -1;
+            }
+            return y * (this.maxX + 1) + x;
+        }
+
+
+
+        private int size() {
+            return this.x.length;
+        }
+
+
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+
+
+        @Override
+        public Sector getSector(int x, int y) {
+            final int cell = this.getCell(x, y);
+            if (cell == -1 || this.cells[cell] == -1) {
+                return new DefaultSector(this.name, x, y, 0, 0, 0, SectorType.NONE,
+                        Collections.<Production> emptyList());
+            }
+            return new ColumnSector(this, this.cells[cell]);
+        }
+
+
+
+        @Override
+        public List<Sector> getSectors() {
+            return new AbstractList<Sector>() {
+                @Override
+                public Sector get(int index) {
+                    return new ColumnSector(Columns.this, index);
+                }
+
+
+
+                @Override
+                public int size() {
+                    return Columns.this.size();
+                }
+            };
+        }
+
+
+
+        @Override
+        public int getMaxX() {
+            return this.maxX;
+        }
+
+
+
+        @Override
+        public int getMaxY() {
+            return this.maxY;
+        }
+
+
+
+        @Override
+        public String toString() {
+            return OrionObjectUtil.quadrantString(this);
+        }
+
+
+
+        @Override
+        public int hashCode() {
+            return OrionObjectUtil.quadrantHash(this);
+        }
+
+
+
+        @Override
+        public boolean equals(Object obj) {
+            return EqualsHelper.testEquality(this, obj);
+        }
+
+
+
+        @Override
+        public Class<?> getEquivalenceClass() {
+            return Quadrant.class;
+        }
+
+
+
+        @Override
+        public boolean actualEquals(Equatable o) {
+            return OrionObjectUtil.quadrantsEquals(this, (Quadrant) o);
+        }
+    }
+
+
+
+    /**
+     * Flyweight which represents a single row of a quadrant's columns.
+     */
+    private final static class ColumnSector implements Sector {
+        private final Columns columns;
+        private final int row;
+
+
+
+        private ColumnSector(Columns columns, int row) {
+            this.columns = columns;
+            this.row = row;
+        }
+
+
+
+        @Override
+        public String getQuadName() {
+            return this.columns.name;
+        }
+
+
+
+        @Override
+        public int getX() {
+            return this.columns.x[this.row];
+        }
+
+
+
+        @Override
+        public int getY() {
+            return this.columns.y[this.row];
+        }
+
+
+
+        @Override
+        public int getAttackerBonus() {
+            return this.columns.attacker[this.row];
+        }
+
+
+
+        @Override
+        public int getDefenderBonus() {
+            return this.columns.defender[this.row];
+        }
+
+
+
+        @Override
+        public int getSectorGuardBonus() {
+            return this.columns.guard[this.row];
+        }
+
+
+
+        @Override
+        public SectorType getType() {
+            return TYPES[this.columns.type[this.row]];
+        }
+
+
+
+        @Override
+        public Date getDate() {
+            final long date = this.columns.date[this.row];
+            return date == NO_DATE ? null : new Date(date);
+        }
+
+
+
+        @Override
+        public List<Production> getRessources() {
+            final int start = this.columns.prodStart[this.row];
+            final int end = this.columns.prodStart[this.row + 1];
+            return new AbstractList<Production>() {
+                @Override
+                public Production get(int index) {
+                    if (index < 0 || index >= end - start) {
+                        throw new IndexOutOfBoundsException();
+                    }
+                    return new DefaultProduction(
+                            RESSOURCES[ColumnSector.this.columns.prodRess[start + index]],
+                            ColumnSector.this.columns.prodRate[start + index]);
+                }
+
+
+
+                @Override
+                public int size() {
+                    return end - start;
+                }
+            };
+        }
+
+
+
+        @Override
+        public int compareTo(Sector o) {
+            return SECTOR_COMPERATOR.compare(this, o);
+        }
+
+
+
+        @Override
+        public String toString() {
+            return OrionObjectUtil.sectorString(this);
+        }
+
+
+
+        @Override
+        public int hashCode() {
+            return OrionObjectUtil.sectorHash(this);
+        }
+
+
+
+        @Override
+        public boolean equals(Object obj) {
+            return EqualsHelper.testEquality(this, obj);
+        }
+
+
+
+        @Override
+        public Class<?> getEquivalenceClass() {
+            return Sector.class;
+        }
+
+
+
+        @Override
+        public boolean actualEquals(Equatable o) {
+            return OrionObjectUtil.sectorsEqual(this, (Sector) o);
+        }
+    }
+
+
+
+    private final Columns[] quads;
+    private final Map<String, Columns> byName;
+
+    /** Number of sectors in all quadrants before the quadrant at each index */
+    private final int[] firstSector;
+    private final List<Sector> entryPortals;
+
+
+
+    private UniverseSnapshot(Columns[] quads) {
+        this.quads = quads;
+        this.byName = new HashMap<>(quads.length * 2);
+        this.firstSector = new int[quads.length + 1];
+        final List<Sector> portals = new ArrayList<>();
+        for (int q = 0; q < quads.length; ++q) {
+            final Columns c = quads[q];
+            this.byName.put(c.name, c);
+            this.firstSector[q + 1] = this.firstSector[q] + c.size();
+            for (int r = 0; r < c.size(); ++r) {
+                if (TYPES[c.type[r]] == SectorType.EINTRITTS_PORTAL) {
+                    portals.add(new ColumnSector(c, r));
+                }
+            }
+        }
+        this.entryPortals = Collections.unmodifiableList(portals);
+    }
+
+
+
+    /**
+     * Creates a snapshot in which the quadrant with the name of the given one is
+     * replaced by a copy of it. The quadrant is added if it does not exist.
+     *
+     * @param quad The quadrant.
+     * @return The new snapshot.
+     */
+    public UniverseSnapshot with(Quadrant quad) {
+        final Columns c = new Columns(quad);
+        for (int q = 0; q < this.quads.length; ++q) {
+            if (this.quads[q].name.equals(c.name)) {
+                final Columns[] quads = this.quads.clone();
+                quads[q] = c;
+                return new UniverseSnapshot(quads);
+            }
+        }
+        final Columns[] quads = Arrays.copyOf(this.quads, this.quads.length + 1);
+        quads[this.quads.length] = c;
+        return new UniverseSnapshot(quads);
+    }
+
+
+
+    /**
+     * Creates a snapshot without the quadrant with the given name.
+     *
+     * @param quadName Name of the quadrant.
+     * @return The new snapshot.
+     */
+    public UniverseSnapshot without(String quadName) {
+        final List<Columns> quads = new ArrayList<>(Arrays.asList(this.quads));
+        if (!quads.remove(this.byName.get(quadName))) {
+            return this;
+        }
+        return new UniverseSnapshot(quads.toArray(new Columns[quads.size()]));
+    }
+
+
+
+    /**
+     * Gets the quadrant with the given name.
+     *
+     * @param name Name of the quadrant.
+     * @return The quadrant or <code>null</code> if it is not part of this snapshot.
+     */
+    public Quadrant getQuadrant(String name) {
+        return this.byName.get(name);
+    }
+
+
+
+    public List<Quadrant> getQuadrants() {
+        return Collections.<Quadrant> unmodifiableList(Arrays.asList(this.quads));
+    }
+
+
+
+    public List<Sector> getEntryPortals() {
+        return this.entryPortals;
+    }
+
+
+
+    /**
+     * Gets all sectors of all quadrants. The sectors are created while the list is
+     * being iterated.
+     *
+     * @return The sectors.
+     */
+    public List<Sector> getSectors() {
+        return new AbstractList<Sector>() {
+            @Override
+            public Sector get(int index) {
+                if (index < 0 || index >= this.size()) {
+                    throw new IndexOutOfBoundsException();
+                }
+                int q = Arrays.binarySearch(UniverseSnapshot.this.firstSector, index);
+                if (q < 0) {
+                    q = -q - 2;
+                } else {
+                    // skip empty quadrants
+                    while (UniverseSnapshot.this.firstSector[q + 1] == index) {
+                        ++q;
+                    }
+                }
+                return new ColumnSector(UniverseSnapshot.this.quads[q],
+                        index - UniverseSnapshot.this.firstSector[q]);
+            }
+
+
+
+            @Override
+            public int size() {
+                return UniverseSnapshot.this.firstSector[
+                    UniverseSnapshot.this.quads.length];
+            }
+        };
+    }
+}
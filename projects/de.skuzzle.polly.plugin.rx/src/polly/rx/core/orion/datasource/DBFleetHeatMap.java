@@ -1,5 +1,8 @@
 package polly.rx.core.orion.datasource;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,19 +12,32 @@ import polly.rx.core.orion.QuadrantProvider;
 import polly.rx.core.orion.model.Fleet;
 import polly.rx.core.orion.model.Quadrant;
 import polly.rx.core.orion.model.Sector;
+import polly.rx.entities.DBHeatMapCount;
 import polly.rx.entities.DBHeatMapEntry;
-import polly.rx.entities.DBSector;
 import de.skuzzle.polly.sdk.PersistenceManagerV2;
 import de.skuzzle.polly.sdk.PersistenceManagerV2.Param;
 import de.skuzzle.polly.sdk.PersistenceManagerV2.Read;
 import de.skuzzle.polly.sdk.PersistenceManagerV2.Write;
 import de.skuzzle.polly.sdk.exceptions.DatabaseException;
-import de.skuzzle.polly.sdk.time.Time;
 
+/**
+ * Heat map which stores one {@link DBHeatMapCount} per venad and sector. Sightings
+ * are added to the counts as they are reported, so each heat map is read with a
+ * single query. Counts for the {@link DBHeatMapEntry sightings} which have been
+ * stored by earlier versions are created on first access. A marker count is stored
+ * in the same transaction, so they are created exactly once. Sightings are not
+ * counted until that has succeeded.
+ */
 public class DBFleetHeatMap implements FleetHeatMap {
 
+    private final static int PAGE_SIZE = 1000;
+
+    /** Venad and quadrant name of the count which marks a finished backfill */
+    private final static String BACKFILL_MARKER = ""; //$NON-NLS-1$
+
     private final PersistenceManagerV2 persistence;
     private final QuadrantProvider quadrantProvider;
+    private volatile boolean initialized;
 
     public DBFleetHeatMap(PersistenceManagerV2 persistence, QuadrantProvider quadProvider) {
         this.persistence = persistence;
@@ -30,73 +46,150 @@ public class DBFleetHeatMap implements FleetHeatMap {
 
     @Override
     public int getTimes(String venadName, Sector sector) {
-        return findEntries(venadName, sector).size();
+        this.initialize();
+        final DBHeatMapCount count;
+        try (final Read read = this.persistence.read()) {
+            count = read.findSingle(DBHeatMapCount.class,
+                    DBHeatMapCount.HEAT_MAP_COUNT_BY_VENAD_AND_SECTOR,
+                    new Param(venadName, sector.getQuadName(), sector.getX(),
+                            sector.getY()));
+        }
+        return count == null ? 0 : count.getTimes();
     }
 
     @Override
     public Map<Quadrant, Map<Sector, Integer>> getUserHeatMaps(String venad) {
-        final Map<Quadrant, Map<Sector, Integer>> result = new HashMap<>();
+        this.initialize();
+        final List<DBHeatMapCount> all;
         try (final Read read = this.persistence.read()) {
-            for (final Quadrant quad : this.quadrantProvider.getAllQuadrants()) {
-                final Map<Sector, Integer> heatMap = getSectorHeatMap(venad, quad);
-                if (!heatMap.isEmpty()) {
-                    result.put(quad, heatMap);
-                }
-            }
+            all = read.findList(DBHeatMapCount.class,
+                    DBHeatMapCount.HEAT_MAP_COUNTS_BY_VENAD, new Param(venad));
+        }
 
+        final Map<String, Quadrant> quadrants = new HashMap<>();
+        final Map<Quadrant, Map<Sector, Integer>> result = new HashMap<>();
+        for (final DBHeatMapCount count : all) {
+            final Quadrant quad = quadrants.computeIfAbsent(count.getQuadName(),
+                    this.quadrantProvider::getQuadrant);
+            final Map<Sector, Integer> heatMap = result.computeIfAbsent(quad,
+                    q -> new HashMap<>());
+            heatMap.put(quad.getSector(count.getX(), count.getY()), count.getTimes());
         }
         return result;
     }
 
     @Override
     public Map<Sector, Integer> getSectorHeatMap(String venadName, Quadrant quadrant) {
-        final Map<Sector, Integer> result = new HashMap<>();
-        final List<DBHeatMapEntry> all;
+        this.initialize();
+        final List<DBHeatMapCount> all;
         try (final Read read = this.persistence.read()) {
-            all = read.findList(DBHeatMapEntry.class,
-                    DBHeatMapEntry.BY_VENAD_AND_QUADRANT,
+            all = read.findList(DBHeatMapCount.class,
+                    DBHeatMapCount.HEAT_MAP_COUNTS_BY_VENAD_AND_QUADRANT,
                     new Param(venadName, quadrant.getName()));
         }
 
-        for (final DBHeatMapEntry entry : all) {
-            result.compute(entry.getSector(), (s, i) -> i == null
-                    ? 1
-                    : i + 1);
+        final Map<Sector, Integer> result = new HashMap<>();
+        for (final DBHeatMapCount count : all) {
+            result.put(quadrant.getSector(count.getX(), count.getY()),
+                    count.getTimes());
         }
         return result;
     }
 
     @Override
     public void update(Fleet fleet) {
-        try (final Write write = this.persistence.write()) {
-            final Read read = write.read();
-
-            final DBSector sector = read.findSingle(DBSector.class,
-                    DBSector.QUERY_FIND_SECTOR,
-                    new Param(fleet.getSector().getQuadName(),
-                            fleet.getSector().getX(),
-                            fleet.getSector().getY()));
-
-            final DBHeatMapEntry newEntry = new DBHeatMapEntry();
-            newEntry.setDate(Time.currentTime());
-            newEntry.setOwnerVenadName(fleet.getOwnerName());
-            newEntry.setSector(sector);
-            write.single(newEntry);
+        this.update(Collections.singleton(fleet));
+    }
+
+    @Override
+    public synchronized void update(Collection<? extends Fleet> fleets) {
+        if (fleets.isEmpty()) {
+            return;
+        } else if (!this.initialize()) {
+            // counting now would skip the old sightings, see initialize()
+            return;
+        }
+        final Map<String, DBHeatMapCount> counts = new HashMap<>();
+        for (final Fleet fleet : fleets) {
+            final Sector s = fleet.getSector();
+            count(counts, fleet.getOwnerName(), s.getQuadName(), s.getX(), s.getY());
+        }
+        try {
+            this.persistence.writeAtomic(write -> merge(write, counts.values()));
         } catch (DatabaseException e) {
             e.printStackTrace();
         }
     }
 
-    private List<DBHeatMapEntry> findEntries(String venadName, Sector s) {
-        try (final Read read = this.persistence.read()) {
-            final DBSector sector = read.findSingle(DBSector.class,
-                DBSector.QUERY_FIND_SECTOR,
-                new Param(s.getQuadName(), s.getX(), s.getY()));
+    /**
+     * Creates the counts for the sightings which have been stored before counts
+     * existed, unless the marker count shows that this has already been done. As the
+     * marker is committed together with the counts, a failed backfill is repeated by
+     * the next call.
+     *
+     * @return Whether the backfill has been finished.
+     */
+    private boolean initialize() {
+        if (this.initialized) {
+            return true;
+        }
+        synchronized (this) {
+            if (this.initialized) {
+                return true;
+            }
+            try {
+                if (this.persistence.atomic().findSingle(DBHeatMapCount.class,
+                        DBHeatMapCount.HEAT_MAP_COUNT_BY_VENAD_AND_SECTOR,
+                        new Param(BACKFILL_MARKER, BACKFILL_MARKER, -1, -1)) == null) {
+                    this.backfill();
+                }
+                this.initialized = true;
+            } catch (DatabaseException | RuntimeException e) {
+                e.printStackTrace();
+            }
+            return this.initialized;
+        }
+    }
 
-            return read.findList(DBHeatMapEntry.class, DBHeatMapEntry.BY_VENAD_AND_SECTOR,
-                    new Param(venadName, sector));
+    private void backfill() throws DatabaseException {
+        final Map<String, DBHeatMapCount> counts = new HashMap<>();
+        for (final DBHeatMapEntry entry : this.persistence.atomic().findPaged(
+                DBHeatMapEntry.class, DBHeatMapEntry.ALL_HEAT_MAP_ENTRIES, PAGE_SIZE)) {
+            final Sector s = entry.getSector();
+            if (s != null) {
+                count(counts, entry.getOwnerVenadName(), s.getQuadName(), s.getX(),
+                        s.getY());
+            }
         }
+        this.persistence.writeAtomic(write -> {
+            merge(write, counts.values());
+            write.single(new DBHeatMapCount(BACKFILL_MARKER, BACKFILL_MARKER, -1, -1));
+        });
+    }
 
+    private static void count(Map<String, DBHeatMapCount> counts, String venad,
+            String quadName, int x, int y) {
+        final String key = venad + "\n" + quadName + "\n" + x + "\n" + y; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        counts.computeIfAbsent(key, k -> new DBHeatMapCount(venad, quadName, x, y))
+                .add(1);
     }
 
+    /**
+     * Adds the given counts to the stored ones, creating those which do not exist.
+     */
+    private static void merge(Write write, Collection<DBHeatMapCount> counts) {
+        final List<DBHeatMapCount> created = new ArrayList<>();
+        for (final DBHeatMapCount count : counts) {
+            final DBHeatMapCount stored = write.read().findSingle(DBHeatMapCount.class,
+                    DBHeatMapCount.HEAT_MAP_COUNT_BY_VENAD_AND_SECTOR,
+                    new Param(count.getOwnerVenadName(), count.getQuadName(),
+                            count.getX(), count.getY()));
+            if (stored == null) {
+                created.add(count);
+            } else {
+                stored.add(count.getTimes());
+            }
+        }
+        write.all(created);
+    }
 }
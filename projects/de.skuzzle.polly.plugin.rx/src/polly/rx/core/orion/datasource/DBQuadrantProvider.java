@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.List;
 
 import polly.rx.core.orion.QuadrantEvent;
+import polly.rx.core.orion.QuadrantIndex;
 import polly.rx.core.orion.QuadrantProvider;
 import polly.rx.core.orion.model.Sector;
 import polly.rx.core.orion.model.SectorType;
@@ -75,6 +76,13 @@ public class DBQuadrantProvider implements QuadrantProvider {
 
 
 
+    @Override
+    public QuadrantIndex getIndex(String quadName) {
+        return QuadrantIndex.build(this.getQuadrant(quadName));
+    }
+
+
+
     @Override
     public List<DBQuadrant> getAllQuadrants() {
         return this.persistence.atomic().findList(DBQuadrant.class,
@@ -65,14 +65,16 @@ public class MemoryFleetTracker implements FleetTracker {
     public synchronized void updateOrionFleets(String reporter,
             Collection<? extends Fleet> ownFleets) throws OrionException {
 
+        final List<Fleet> moved = new ArrayList<>(ownFleets.size());
         for (final Fleet f : ownFleets) {
             Check.number(f.getRevorixId()).isPositiveOrZero();
             final Fleet prev = this.orionFleets.put(f.getRevorixId(), f);
             if (prev == null || !prev.getSector().equals(f.getSector())) {
                 // This fleet has been moved!
-                this.heatMap.update(f);
+                moved.add(f);
             }
         }
+        this.heatMap.update(moved);
         this.events.dispatch(FleetListener.class,
                 new FleetEvent(this, reporter, new ArrayList<>(ownFleets)),
                 FleetListener::ownFleetsUpdated);
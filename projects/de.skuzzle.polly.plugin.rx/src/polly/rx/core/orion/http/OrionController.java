@@ -1,32 +1,31 @@
 package polly.rx.core.orion.http;
 
-import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.AbstractList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Random;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 
-import javax.imageio.ImageIO;
-
 import polly.rx.MSG;
 import polly.rx.core.AZEntryManager;
-import polly.rx.core.orion.FleetHeatMap;
 import polly.rx.core.orion.Orion;
 import polly.rx.core.orion.OrionException;
 import polly.rx.core.orion.PortalDecorator;
 import polly.rx.core.orion.PortalProvider;
 import polly.rx.core.orion.PortalProviderDecorator;
+import polly.rx.core.orion.QuadrantImageCache;
+import polly.rx.core.orion.QuadrantImageCache.Tile;
 import polly.rx.core.orion.QuadrantProvider;
 import polly.rx.core.orion.QuadrantProviderDecorator;
 import polly.rx.core.orion.QuadrantUtils;
@@ -63,10 +62,11 @@ import de.skuzzle.polly.http.annotations.Post;
 import de.skuzzle.polly.http.api.AlternativeAnswerException;
 import de.skuzzle.polly.http.api.Controller;
 import de.skuzzle.polly.http.api.HttpException;
+import de.skuzzle.polly.http.api.HttpServer;
 import de.skuzzle.polly.http.api.HttpSession;
 import de.skuzzle.polly.http.api.answers.HttpAnswer;
 import de.skuzzle.polly.http.api.answers.HttpAnswers;
-import de.skuzzle.polly.http.api.answers.HttpInputStreamAnswer;
+import de.skuzzle.polly.http.api.answers.HttpBinaryAnswer;
 import de.skuzzle.polly.sdk.MyPolly;
 import de.skuzzle.polly.sdk.Types;
 import de.skuzzle.polly.sdk.Types.TimespanType;
@@ -79,8 +79,6 @@ import de.skuzzle.polly.sdk.resources.Constants;
 import de.skuzzle.polly.sdk.time.Milliseconds;
 import de.skuzzle.polly.tools.collections.TemporaryValueMap;
 import de.skuzzle.polly.tools.concurrent.Parallel;
-import de.skuzzle.polly.tools.io.FastByteArrayInputStream;
-import de.skuzzle.polly.tools.io.FastByteArrayOutputStream;
 
 public class OrionController extends PollyController {
 
@@ -149,7 +147,31 @@ public class OrionController extends PollyController {
     private final static String ROUTE_OPTIONS_KEY = "routeOptions"; //$NON-NLS-1$
     private final static String ROUTE_COUNT_KEY = "routeCount"; //$NON-NLS-1$
 
-    private static final String HEAT_MAPS_KEY = "heatMaps"; //$NON-NLS-1$
+    private static final String HEAT_MAP_VENAD_KEY = "heatMapVenad"; //$NON-NLS-1$
+    private static final String HEAT_MAP_QUADS_KEY = "heatMapQuads"; //$NON-NLS-1$
+
+    /**
+     * Sends an image from the {@link QuadrantImageCache}.
+     */
+    private final static class TileAnswer extends HttpBinaryAnswer {
+
+        private final byte[] data;
+
+        private TileAnswer(int responseCode, byte[] data) {
+            super(responseCode);
+            this.data = data;
+            this.setContentLength(data == null ? -1 : data.length);
+        }
+
+
+
+        @Override
+        public void getAnswer(OutputStream out, HttpServer server) throws IOException {
+            if (this.data != null) {
+                out.write(this.data);
+            }
+        }
+    }
 
     public final static class DisplaySector extends SectorDecorator {
 
@@ -379,6 +401,7 @@ public class OrionController extends PollyController {
         private final Sector target;
         private final RouteOptions options;
         private final List<UniversePath> paths;
+        private final Map<Integer, Tile> groupImages;
 
         public RouteContext(String routeId, Sector start, Sector target, RouteOptions options,
                 List<UniversePath> paths) {
@@ -388,24 +411,24 @@ public class OrionController extends PollyController {
             this.target = target;
             this.options = options;
             this.paths = paths;
+            this.groupImages = new HashMap<>();
         }
 
 
 
-        public FastByteArrayOutputStream getQuadImage(int n, final int groupId) {
-            final UniversePath p = this.paths.get(n - 1);
-            final Group g = p.getGroups().stream()
-                    .filter(grp -> grp.getId() == groupId)
-                    .findFirst().get();
+        public synchronized Tile getQuadImage(int n, final int groupId) {
+            Tile tile = this.groupImages.get(groupId);
+            if (tile == null) {
+                final UniversePath p = this.paths.get(n - 1);
+                final Group g = p.getGroups().stream()
+                        .filter(grp -> grp.getId() == groupId)
+                        .findFirst().get();
 
-            final BufferedImage quadImg = QuadrantUtils.createQuadImage(g.getQuadrant());
-            final FastByteArrayOutputStream out = new FastByteArrayOutputStream();
-            try {
-                ImageIO.write(quadImg, "png", out); //$NON-NLS-1$
-            } catch (final IOException e) {
-                e.printStackTrace();
+                // route images are not cached by the image cache
+                tile = Orion.INSTANCE.getImageCache().getQuadrantImage(g.getQuadrant());
+                this.groupImages.put(groupId, tile);
             }
-            return out;
+            return tile;
         }
 
 
@@ -508,17 +531,8 @@ public class OrionController extends PollyController {
 
         checkLogin(user, pw);
 
-        final FleetHeatMap heatMap = Orion.INSTANCE.getHeatMap();
         final Quadrant quad = this.quadProvider.getQuadrant(quadrant);
-        final BufferedImage map = QuadrantUtils.drawHeatMap(quad, venad, heatMap);
-        final FastByteArrayOutputStream out = new FastByteArrayOutputStream();
-        try {
-            ImageIO.write(map, "png", out); //$NON-NLS-1$
-        } catch (final IOException e) {
-            e.printStackTrace();
-        }
-        final InputStream in = new FastByteArrayInputStream(out);
-        return new HttpInputStreamAnswer(200, in);
+        return this.imageAnswer(Orion.INSTANCE.getImageCache().getHeatMap(quad, venad));
     }
 
     @Get(PAGE_USER_HEATMAPS)
@@ -528,9 +542,14 @@ public class OrionController extends PollyController {
 
         // -checkLogin(user, pw);
 
-        final FleetHeatMap heatMap = Orion.INSTANCE.getHeatMap();
-        final Map<Quadrant, BufferedImage> images = QuadrantUtils.drawUserHeatMap(venad, heatMap);
-        getSession().set(HEAT_MAPS_KEY, images);
+        final Map<Quadrant, Tile> images =
+                Orion.INSTANCE.getImageCache().getUserHeatMaps(venad);
+        // images are requested by their position on the rendered page
+        final List<String> quadNames = images.keySet().stream()
+                .map(Quadrant::getName)
+                .collect(Collectors.toList());
+        getSession().set(HEAT_MAP_VENAD_KEY, venad);
+        getSession().set(HEAT_MAP_QUADS_KEY, quadNames);
 
         final Map<String, Object> context = createContext(CONTENT_USER_HEATMAPS);
         context.put("maps", images); //$NON-NLS-1$
@@ -541,28 +560,47 @@ public class OrionController extends PollyController {
 
     @Get(API_SINGLE_HEAT_MAP_IMAGE)
     public HttpAnswer getSessionHeatMap(@Param("num") int num) {
-        final Map<Quadrant, BufferedImage> images = getSession().get(HEAT_MAPS_KEY,
-                Collections.emptyMap());
-
-        if (num >= 0 && num <= images.size()) {
-            final Iterator<BufferedImage> it = images.values().iterator();
-
-            for (int i = 0; i < num - 1; ++i) {
-                it.next();
-            }
-            final BufferedImage image = it.next();
-            final FastByteArrayOutputStream out = new FastByteArrayOutputStream();
-            try {
-                ImageIO.write(image, "png", out); //$NON-NLS-1$
-            } catch (final IOException e) {
-                e.printStackTrace();
+        final String venad = getSession().get(HEAT_MAP_VENAD_KEY);
+        final List<String> quadNames = getSession().get(HEAT_MAP_QUADS_KEY,
+                Collections.<String>emptyList());
+
+        if (venad != null && num > 0 && num <= quadNames.size()) {
+            // the heat maps may have changed since the page has been rendered
+            final String quadName = quadNames.get(num - 1);
+            final Map<Quadrant, Tile> images =
+                    Orion.INSTANCE.getImageCache().getUserHeatMaps(venad);
+            for (final Entry<Quadrant, Tile> e : images.entrySet()) {
+                if (e.getKey().getName().equals(quadName)) {
+                    return this.imageAnswer(e.getValue());
+                }
             }
-            final InputStream in = new FastByteArrayInputStream(out);
-            return new HttpInputStreamAnswer(200, in);
         }
         return HttpAnswers.newStringAnswer(404, "image not found"); //$NON-NLS-1$
     }
 
+
+
+    /**
+     * Creates an answer which sends the given image. If the client's cached copy
+     * is still valid, an empty answer with status 304 is created instead.
+     *
+     * @param tile The image.
+     * @return The answer.
+     */
+    private HttpAnswer imageAnswer(Tile tile) {
+        final String ifNoneMatch = getEvent().getRequestHeader("If-None-Match"); //$NON-NLS-1$
+        final boolean notModified = ifNoneMatch != null &&
+                ifNoneMatch.contains(tile.getETag());
+        final HttpAnswer answer = new TileAnswer(notModified ? 304 : 200,
+                notModified ? null : tile.getData());
+        answer.addHeader("ETag", tile.getETag()); //$NON-NLS-1$
+        answer.addHeader("Cache-Control", "no-cache"); //$NON-NLS-1$ //$NON-NLS-2$
+        if (!notModified) {
+            answer.addHeader("Content-Type", "image/png"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        return answer;
+    }
+
     @Get(value = PAGE_ORION, name = ORION_NAME_KEY)
     @OnRegister({ WebinterfaceManager.ADD_MENU_ENTRY, MSG.FAMILY, REVORIX_CATEGORY_KEY,
             ORION_DESC_KEY, VIEW_ORION_PREMISSION })
@@ -995,9 +1033,7 @@ public class OrionController extends PollyController {
             return HttpAnswers.newStringAnswer(404, ""); //$NON-NLS-1$
         }
 
-        final FastByteArrayOutputStream out = rc.getQuadImage(n, id);
-        final InputStream in = new FastByteArrayInputStream(out);
-        return new HttpInputStreamAnswer(200, in);
+        return this.imageAnswer(rc.getQuadImage(n, id));
     }
 
 
@@ -7,10 +7,13 @@ import polly.rx.core.orion.pathplanning.Graph.EdgeCosts;
 class PathCostCalculator implements EdgeCosts<EdgeData> {
     
     
-    private final static double COST_DIAGONAL = 1.5 / 60;
-    private final static double COST_NORMAL = 1.0 / 60;
-    private final static double COST_ENTRYPORTAL = COST_DIAGONAL * 3.0;
-    private final static double WORMHOLE_OFFSET = 100000.0;
+    final static double COST_DIAGONAL = 1.5 / 60;
+    final static double COST_NORMAL = 1.0 / 60;
+    final static double COST_ENTRYPORTAL = COST_DIAGONAL * 3.0;
+    final static double WORMHOLE_OFFSET = 100000.0;
+    
+    /** Lower bound for the costs of any wormhole edge */
+    final static double MIN_WORMHOLE_COSTS = WORMHOLE_OFFSET + 1.0;
     
     
     @Override
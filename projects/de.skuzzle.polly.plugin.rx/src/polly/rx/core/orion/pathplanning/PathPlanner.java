@@ -10,6 +10,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import polly.rx.core.orion.QuadrantEvent;
+import polly.rx.core.orion.QuadrantIndex;
+import polly.rx.core.orion.QuadrantListener;
 import polly.rx.core.orion.QuadrantProvider;
 import polly.rx.core.orion.QuadrantUtils;
 import polly.rx.core.orion.WormholeProvider;
@@ -20,11 +23,20 @@ import polly.rx.core.orion.model.Sector;
 import polly.rx.core.orion.model.SectorDecorator;
 import polly.rx.core.orion.model.SectorType;
 import polly.rx.core.orion.model.Wormhole;
-import polly.rx.core.orion.pathplanning.Graph.EdgeCosts;
-import polly.rx.core.orion.pathplanning.Graph.LazyBuilder;
+import polly.rx.core.orion.pathplanning.EdgeData.EdgeType;
+import polly.rx.core.orion.pathplanning.UniverseSearch.Route;
+import de.skuzzle.polly.sdk.time.Milliseconds;
+import de.skuzzle.polly.sdk.time.Time;
 
 
-public class PathPlanner {
+/**
+ * Plans routes through the universe. Routes are searched on a {@link UniverseGraph}
+ * which is built when the first route is requested. The planner must be registered as
+ * {@link QuadrantListener} to keep the graph up to date. As wormholes are not
+ * announced by events, the graph is rebuilt after {@link #UNIVERSE_CACHE_TIME} and
+ * whenever the last build did not get any wormholes.
+ */
+public class PathPlanner implements QuadrantListener {
     
     
     private final static Comparator<Sector> SAFE_SPOT_COMP = new Comparator<Sector>() {
@@ -42,16 +54,77 @@ public class PathPlanner {
     
     
     
-    private final static EdgeCosts<EdgeData> EDGE_COSTS = new PathCostCalculator();
+    public static final int MAX_SAFE_SPOT_OUTPUT = 2;
     
+    /** Maximum number of routes returned by {@link #findShortestPaths} */
+    private final static int MAX_ALTERNATIVES = 10;
     
-    public static final int MAX_SAFE_SPOT_OUTPUT = 2;
+    /** Time after which the graph is rebuilt to pick up changed wormholes */
+    private final static long UNIVERSE_CACHE_TIME = Milliseconds.fromMinutes(10);
     
     private final QuadrantProvider quadProvider;
+    private final WormholeProvider holeProvider;
+    
+    /** Current graph, <code>null</code> if it has to be built from the providers */
+    private UniverseGraph universe;
+    
+    /** Time at which the current graph has been built */
+    private long universeBuilt;
+    
+    /** Sectors which changed since the graph has been built */
+    private final List<Sector> modified;
     
     
     public PathPlanner(QuadrantProvider quadProvider, WormholeProvider holeProvider) {
         this.quadProvider = quadProvider;
+        this.holeProvider = holeProvider;
+        this.modified = new ArrayList<>();
+    }
+    
+    
+    
+    private synchronized UniverseGraph getUniverse() {
+        if (this.universe != null && !this.modified.isEmpty()) {
+            // null if a sector belongs to an unknown quadrant
+            this.universe = this.universe.update(this.modified);
+        }
+        this.modified.clear();
+        final long now = Time.currentTimeMillis();
+        if (this.universe == null || this.universe.getWormholeCount() == 0 ||
+                now - this.universeBuilt > UNIVERSE_CACHE_TIME) {
+            // no wormholes means that they could not be fetched, so try again
+            this.universe = UniverseGraph.build(this.quadProvider, this.holeProvider);
+            this.universeBuilt = now;
+        }
+        return this.universe;
+    }
+    
+    
+    
+    @Override
+    public synchronized void quadrantDeleted(QuadrantEvent e) {
+        this.universe = null;
+    }
+    
+    
+    
+    @Override
+    public synchronized void quadrantAdded(QuadrantEvent e) {
+        this.universe = null;
+    }
+    
+    
+    
+    @Override
+    public synchronized void sectorsAdded(QuadrantEvent e) {
+        this.modified.addAll(e.getModified());
+    }
+    
+    
+    
+    @Override
+    public synchronized void sectorsUpdated(QuadrantEvent e) {
+        this.modified.addAll(e.getModified());
     }
     
     
@@ -75,7 +148,7 @@ public class PathPlanner {
     
     public final static class HighlightedQuadrant extends QuadrantDecorator {
         
-        private static int IDS = 0;
+        private final static AtomicInteger IDS = new AtomicInteger();
         
         private final Map<String, SectorType> highlights;
         private final int id;
@@ -84,7 +157,7 @@ public class PathPlanner {
         public HighlightedQuadrant(Quadrant wrapped, boolean renderDark) {
             super(wrapped);
             this.highlights = new HashMap<>();
-            this.id = IDS++;
+            this.id = IDS.incrementAndGet();
             this.renderDark = renderDark;
         }
         
@@ -173,11 +246,6 @@ public class PathPlanner {
         private final int sumMaxWaitingTime;
         private final RouteOptions options;
         
-        /** Number used during path planning to block wormholes */
-        private int blockNr; 
-        /** States used during path planning to block wormholes */
-        private boolean done;
-        
         
         
         private UniversePath(Graph<Sector, EdgeData>.Path path, RouteOptions options) {
@@ -269,14 +337,12 @@ public class PathPlanner {
                         sumMaxWaitingTime += e.getData().wait.getMax();
                         
                         // find good spots
-                        final Quadrant quad = quadProvider.getQuadrant(source.getQuadName());
-                        final List<Sector> spots = QuadrantUtils.getNearSectors(source, 
-                                quad, options.maxWaitSpotDistance, QuadrantUtils.ACCEPT_ALL);
-                        Collections.sort(spots, SAFE_SPOT_COMP);
-                        final int bound = Math.min(spots.size(), MAX_SAFE_SPOT_OUTPUT);
-                        for (int i = 0; i < bound; ++i) {
-                            
-                            final Sector safeSpot = spots.get(i);
+                        final QuadrantIndex index = quadProvider.getIndex(
+                                source.getQuadName());
+                        final List<Sector> spots = index.getNearSectors(source, 
+                                options.maxWaitSpotDistance, QuadrantUtils.ACCEPT_ALL, 
+                                SAFE_SPOT_COMP, MAX_SAFE_SPOT_OUTPUT);
+                        for (final Sector safeSpot : spots) {
                             e.getData().waitSpots.add(safeSpot);
                             
                             if (safeSpot.equals(e.getSource().getData())) {
@@ -318,28 +384,6 @@ public class PathPlanner {
             this.sumMaxWaitingTime = sumMaxWaitingTime;
         }
         
-        public Wormhole getWormholeToBlock(RouteOptions options) {
-            if (this.wormholes.isEmpty()) {
-                return null;
-            }
-            final Iterator<Wormhole> it = options.doBlockTail()
-                    ? this.wormholes.descendingIterator() 
-                    : this.wormholes.iterator();
-            
-            int i = 0;
-            while (it.hasNext()) {
-                final Wormhole hole = it.next();
-                if (!hole.getName().equals(SectorType.EINTRITTS_PORTAL.toString()) 
-                        || options.doBlockEntryPortal()) {
-                    if (i++ == this.blockNr) {
-                        ++this.blockNr;
-                        return hole;
-                    }
-                }
-            }
-            return null;
-        }
-        
         public int getMaxSafeSpotDistance() {
             return options.maxWaitSpotDistance;
         }
@@ -388,65 +432,70 @@ public class PathPlanner {
     
     
     
-    private UniversePath findShortestPath(Sector start, Sector target, 
-            LazyBuilder<Sector, EdgeData> builder, RouteOptions options) {
+    private Graph<Sector, EdgeData>.Path createPath(UniverseGraph universe, 
+            Route route) {
         final Graph<Sector, EdgeData> graph = new Graph<>();
-        final Graph<Sector, EdgeData>.Path path = graph.findShortestPath(
-                start, target, builder, Graph.<Sector>noHeuristic(), EDGE_COSTS);
-        final UniversePath result = new UniversePath(path, options);
-        return result;
+        if (route == null) {
+            return graph.new Path(
+                    Collections.<Graph<Sector, EdgeData>.Edge>emptyList(), 0.0);
+        }
+        final List<Graph<Sector, EdgeData>.Edge> edges = 
+                new ArrayList<>(route.edges.length);
+        Sector source = universe.getSector(route.nodes[0], this.quadProvider);
+        for (int i = 0; i < route.edges.length; ++i) {
+            final Sector target = universe.getSector(route.nodes[i + 1], 
+                    this.quadProvider);
+            final int code = route.edges[i];
+            final EdgeData d;
+            if (UniverseSearch.isPortalEdge(code)) {
+                d = EdgeData.entryPortal(source, target);
+            } else if (universe.isWormhole(code)) {
+                d = EdgeData.wormhole(universe.getWormhole(code));
+            } else {
+                d = EdgeData.sector(universe.getType(code) == EdgeType.DIAGONAL);
+            }
+            final Graph<Sector, EdgeData>.Node vSource = graph.getNode(source, source);
+            final Graph<Sector, EdgeData>.Node vTarget = graph.getNode(target, target);
+            edges.add(vSource.edgeTo(vTarget, d));
+            source = target;
+        }
+        return graph.new Path(edges, route.getCosts());
     }
     
     
     
     public UniversePath findShortestPath(Sector start, Sector target, 
             RouteOptions options) {
-        return this.findShortestPath(start, target, new UniverseBuilder(options), options);
+        final UniverseGraph universe = this.getUniverse();
+        final int s = universe.getId(start);
+        final int t = universe.getId(target);
+        Route route = null;
+        if (s != -1 && t != -1) {
+            route = new UniverseSearch(universe, options).findRoute(s, t);
+        }
+        return new UniversePath(this.createPath(universe, route), options);
     }
     
     
     
     public List<UniversePath> findShortestPaths(Sector start, Sector target, 
             RouteOptions options) {
-        final int K = 10;
-        final UniverseBuilder builder = new UniverseBuilder(options);
-        final List<UniversePath> result = new ArrayList<>(K);
-        
-        
-        final UniversePath shortest = this.findShortestPath(start, target, 
-                builder, options);
-        result.add(shortest);
-        
-        if (shortest.pathFound()) {
-            int pathsDone = 0;
-            int nextPathIdx = -1;
-            while (result.size() < K && pathsDone != result.size()) {
-                nextPathIdx = (nextPathIdx + 1) % result.size();
-                final UniversePath nextPath = result.get(nextPathIdx);
-                if (nextPath.done) continue;
-                
-                final Wormhole block = nextPath.getWormholeToBlock(options);
-                
-                if (block != null) {
-                    builder.startOverAndBlock(block);
-                    
-                    final UniversePath path = this.findShortestPath(start, target, 
-                            builder, options);
-                    if (path.pathFound()) {
-                        result.add(path);
-                    } else {
-                        // if no path found yet, there will be no path when blocking 
-                        // further holes, so this one's done
-                        nextPath.done = true;
-                        pathsDone++;
-                    }
-                } else {
-                    nextPath.done = true;
-                    pathsDone++;
-                }
-            }
+        final UniverseGraph universe = this.getUniverse();
+        final int s = universe.getId(start);
+        final int t = universe.getId(target);
+        final List<Route> routes = s == -1 || t == -1 
+                ? Collections.<Route>emptyList()
+                : new UniverseSearch(universe, options).findRoutes(s, t, 
+                        MAX_ALTERNATIVES);
+        
+        final List<UniversePath> result = new ArrayList<>(routes.size());
+        for (final Route route : routes) {
+            result.add(new UniversePath(this.createPath(universe, route), options));
+        }
+        if (result.isEmpty()) {
+            // always contains the shortest path, even if none was found
+            result.add(new UniversePath(this.createPath(universe, null), options));
         }
-        
         return result;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,406 @@
+package polly.rx.core.orion.pathplanning;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import polly.rx.core.orion.QuadrantProvider;
+import polly.rx.core.orion.WormholeProvider;
+import polly.rx.core.orion.model.Quadrant;
+import polly.rx.core.orion.model.Sector;
+import polly.rx.core.orion.model.SectorType;
+import polly.rx.core.orion.model.Wormhole;
+import polly.rx.core.orion.pathplanning.EdgeData.EdgeType;
+
+
+/**
+ * Immutable, compact representation of the whole universe which is used for path
+ * planning. Each sector is identified by an int. The sectors of a quadrant occupy a
+ * contiguous block of ids, so the id of a sector is computed from its coordinates.
+ *
+ * <p>Edges are stored in compressed sparse row arrays: the edges which leave the
+ * sector <code>v</code> have the indices <code>getFirstEdge(v)</code> (inclusive) to
+ * <code>getFirstEdge(v + 1)</code> (exclusive). Entry portals are not stored as
+ * edges, because every sector has an edge to each of them. The search handles them
+ * separately.</p>
+ *
+ * <p>Sector updates create a new instance from the known layout and wormholes
+ * without querying the providers again, see {@link #update(Collection)}.</p>
+ */
+class UniverseGraph {
+
+    private final static byte NORMAL = (byte) EdgeType.NORMAL.ordinal();
+    private final static byte DIAGONAL = (byte) EdgeType.DIAGONAL.ordinal();
+    private final static byte WORMHOLE = (byte) EdgeType.WORMHOLE.ordinal();
+
+    private final static EdgeType[] EDGE_TYPES = EdgeType.values();
+
+    private final static PathCostCalculator COSTS = new PathCostCalculator();
+
+
+
+    /**
+     * Creates the graph for all quadrants and wormholes which are known to the given
+     * providers.
+     *
+     * @param quadProvider Provides the quadrants.
+     * @param holeProvider Provides the wormholes.
+     * @return The graph.
+     */
+    public static UniverseGraph build(QuadrantProvider quadProvider,
+            WormholeProvider holeProvider) {
+        final List<? extends Quadrant> quads = quadProvider.getAllQuadrants();
+        final Layout layout = new Layout(quads);
+        final boolean[] passable = new boolean[layout.size];
+        final boolean[] entryPortal = new boolean[layout.size];
+
+        for (final Quadrant quad : quads) {
+            for (final Sector sector : quad.getSectors()) {
+                final int id = layout.getId(sector);
+                if (id != -1) {
+                    passable[id] = sector.getType() != SectorType.NONE;
+                    entryPortal[id] = sector.getType() == SectorType.EINTRITTS_PORTAL;
+                }
+            }
+        }
+
+        final List<Wormhole> holes = new ArrayList<>();
+        for (final Quadrant quad : quads) {
+            for (final Wormhole hole : holeProvider.getWormholes(quad, quadProvider)) {
+                if (layout.getId(hole.getSource()) != -1 &&
+                        layout.getId(hole.getTarget()) != -1) {
+                    holes.add(hole);
+                }
+            }
+        }
+        return new UniverseGraph(layout, passable, entryPortal,
+                holes.toArray(new Wormhole[holes.size()]));
+    }
+
+
+
+    /**
+     * Position of the quadrants within the id space.
+     */
+    private final static class Layout {
+        private final String[] names;
+        private final Map<String, Integer> index;
+        private final int[] base;
+        private final int[] width;
+        private final int[] height;
+        private final int size;
+
+        /** Quadrant index and coordinates of each sector */
+        private final int[] nodeQuad;
+        private final int[] nodeX;
+        private final int[] nodeY;
+
+
+
+        private Layout(List<? extends Quadrant> quads) {
+            final int n = quads.size();
+            this.names = new String[n];
+            this.index = new HashMap<>(n * 2);
+            this.base = new int[n];
+            this.width = new int[n];
+            this.height = new int[n];
+
+            int size = 0;
+            for (int q = 0; q < n; ++q) {
+                final Quadrant quad = quads.get(q);
+                this.names[q] = quad.getName();
+                this.index.put(quad.getName(), q);
+                this.base[q] = size;
+                this.width[q] = quad.getMaxX() + 1;
+                this.height[q] = quad.getMaxY() + 1;
+                size += this.width[q] * this.height[q];
+            }
+            this.size = size;
+
+            this.nodeQuad = new int[size];
+            this.nodeX = new int[size];
+            this.nodeY = new int[size];
+            for (int q = 0; q < n; ++q) {
+                for (int y = 0; y < this.height[q]; ++y) {
+                    for (int x = 0; x < this.width[q]; ++x) {
+                        final int id = this.base[q] + y * this.width[q] + x;
+                        this.nodeQuad[id] = q;
+                        this.nodeX[id] = x;
+                        this.nodeY[id] = y;
+                    }
+                }
+            }
+        }
+
+
+
+        private int getId(Sector sector) {
+            final Integer q = this.index.get(sector.getQuadName());
+            if (q == null) {
+                return -1;
+            }
+            return this.getId(q, sector.getX(), sector.getY());
+        }
+
+
+
+        private int getId(int q, int x, int y) {
+            if (x < 0 || x >= this.width[q] || y < 0 || y >= this.height[q]) {
+                return -1;
+            }
+            return this.base[q] + y * this.width[q] + x;
+        }
+    }
+
+
+
+    private final Layout layout;
+    private final boolean[] passable;
+    private final boolean[] entryPortal;
+    private final Wormhole[] holes;
+    private final int[] entryPortals;
+
+    private final int[] offsets;
+    private final int[] targets;
+    private final byte[] types;
+    private final double[] costs;
+    private final Wormhole[] edgeHoles;
+
+
+
+    private UniverseGraph(Layout layout, boolean[] passable, boolean[] entryPortal,
+            Wormhole[] holes) {
+        this.layout = layout;
+        this.passable = passable;
+        this.entryPortal = entryPortal;
+        this.holes = holes;
+
+        int portals = 0;
+        for (final boolean b : entryPortal) {
+            if (b) {
+                ++portals;
+            }
+        }
+        this.entryPortals = new int[portals];
+        for (int v = 0, i = 0; v < layout.size; ++v) {
+            if (entryPortal[v]) {
+                this.entryPortals[i++] = v;
+            }
+        }
+
+        // count the edges of each sector, then fill them in
+        final int n = layout.size;
+        final int[] holeSources = new int[holes.length];
+        final int[] holeTargets = new int[holes.length];
+        this.offsets = new int[n + 1];
+        for (int i = 0; i < holes.length; ++i) {
+            holeSources[i] = layout.getId(holes[i].getSource());
+            holeTargets[i] = layout.getId(holes[i].getTarget());
+            if (passable[holeTargets[i]]) {
+                ++this.offsets[holeSources[i] + 1];
+            }
+        }
+        for (int v = 0; v < n; ++v) {
+            this.offsets[v + 1] += this.countNeighbours(v);
+        }
+        for (int v = 0; v < n; ++v) {
+            this.offsets[v + 1] += this.offsets[v];
+        }
+
+        final int m = this.offsets[n];
+        this.targets = new int[m];
+        this.types = new byte[m];
+        this.costs = new double[m];
+        this.edgeHoles = new Wormhole[m];
+        final int[] next = new int[n];
+        System.arraycopy(this.offsets, 0, next, 0, n);
+
+        for (int i = 0; i < holes.length; ++i) {
+            if (passable[holeTargets[i]]) {
+                final int e = next[holeSources[i]]++;
+                this.targets[e] = holeTargets[i];
+                this.types[e] = WORMHOLE;
+                this.costs[e] = COSTS.calculate(EdgeData.wormhole(holes[i]));
+                this.edgeHoles[e] = holes[i];
+            }
+        }
+        for (int v = 0; v < n; ++v) {
+            final int q = layout.nodeQuad[v];
+            final int x = layout.nodeX[v];
+            final int y = layout.nodeY[v];
+            for (int i = -1; i < 2; ++i) {
+                for (int j = -1; j < 2; ++j) {
+                    final int w = layout.getId(q, x + i, y + j);
+                    if (w != -1 && w != v && passable[w]) {
+                        final boolean diagonal = i != 0 && j != 0;
+                        final int e = next[v]++;
+                        this.targets[e] = w;
+                        this.types[e] = diagonal ? DIAGONAL : NORMAL;
+                        this.costs[e] = diagonal
+                            ? PathCostCalculator.COST_DIAGONAL
+                            : PathCostCalculator.COST_NORMAL;
+                    }
+                }
+            }
+        }
+    }
+
+
+
+    private int countNeighbours(int v) {
+        final int q = this.layout.nodeQuad[v];
+        final int x = this.layout.nodeX[v];
+        final int y = this.layout.nodeY[v];
+        int count = 0;
+        for (int i = -1; i < 2; ++i) {
+            for (int j = -1; j < 2; ++j) {
+                final int w = this.layout.getId(q, x + i, y + j);
+                if (w != -1 && w != v && this.passable[w]) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+
+
+    /**
+     * Creates a graph which reflects the given new or updated sectors. The layout and
+     * the wormholes of this graph are reused.
+     *
+     * @param sectors The modified sectors.
+     * @return The new graph or <code>null</code> if a sector belongs to a quadrant
+     *          which is not part of this graph.
+     */
+    public UniverseGraph update(Collection<? extends Sector> sectors) {
+        final boolean[] passable = this.passable.clone();
+        final boolean[] entryPortal = this.entryPortal.clone();
+        for (final Sector sector : sectors) {
+            final int id = this.layout.getId(sector);
+            if (id == -1) {
+                return null;
+            }
+            passable[id] = sector.getType() != SectorType.NONE;
+            entryPortal[id] = sector.getType() == SectorType.EINTRITTS_PORTAL;
+        }
+        return new UniverseGraph(this.layout, passable, entryPortal, this.holes);
+    }
+
+
+
+    /**
+     * Gets the number of sectors. Valid ids range from 0 to this value (exclusive).
+     *
+     * @return The number of sectors.
+     */
+    public int size() {
+        return this.layout.size;
+    }
+
+
+
+    /**
+     * Gets the id of the given sector.
+     *
+     * @param sector The sector.
+     * @return The id or -1 if the sector does not exist in this graph.
+     */
+    public int getId(Sector sector) {
+        return this.layout.getId(sector);
+    }
+
+
+
+    /**
+     * Gets the sector with the given id from the given provider.
+     *
+     * @param id The id.
+     * @param quadProvider Provides the quadrants.
+     * @return The sector.
+     */
+    public Sector getSector(int id, QuadrantProvider quadProvider) {
+        final Quadrant quad = quadProvider.getQuadrant(
+            this.layout.names[this.layout.nodeQuad[id]]);
+        return quad.getSector(this.layout.nodeX[id], this.layout.nodeY[id]);
+    }
+
+
+
+    public boolean isPassable(int v) {
+        return this.passable[v];
+    }
+
+
+
+    public int getQuadrant(int v) {
+        return this.layout.nodeQuad[v];
+    }
+
+
+
+    public int getX(int v) {
+        return this.layout.nodeX[v];
+    }
+
+
+
+    public int getY(int v) {
+        return this.layout.nodeY[v];
+    }
+
+
+
+    public int[] getEntryPortals() {
+        return this.entryPortals;
+    }
+
+
+
+    public int getFirstEdge(int v) {
+        return this.offsets[v];
+    }
+
+
+
+    public int getTarget(int e) {
+        return this.targets[e];
+    }
+
+
+
+    public double getCosts(int e) {
+        return this.costs[e];
+    }
+
+
+
+    public EdgeType getType(int e) {
+        return EDGE_TYPES[this.types[e]];
+    }
+
+
+
+    public boolean isWormhole(int e) {
+        return this.types[e] == WORMHOLE;
+    }
+
+
+
+    public Wormhole getWormhole(int e) {
+        return this.edgeHoles[e];
+    }
+
+
+
+    /**
+     * Gets the number of wormholes which have been connected by this graph.
+     *
+     * @return The number of wormholes.
+     */
+    public int getWormholeCount() {
+        return this.holes.length;
+    }
+}
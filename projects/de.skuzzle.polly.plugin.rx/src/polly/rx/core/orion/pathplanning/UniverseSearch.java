@@ -0,0 +1,552 @@
+package polly.rx.core.orion.pathplanning;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import polly.rx.core.orion.model.Sector;
+
+
+/**
+ * A* search on a {@link UniverseGraph} and Yen's algorithm to find alternative
+ * routes. An instance holds the state for a single request and is not thread safe.
+ * It can run several searches though, so that the per sector arrays are only
+ * allocated once.
+ *
+ * <p>The heuristic is based on the number of sector jumps: within the target's
+ * quadrant, a route needs at least as many jumps as the larger coordinate difference,
+ * of which at most the smaller difference can be diagonal. Any other route needs to
+ * pass a wormhole or an entry portal. As the costs of each edge are at least the
+ * difference of the estimates of its source and target, sectors never need to be
+ * expanded twice.</p>
+ */
+class UniverseSearch {
+
+    /** Edge code of the first sector of a route */
+    private final static int NO_EDGE = -1;
+
+
+
+    /**
+     * Encodes a jump to the given entry portal as edge code. Codes of other edges are
+     * their index in the graph.
+     *
+     * @param portal Id of the portal sector.
+     * @return The edge code.
+     */
+    static int portalEdge(int portal) {
+        return -2 - portal;
+    }
+
+
+
+    static boolean isPortalEdge(int code) {
+        return code < NO_EDGE;
+    }
+
+
+
+    /**
+     * A route found by the search. Sector <code>nodes[i + 1]</code> is reached from
+     * <code>nodes[i]</code> using the edge with code <code>edges[i]</code>.
+     */
+    final static class Route {
+        final int[] nodes;
+        final int[] edges;
+
+        /** Costs to reach each sector of this route */
+        final double[] dist;
+
+        /** Index of the edge at which this route deviates from its predecessor */
+        final int deviation;
+
+
+
+        private Route(int[] nodes, int[] edges, double[] dist, int deviation) {
+            this.nodes = nodes;
+            this.edges = edges;
+            this.dist = dist;
+            this.deviation = deviation;
+        }
+
+
+
+        public double getCosts() {
+            return this.dist[this.dist.length - 1];
+        }
+
+
+
+        private boolean sameRoot(Route other, int length) {
+            if (this.edges.length <= length || this.nodes[0] != other.nodes[0]) {
+                return false;
+            }
+            for (int i = 0; i < length; ++i) {
+                if (this.edges[i] != other.edges[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+
+
+        /**
+         * Creates a route which consists of the first <code>length</code> edges of
+         * this route, followed by the given spur route.
+         */
+        private Route join(int length, Route spur) {
+            final int n = length + spur.nodes.length;
+            final int[] nodes = Arrays.copyOf(this.nodes, n);
+            final int[] edges = Arrays.copyOf(this.edges, n - 1);
+            final double[] dist = Arrays.copyOf(this.dist, n);
+            final double offset = this.dist[length];
+            System.arraycopy(spur.nodes, 0, nodes, length, spur.nodes.length);
+            System.arraycopy(spur.edges, 0, edges, length, spur.edges.length);
+            for (int i = 0; i < spur.dist.length; ++i) {
+                dist[length + i] = offset + spur.dist[i];
+            }
+            return new Route(nodes, edges, dist, length);
+        }
+    }
+
+
+
+    /**
+     * Binary min heap of sector ids. Sectors may be contained several times, outdated
+     * entries are skipped by the search.
+     */
+    private final static class NodeHeap {
+        private double[] keys;
+        private int[] nodes;
+        private int size;
+
+
+
+        private NodeHeap(int capacity) {
+            this.keys = new double[capacity];
+            this.nodes = new int[capacity];
+        }
+
+
+
+        private void clear() {
+            this.size = 0;
+        }
+
+
+
+        private boolean isEmpty() {
+            return this.size == 0;
+        }
+
+
+
+        private void add(int node, double key) {
+            if (this.size == this.nodes.length) {
+                this.keys = Arrays.copyOf(this.keys, this.size * 2);
+                this.nodes = Arrays.copyOf(this.nodes, this.size * 2);
+            }
+            int i = this.size++;
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (this.keys[parent] <= key) {
+                    break;
+                }
+                this.keys[i] = this.keys[parent];
+                this.nodes[i] = this.nodes[parent];
+                i = parent;
+            }
+            this.keys[i] = key;
+            this.nodes[i] = node;
+        }
+
+
+
+        private int poll() {
+            final int result = this.nodes[0];
+            final int last = --this.size;
+            final double key = this.keys[last];
+            final int node = this.nodes[last];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= last) {
+                    break;
+                }
+                if (child + 1 < last && this.keys[child + 1] < this.keys[child]) {
+                    ++child;
+                }
+                if (key <= this.keys[child]) {
+                    break;
+                }
+                this.keys[i] = this.keys[child];
+                this.nodes[i] = this.nodes[child];
+                i = child;
+            }
+            this.keys[i] = key;
+            this.nodes[i] = node;
+            return result;
+        }
+    }
+
+
+
+    private final UniverseGraph graph;
+    private final RouteOptions options;
+
+    /** Entry portals and personal portals which are available for this request */
+    private final int[] portals;
+
+    private final double[] g;
+    private final int[] pred;
+    private final int[] predEdge;
+    private final int[] reached;
+    private final int[] closed;
+    private final int[] blocked;
+    private final NodeHeap heap;
+
+    /** Identifies the current search within the reached, closed and blocked arrays */
+    private int generation;
+
+    /** Target of the current search and quadrant of the target */
+    private int target;
+    private int targetQuad;
+
+    /** Lower bound for the costs of routes which leave the target's quadrant */
+    private double detour;
+
+
+
+    public UniverseSearch(UniverseGraph graph, RouteOptions options) {
+        this.graph = graph;
+        this.options = options;
+
+        final Set<Integer> portals = new LinkedHashSet<>();
+        for (final int portal : graph.getEntryPortals()) {
+            portals.add(portal);
+        }
+        for (final Sector personal : options.personalPortals) {
+            final int id = graph.getId(personal);
+            if (id != -1 && graph.isPassable(id)) {
+                portals.add(id);
+            }
+        }
+        this.portals = new int[portals.size()];
+        int i = 0;
+        for (final int portal : portals) {
+            this.portals[i++] = portal;
+        }
+
+        final int n = graph.size();
+        this.g = new double[n];
+        this.pred = new int[n];
+        this.predEdge = new int[n];
+        this.reached = new int[n];
+        this.closed = new int[n];
+        this.blocked = new int[n];
+        this.heap = new NodeHeap(64);
+    }
+
+
+
+    /**
+     * Finds the shortest route between two sectors.
+     *
+     * @param start Id of the start sector.
+     * @param target Id of the target sector.
+     * @return The route or <code>null</code> if there is none.
+     */
+    public Route findRoute(int start, int target) {
+        return this.search(start, target, null, 0, new int[0]);
+    }
+
+
+
+    /**
+     * Finds up to <code>k</code> routes between two sectors using Yen's algorithm.
+     * Routes only deviate from each other at wormholes, and at entry portals if the
+     * options say so, because routes which merely take a different way through a
+     * quadrant are no useful alternatives. Of all routes with the same sequence of
+     * wormholes, only the cheapest is returned.
+     *
+     * @param start Id of the start sector.
+     * @param target Id of the target sector.
+     * @param k Maximum number of routes.
+     * @return The routes, cheapest first. Empty if there is no route.
+     */
+    public List<Route> findRoutes(int start, int target, int k) {
+        final List<Route> result = new ArrayList<>(k);
+        final Route first = this.findRoute(start, target);
+        if (first == null) {
+            return result;
+        }
+        result.add(first);
+
+        final Map<List<Integer>, Route> candidates = new HashMap<>();
+        final PriorityQueue<Route> queue = new PriorityQueue<>(11, this.routeOrder());
+        final Set<List<Integer>> found = new HashSet<>();
+        found.add(this.signature(first));
+
+        while (result.size() < k) {
+            final Route last = result.get(result.size() - 1);
+            for (int i = 0; i < last.edges.length; ++i) {
+                if (!this.isDeviation(last.edges[i])) {
+                    continue;
+                }
+                // remove the edges which leave the spur sector in all routes with
+                // the same root, so that the spur route takes another way
+                final List<Integer> removed = new ArrayList<>();
+                for (final Route route : result) {
+                    if (route.sameRoot(last, i)) {
+                        removed.add(route.edges[i]);
+                    }
+                }
+                final int[] removedEdges = new int[removed.size()];
+                for (int j = 0; j < removedEdges.length; ++j) {
+                    removedEdges[j] = removed.get(j);
+                }
+
+                final Route spur = this.search(last.nodes[i], target, last, i,
+                    removedEdges);
+                if (spur == null) {
+                    continue;
+                }
+                final Route candidate = last.join(i, spur);
+                final List<Integer> signature = this.signature(candidate);
+                if (found.contains(signature)) {
+                    continue;
+                }
+                final Route known = candidates.get(signature);
+                if (known == null || candidate.getCosts() < known.getCosts()) {
+                    if (known != null) {
+                        queue.remove(known);
+                    }
+                    candidates.put(signature, candidate);
+                    queue.add(candidate);
+                }
+            }
+            if (queue.isEmpty()) {
+                break;
+            }
+            final Route next = queue.poll();
+            final List<Integer> signature = this.signature(next);
+            candidates.remove(signature);
+            found.add(signature);
+            result.add(next);
+        }
+        // as routes only deviate at wormholes, later candidates might be cheaper
+        Collections.sort(result, this.routeOrder());
+        return result;
+    }
+
+
+
+    private Comparator<Route> routeOrder() {
+        // on equal costs, prefer to deviate at the end if the tail is to be blocked
+        final int direction = this.options.doBlockTail() ? -1 : 1;
+        return new Comparator<Route>() {
+            @Override
+            public int compare(Route o1, Route o2) {
+                final int c = Double.compare(o1.getCosts(), o2.getCosts());
+                if (c == 0) {
+                    return direction * Integer.compare(o1.deviation, o2.deviation);
+                }
+                return c;
+            }
+        };
+    }
+
+
+
+    private boolean isDeviation(int code) {
+        if (isPortalEdge(code)) {
+            return this.options.doBlockEntryPortal();
+        }
+        return this.graph.isWormhole(code);
+    }
+
+
+
+    /**
+     * The wormholes and portals which are used by the given route.
+     */
+    private List<Integer> signature(Route route) {
+        final List<Integer> result = new ArrayList<>();
+        for (final int code : route.edges) {
+            if (isPortalEdge(code) || this.graph.isWormhole(code)) {
+                result.add(code);
+            }
+        }
+        return result;
+    }
+
+
+
+    private void prepareEstimate(int target) {
+        this.target = target;
+        this.targetQuad = this.graph.getQuadrant(target);
+
+        double viaPortal = Double.POSITIVE_INFINITY;
+        for (final int portal : this.portals) {
+            if (this.graph.getQuadrant(portal) == this.targetQuad) {
+                viaPortal = Math.min(viaPortal, this.jumpCosts(portal, target));
+            }
+        }
+        this.detour = Math.min(PathCostCalculator.MIN_WORMHOLE_COSTS,
+            PathCostCalculator.COST_ENTRYPORTAL + viaPortal);
+    }
+
+
+
+    /**
+     * Lower bound for the costs of sector jumps between two sectors of the same
+     * quadrant.
+     */
+    private double jumpCosts(int v, int w) {
+        final int dx = Math.abs(this.graph.getX(v) - this.graph.getX(w));
+        final int dy = Math.abs(this.graph.getY(v) - this.graph.getY(w));
+        final int diagonal = Math.min(dx, dy);
+        return diagonal * PathCostCalculator.COST_DIAGONAL +
+            (Math.max(dx, dy) - diagonal) * PathCostCalculator.COST_NORMAL;
+    }
+
+
+
+    private double estimate(int v) {
+        if (this.graph.getQuadrant(v) == this.targetQuad) {
+            return Math.min(this.detour, this.jumpCosts(v, this.target));
+        }
+        return this.detour;
+    }
+
+
+
+    /**
+     * Searches a route from the start sector to the target. If a root route is given,
+     * its first <code>length</code> sectors may not be visited.
+     *
+     * @param start Id of the start sector.
+     * @param target Id of the target sector.
+     * @param root Route whose first sectors are blocked or <code>null</code>.
+     * @param length Number of blocked sectors of the root route.
+     * @param removed Codes of edges which may not be taken from the start sector.
+     * @return The route or <code>null</code> if there is none.
+     */
+    private Route search(int start, int target, Route root, int length, int[] removed) {
+        final int gen = ++this.generation;
+        for (int i = 0; i < length; ++i) {
+            this.blocked[root.nodes[i]] = gen;
+        }
+        this.prepareEstimate(target);
+
+        // portals which have been removed at the start sector. They might still be
+        // reached from other sectors, all other portals are reached from the start
+        int[] pendingPortals = null;
+
+        this.heap.clear();
+        this.g[start] = 0.0;
+        this.pred[start] = -1;
+        this.predEdge[start] = NO_EDGE;
+        this.reached[start] = gen;
+        this.heap.add(start, this.estimate(start));
+
+        while (!this.heap.isEmpty()) {
+            final int v = this.heap.poll();
+            if (this.closed[v] == gen) {
+                continue;
+            }
+            this.closed[v] = gen;
+            if (v == target) {
+                return this.createRoute(start, target);
+            }
+
+            final double gv = this.g[v];
+            final int end = this.graph.getFirstEdge(v + 1);
+            for (int e = this.graph.getFirstEdge(v); e < end; ++e) {
+                if (v == start && contains(removed, e)) {
+                    continue;
+                }
+                this.relax(v, this.graph.getTarget(e), e, gv + this.graph.getCosts(e));
+            }
+
+            final double portalCosts = gv + PathCostCalculator.COST_ENTRYPORTAL;
+            if (v == start) {
+                final List<Integer> pending = new ArrayList<>();
+                for (final int portal : this.portals) {
+                    if (contains(removed, portalEdge(portal))) {
+                        pending.add(portal);
+                    } else {
+                        this.relax(v, portal, portalEdge(portal), portalCosts);
+                    }
+                }
+                pendingPortals = new int[pending.size()];
+                for (int i = 0; i < pendingPortals.length; ++i) {
+                    pendingPortals[i] = pending.get(i);
+                }
+            } else {
+                for (final int portal : pendingPortals) {
+                    this.relax(v, portal, portalEdge(portal), portalCosts);
+                }
+            }
+        }
+        return null;
+    }
+
+
+
+    private static boolean contains(int[] array, int value) {
+        for (final int i : array) {
+            if (i == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+
+    private void relax(int v, int w, int code, double costs) {
+        final int gen = this.generation;
+        if (w == v || this.closed[w] == gen || this.blocked[w] == gen) {
+            return;
+        }
+        if (this.reached[w] != gen || costs < this.g[w]) {
+            this.g[w] = costs;
+            this.pred[w] = v;
+            this.predEdge[w] = code;
+            this.reached[w] = gen;
+            this.heap.add(w, costs + this.estimate(w));
+        }
+    }
+
+
+
+    private Route createRoute(int start, int target) {
+        int n = 1;
+        for (int v = target; v != start; v = this.pred[v]) {
+            ++n;
+        }
+        final int[] nodes = new int[n];
+        final int[] edges = new int[n - 1];
+        final double[] dist = new double[n];
+        int v = target;
+        for (int i = n - 1; i >= 0; --i) {
+            nodes[i] = v;
+            dist[i] = this.g[v];
+            if (i > 0) {
+                edges[i - 1] = this.predEdge[v];
+            }
+            v = this.pred[v];
+        }
+        return new Route(nodes, edges, dist, 0);
+    }
+}
@@ -0,0 +1,83 @@
+package polly.rx.entities;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Number of times a venad's fleets have been seen in a single sector. Counts are
+ * updated whenever a fleet moves, so heat maps do not need to look at single
+ * sightings. There is at most one count per venad and sector.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(
+        columnNames = { "ownerVenadName", "quadName", "x", "y" }))
+@NamedQueries({
+        @NamedQuery(name = DBHeatMapCount.HEAT_MAP_COUNTS_BY_VENAD,
+                query = "SELECT c FROM DBHeatMapCount c WHERE c.ownerVenadName=?1"),
+        @NamedQuery(name = DBHeatMapCount.HEAT_MAP_COUNTS_BY_VENAD_AND_QUADRANT,
+                query = "SELECT c FROM DBHeatMapCount c WHERE c.ownerVenadName=?1 AND c.quadName=?2"),
+        @NamedQuery(name = DBHeatMapCount.HEAT_MAP_COUNT_BY_VENAD_AND_SECTOR,
+                query = "SELECT c FROM DBHeatMapCount c WHERE c.ownerVenadName=?1 AND c.quadName=?2 AND c.x=?3 AND c.y=?4")
+})
+public class DBHeatMapCount {
+
+    public final static String HEAT_MAP_COUNTS_BY_VENAD = "HEAT_MAP_COUNTS_BY_VENAD"; //$NON-NLS-1$
+    public final static String HEAT_MAP_COUNTS_BY_VENAD_AND_QUADRANT = "HEAT_MAP_COUNTS_BY_VENAD_AND_QUADRANT"; //$NON-NLS-1$
+    public final static String HEAT_MAP_COUNT_BY_VENAD_AND_SECTOR = "HEAT_MAP_COUNT_BY_VENAD_AND_SECTOR"; //$NON-NLS-1$
+    private final static String GENERATOR = "HEAT_MAP_COUNT_GEN"; //$NON-NLS-1$
+
+    @Id
+    @SequenceGenerator(name = GENERATOR)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = GENERATOR)
+    private int id;
+
+    private String ownerVenadName;
+    private String quadName;
+    private int x;
+    private int y;
+    private int times;
+
+    public DBHeatMapCount() {}
+
+    public DBHeatMapCount(String ownerVenadName, String quadName, int x, int y) {
+        this.ownerVenadName = ownerVenadName;
+        this.quadName = quadName;
+        this.x = x;
+        this.y = y;
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public String getOwnerVenadName() {
+        return this.ownerVenadName;
+    }
+
+    public String getQuadName() {
+        return this.quadName;
+    }
+
+    public int getX() {
+        return this.x;
+    }
+
+    public int getY() {
+        return this.y;
+    }
+
+    public int getTimes() {
+        return this.times;
+    }
+
+    public void add(int times) {
+        this.times += times;
+    }
+}
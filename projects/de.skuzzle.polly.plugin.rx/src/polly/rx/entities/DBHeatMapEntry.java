@@ -14,6 +14,8 @@ import javax.persistence.TemporalType;
 
 @Entity
 @NamedQueries({
+        @NamedQuery(name = DBHeatMapEntry.ALL_HEAT_MAP_ENTRIES,
+                query = "SELECT e FROM DBHeatMapEntry e ORDER BY e.id"),
         @NamedQuery(name = DBHeatMapEntry.BY_VENAD_AND_SECTOR,
                 query = "SELECT e FROM DBHeatMapEntry e WHERE e.ownerVenadName=?1 AND e.sector=?2"),
         @NamedQuery(name = DBHeatMapEntry.BY_VENAD_AND_QUADRANT,
@@ -21,6 +23,7 @@ import javax.persistence.TemporalType;
 })
 public class DBHeatMapEntry {
 
+    public final static String ALL_HEAT_MAP_ENTRIES = "ALL_HEAT_MAP_ENTRIES"; //$NON-NLS-1$
     public final static String BY_VENAD_AND_SECTOR = "BY_VENAD_AND_SECTOR"; //$NON-NLS-1$
     public final static String BY_VENAD_AND_QUADRANT = "BY_VENAD_AND_QUADRANT"; //$NON-NLS-1$
     private final static String GENERATOR = "FLEET_HEAT_MAP_GEN"; //$NON-NLS-1$
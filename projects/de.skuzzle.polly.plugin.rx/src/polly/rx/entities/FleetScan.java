@@ -22,7 +22,7 @@ import de.skuzzle.polly.sdk.time.Time;
 @NamedQueries({
     @NamedQuery(
         name = FleetScan.ALL_SCANS,
-        query= "SELECT scan FROM FleetScan scan"
+        query= "SELECT scan FROM FleetScan scan ORDER BY scan.id"
     ),
     @NamedQuery(
         name = FleetScan.CONTAINING_SHIP,
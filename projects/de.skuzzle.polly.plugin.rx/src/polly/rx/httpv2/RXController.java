@@ -43,7 +43,6 @@ import de.skuzzle.polly.http.api.Controller;
 import de.skuzzle.polly.http.api.answers.HttpAnswer;
 import de.skuzzle.polly.http.api.answers.HttpAnswers;
 import de.skuzzle.polly.http.api.answers.HttpInputStreamAnswer;
-import de.skuzzle.polly.http.api.answers.HttpResourceAnswer;
 import de.skuzzle.polly.sdk.MyPolly;
 import de.skuzzle.polly.sdk.Types;
 import de.skuzzle.polly.sdk.Types.BooleanType;
@@ -539,9 +538,9 @@ public class RXController extends PollyController {
 
 
     @Get(FILES_VIEW)
-    public HttpAnswer getFile() {
+    public HttpAnswer getFile() throws IOException {
         final ClassLoader cl = this.getClass().getClassLoader();
-        return new HttpResourceAnswer(200, cl, getEvent().getPlainUri());
+        return HttpAnswers.newResourceAnswer(getEvent(), cl, getEvent().getPlainUri());
     }
 
 
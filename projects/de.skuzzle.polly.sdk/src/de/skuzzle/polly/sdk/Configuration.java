@@ -106,6 +106,32 @@ public interface Configuration {
      */
     public final static String DB_PERSISTENCE_XML_PATH = "persistenceXML"; //$NON-NLS-1$
     
+    /**
+     * Config file property name which refers to whether each thread uses its own 
+     * EntityManager so that reads are not blocked by writes.
+     */
+    public final static String DB_ISOLATED_SESSIONS = "isolatedSessions"; //$NON-NLS-1$
+    
+    /**
+     * Config file property name which refers to the time in milliseconds to wait for 
+     * further parallel writes which are then committed within the same transaction. 
+     * 0 disables group commit.
+     */
+    public final static String DB_GROUP_COMMIT_WINDOW = "groupCommitWindow"; //$NON-NLS-1$
+    
+    /**
+     * Config file property name which refers to the maximum number of parallel writes
+     * which are committed within the same transaction.
+     */
+    public final static String DB_GROUP_COMMIT_SIZE = "groupCommitSize"; //$NON-NLS-1$
+    
+    /**
+     * Config file property name which refers to a comma separated list of entity types
+     * whose query results are cached. Each entry has the format 
+     * <code>typeName:ttlSeconds:maxSize:LRU|LFU</code>.
+     */
+    public final static String DB_ENTITY_CACHE = "entityCache"; //$NON-NLS-1$
+    
     /**
      * Config file property name which enables/disables logging of irc messages.
      * @since Beta 0.5
@@ -169,6 +195,18 @@ public interface Configuration {
      */
     public final static String IGNORED_COMMANDS ="ignoreCommands"; //$NON-NLS-1$
     
+    /**
+     * Config file property name which refers to the maximum number of parsed and type 
+     * resolved commands which are cached by the command manager. 0 disables the cache.
+     */
+    public final static String AST_CACHE_SIZE = "astCacheSize"; //$NON-NLS-1$
+    
+    /**
+     * Config file property name which refers to whether commands are compiled before
+     * they are executed instead of being interpreted.
+     */
+    public final static String COMPILE_COMMANDS = "compileCommands"; //$NON-NLS-1$
+    
     /**
      * Config file property name which refers to the global encoding polly uses for 
      * incoming as well as outgoing messages.
@@ -227,6 +265,25 @@ public interface Configuration {
      */
     public final static String MESSAGE_DELAY = "messageDelay"; //$NON-NLS-1$
     
+    /**
+     * Sets how many lines may be sent in a burst before {@link #MESSAGE_DELAY} is
+     * applied between outgoing irc messages.
+     */
+    public final static String MESSAGE_BURST = "messageBurst"; //$NON-NLS-1$
+    
+    /**
+     * Sets the number of characters of an outgoing line for which an additional 
+     * {@link #MESSAGE_DELAY} is accounted, mirroring the flood penalty ircds apply
+     * to long lines. 0 disables the length penalty.
+     */
+    public final static String MESSAGE_PENALTY_BYTES = "messagePenaltyBytes"; //$NON-NLS-1$
+    
+    /**
+     * Enables/Disables joining consecutive outgoing lines of the same source to the 
+     * same target into a single line.
+     */
+    public final static String MESSAGE_COALESCING = "messageCoalescing"; //$NON-NLS-1$
+    
     /**
      * Sets how many threads should be used for command execution. As of polly version
      * 0.6.1 event threads and execution threads have been separated.
@@ -379,11 +436,23 @@ public interface Configuration {
      */
     public static final String JOIN_ON_CONNECT = "joinOnConnect"; //$NON-NLS-1$
 
+    /**
+     * When set to <code>true</code>, the irc connection is served by a shared 
+     * selector based event loop instead of dedicated input and output threads.
+     */
+    public static final String IRC_NIO_TRANSPORT = "nioTransport"; //$NON-NLS-1$
+
     /**
      * Whether the webserver should use SSL
      */
     public static final String HTTP_USE_SSL = "useSSL"; //$NON-NLS-1$
     
+    /**
+     * Whether the webserver should check cached templates for modifications and
+     * reload them. Useful while developing templates.
+     */
+    public static final String HTTP_TEMPLATE_RELOAD = "templateReload"; //$NON-NLS-1$
+    
     
     /** 
      * The key which refers to the locale to use by polly.
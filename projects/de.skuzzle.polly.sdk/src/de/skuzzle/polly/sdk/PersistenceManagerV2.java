@@ -245,6 +245,40 @@ public interface PersistenceManagerV2 {
         public <T> List<T> findList(Class<T> type, String query, int first, int limit,
             Param params);
         
+        /**
+         * Retrieves the entities of a named query lazily, page by page. Only the current
+         * page is held in memory: when the next page is fetched, the entities of the
+         * previous one are detached, unless this instance has been obtained by
+         * {@link Write#read()}. Thus, bulk operations over big tables run in constant
+         * memory. The query should have a unique ordering, otherwise the pages may
+         * overlap. Entities which are inserted or removed by other transactions while
+         * iterating may cause entities to be skipped or returned twice.
+         *
+         * @param type The entities type.
+         * @param query The name of the named query. The query may only use numbered
+         *      parameters.
+         * @param pageSize The number of entities to fetch at once.
+         * @return The entities matching the query. The query is executed anew for each
+         *      iterator.
+         */
+        public <T> Iterable<T> findPaged(Class<T> type, String query, int pageSize);
+        
+        /**
+         * Retrieves the entities of a named query lazily, page by page. See
+         * {@link #findPaged(Class, String, int)}.
+         *
+         * @param type The entities type.
+         * @param query The name of the named query. The query may only use numbered
+         *      parameters.
+         * @param pageSize The number of entities to fetch at once.
+         * @param params The parameter values for the query in order they appear in the
+         *      query string.
+         * @return The entities matching the query. The query is executed anew for each
+         *      iterator.
+         */
+        public <T> Iterable<T> findPaged(Class<T> type, String query, int pageSize,
+            Param params);
+        
         /**
          * Finds a single entity using a named query. This method may throw an 
          * Exception if the query returns more than one item.
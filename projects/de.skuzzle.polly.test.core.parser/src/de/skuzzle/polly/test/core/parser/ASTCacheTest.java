@@ -0,0 +1,141 @@
+package de.skuzzle.polly.test.core.parser;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+
+import junit.framework.Assert;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.skuzzle.polly.core.parser.ASTCache;
+import de.skuzzle.polly.core.parser.Evaluator;
+import de.skuzzle.polly.core.parser.Position;
+import de.skuzzle.polly.core.parser.ast.Identifier;
+import de.skuzzle.polly.core.parser.ast.Root;
+import de.skuzzle.polly.core.parser.ast.declarations.Declaration;
+import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.NumberLiteral;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+import de.skuzzle.polly.core.parser.problems.SimpleProblemReporter;
+
+
+public class ASTCacheTest {
+
+    private final static String ENCODING = "UTF-8";
+
+
+
+    @BeforeClass
+    public static void setUp() {
+        final File folder = new File(System.getProperty("java.io.tmpdir"));
+        Namespace.setDeclarationFolder(folder);
+    }
+
+
+
+    private Root evaluate(String input, ASTCache cache, Namespace rootNs)
+            throws UnsupportedEncodingException {
+        final Evaluator eval = new Evaluator(input, ENCODING,
+            new SimpleProblemReporter(), cache);
+        eval.evaluate(rootNs, rootNs.enter());
+        Assert.assertFalse(eval.errorOccurred());
+        return eval.getRoot();
+    }
+
+
+
+    private double result(Root root, int i) {
+        return ((NumberLiteral) root.getResults().get(i)).getValue();
+    }
+
+
+
+    @Test
+    public void testCacheHit() throws UnsupportedEncodingException {
+        final ASTCache cache = new ASTCache(10);
+        final Namespace ns = Namespace.forName("~astCacheTest1");
+
+        final Root first = this.evaluate(":foo 1+2 \\(num x: x*x)(3)", cache, ns);
+        final Root second = this.evaluate(":foo 1+2 \\(num x: x*x)(3)", cache, ns);
+
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(3.0, this.result(second, 0));
+        Assert.assertEquals(9.0, this.result(second, 1));
+    }
+
+
+
+    @Test
+    public void testInvalidation()
+            throws UnsupportedEncodingException, ASTTraversalException {
+        final ASTCache cache = new ASTCache(10);
+        final Namespace ns = Namespace.forName("~astCacheTest2");
+        ns.declare(new Declaration(Position.NONE, new Identifier("a"),
+            new NumberLiteral(Position.NONE, 1.0)));
+
+        Assert.assertEquals(2.0, this.result(this.evaluate(":foo a+1", cache, ns), 0));
+        ns.declare(new Declaration(Position.NONE, new Identifier("a"),
+            new NumberLiteral(Position.NONE, 5.0)));
+
+        Assert.assertEquals(6.0, this.result(this.evaluate(":foo a+1", cache, ns), 0));
+        Assert.assertEquals(1, cache.getInvalidations());
+        Assert.assertEquals(0, cache.getHits());
+    }
+
+
+
+    @Test
+    public void testNamespacesAreSeparated() throws UnsupportedEncodingException {
+        final ASTCache cache = new ASTCache(10);
+        this.evaluate(":foo 1+2", cache, Namespace.forName("~astCacheTest3"));
+        this.evaluate(":foo 1+2", cache, Namespace.forName("~astCacheTest4"));
+
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(2, cache.getSize());
+    }
+
+
+
+    @Test
+    public void testTimeDependentNotCached() throws UnsupportedEncodingException {
+        final ASTCache cache = new ASTCache(10);
+        this.evaluate(":foo 10m", cache, Namespace.forName("~astCacheTest5"));
+
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+
+
+    @Test
+    public void testContextNotCached() throws UnsupportedEncodingException, 
+            ASTTraversalException {
+        final ASTCache cache = new ASTCache(10);
+        final Namespace ns = Namespace.forName("~astCacheTest7");
+        final Namespace context = ns.enter();
+        context.declare(new Declaration(Position.NONE, new Identifier("ctx"),
+            new NumberLiteral(Position.NONE, 1.0)));
+
+        final Evaluator eval = new Evaluator(":foo ctx+1", ENCODING,
+            new SimpleProblemReporter(), cache);
+        eval.evaluate(ns, context);
+        Assert.assertEquals(2.0, this.result(eval.getRoot(), 0));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+
+
+    @Test
+    public void testEviction() throws UnsupportedEncodingException {
+        final ASTCache cache = new ASTCache(2);
+        final Namespace ns = Namespace.forName("~astCacheTest6");
+        this.evaluate(":foo 1", cache, ns);
+        this.evaluate(":foo 2", cache, ns);
+        this.evaluate(":foo 3", cache, ns);
+
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(1, cache.getEvictions());
+    }
+}
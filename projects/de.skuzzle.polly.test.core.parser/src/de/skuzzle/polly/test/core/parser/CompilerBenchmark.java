@@ -0,0 +1,88 @@
+package de.skuzzle.polly.test.core.parser;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+
+import de.skuzzle.polly.core.parser.ASTCache;
+import de.skuzzle.polly.core.parser.Evaluator;
+import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
+import de.skuzzle.polly.core.parser.problems.SimpleProblemReporter;
+
+/**
+ * Compares the execution time of the interpreter and the compiler. Inputs are taken
+ * from an {@link ASTCache} (one per mode, as compiled code is stored within the cached
+ * ASTs), so only execution is measured. Run with
+ * <code>java CompilerBenchmark [iterations]</code>.
+ *
+ * @author Simon Taddiken
+ */
+public class CompilerBenchmark {
+
+    private final static String ENCODING = "UTF-8";
+
+    private final static String[] DECLARATIONS = {
+        ":foo \\(num x, num y: x*x+y)->sq",
+        ":foo \\(num a, num b: if a>b : a : b)->maximum",
+    };
+
+    private final static String[][] INPUTS = {
+        { "arithmetic", ":foo \\(x: x*x+2*x-1/(x+1))(7)" },
+        { "calls", ":foo foldl(1..200, \\(a, b: sq(b, a)/(a+1)), 0)" },
+        { "map/foldl", ":foo foldl(map(1..500, \\(x: x*2+1)), " +
+            "\\(a, b: maximum(a, b)), 0)" },
+        { "nested", ":foo map(1..40, \\(i: foldl(1..40, \\(a, b: a+b*i), 0)))" },
+    };
+
+
+
+    public static void main(String[] args) throws UnsupportedEncodingException {
+        final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Namespace.setDeclarationFolder(new File(System.getProperty("java.io.tmpdir")));
+        final Namespace ns = Namespace.forName("~compilerBenchmark");
+        final ASTCache interpreterCache = new ASTCache(INPUTS.length);
+        final ASTCache compilerCache = new ASTCache(INPUTS.length);
+
+        for (final String decl : DECLARATIONS) {
+            run(decl, ns, null, false);
+        }
+
+        System.out.println(String.format("%-12s %14s %14s %8s",
+            "input", "interpreted", "compiled", "speedup"));
+        for (final String[] input : INPUTS) {
+            // warm up
+            measure(input[1], ns, interpreterCache, false, iterations);
+            measure(input[1], ns, compilerCache, true, iterations);
+
+            final double interpreted = measure(input[1], ns, interpreterCache, false, 
+                iterations);
+            final double compiled = measure(input[1], ns, compilerCache, true, 
+                iterations);
+            System.out.println(String.format("%-12s %11.1f us %11.1f us %7.2fx",
+                input[0], interpreted, compiled, interpreted / compiled));
+        }
+    }
+
+
+
+    private static double measure(String input, Namespace ns, ASTCache cache,
+            boolean compile, int iterations) throws UnsupportedEncodingException {
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            run(input, ns, cache, compile);
+        }
+        return (System.nanoTime() - start) / 1000.0 / iterations;
+    }
+
+
+
+    private static void run(String input, Namespace ns, ASTCache cache,
+            boolean compile) throws UnsupportedEncodingException {
+        final Evaluator eval = new Evaluator(input, ENCODING,
+            new SimpleProblemReporter(), cache);
+        eval.setCompile(compile);
+        eval.evaluate(ns, ns.enter());
+        if (eval.errorOccurred()) {
+            throw new IllegalStateException(input + ": " + eval.getLastError());
+        }
+    }
+}
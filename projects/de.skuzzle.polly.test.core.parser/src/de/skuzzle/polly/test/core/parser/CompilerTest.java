@@ -0,0 +1,111 @@
+package de.skuzzle.polly.test.core.parser;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.skuzzle.polly.core.parser.Evaluator;
+import de.skuzzle.polly.core.parser.ast.Root;
+import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.Literal;
+import de.skuzzle.polly.core.parser.problems.SimpleProblemReporter;
+
+/**
+ * Tests whether compiled execution yields the same results as the interpreter.
+ *
+ * @author Simon Taddiken
+ */
+public class CompilerTest {
+
+    private final static String ENCODING = "UTF-8";
+
+    private final static String[] INPUTS = {
+        ":foo 1+2*3-4/2 2^10 -5 min(3,4) hypot(3,4)",
+        ":foo sqrt(16) abs(-3) round(2.5)",
+        ":foo 1<2 2>=3 1==1 1!=1",
+        ":foo (1<2)&&(2>3) !true true||false (1<2)^^true",
+        ":foo if 1<2 : 5 : 6",
+        ":foo \"a\"+\"b\"",
+        ":foo {1,2+3,4} {{1},{2,3}} {1,2,3}[1]",
+        ":foo map({1,2,3}, \\(x: x*2))",
+        ":foo foldl(1..10, \\(a, b: a+b), 0)",
+        ":foo \\(x, y: x*y+1)(2, 3)",
+        ":foo \\(x: if x<2 : x*10 : x+1)(5)",
+        ":foo \\(y: map({1, 2}, \\(x: x+y)))(10)",
+        ":foo \\(x: \\(y: x+y)(x*2))(3)",
+        ":foo foldl({\"a\", \"b\"}, \\(s, t: s+t), \"\")",
+    };
+
+
+
+    @BeforeClass
+    public static void setUp() {
+        final File folder = new File(System.getProperty("java.io.tmpdir"));
+        Namespace.setDeclarationFolder(folder);
+    }
+
+
+
+    private Evaluator evaluate(String input, Namespace ns, boolean compile)
+            throws UnsupportedEncodingException {
+        final Evaluator eval = new Evaluator(input, ENCODING,
+            new SimpleProblemReporter());
+        eval.setCompile(compile);
+        eval.evaluate(ns, ns.enter());
+        return eval;
+    }
+
+
+
+    private String results(Evaluator eval) {
+        Assert.assertFalse(eval.getInput(), eval.errorOccurred());
+        final Root root = eval.getRoot();
+        final List<Literal> results = root.getResults();
+        return results.toString();
+    }
+
+
+
+    @Test
+    public void testParity() throws UnsupportedEncodingException {
+        for (final String input : INPUTS) {
+            final Namespace ns = Namespace.forName("~compilerTest1");
+            final String interpreted = this.results(this.evaluate(input, ns, false));
+            final String compiled = this.results(this.evaluate(input, ns, true));
+            Assert.assertEquals(input, interpreted, compiled);
+        }
+    }
+
+
+
+    @Test
+    public void testDeclaredFunctions() throws UnsupportedEncodingException {
+        final Namespace ns = Namespace.forName("~compilerTest2");
+        this.results(this.evaluate(":foo \\(num x, num y: x*x+y)->sq", ns, true));
+
+        final Evaluator eval = this.evaluate(":foo foldl(map(1..4, \\(x: sq(x, 1))), " +
+            "\\(a, b: sq(a, b)), 0) sq(3, 0)", ns, true);
+        final String interpreted = this.results(this.evaluate(
+            eval.getInput(), ns, false));
+        Assert.assertEquals(interpreted, this.results(eval));
+    }
+
+
+
+    @Test
+    public void testRuntimeError() throws UnsupportedEncodingException {
+        final Namespace ns = Namespace.forName("~compilerTest3");
+        final Evaluator interpreted = this.evaluate(":foo 1/(2-2)", ns, false);
+        final Evaluator compiled = this.evaluate(":foo 1/(2-2)", ns, true);
+
+        Assert.assertTrue(interpreted.errorOccurred());
+        Assert.assertTrue(compiled.errorOccurred());
+        Assert.assertEquals(interpreted.getLastError().getMessage(),
+            compiled.getLastError().getMessage());
+    }
+}
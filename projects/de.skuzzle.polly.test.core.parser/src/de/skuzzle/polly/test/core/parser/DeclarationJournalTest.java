@@ -0,0 +1,172 @@
+package de.skuzzle.polly.test.core.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.skuzzle.polly.core.parser.Evaluator;
+import de.skuzzle.polly.core.parser.ast.Identifier;
+import de.skuzzle.polly.core.parser.ast.ResolvableIdentifier;
+import de.skuzzle.polly.core.parser.ast.declarations.Declaration;
+import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.NumberLiteral;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+import de.skuzzle.polly.core.parser.problems.SimpleProblemReporter;
+
+
+public class DeclarationJournalTest {
+
+    private final static String ENCODING = "UTF-8";
+    
+    private File folder;
+
+
+
+    @Before
+    public void setUp() throws IOException {
+        // restoreAll reads every file in the folder, so each test gets its own
+        this.folder = Files.createTempDirectory("journalTest").toFile();
+        Namespace.setDeclarationFolder(this.folder);
+    }
+
+
+
+    @After
+    public void tearDown() throws IOException {
+        // write pending changes before the folder is deleted
+        Namespace.flushDeclarations();
+        for (final File file : this.folder.listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(this.folder.toPath());
+    }
+
+
+
+    private void evaluate(String input, Namespace ns) 
+            throws UnsupportedEncodingException {
+        final Evaluator eval = new Evaluator(input, ENCODING,
+            new SimpleProblemReporter());
+        eval.evaluate(ns, ns.enter());
+        Assert.assertFalse(eval.errorOccurred());
+    }
+    
+    
+    
+    private File snapshot(String name) {
+        return new File(this.folder, name + Namespace.DECLARATION_EXTENSION);
+    }
+    
+    
+    
+    private File journal(String name) {
+        return new File(this.folder, name + Namespace.DECLARATION_EXTENSION + ".journal");
+    }
+    
+    
+    
+    private String unique(String prefix) {
+        return prefix + System.nanoTime();
+    }
+    
+    
+    
+    /**
+     * Copies the files of a namespace to a new name and restores that namespace, 
+     * which simulates a restart.
+     */
+    private Namespace restoreCopy(String name) throws IOException {
+        final String copy = name + "copy";
+        if (this.snapshot(name).exists()) {
+            Files.copy(this.snapshot(name).toPath(), this.snapshot(copy).toPath(), 
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (this.journal(name).exists()) {
+            Files.copy(this.journal(name).toPath(), this.journal(copy).toPath(), 
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+        Namespace.restoreAll();
+        return Namespace.forName(copy);
+    }
+    
+    
+    
+    private double value(Namespace ns, String name) throws ASTTraversalException {
+        final Declaration decl = ns.resolveFirst(new ResolvableIdentifier(
+            new Identifier(name)));
+        return ((NumberLiteral) decl.getExpression()).getValue();
+    }
+
+
+
+    @Test
+    public void testJournalReplay() throws IOException, ASTTraversalException {
+        final String name = this.unique("~journalTest");
+        final Namespace ns = Namespace.forName(name);
+        this.evaluate(":foo 1->a 2->b 3->a", ns);
+        this.evaluate(":foo del b", ns);
+        Namespace.flushDeclarations();
+        
+        final List<String> lines = Files.readAllLines(this.journal(name).toPath());
+        Assert.assertEquals(4, lines.size());
+        Assert.assertEquals("del b", lines.get(3));
+        Assert.assertFalse(this.snapshot(name).exists());
+        
+        final Namespace restored = this.restoreCopy(name);
+        Assert.assertEquals(3.0, this.value(restored, "a"));
+        Assert.assertTrue(restored.lookupAll(new ResolvableIdentifier(
+            new Identifier("b"))).isEmpty());
+    }
+    
+    
+    
+    @Test
+    public void testCompaction() throws IOException, ASTTraversalException {
+        final String name = this.unique("~journalTest");
+        final Namespace ns = Namespace.forName(name);
+        final StringBuilder b = new StringBuilder(":foo");
+        for (int i = 0; i < 100; ++i) {
+            b.append(" ").append(i).append("->x");
+        }
+        this.evaluate(b.toString(), ns);
+        Namespace.flushDeclarations();
+        
+        Assert.assertFalse(this.journal(name).exists());
+        final List<String> lines = Files.readAllLines(this.snapshot(name).toPath());
+        Assert.assertEquals(1, lines.size());
+        
+        // further changes go to the journal again
+        this.evaluate(":foo 5->y", ns);
+        Namespace.flushDeclarations();
+        Assert.assertTrue(this.journal(name).exists());
+        
+        final Namespace restored = this.restoreCopy(name);
+        Assert.assertEquals(99.0, this.value(restored, "x"));
+        Assert.assertEquals(5.0, this.value(restored, "y"));
+    }
+    
+    
+    
+    @Test
+    public void testRestoreIsNotJournaled() throws IOException {
+        final String name = this.unique("~journalTest");
+        final Namespace ns = Namespace.forName(name);
+        this.evaluate(":foo 1->a", ns);
+        Namespace.flushDeclarations();
+        
+        this.restoreCopy(name);
+        Namespace.flushDeclarations();
+        final List<String> lines = Files.readAllLines(
+            this.journal(name + "copy").toPath());
+        Assert.assertEquals(1, lines.size());
+    }
+}
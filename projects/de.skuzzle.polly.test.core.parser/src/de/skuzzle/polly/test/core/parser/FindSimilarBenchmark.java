@@ -0,0 +1,105 @@
+package de.skuzzle.polly.test.core.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+import de.skuzzle.polly.tools.strings.StringUtils;
+
+/**
+ * Compares {@link Namespace#findSimilar(String, int)} with a linear search over all 
+ * declaration names of a synthetic namespace, which keeps the most similar names. Run with 
+ * <code>java FindSimilarBenchmark [declarations] [queries]</code>.
+ * 
+ * @author Simon Taddiken
+ */
+public class FindSimilarBenchmark {
+
+    private final static int MAX_SUGGESTIONS = 3;
+    
+    
+    
+
+    public static void main(String[] args) throws ASTTraversalException {
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        final Random rnd = new Random(1337);
+        
+        final Namespace ns = new Namespace(null);
+        final List<String> names = new ArrayList<String>(size);
+        for (int i = 0; i < size; ++i) {
+            final String name = randomName(rnd);
+            FindSimilarTest.declare(ns, name);
+            names.add(name);
+        }
+        final List<String> inputs = new ArrayList<String>(queries);
+        for (int i = 0; i < queries; ++i) {
+            // typos of existing names
+            final char[] c = names.get(rnd.nextInt(size)).toCharArray();
+            c[rnd.nextInt(c.length)] = (char) ('a' + rnd.nextInt(26));
+            inputs.add(new String(c));
+        }
+        
+        // warm up
+        ns.findSimilar("warmup", MAX_SUGGESTIONS);
+        linear(names, "warmup");
+        
+        long start = System.nanoTime();
+        int found = 0;
+        for (final String input : inputs) {
+            found += ns.findSimilar(input, MAX_SUGGESTIONS).size();
+        }
+        final double indexed = (System.nanoTime() - start) / 1000.0 / queries;
+        
+        start = System.nanoTime();
+        int foundLinear = 0;
+        for (final String input : inputs) {
+            foundLinear += linear(names, input);
+        }
+        final double linear = (System.nanoTime() - start) / 1000.0 / queries;
+        
+        System.out.println(String.format("%d declarations, %d queries", size, queries));
+        System.out.println(String.format("indexed: %10.1f us/query (%d results)", 
+            indexed, found));
+        System.out.println(String.format("linear:  %10.1f us/query (%d results)", 
+            linear, foundLinear));
+    }
+    
+    
+    
+    private static String randomName(Random rnd) {
+        final int length = 6 + rnd.nextInt(10);
+        final StringBuilder b = new StringBuilder(length);
+        for (int i = 0; i < length; ++i) {
+            b.append((char) ('a' + rnd.nextInt(26)));
+        }
+        return b.toString();
+    }
+    
+    
+    
+    private static int linear(List<String> names, String given) {
+        final int threshold = Math.min(2, Math.max(1, Math.round(given.length() * 0.6f)));
+        final List<Integer> found = new ArrayList<Integer>();
+        for (final String name : names) {
+            final int dist = StringUtils.getLevenshteinDistance(name, given);
+            if (dist <= threshold) {
+                found.add(dist);
+            }
+        }
+        if (found.isEmpty()) {
+            return 0;
+        }
+        final int radius = Math.max(1, Collections.min(found));
+        int result = 0;
+        for (final int dist : found) {
+            if (dist <= radius) {
+                ++result;
+            }
+        }
+        return Math.min(MAX_SUGGESTIONS, result);
+    }
+}
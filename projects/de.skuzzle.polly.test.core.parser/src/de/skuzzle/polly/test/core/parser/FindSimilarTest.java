@@ -0,0 +1,178 @@
+package de.skuzzle.polly.test.core.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import de.skuzzle.polly.core.parser.Position;
+import de.skuzzle.polly.core.parser.ast.Identifier;
+import de.skuzzle.polly.core.parser.ast.declarations.Declaration;
+import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
+import de.skuzzle.polly.core.parser.ast.expressions.literals.NumberLiteral;
+import de.skuzzle.polly.core.parser.ast.visitor.ASTTraversalException;
+import de.skuzzle.polly.tools.strings.StringUtils;
+
+
+public class FindSimilarTest {
+
+    static void declare(Namespace ns, String name) throws ASTTraversalException {
+        ns.declare(new Declaration(Position.NONE, new Identifier(Position.NONE, name), 
+            new NumberLiteral(Position.NONE, 0.0)));
+    }
+    
+    
+    
+    static String randomName(Random rnd) {
+        final int length = 3 + rnd.nextInt(8);
+        final StringBuilder b = new StringBuilder(length);
+        for (int i = 0; i < length; ++i) {
+            b.append((char) ('a' + rnd.nextInt(6)));
+        }
+        return b.toString();
+    }
+    
+    
+    
+    @Test
+    public void testSimilar() throws ASTTraversalException {
+        final Namespace ns = new Namespace(null).enter();
+        declare(ns, "hello");
+        declare(ns, "world");
+        declare(ns, "hal");
+        declare(ns, "hullo");
+        declare(ns, "+");
+        
+        // names with two differences are only searched if there are none with one
+        final List<String> similar = ns.findSimilar("hallo", 3);
+        Collections.sort(similar);
+        Assert.assertEquals(Arrays.asList("hello", "hullo"), similar);
+        Assert.assertEquals(1, ns.findSimilar("hallo", 1).size());
+        Assert.assertTrue(ns.findSimilar("xyz", 3).isEmpty());
+        
+        ns.delete(new Identifier("hello"));
+        ns.delete(new Identifier("hullo"));
+        Assert.assertEquals(Arrays.asList("hal"), ns.findSimilar("hallo", 3));
+        declare(ns, "hello");
+        Assert.assertEquals(Arrays.asList("hello"), ns.findSimilar("hallo", 3));
+    }
+    
+    
+    
+    @Test
+    public void testParentLevels() throws ASTTraversalException {
+        final Namespace parent = new Namespace(null);
+        declare(parent, "foo");
+        final Namespace ns = parent.enter();
+        declare(ns, "foo");
+        declare(ns, "fob");
+        
+        Assert.assertEquals(Arrays.asList("foo", "fob"), ns.findSimilar("foo", 3));
+    }
+    
+    
+    
+    /**
+     * Compares the results of findSimilar for random names with a linear search over
+     * the given names.
+     */
+    static void assertMatchesLinearSearch(Namespace ns, List<String> names, 
+            Random rnd) {
+        for (int i = 0; i < 200; ++i) {
+            final String given = randomName(rnd);
+            final int threshold = Math.min(2, Math.max(1, Math.round(given.length() * 0.6f)));
+            final List<Integer> expected = new ArrayList<Integer>();
+            for (final String name : names) {
+                final int dist = StringUtils.getLevenshteinDistance(name, given);
+                if (dist <= threshold) {
+                    expected.add(dist);
+                }
+            }
+            Collections.sort(expected);
+            while (!expected.isEmpty() && 
+                    expected.get(expected.size() - 1) > Math.max(1, expected.get(0))) {
+                expected.remove(expected.size() - 1);
+            }
+            
+            // names with equal distance are interchangeable, so compare distances
+            final List<Integer> actual = new ArrayList<Integer>();
+            for (final String name : ns.findSimilar(given, 5)) {
+                actual.add(StringUtils.getLevenshteinDistance(name, given));
+            }
+            Assert.assertEquals(expected.subList(0, Math.min(5, expected.size())), 
+                actual);
+        }
+    }
+    
+    
+    
+    @Test
+    public void testMatchesLinearSearch() throws ASTTraversalException {
+        final Random rnd = new Random(1337);
+        final Namespace ns = new Namespace(null);
+        final List<String> names = new ArrayList<String>();
+        while (names.size() < 2000) {
+            final String name = randomName(rnd);
+            if (!names.contains(name)) {
+                declare(ns, name);
+                names.add(name);
+            }
+        }
+        // builds the index
+        assertMatchesLinearSearch(ns, names, rnd);
+        
+        // removed names stay in the index but must not be found
+        final List<String> deleted = new ArrayList<String>();
+        for (int i = 0; i < 500; ++i) {
+            final String name = names.remove(rnd.nextInt(names.size()));
+            ns.delete(new Identifier(name));
+            deleted.add(name);
+        }
+        assertMatchesLinearSearch(ns, names, rnd);
+        
+        // declaring a removed name again must make it visible
+        for (int i = 0; i < 100; ++i) {
+            final String name = deleted.remove(deleted.size() - 1);
+            declare(ns, name);
+            names.add(name);
+        }
+        assertMatchesLinearSearch(ns, names, rnd);
+    }
+    
+    
+    
+    @Test
+    public void testMatchesLinearSearchAfterRebuild() throws ASTTraversalException {
+        final Random rnd = new Random(4711);
+        final Namespace ns = new Namespace(null);
+        final List<String> names = new ArrayList<String>();
+        while (names.size() < 2000) {
+            final String name = randomName(rnd);
+            if (!names.contains(name)) {
+                declare(ns, name);
+                names.add(name);
+            }
+        }
+        assertMatchesLinearSearch(ns, names, rnd);
+        
+        // the index is rebuilt once there are more removed than contained names
+        for (int i = 0; i < 1500; ++i) {
+            ns.delete(new Identifier(names.remove(rnd.nextInt(names.size()))));
+        }
+        assertMatchesLinearSearch(ns, names, rnd);
+        
+        for (int i = 0; i < 300; ++i) {
+            final String name = randomName(rnd);
+            if (!names.contains(name)) {
+                declare(ns, name);
+                names.add(name);
+            }
+        }
+        assertMatchesLinearSearch(ns, names, rnd);
+    }
+}
@@ -0,0 +1,81 @@
+package de.skuzzle.polly.test.core.parser;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+
+import junit.framework.Assert;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.skuzzle.polly.core.parser.Evaluator;
+import de.skuzzle.polly.core.parser.ParserProperties;
+import de.skuzzle.polly.core.parser.ast.declarations.Namespace;
+import de.skuzzle.polly.core.parser.problems.Problems;
+import de.skuzzle.polly.core.parser.problems.SimpleProblemReporter;
+
+
+public class OverloadResolutionTest {
+
+    private final static String ENCODING = "UTF-8";
+
+
+
+    @BeforeClass
+    public static void setUp() {
+        final File folder = new File(System.getProperty("java.io.tmpdir"));
+        Namespace.setDeclarationFolder(folder);
+    }
+
+
+
+    private Evaluator evaluate(String input, Namespace ns)
+            throws UnsupportedEncodingException {
+        final Evaluator eval = new Evaluator(input, ENCODING,
+            new SimpleProblemReporter());
+        eval.evaluate(ns, ns.enter());
+        return eval;
+    }
+
+
+
+    @Test
+    public void testOverloadedArguments() throws UnsupportedEncodingException {
+        final Namespace ns = Namespace.forName("~overloadTest1");
+        
+        // the lambdas have a type for each overload of the operators they use
+        final Evaluator eval = this.evaluate(":foo map({1,2}, \\(x: x*2+1)) " +
+            "foldl({\"a\",\"b\"}, \\(s, t: s+t), \"\")", ns);
+        Assert.assertFalse(eval.errorOccurred());
+        Assert.assertEquals("[{3, 5}, ab]", eval.getRoot().getResults().toString());
+    }
+
+
+
+    @Test
+    public void testNestedOperators() throws UnsupportedEncodingException {
+        final Namespace ns = Namespace.forName("~overloadTest2");
+        final Evaluator eval = this.evaluate(
+            ":foo ((1+2)*(3-4))+((5+6)*(7-8)) \"a\"+(\"b\"+\"c\")", ns);
+        Assert.assertFalse(eval.errorOccurred());
+        Assert.assertEquals("[-14.0, abc]", eval.getRoot().getResults().toString());
+    }
+
+
+
+    @Test
+    public void testBudgetExceeded() throws UnsupportedEncodingException {
+        final Namespace ns = Namespace.forName("~overloadTest3");
+        final int budget = ParserProperties.getInt(
+            ParserProperties.TYPE_RESOLUTION_BUDGET);
+
+        final StringBuilder b = new StringBuilder(":foo");
+        for (int i = 0; i < budget / 5; ++i) {
+            b.append(" 1+1");
+        }
+        final Evaluator eval = this.evaluate(b.toString(), ns);
+        Assert.assertTrue(eval.errorOccurred());
+        Assert.assertTrue(eval.getLastError().getMessage().startsWith(
+            Problems.format(Problems.TYPE_BUDGET_EXCEEDED, budget)));
+    }
+}
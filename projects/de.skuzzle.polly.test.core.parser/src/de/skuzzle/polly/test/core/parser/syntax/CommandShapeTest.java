@@ -0,0 +1,54 @@
+package de.skuzzle.polly.test.core.parser.syntax;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import de.skuzzle.polly.core.parser.InputParser;
+import de.skuzzle.polly.core.parser.ParseException;
+
+/**
+ * Tests whether the cheap command shape check agrees with the parser.
+ *
+ * @author Simon Taddiken
+ */
+public class CommandShapeTest extends AbstractParserTest {
+
+    private final static String[] NO_COMMANDS = {
+        "", ":", "hello world", " : foo", ":D", ":)", ": foo", "foo :bar", ":5foo",
+        "::foo", ":$foo"
+    };
+
+    private final static String[] COMMANDS = {
+        ":foo", "  :foo", ":foo 5+5", ":foo_bar", ":äpfel", "\t:foo \"bar\""
+    };
+
+
+
+    @Test
+    public void testNoCommands() throws ParseException {
+        for (final String input : NO_COMMANDS) {
+            Assert.assertFalse(input, InputParser.isCommandShaped(input));
+            Assert.assertNull(input, this.obtain(input.trim()).parse());
+        }
+    }
+
+
+
+    @Test
+    public void testCommands() throws ParseException {
+        for (final String input : COMMANDS) {
+            Assert.assertTrue(input, InputParser.isCommandShaped(input));
+            Assert.assertNotNull(input, this.obtain(input.trim()).parse());
+        }
+    }
+
+
+
+    @Test
+    public void testCommandNameEnd() {
+        Assert.assertEquals(4, InputParser.findCommandNameEnd(":foo"));
+        Assert.assertEquals(6, InputParser.findCommandNameEnd("  :foo 5"));
+        Assert.assertEquals(-1, InputParser.findCommandNameEnd("foo"));
+    }
+}
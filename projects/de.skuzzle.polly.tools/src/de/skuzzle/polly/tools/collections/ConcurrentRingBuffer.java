@@ -0,0 +1,198 @@
+package de.skuzzle.polly.tools.collections;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock free ring buffer for multiple producers and a single consumer. Other
+ * than {@link ArrayRingBuffer}, this buffer never overwrites elements. When it is
+ * full, {@link #offer(Object)} fails and the caller decides whether to drop or retry.
+ *
+ * <p>Each slot carries a sequence number which tells whether the slot is free for the
+ * producer which claimed the position or holds an element for the consumer.
+ * Producers claim positions by incrementing the tail with a CAS, so they never block
+ * each other. {@link #poll()} and {@link #drainTo(Collection, int)} must only be called
+ * by a single thread at a time, all other methods may be called from any thread.</p>
+ *
+ * @author Simon Taddiken
+ * @param <T> Types of elements in this buffer.
+ */
+public class ConcurrentRingBuffer<T> {
+
+    private final AtomicReferenceArray<T> buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    private volatile long head;
+
+
+
+    /**
+     * Creates a new ConcurrentRingBuffer. The capacity is rounded up to the next
+     * power of two.
+     *
+     * @param capacity Minimum capacity of this buffer.
+     */
+    public ConcurrentRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1"); //$NON-NLS-1$
+        }
+        int cap = 1;
+        while (cap < capacity) {
+            cap <<= 1;
+        }
+        this.buffer = new AtomicReferenceArray<>(cap);
+        this.sequences = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; ++i) {
+            this.sequences.set(i, i);
+        }
+        this.mask = cap - 1;
+        this.tail = new AtomicLong();
+    }
+
+
+
+    /**
+     * Gets the maximum number of elements this buffer can hold.
+     *
+     * @return The capacity.
+     */
+    public int capacity() {
+        return this.mask + 1;
+    }
+
+
+
+    /**
+     * Gets the number of elements in this buffer. As other threads may add or
+     * remove elements concurrently, this is only an estimate.
+     *
+     * @return The number of elements.
+     */
+    public int size() {
+        final long size = this.tail.get() - this.head;
+        return (int) Math.max(0, Math.min(size, this.capacity()));
+    }
+
+
+
+    /**
+     * Determines whether this buffer is empty. This is only an estimate, like
+     * {@link #size()}.
+     *
+     * @return Whether this buffer is empty.
+     */
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+
+
+    /**
+     * Adds an element to this buffer if it is not full.
+     *
+     * @param e The element to add.
+     * @return Whether the element has been added.
+     */
+    public boolean offer(T e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            final long pos = this.tail.get();
+            final int idx = (int) pos & this.mask;
+            final long dif = this.sequences.get(idx) - pos;
+            if (dif == 0) {
+                if (this.tail.compareAndSet(pos, pos + 1)) {
+                    this.buffer.lazySet(idx, e);
+                    // publish the element
+                    this.sequences.set(idx, pos + 1);
+                    return true;
+                }
+            } else if (dif < 0) {
+                // slot still holds the element from one round before
+                return false;
+            }
+            // else: another producer claimed the position, retry
+        }
+    }
+
+
+
+    /**
+     * Removes the oldest element from this buffer. Must only be called by the
+     * consumer.
+     *
+     * @return The element or <code>null</code> if the buffer is empty.
+     */
+    public T poll() {
+        final long pos = this.head;
+        final int idx = (int) pos & this.mask;
+        if (this.sequences.get(idx) != pos + 1) {
+            // empty or the producer which claimed the position did not yet publish
+            return null;
+        }
+        final T result = this.buffer.get(idx);
+        this.buffer.lazySet(idx, null);
+        this.head = pos + 1;
+        // free the slot for the next round
+        this.sequences.set(idx, pos + this.capacity());
+        return result;
+    }
+
+
+
+    /**
+     * Removes up to <code>max</code> of the oldest elements from this buffer and adds
+     * them to the given collection. Each element is added to the collection before it
+     * is removed from this buffer, so a thread which takes a {@link #snapshot} and
+     * then reads a concurrent target collection finds every element in at least one of
+     * them. Must only be called by the consumer.
+     *
+     * @param target Collection to add the elements to.
+     * @param max Maximum number of elements to remove.
+     * @return The number of removed elements.
+     */
+    public int drainTo(Collection<? super T> target, int max) {
+        int i = 0;
+        while (i < max) {
+            final long pos = this.head;
+            final int idx = (int) pos & this.mask;
+            if (this.sequences.get(idx) != pos + 1) {
+                break;
+            }
+            target.add(this.buffer.get(idx));
+            this.buffer.lazySet(idx, null);
+            this.head = pos + 1;
+            this.sequences.set(idx, pos + this.capacity());
+            ++i;
+        }
+        return i;
+    }
+
+
+
+    /**
+     * Adds the elements of this buffer to the given collection without removing them,
+     * oldest first. Elements which are added or removed concurrently might be
+     * missed.
+     *
+     * @param target Collection to add the elements to.
+     */
+    public void snapshot(Collection<? super T> target) {
+        final long end = this.tail.get();
+        for (long pos = this.head; pos < end; ++pos) {
+            final int idx = (int) pos & this.mask;
+            if (this.sequences.get(idx) != pos + 1) {
+                continue;
+            }
+            final T e = this.buffer.get(idx);
+            // only take the element if its slot has not been freed meanwhile
+            if (e != null && this.sequences.get(idx) == pos + 1) {
+                target.add(e);
+            }
+        }
+    }
+}